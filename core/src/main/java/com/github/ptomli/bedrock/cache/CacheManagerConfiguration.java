@@ -0,0 +1,101 @@
+package com.github.ptomli.bedrock.cache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.cache.CacheManager;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.cache.CacheLoader;
+
+/**
+ * Configuration of the Spring {@link CacheManager} which can be easily used
+ * with a DropWizard configuration.
+ * <p>
+ * Cache specifications use the {@link CacheBuilderSpec} format. Caches named
+ * under {@code caches} use their own specification, any other cache requested
+ * by the application uses the default {@code spec}, unless {@code dynamic} is
+ * false in which case only the named caches are available.
+ * <p>
+ * A {@code loader} class is only required if any specification uses
+ * {@code refreshAfterWrite}, as Guava needs a {@link CacheLoader} to reload
+ * entries with.
+ * <p>
+ * Expects YAML like
+ * <pre>
+ * <code>
+ * spec: maximumSize=1000,expireAfterWrite=10m
+ * dynamic: true
+ * caches:
+ *   users: maximumSize=10000,expireAfterWrite=30m
+ *   rates: maximumSize=100,refreshAfterWrite=1m
+ * loader: com.example.RateLoader
+ * </code>
+ * </pre>
+ *
+ * @see InstrumentedGuavaCacheManager
+ */
+public class CacheManagerConfiguration {
+
+	@JsonProperty
+	private String spec = "maximumSize=1000";
+
+	@JsonProperty
+	private boolean dynamic = true;
+
+	@JsonProperty
+	private Map<String, String> caches = new LinkedHashMap<String, String>();
+
+	@JsonProperty
+	private Class<? extends CacheLoader<Object, Object>> loader;
+
+	@JsonProperty
+	private boolean allowNullValues = true;
+
+	/**
+	 * The specification used for caches which are not explicitly named.
+	 *
+	 * @return the default cache specification
+	 */
+	public String getSpec() {
+		return this.spec;
+	}
+
+	/**
+	 * Whether caches not explicitly named should be created on demand.
+	 *
+	 * @return true if caches are created on demand
+	 */
+	public boolean isDynamic() {
+		return this.dynamic;
+	}
+
+	/**
+	 * The explicitly named caches, and their specifications.
+	 *
+	 * @return the cache specifications, keyed by cache name
+	 */
+	public Map<String, String> getCaches() {
+		return Collections.unmodifiableMap(this.caches);
+	}
+
+	/**
+	 * The class of the loader used to refresh cache entries, may be null.
+	 *
+	 * @return the cache loader class
+	 */
+	public Class<? extends CacheLoader<Object, Object>> getLoader() {
+		return this.loader;
+	}
+
+	/**
+	 * Whether null values may be stored in the caches.
+	 *
+	 * @return true if null values are allowed
+	 */
+	public boolean isAllowNullValues() {
+		return this.allowNullValues;
+	}
+}
@@ -0,0 +1,80 @@
+package com.github.ptomli.bedrock.cache;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.interceptor.CacheInterceptor;
+import org.springframework.cache.interceptor.CacheOperationInvoker;
+
+/**
+ * A {@link CacheInterceptor} which times the invocation of a cached method
+ * after a miss, and records it as the load time of each
+ * {@link InstrumentedGuavaCacheManager instrumented cache} which missed.
+ * <p>
+ * The time covers only the invocation of the method. A method which throws
+ * records nothing, while a value which is not put, for example because of an
+ * {@code unless} condition, is still recorded as it was produced after a
+ * miss.
+ *
+ * @see InstrumentedCacheInterceptorBeanPostProcessor
+ */
+public class InstrumentedCacheInterceptor extends CacheInterceptor {
+	private static final long serialVersionUID = 1L;
+
+	// the caches which missed during each cached invocation on this thread,
+	// scoped to execute so nothing outlives the invocation
+	private static final ThreadLocal<List<InstrumentedGuavaCache>> MISSES = new ThreadLocal<List<InstrumentedGuavaCache>>();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Object execute(final CacheOperationInvoker invoker, final Object target, final Method method, final Object[] args) {
+		final List<InstrumentedGuavaCache> outer = MISSES.get();
+		MISSES.set(new ArrayList<InstrumentedGuavaCache>(1));
+		try {
+			return super.execute(invoker, target, method, args);
+		}
+		finally {
+			if (outer == null) {
+				MISSES.remove();
+			}
+			else {
+				MISSES.set(outer);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Cache.ValueWrapper doGet(final Cache cache, final Object key) {
+		final Cache.ValueWrapper value = super.doGet(cache, key);
+		final List<InstrumentedGuavaCache> missed = MISSES.get();
+		if (value == null && missed != null && cache instanceof InstrumentedGuavaCache) {
+			missed.add((InstrumentedGuavaCache) cache);
+		}
+		return value;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Object invokeOperation(final CacheOperationInvoker invoker) {
+		final long started = System.nanoTime();
+		final Object result = super.invokeOperation(invoker);
+		final long duration = System.nanoTime() - started;
+		final List<InstrumentedGuavaCache> missed = MISSES.get();
+		if (missed != null) {
+			for (final InstrumentedGuavaCache cache : missed) {
+				cache.recordLoad(duration);
+			}
+			missed.clear();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,64 @@
+package com.github.ptomli.bedrock.cache;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.cache.interceptor.CacheInterceptor;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.core.Ordered;
+import org.springframework.core.PriorityOrdered;
+
+/**
+ * A {@link BeanPostProcessor} which replaces the {@link CacheInterceptor}
+ * beans, such as those defined by {@code <cache:annotation-driven/>} or
+ * {@code @EnableCaching}, with {@link InstrumentedCacheInterceptor}s, so
+ * that the load times of an existing application context's caches are
+ * recorded without changing the context.
+ * <p>
+ * The replacement takes the operation source, cache resolver, key generator
+ * and error handler of the interceptor it replaces, and is initialized in
+ * its place. Subclasses of {@link CacheInterceptor} are left alone.
+ * <p>
+ * When declared as a bean it is ordered ahead of the auto proxy creators,
+ * which would otherwise create the interceptor while building their
+ * advisors, before this post processor is registered.
+ */
+public class InstrumentedCacheInterceptorBeanPostProcessor implements BeanPostProcessor, ApplicationContextAware, PriorityOrdered {
+	private ApplicationContext applicationContext;
+
+	@Override
+	public int getOrder() {
+		return Ordered.HIGHEST_PRECEDENCE;
+	}
+
+	@Override
+	public void setApplicationContext(final ApplicationContext applicationContext) {
+		this.applicationContext = applicationContext;
+	}
+
+	@Override
+	public Object postProcessBeforeInitialization(final Object bean, final String beanName) throws BeansException {
+		if (bean.getClass() != CacheInterceptor.class) {
+			return bean;
+		}
+		final CacheInterceptor original = (CacheInterceptor) bean;
+		final InstrumentedCacheInterceptor interceptor = new InstrumentedCacheInterceptor();
+		interceptor.setCacheOperationSources(original.getCacheOperationSource());
+		if (original.getCacheResolver() != null) {
+			interceptor.setCacheResolver(original.getCacheResolver());
+		}
+		if (original.getKeyGenerator() != null) {
+			interceptor.setKeyGenerator(original.getKeyGenerator());
+		}
+		if (original.getErrorHandler() != null) {
+			interceptor.setErrorHandler(original.getErrorHandler());
+		}
+		interceptor.setApplicationContext(this.applicationContext);
+		return interceptor;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(final Object bean, final String beanName) throws BeansException {
+		return bean;
+	}
+}
@@ -0,0 +1,35 @@
+package com.github.ptomli.bedrock.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.cache.guava.GuavaCache;
+
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+
+/**
+ * A {@link GuavaCache} which keeps a {@link Timer} of how long it takes to
+ * produce a value after a miss.
+ * <p>
+ * The cache cannot see the invocation of the cached method itself, so the
+ * time is recorded by the {@link InstrumentedCacheInterceptor} which makes
+ * it.
+ */
+class InstrumentedGuavaCache extends GuavaCache {
+
+	private final Timer loads;
+
+	InstrumentedGuavaCache(final String name, final Cache<Object, Object> cache, final boolean allowNullValues, final Timer loads) {
+		super(name, cache, allowNullValues);
+		this.loads = loads;
+	}
+
+	/**
+	 * Record the time taken to produce a value after a miss.
+	 *
+	 * @param duration the time taken, in nanoseconds
+	 */
+	void recordLoad(final long duration) {
+		this.loads.update(duration, TimeUnit.NANOSECONDS);
+	}
+}
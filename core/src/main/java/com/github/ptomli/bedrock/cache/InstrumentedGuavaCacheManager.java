@@ -0,0 +1,222 @@
+package com.github.ptomli.bedrock.cache;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.cache.Cache;
+import org.springframework.cache.guava.GuavaCacheManager;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.cache.CacheLoader;
+
+/**
+ * A {@link GuavaCacheManager} which allows each cache to have its own
+ * {@link CacheBuilderSpec specification}, and which publishes statistics
+ * for each cache to a DropWizard {@link MetricRegistry}.
+ * <p>
+ * For a cache named "users", with the default prefix, the following metrics
+ * are registered
+ * <ul>
+ * <li>{@code caches.users.hits}
+ * <li>{@code caches.users.misses}
+ * <li>{@code caches.users.hit-ratio}
+ * <li>{@code caches.users.evictions}
+ * <li>{@code caches.users.size}
+ * <li>{@code caches.users.loads}, a timer of the time taken to produce a
+ * value after a miss, recorded by an {@link InstrumentedCacheInterceptor}
+ * </ul>
+ * <p>
+ * Statistics are recorded for every cache, whether it is built from a
+ * specification or from a {@link #setCacheBuilder(CacheBuilder) builder}.
+ *
+ * @see CacheManagerConfiguration
+ */
+public class InstrumentedGuavaCacheManager extends GuavaCacheManager {
+
+	/**
+	 * The default prefix of the cache metric names.
+	 */
+	public static final String DEFAULT_PREFIX = "caches";
+
+	/**
+	 * Create a new cache manager from the provided configuration.
+	 *
+	 * @param configuration the cache configuration
+	 * @param metrics the registry for cache metrics
+	 * @return the cache manager
+	 */
+	public static InstrumentedGuavaCacheManager fromConfiguration(final CacheManagerConfiguration configuration, final MetricRegistry metrics) {
+		final InstrumentedGuavaCacheManager manager = new InstrumentedGuavaCacheManager(metrics);
+		manager.setAllowNullValues(configuration.isAllowNullValues());
+		manager.setCacheSpecification(configuration.getSpec());
+		if (configuration.getLoader() != null) {
+			manager.setCacheLoader(BeanUtils.instantiateClass(configuration.getLoader()));
+		}
+		manager.setCacheSpecifications(configuration.getCaches());
+		if (!configuration.isDynamic()) {
+			manager.setCacheNames(configuration.getCaches().keySet());
+		}
+		else {
+			for (final String name : configuration.getCaches().keySet()) {
+				manager.getCache(name);
+			}
+		}
+		return manager;
+	}
+
+	private final MetricRegistry metrics;
+	private final String prefix;
+	private final ConcurrentMap<String, CacheBuilderSpec> specs = new ConcurrentHashMap<String, CacheBuilderSpec>();
+	private volatile CacheBuilder<Object, Object> defaultBuilder = CacheBuilder.newBuilder();
+	private volatile CacheLoader<Object, Object> loader;
+
+	/**
+	 * Create a new cache manager, publishing metrics with the default prefix.
+	 *
+	 * @param metrics the registry for cache metrics
+	 */
+	public InstrumentedGuavaCacheManager(final MetricRegistry metrics) {
+		this(metrics, DEFAULT_PREFIX);
+	}
+
+	/**
+	 * Create a new cache manager, publishing metrics with the provided prefix.
+	 *
+	 * @param metrics the registry for cache metrics
+	 * @param prefix the prefix of the cache metric names
+	 */
+	public InstrumentedGuavaCacheManager(final MetricRegistry metrics, final String prefix) {
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null");
+		}
+		if (Strings.isNullOrEmpty(prefix)) {
+			throw new IllegalArgumentException("prefix may not be null or empty");
+		}
+		this.metrics = metrics;
+		this.prefix = prefix;
+	}
+
+	/**
+	 * Set the specifications of individual caches, keyed by cache name.
+	 * <p>
+	 * Caches without a specification use the default specification.
+	 *
+	 * @param specifications the cache specifications
+	 */
+	public void setCacheSpecifications(final Map<String, String> specifications) {
+		for (final Map.Entry<String, String> entry : specifications.entrySet()) {
+			this.specs.put(entry.getKey(), CacheBuilderSpec.parse(entry.getValue()));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setCacheSpecification(final String specification) {
+		this.setCacheBuilderSpec(CacheBuilderSpec.parse(specification));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setCacheBuilderSpec(final CacheBuilderSpec spec) {
+		this.defaultBuilder = CacheBuilder.from(spec);
+		super.setCacheBuilderSpec(spec);
+	}
+
+	/**
+	 * Set the builder of the caches without a specification of their own.
+	 * The builder is configured to record statistics.
+	 *
+	 * @param cacheBuilder the default cache builder
+	 */
+	@Override
+	public void setCacheBuilder(final CacheBuilder<Object, Object> cacheBuilder) {
+		if (cacheBuilder == null) {
+			throw new IllegalArgumentException("cacheBuilder may not be null");
+		}
+		this.defaultBuilder = cacheBuilder;
+		super.setCacheBuilder(cacheBuilder);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setCacheLoader(final CacheLoader<Object, Object> cacheLoader) {
+		this.loader = cacheLoader;
+		super.setCacheLoader(cacheLoader);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Cache createGuavaCache(final String name) {
+		final com.google.common.cache.Cache<Object, Object> cache = this.createNativeGuavaCache(name);
+		final String base = name(this.prefix, name);
+
+		this.register(name(base, "hits"), new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return cache.stats().hitCount();
+			}
+		});
+		this.register(name(base, "misses"), new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return cache.stats().missCount();
+			}
+		});
+		this.register(name(base, "evictions"), new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return cache.stats().evictionCount();
+			}
+		});
+		this.register(name(base, "size"), new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return cache.size();
+			}
+		});
+		this.register(name(base, "hit-ratio"), new RatioGauge() {
+			@Override
+			protected Ratio getRatio() {
+				return Ratio.of(cache.stats().hitCount(), cache.stats().requestCount());
+			}
+		});
+
+		return new InstrumentedGuavaCache(name, cache, this.isAllowNullValues(), this.metrics.timer(name(base, "loads")));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected com.google.common.cache.Cache<Object, Object> createNativeGuavaCache(final String name) {
+		final CacheBuilder<Object, Object> builder = this.specs.containsKey(name)
+				? CacheBuilder.from(this.specs.get(name)).recordStats()
+				: this.defaultBuilder.recordStats();
+		return this.loader != null ? builder.build(this.loader) : builder.build();
+	}
+
+	// caches are recreated when the default specification or loader change,
+	// so replace any gauges left over from the previous instance
+	private void register(final String name, final Metric metric) {
+		this.metrics.remove(name);
+		this.metrics.register(name, metric);
+	}
+}
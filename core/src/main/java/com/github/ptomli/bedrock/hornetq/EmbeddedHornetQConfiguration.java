@@ -0,0 +1,234 @@
+package com.github.ptomli.bedrock.hornetq;
+
+import io.dropwizard.util.Size;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.hornetq.core.server.JournalType;
+import org.hornetq.core.settings.impl.AddressFullMessagePolicy;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Configuration of an {@link EmbeddedHornetQServer}, which can be easily used
+ * with a DropWizard configuration.
+ * <p>
+ * Messages are only written to the journal under {@code dataDirectory} if
+ * {@code persistenceEnabled} is true. Each address holds at most
+ * {@code maxSize} of messages in memory, unlimited by default, beyond which
+ * {@code addressFullPolicy} applies; {@code PAGE} writes further messages to
+ * disk in pages of {@code pageSize}, {@code BLOCK} blocks producers,
+ * {@code FAIL} rejects and {@code DROP} silently drops them.
+ * <p>
+ * Messages with bodies larger than {@code minLargeMessageSize} are sent as
+ * large messages, streamed between client and server in chunks of that
+ * size, and written to the large message directory if persistence is
+ * enabled.
+ * <p>
+ * The server accepts no cluster connections, but HornetQ warns at every
+ * start if the cluster password is left at its well known default. If no
+ * {@code clusterPassword} is configured a random one is used for each start.
+ * <p>
+ * Expects YAML like
+ * <pre>
+ * <code>
+ * serverId: 0
+ * persistenceEnabled: true
+ * journalType: ASYNCIO
+ * journalSync: true
+ * journalFileSize: 10MB
+ * journalMinFiles: 2
+ * dataDirectory: /var/lib/service/hornetq
+ * maxSize: 64MB
+ * pageSize: 10MB
+ * addressFullPolicy: PAGE
+ * minLargeMessageSize: 100KB
+ * clusterPassword: secret
+ * queues:
+ *   - orders
+ * topics:
+ *   - events
+ * </code>
+ * </pre>
+ *
+ * @see EmbeddedHornetQServer
+ */
+public class EmbeddedHornetQConfiguration {
+
+	@JsonProperty
+	private int serverId = 0;
+
+	@JsonProperty
+	private boolean persistenceEnabled = false;
+
+	@JsonProperty
+	private JournalType journalType = JournalType.NIO;
+
+	@JsonProperty
+	private boolean journalSync = true;
+
+	@JsonProperty
+	private Size journalFileSize = Size.megabytes(10);
+
+	@JsonProperty
+	private int journalMinFiles = 2;
+
+	@JsonProperty
+	private String dataDirectory = "data/hornetq";
+
+	@JsonProperty
+	private Size maxSize;
+
+	@JsonProperty
+	private Size pageSize = Size.megabytes(10);
+
+	@JsonProperty
+	private AddressFullMessagePolicy addressFullPolicy = AddressFullMessagePolicy.PAGE;
+
+	@JsonProperty
+	private Size minLargeMessageSize = Size.kilobytes(100);
+
+	@JsonProperty
+	private String clusterPassword;
+
+	@JsonProperty
+	private List<String> queues = new ArrayList<String>();
+
+	@JsonProperty
+	private List<String> topics = new ArrayList<String>();
+
+	/**
+	 * The id of the server, distinguishing the in-VM acceptors of several
+	 * servers in the same JVM.
+	 *
+	 * @return the server id
+	 */
+	public int getServerId() {
+		return this.serverId;
+	}
+
+	/**
+	 * Whether messages and bindings are written to the journal.
+	 *
+	 * @return true if persistence is enabled
+	 */
+	public boolean isPersistenceEnabled() {
+		return this.persistenceEnabled;
+	}
+
+	/**
+	 * The journal implementation, {@code ASYNCIO} requires the native
+	 * library on Linux and falls back to {@code NIO} elsewhere.
+	 *
+	 * @return the journal type
+	 */
+	public JournalType getJournalType() {
+		return this.journalType;
+	}
+
+	/**
+	 * Whether sends and transactions wait for the journal to be synced to
+	 * disk.
+	 *
+	 * @return true if the journal is synced
+	 */
+	public boolean isJournalSync() {
+		return this.journalSync;
+	}
+
+	/**
+	 * The size of each journal file.
+	 *
+	 * @return the journal file size
+	 */
+	public Size getJournalFileSize() {
+		return this.journalFileSize;
+	}
+
+	/**
+	 * The number of journal files created up front.
+	 *
+	 * @return the minimum number of journal files
+	 */
+	public int getJournalMinFiles() {
+		return this.journalMinFiles;
+	}
+
+	/**
+	 * The directory holding the journal, bindings, paging and large message
+	 * directories.
+	 *
+	 * @return the data directory
+	 */
+	public String getDataDirectory() {
+		return this.dataDirectory;
+	}
+
+	/**
+	 * The most memory the messages of each address may use, may be null for
+	 * no limit.
+	 *
+	 * @return the maximum address size
+	 */
+	public Size getMaxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * The size of each page file written once an address is full.
+	 *
+	 * @return the page size
+	 */
+	public Size getPageSize() {
+		return this.pageSize;
+	}
+
+	/**
+	 * What happens to messages sent to a full address.
+	 *
+	 * @return the address full policy
+	 */
+	public AddressFullMessagePolicy getAddressFullPolicy() {
+		return this.addressFullPolicy;
+	}
+
+	/**
+	 * The body size beyond which messages are streamed as large messages,
+	 * and the size of each chunk streamed.
+	 *
+	 * @return the minimum large message size
+	 */
+	public Size getMinLargeMessageSize() {
+		return this.minLargeMessageSize;
+	}
+
+	/**
+	 * The password servers use to authenticate cluster connections, may be
+	 * null for a random password.
+	 *
+	 * @return the cluster password
+	 */
+	public String getClusterPassword() {
+		return this.clusterPassword;
+	}
+
+	/**
+	 * The names of the JMS queues to create.
+	 *
+	 * @return the queue names
+	 */
+	public List<String> getQueues() {
+		return Collections.unmodifiableList(this.queues);
+	}
+
+	/**
+	 * The names of the JMS topics to create.
+	 *
+	 * @return the topic names
+	 */
+	public List<String> getTopics() {
+		return Collections.unmodifiableList(this.topics);
+	}
+}
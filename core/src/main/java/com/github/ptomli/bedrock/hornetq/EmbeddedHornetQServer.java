@@ -0,0 +1,174 @@
+package com.github.ptomli.bedrock.hornetq;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.hornetq.api.core.TransportConfiguration;
+import org.hornetq.api.jms.HornetQJMSClient;
+import org.hornetq.api.jms.JMSFactoryType;
+import org.hornetq.core.config.Configuration;
+import org.hornetq.core.config.impl.ConfigurationImpl;
+import org.hornetq.core.remoting.impl.invm.InVMAcceptorFactory;
+import org.hornetq.core.remoting.impl.invm.InVMConnectorFactory;
+import org.hornetq.core.remoting.impl.invm.TransportConstants;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.jms.client.HornetQConnectionFactory;
+import org.hornetq.jms.server.config.JMSConfiguration;
+import org.hornetq.jms.server.config.impl.JMSConfigurationImpl;
+import org.hornetq.jms.server.config.impl.JMSQueueConfigurationImpl;
+import org.hornetq.jms.server.config.impl.TopicConfigurationImpl;
+import org.hornetq.jms.server.embedded.EmbeddedJMS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A HornetQ JMS server embedded in the service, accepting only in-VM
+ * connections, so that modules of the same service can exchange messages
+ * without a network round trip to a remote broker.
+ * <p>
+ * Connection factories from {@link #createConnectionFactory()} connect to
+ * the server's in-VM acceptor, which hands messages between client and
+ * server sessions in memory rather than through a socket.
+ * <p>
+ * The server is started and stopped by the DropWizard lifecycle, or
+ * explicitly, for example in tests
+ * <pre>
+ * <code>
+ * EmbeddedHornetQServer server = new EmbeddedHornetQServer(configuration);
+ * server.start();
+ * JmsTemplate template = new JmsTemplate(server.createConnectionFactory());
+ * </code>
+ * </pre>
+ *
+ * @see EmbeddedHornetQConfiguration
+ */
+public class EmbeddedHornetQServer implements Managed {
+	private static final Logger LOG = LoggerFactory.getLogger(EmbeddedHornetQServer.class);
+
+	private final EmbeddedHornetQConfiguration configuration;
+	private final Map<String, Object> transportParams;
+	private EmbeddedJMS jms;
+
+	/**
+	 * Create a new server.
+	 *
+	 * @param configuration the server configuration
+	 */
+	public EmbeddedHornetQServer(final EmbeddedHornetQConfiguration configuration) {
+		if (configuration == null) {
+			throw new IllegalArgumentException("configuration may not be null");
+		}
+		this.configuration = configuration;
+		this.transportParams = Collections.<String, Object> singletonMap(TransportConstants.SERVER_ID_PROP_NAME, configuration.getServerId());
+	}
+
+	/**
+	 * Create a connection factory connecting to this server's in-VM acceptor.
+	 * The server need not be started until connections are created.
+	 *
+	 * @return the connection factory
+	 */
+	public HornetQConnectionFactory createConnectionFactory() {
+		final HornetQConnectionFactory factory = HornetQJMSClient.createConnectionFactoryWithoutHA(JMSFactoryType.CF,
+				new TransportConfiguration(InVMConnectorFactory.class.getName(), this.transportParams));
+		factory.setMinLargeMessageSize((int) this.configuration.getMinLargeMessageSize().toBytes());
+		return factory;
+	}
+
+	/**
+	 * Return the running HornetQ server, for management.
+	 *
+	 * @return the server
+	 * @throws IllegalStateException if the server is not running
+	 */
+	public synchronized HornetQServer getServer() {
+		if (this.jms == null) {
+			throw new IllegalStateException("server is not running");
+		}
+		return this.jms.getHornetQServer();
+	}
+
+	/**
+	 * Whether the server is running.
+	 *
+	 * @return true if the server has been started, and not stopped
+	 */
+	public synchronized boolean isStarted() {
+		return this.jms != null;
+	}
+
+	@Override
+	public synchronized void start() throws Exception {
+		if (this.jms != null) {
+			return;
+		}
+		final EmbeddedJMS jms = new EmbeddedJMS();
+		jms.setConfiguration(this.buildConfiguration());
+		jms.setJmsConfiguration(this.buildJmsConfiguration());
+
+		LOG.info("starting embedded HornetQ server {}", this.configuration.getServerId());
+		jms.start();
+		this.jms = jms;
+	}
+
+	@Override
+	public synchronized void stop() throws Exception {
+		if (this.jms == null) {
+			return;
+		}
+		LOG.info("stopping embedded HornetQ server {}", this.configuration.getServerId());
+		try {
+			this.jms.stop();
+		}
+		finally {
+			this.jms = null;
+		}
+	}
+
+	private Configuration buildConfiguration() {
+		final EmbeddedHornetQConfiguration c = this.configuration;
+		final ConfigurationImpl config = new ConfigurationImpl();
+		config.setSecurityEnabled(false);
+		// the default cluster password is logged as a security risk at start
+		config.setClusterPassword(c.getClusterPassword() != null ? c.getClusterPassword() : UUID.randomUUID().toString());
+		config.setJMXManagementEnabled(false);
+		config.setPersistenceEnabled(c.isPersistenceEnabled());
+		config.setJournalType(c.getJournalType());
+		config.setJournalSyncTransactional(c.isJournalSync());
+		config.setJournalSyncNonTransactional(c.isJournalSync());
+		config.setJournalFileSize((int) c.getJournalFileSize().toBytes());
+		config.setJournalMinFiles(c.getJournalMinFiles());
+		config.setJournalDirectory(new File(c.getDataDirectory(), "journal").getPath());
+		config.setBindingsDirectory(new File(c.getDataDirectory(), "bindings").getPath());
+		config.setPagingDirectory(new File(c.getDataDirectory(), "paging").getPath());
+		config.setLargeMessagesDirectory(new File(c.getDataDirectory(), "large-messages").getPath());
+		config.setAcceptorConfigurations(Collections.singleton(
+				new TransportConfiguration(InVMAcceptorFactory.class.getName(), this.transportParams)));
+
+		final AddressSettings settings = new AddressSettings();
+		settings.setMaxSizeBytes(c.getMaxSize() != null ? c.getMaxSize().toBytes() : -1);
+		settings.setPageSizeBytes(c.getPageSize().toBytes());
+		settings.setAddressFullMessagePolicy(c.getAddressFullPolicy());
+		final Map<String, AddressSettings> addresses = new HashMap<String, AddressSettings>();
+		addresses.put("#", settings);
+		config.setAddressesSettings(addresses);
+		return config;
+	}
+
+	private JMSConfiguration buildJmsConfiguration() {
+		final JMSConfiguration config = new JMSConfigurationImpl();
+		for (final String queue : this.configuration.getQueues()) {
+			config.getQueueConfigurations().add(new JMSQueueConfigurationImpl(queue, null, this.configuration.isPersistenceEnabled(), "queue/" + queue));
+		}
+		for (final String topic : this.configuration.getTopics()) {
+			config.getTopicConfigurations().add(new TopicConfigurationImpl(topic, "topic/" + topic));
+		}
+		return config;
+	}
+}
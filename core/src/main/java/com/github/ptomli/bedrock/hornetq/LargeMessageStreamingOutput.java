@@ -0,0 +1,56 @@
+package com.github.ptomli.bedrock.hornetq;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.google.common.base.Strings;
+
+/**
+ * A JAX-RS {@link StreamingOutput} which receives a large message from a
+ * queue as the response is written, streaming the message body to the
+ * response without holding it in memory.
+ * <p>
+ * The message is received once the response headers have been decided, so
+ * if no message is received within the timeout a {@link WebApplicationException}
+ * with 204 No Content is thrown before anything is written. The message is
+ * returned to the queue if the client disconnects before its body has been
+ * written.
+ *
+ * @see LargeMessageTemplate
+ */
+public class LargeMessageStreamingOutput implements StreamingOutput {
+
+	private final LargeMessageTemplate template;
+	private final String destination;
+	private final long timeout;
+
+	/**
+	 * Create a new streaming output.
+	 *
+	 * @param template the template to receive the message with
+	 * @param destination the queue name
+	 * @param timeout the maximum time to wait for a message, in milliseconds
+	 */
+	public LargeMessageStreamingOutput(final LargeMessageTemplate template, final String destination, final long timeout) {
+		if (template == null) {
+			throw new IllegalArgumentException("template may not be null");
+		}
+		if (Strings.isNullOrEmpty(destination)) {
+			throw new IllegalArgumentException("destination may not be null or empty");
+		}
+		this.template = template;
+		this.destination = destination;
+		this.timeout = timeout;
+	}
+
+	@Override
+	public void write(final OutputStream output) throws IOException, WebApplicationException {
+		if (this.template.receive(this.destination, output, this.timeout) == null) {
+			throw new WebApplicationException(Response.Status.NO_CONTENT);
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package com.github.ptomli.bedrock.hornetq;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.jms.BytesMessage;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import org.springframework.jms.UncategorizedJmsException;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessageCreator;
+import org.springframework.jms.core.SessionCallback;
+import org.springframework.jms.support.JmsUtils;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Strings;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * Sends and receives HornetQ large messages, streaming their bodies from an
+ * {@link InputStream} and to an {@link OutputStream}, so that payloads of
+ * any size pass through the service in constant memory.
+ * <p>
+ * HornetQ reads the body from the input stream in chunks of the connection
+ * factory's {@code minLargeMessageSize}, and bodies smaller than that are
+ * sent as ordinary messages. Received bodies are copied to the output stream
+ * through a buffer of {@link #BUFFER_SIZE} bytes as their chunks arrive.
+ * The server only keeps large message bodies out of memory if persistence
+ * is enabled.
+ * <p>
+ * For example, a resource accepting uploads, without buffering the request
+ * entity
+ * <pre>
+ * <code>
+ * {@literal @}POST
+ * {@literal @}Consumes(MediaType.APPLICATION_OCTET_STREAM)
+ * public void upload(InputStream body) {
+ *     template.send("uploads", body);
+ * }
+ * </code>
+ * </pre>
+ * and a resource streaming the next upload to the client, see
+ * {@link LargeMessageStreamingOutput}
+ * <pre>
+ * <code>
+ * {@literal @}GET
+ * {@literal @}Produces(MediaType.APPLICATION_OCTET_STREAM)
+ * public StreamingOutput next() {
+ *     return new LargeMessageStreamingOutput(template, "uploads", 1000);
+ * }
+ * </code>
+ * </pre>
+ * Message listeners may stream the body of a message they receive with
+ * {@link #writeBody(Message, OutputStream)}.
+ * <p>
+ * Messages are sent and received in transacted sessions. A received message
+ * is only acknowledged once its body has been written in full, and is
+ * otherwise returned to the destination for redelivery.
+ * <p>
+ * The following metrics are published
+ * <ul>
+ * <li>{@code <name>.sends}, a timer of sending a message and its body
+ * <li>{@code <name>.receives}, a timer of receiving a message and writing its body
+ * <li>{@code <name>.bytes-sent}, a meter of the body bytes sent
+ * <li>{@code <name>.bytes-received}, a meter of the body bytes received
+ * </ul>
+ */
+public class LargeMessageTemplate {
+
+	/**
+	 * The HornetQ message property from which a message body is read, in
+	 * chunks, as it is sent.
+	 */
+	public static final String INPUT_STREAM_PROPERTY = "JMS_HQ_InputStream";
+
+	/**
+	 * The size of the buffer through which received message bodies are
+	 * copied.
+	 */
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Write the body of a received bytes message to the output stream,
+	 * through a fixed size buffer, blocking until it has been written in
+	 * full. Large message bodies are read as they arrive from the server.
+	 *
+	 * @param message the received message
+	 * @param out the stream to write to, which is not closed
+	 * @return the number of bytes written
+	 * @throws IllegalArgumentException if the message is not a {@link BytesMessage}
+	 * @throws JMSException if the body cannot be read
+	 * @throws IOException if the body cannot be written
+	 */
+	public static long writeBody(final Message message, final OutputStream out) throws JMSException, IOException {
+		if (!(message instanceof BytesMessage)) {
+			throw new IllegalArgumentException("message must be a BytesMessage");
+		}
+		final BytesMessage bytes = (BytesMessage) message;
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		long written = 0;
+		int read;
+		while ((read = bytes.readBytes(buffer)) > 0) {
+			out.write(buffer, 0, read);
+			written += read;
+		}
+		return written;
+	}
+
+	private final JmsTemplate jmsTemplate;
+	private final Timer sends;
+	private final Timer receives;
+	private final Meter bytesSent;
+	private final Meter bytesReceived;
+
+	/**
+	 * Create a new template.
+	 *
+	 * @param connectionFactory a HornetQ connection factory
+	 * @param metrics the registry for the template metrics
+	 * @param name the name of the template, used as the metric name prefix
+	 */
+	public LargeMessageTemplate(final ConnectionFactory connectionFactory, final MetricRegistry metrics, final String name) {
+		if (connectionFactory == null) {
+			throw new IllegalArgumentException("connectionFactory may not be null");
+		}
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null");
+		}
+		if (Strings.isNullOrEmpty(name)) {
+			throw new IllegalArgumentException("name may not be null or empty");
+		}
+		this.jmsTemplate = new JmsTemplate(connectionFactory);
+		this.jmsTemplate.setSessionTransacted(true);
+		this.sends = metrics.timer(name(name, "sends"));
+		this.receives = metrics.timer(name(name, "receives"));
+		this.bytesSent = metrics.meter(name(name, "bytes-sent"));
+		this.bytesReceived = metrics.meter(name(name, "bytes-received"));
+	}
+
+	/**
+	 * Send a message to the named queue, with its body read from the input
+	 * stream.
+	 *
+	 * @param destination the queue name
+	 * @param body the message body, which is read to its end but not closed
+	 * @throws org.springframework.jms.JmsException if the message cannot be sent
+	 */
+	public void send(final String destination, final InputStream body) {
+		this.send(destination, body, Collections.<String, Object> emptyMap());
+	}
+
+	/**
+	 * Send a message to the named queue, with its body read from the input
+	 * stream.
+	 *
+	 * @param destination the queue name
+	 * @param body the message body, which is read to its end but not closed
+	 * @param properties the message properties
+	 * @throws org.springframework.jms.JmsException if the message cannot be sent
+	 */
+	public void send(final String destination, final InputStream body, final Map<String, ?> properties) {
+		if (body == null) {
+			throw new IllegalArgumentException("body may not be null");
+		}
+		final CountingInputStream counting = new CountingInputStream(body);
+		final Timer.Context timer = this.sends.time();
+		try {
+			this.jmsTemplate.send(destination, new MessageCreator() {
+				@Override
+				public Message createMessage(final Session session) throws JMSException {
+					final BytesMessage message = session.createBytesMessage();
+					for (final Map.Entry<String, ?> property : properties.entrySet()) {
+						message.setObjectProperty(property.getKey(), property.getValue());
+					}
+					message.setObjectProperty(INPUT_STREAM_PROPERTY, counting);
+					return message;
+				}
+			});
+		}
+		finally {
+			timer.stop();
+			this.bytesSent.mark(counting.getCount());
+		}
+	}
+
+	/**
+	 * Receive a message from the named queue, and write its body to the
+	 * output stream. The message is returned to the queue if its body cannot
+	 * be written in full.
+	 *
+	 * @param destination the queue name
+	 * @param out the stream to write the body to, which is not closed
+	 * @param timeout the maximum time to wait for a message, in milliseconds
+	 * @return the received message, whose body has been consumed, or null if no message was received
+	 * @throws org.springframework.jms.JmsException if the message cannot be received, or its body written
+	 */
+	public Message receive(final String destination, final OutputStream out, final long timeout) {
+		if (out == null) {
+			throw new IllegalArgumentException("out may not be null");
+		}
+		return this.jmsTemplate.execute(new SessionCallback<Message>() {
+			@Override
+			public Message doInJms(final Session session) throws JMSException {
+				return receive(session, destination, out, timeout);
+			}
+		}, true);
+	}
+
+	private Message receive(final Session session, final String destinationName, final OutputStream out, final long timeout) throws JMSException {
+		final Destination destination = this.jmsTemplate.getDestinationResolver().resolveDestinationName(session, destinationName, false);
+		final MessageConsumer consumer = session.createConsumer(destination);
+		final CountingOutputStream counting = new CountingOutputStream(out);
+		final Timer.Context timer = this.receives.time();
+		try {
+			final Message message = timeout > 0 ? consumer.receive(timeout) : consumer.receiveNoWait();
+			if (message == null) {
+				return null;
+			}
+			try {
+				writeBody(message, counting);
+				session.commit();
+			}
+			catch (IOException ex) {
+				JmsUtils.rollbackIfNecessary(session);
+				throw new UncategorizedJmsException("unable to write body of message from " + destinationName, ex);
+			}
+			catch (JMSException ex) {
+				JmsUtils.rollbackIfNecessary(session);
+				throw ex;
+			}
+			catch (RuntimeException ex) {
+				JmsUtils.rollbackIfNecessary(session);
+				throw ex;
+			}
+			return message;
+		}
+		finally {
+			timer.stop();
+			this.bytesReceived.mark(counting.getCount());
+			JmsUtils.closeMessageConsumer(consumer);
+		}
+	}
+}
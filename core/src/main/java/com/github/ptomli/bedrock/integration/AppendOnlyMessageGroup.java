@@ -0,0 +1,134 @@
+package com.github.ptomli.bedrock.integration;
+
+import java.util.Arrays;
+
+import org.springframework.messaging.Message;
+
+/**
+ * The messages and state of a group in a {@link StripedMessageGroupStore},
+ * changed under the lock of its stripe. The state other than the messages
+ * is volatile, so that views of the group can read it without the lock.
+ * <p>
+ * Messages are appended to an array which is never written below its tail,
+ * so a {@link MessageGroupView} of the messages can share the array instead
+ * of copying it. Only growing the array, and removing a message from the
+ * middle of the group, copy the messages; polling advances the head.
+ */
+final class AppendOnlyMessageGroup {
+	private static final Message<?>[] EMPTY = new Message<?>[0];
+	private static final int INITIAL_CAPACITY = 4;
+
+	private final Object groupId;
+	private final long timestamp;
+	private volatile long lastModified;
+	private volatile int lastReleasedSequenceNumber;
+	private volatile boolean complete;
+	private Message<?>[] messages = EMPTY;
+	private int head;
+	private int tail;
+
+	AppendOnlyMessageGroup(final Object groupId, final long timestamp) {
+		this.groupId = groupId;
+		this.timestamp = timestamp;
+	}
+
+	Object getGroupId() {
+		return this.groupId;
+	}
+
+	int size() {
+		return this.tail - this.head;
+	}
+
+	Message<?> getOne() {
+		return this.head == this.tail ? null : this.messages[this.head];
+	}
+
+	void add(final Message<?> message, final long now) {
+		if (this.tail == this.messages.length) {
+			this.grow();
+		}
+		this.messages[this.tail++] = message;
+		this.lastModified = now;
+	}
+
+	/**
+	 * Remove the message with the same id, copying the remaining messages so
+	 * that views of the group are unaffected.
+	 *
+	 * @return true if the message was a member of the group
+	 */
+	boolean remove(final Message<?> message, final long now) {
+		final Object id = message.getHeaders().getId();
+		for (int i = this.head; i < this.tail; i++) {
+			if (this.messages[i].getHeaders().getId().equals(id)) {
+				final int size = this.size() - 1;
+				final Message<?>[] remaining = size == 0 ? EMPTY : new Message<?>[Math.max(INITIAL_CAPACITY, size)];
+				System.arraycopy(this.messages, this.head, remaining, 0, i - this.head);
+				System.arraycopy(this.messages, i + 1, remaining, i - this.head, this.tail - i - 1);
+				this.messages = remaining;
+				this.head = 0;
+				this.tail = size;
+				this.lastModified = now;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Remove the message at the head of the group. The slot is not cleared,
+	 * as views may still refer to it; the array is released once the group
+	 * is empty, or compacted when it next grows.
+	 */
+	Message<?> poll(final long now) {
+		if (this.head == this.tail) {
+			return null;
+		}
+		final Message<?> message = this.messages[this.head++];
+		if (this.head == this.tail) {
+			this.messages = EMPTY;
+			this.head = 0;
+			this.tail = 0;
+		}
+		this.lastModified = now;
+		return message;
+	}
+
+	void complete(final long now) {
+		this.complete = true;
+		this.lastModified = now;
+	}
+
+	void setLastReleasedSequenceNumber(final int sequenceNumber, final long now) {
+		this.lastReleasedSequenceNumber = sequenceNumber;
+		this.lastModified = now;
+	}
+
+	boolean isComplete() {
+		return this.complete;
+	}
+
+	int getLastReleasedSequenceNumber() {
+		return this.lastReleasedSequenceNumber;
+	}
+
+	long getTimestamp() {
+		return this.timestamp;
+	}
+
+	long getLastModified() {
+		return this.lastModified;
+	}
+
+	MessageGroupView view() {
+		return new MessageGroupView(this, this.messages, this.head, this.tail);
+	}
+
+	private void grow() {
+		final int size = this.size();
+		this.messages = Arrays.copyOfRange(this.messages, this.head, this.head + Math.max(INITIAL_CAPACITY, size << 1));
+		this.head = 0;
+		this.tail = size;
+	}
+}
@@ -0,0 +1,123 @@
+package com.github.ptomli.bedrock.integration;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.util.ReflectionUtils;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * A {@link BeanPostProcessor} which replaces the named {@link QueueChannel}
+ * beans, such as those defined by {@code <int:channel><int:queue/></int:channel>},
+ * with {@link BoundedQueueChannel}s, so that the channels of an
+ * existing application context can be bounded from the DropWizard
+ * configuration without changing the context.
+ * <p>
+ * The replacement takes the bean name, bean factory, interceptors, datatypes
+ * and message converter of the channel it replaces, and is initialized in
+ * its place. Channel metrics are named after the bean.
+ * <p>
+ * Only channels queueing in the default in memory queue, such as
+ * {@code <int:queue/>} with or without a capacity, can be bounded. Channels
+ * backed by a message store, {@code <int:queue message-store="..."/>}, or by
+ * a queue of their own, {@code <int:queue ref="..."/>}, are refused, as are
+ * priority and rendezvous channels. Executor channels,
+ * {@code <int:dispatcher task-executor="..."/>}, queue in their executor
+ * rather than a channel queue, so are not bounded by this post processor;
+ * bound the executor's own queue instead.
+ *
+ * @see BoundedChannelConfiguration
+ */
+public class BoundedChannelBeanPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+	private static final Logger LOG = LoggerFactory.getLogger(BoundedChannelBeanPostProcessor.class);
+
+	private final Map<String, BoundedChannelConfiguration> channels;
+	private final MetricRegistry metrics;
+	private BeanFactory beanFactory;
+
+	/**
+	 * Create a new post processor.
+	 *
+	 * @param channels the configuration of each channel, by bean name
+	 * @param metrics the registry for the channel metrics
+	 */
+	public BoundedChannelBeanPostProcessor(final Map<String, BoundedChannelConfiguration> channels, final MetricRegistry metrics) {
+		if (channels == null) {
+			throw new IllegalArgumentException("channels may not be null");
+		}
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null");
+		}
+		this.channels = new HashMap<String, BoundedChannelConfiguration>(channels);
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void setBeanFactory(final BeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+	@Override
+	public Object postProcessBeforeInitialization(final Object bean, final String beanName) throws BeansException {
+		final BoundedChannelConfiguration configuration = this.channels.get(beanName);
+		if (configuration == null || bean instanceof BoundedQueueChannel) {
+			return bean;
+		}
+		// subclasses such as PriorityChannel do not queue in FIFO order
+		if (bean.getClass() != QueueChannel.class) {
+			throw new BeanInitializationException("Cannot bound channel '" + beanName + "', it is not a QueueChannel but a " + bean.getClass().getName());
+		}
+		// a message store or custom queue would be silently replaced by memory
+		final Object queue = field(bean, "queue");
+		if (queue == null || queue.getClass() != LinkedBlockingQueue.class) {
+			throw new BeanInitializationException("Cannot bound channel '" + beanName + "', it does not use the default queue but a "
+					+ (queue == null ? null : queue.getClass().getName()));
+		}
+
+		LOG.info("bounding channel {} to {} messages, overflow policy {}", beanName, configuration.getCapacity(), configuration.getOverflowPolicy());
+		final BoundedQueueChannel channel = new BoundedQueueChannel(configuration, this.metrics, beanName);
+		channel.setBeanName(beanName);
+		if (this.beanFactory != null) {
+			channel.setBeanFactory(this.beanFactory);
+		}
+		channel.setInterceptors(new ArrayList<ChannelInterceptor>(((QueueChannel) bean).getChannelInterceptors()));
+		final Class<?>[] datatypes = (Class<?>[]) field(bean, "datatypes");
+		if (datatypes != null && datatypes.length > 0) {
+			channel.setDatatypes(datatypes);
+		}
+		final MessageConverter messageConverter = (MessageConverter) field(bean, "messageConverter");
+		if (messageConverter != null) {
+			channel.setMessageConverter(messageConverter);
+		}
+		return channel;
+	}
+
+	// QueueChannel exposes neither its queue nor its datatypes and converter
+	private static Object field(final Object bean, final String name) {
+		final Field field = ReflectionUtils.findField(bean.getClass(), name);
+		if (field == null) {
+			return null;
+		}
+		ReflectionUtils.makeAccessible(field);
+		return ReflectionUtils.getField(field, bean);
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(final Object bean, final String beanName) throws BeansException {
+		return bean;
+	}
+}
@@ -0,0 +1,65 @@
+package com.github.ptomli.bedrock.integration;
+
+import io.dropwizard.util.Duration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Configuration of a {@link BoundedQueueChannel}, which can be easily used
+ * with a DropWizard configuration.
+ * <p>
+ * The channel holds at most {@code capacity} messages, rounded up to a power
+ * of two of at least two. Messages sent while it is full are handled by the
+ * {@code overflowPolicy}; with {@code BLOCK}, senders without their own
+ * timeout wait at most {@code blockTimeout} for space.
+ * <p>
+ * Expects YAML like
+ * <pre>
+ * <code>
+ * capacity: 1024
+ * overflowPolicy: BLOCK
+ * blockTimeout: 1s
+ * </code>
+ * </pre>
+ *
+ * @see BoundedChannelBeanPostProcessor
+ */
+public class BoundedChannelConfiguration {
+
+	@JsonProperty
+	private int capacity = 1024;
+
+	@JsonProperty
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+	@JsonProperty
+	private Duration blockTimeout = Duration.seconds(1);
+
+	/**
+	 * The maximum number of queued messages.
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * What happens to messages sent while the channel is full.
+	 *
+	 * @return the overflow policy
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return this.overflowPolicy;
+	}
+
+	/**
+	 * The longest a sender without its own timeout waits for space, with the
+	 * {@code BLOCK} policy.
+	 *
+	 * @return the block timeout
+	 */
+	public Duration getBlockTimeout() {
+		return this.blockTimeout;
+	}
+}
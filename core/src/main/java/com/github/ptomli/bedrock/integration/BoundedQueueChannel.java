@@ -0,0 +1,335 @@
+package com.github.ptomli.bedrock.integration;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.MessageSelector;
+import org.springframework.messaging.Message;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Strings;
+
+/**
+ * A Spring Integration {@link QueueChannel} of fixed capacity, queueing
+ * messages in a lock-free ring buffer, and applying an
+ * {@link OverflowPolicy} to messages sent while it is full, so that a slow
+ * consumer pushes back on producers instead of exhausting the heap.
+ * <p>
+ * Senders and receivers only take a lock when they have to wait, for space
+ * or for a message. With the {@link OverflowPolicy#BLOCK} policy a send
+ * without a timeout waits at most the channel's block timeout. A send which
+ * fails returns false, which messaging templates and gateways report as a
+ * {@code MessageDeliveryException}.
+ * <p>
+ * The channel extends {@code QueueChannel} so that it can replace existing
+ * queue channel beans, see {@link BoundedChannelBeanPostProcessor}, but does
+ * not use the queue of its superclass.
+ * <p>
+ * The following metrics are published
+ * <ul>
+ * <li>{@code channels.<name>.depth}, a gauge of the queued messages
+ * <li>{@code channels.<name>.capacity}, a gauge of the channel capacity
+ * <li>{@code channels.<name>.wait-time}, a timer of the time senders wait for space
+ * <li>{@code channels.<name>.drops}, a meter of messages dropped to make space
+ * <li>{@code channels.<name>.rejections}, a meter of sends which failed because the channel was full
+ * </ul>
+ */
+public class BoundedQueueChannel extends QueueChannel {
+
+	/**
+	 * The prefix of the channel metric names.
+	 */
+	public static final String PREFIX = "channels";
+
+	private final RingBuffer<Message<?>> buffer;
+	private final OverflowPolicy overflowPolicy;
+	private final long blockTimeoutMillis;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = this.lock.newCondition();
+	private final Condition notFull = this.lock.newCondition();
+	private final AtomicInteger waitingReceivers = new AtomicInteger();
+	private final AtomicInteger waitingSenders = new AtomicInteger();
+	private final Timer waitTime;
+	private final Meter drops;
+	private final Meter rejections;
+
+	/**
+	 * Create a new channel from the provided configuration.
+	 *
+	 * @param configuration the channel configuration
+	 * @param metrics the registry for the channel metrics
+	 * @param name the name of the channel
+	 */
+	public BoundedQueueChannel(final BoundedChannelConfiguration configuration, final MetricRegistry metrics, final String name) {
+		this(configuration.getCapacity(), configuration.getOverflowPolicy(), configuration.getBlockTimeout().toMilliseconds(), TimeUnit.MILLISECONDS, metrics, name);
+	}
+
+	/**
+	 * Create a new channel.
+	 *
+	 * @param capacity the maximum number of queued messages, rounded up to a power of two of at least two
+	 * @param overflowPolicy what happens to messages sent while the channel is full
+	 * @param blockTimeout the longest a sender without its own timeout waits for space
+	 * @param unit the unit of {@code blockTimeout}
+	 * @param metrics the registry for the channel metrics
+	 * @param name the name of the channel
+	 */
+	public BoundedQueueChannel(final int capacity, final OverflowPolicy overflowPolicy, final long blockTimeout, final TimeUnit unit, final MetricRegistry metrics, final String name) {
+		// the superclass queue is never used
+		super(1);
+		if (overflowPolicy == null) {
+			throw new IllegalArgumentException("overflowPolicy may not be null");
+		}
+		if (blockTimeout < 0) {
+			throw new IllegalArgumentException("blockTimeout may not be negative");
+		}
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null");
+		}
+		if (Strings.isNullOrEmpty(name)) {
+			throw new IllegalArgumentException("name may not be null or empty");
+		}
+		this.buffer = new RingBuffer<Message<?>>(capacity);
+		this.overflowPolicy = overflowPolicy;
+		this.blockTimeoutMillis = unit.toMillis(blockTimeout);
+
+		final String prefix = name(PREFIX, name);
+		this.waitTime = metrics.timer(name(prefix, "wait-time"));
+		this.drops = metrics.meter(name(prefix, "drops"));
+		this.rejections = metrics.meter(name(prefix, "rejections"));
+		metrics.register(name(prefix, "depth"), new Gauge<Integer>() {
+			@Override
+			public Integer getValue() {
+				return buffer.size();
+			}
+		});
+		metrics.register(name(prefix, "capacity"), new Gauge<Integer>() {
+			@Override
+			public Integer getValue() {
+				return buffer.capacity();
+			}
+		});
+	}
+
+	/**
+	 * Return the policy applied to messages sent while the channel is full.
+	 *
+	 * @return the overflow policy
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return this.overflowPolicy;
+	}
+
+	@Override
+	protected boolean doSend(final Message<?> message, final long timeout) {
+		if (this.buffer.offer(message)) {
+			this.signalNotEmpty();
+			return true;
+		}
+
+		switch (this.overflowPolicy) {
+		case REJECT:
+			this.rejections.mark();
+			return false;
+		case DROP_OLDEST:
+			do {
+				if (this.buffer.poll() != null) {
+					this.drops.mark();
+				}
+			}
+			while (!this.buffer.offer(message));
+			this.signalNotEmpty();
+			return true;
+		default:
+			final Timer.Context timer = this.waitTime.time();
+			try {
+				if (this.awaitOffer(message, timeout >= 0 ? timeout : this.blockTimeoutMillis)) {
+					this.signalNotEmpty();
+					return true;
+				}
+				this.rejections.mark();
+				return false;
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			finally {
+				timer.stop();
+			}
+		}
+	}
+
+	@Override
+	protected Message<?> doReceive(final long timeout) {
+		Message<?> message = this.buffer.poll();
+		if (message == null && timeout != 0) {
+			try {
+				message = this.awaitPoll(timeout);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+		if (message != null) {
+			this.signalNotFull();
+		}
+		return message;
+	}
+
+	@Override
+	public List<Message<?>> clear() {
+		final List<Message<?>> cleared = new ArrayList<Message<?>>();
+		Message<?> message;
+		while ((message = this.buffer.poll()) != null) {
+			cleared.add(message);
+		}
+		this.signalAllNotFull();
+		return cleared;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Messages are removed and the accepted messages sent again, so their
+	 * order may interleave with concurrent sends. Accepted messages which no
+	 * longer fit are also returned as purged.
+	 */
+	@Override
+	public List<Message<?>> purge(final MessageSelector selector) {
+		if (selector == null) {
+			return this.clear();
+		}
+		final List<Message<?>> purged = new ArrayList<Message<?>>();
+		for (final Message<?> message : this.clear()) {
+			if (!selector.accept(message) || !this.buffer.offer(message)) {
+				purged.add(message);
+			}
+		}
+		this.signalAllNotEmpty();
+		return purged;
+	}
+
+	@Override
+	public int getQueueSize() {
+		return this.buffer.size();
+	}
+
+	@Override
+	public int getRemainingCapacity() {
+		return this.buffer.capacity() - this.buffer.size();
+	}
+
+	// waiting threads register before their final attempt under the lock, so
+	// a thread which offers or polls and then finds no waiters cannot miss one
+	private boolean awaitOffer(final Message<?> message, final long timeout) throws InterruptedException {
+		long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+		this.waitingSenders.incrementAndGet();
+		try {
+			this.lock.lockInterruptibly();
+			try {
+				while (!this.buffer.offer(message)) {
+					if (remaining <= 0) {
+						return false;
+					}
+					remaining = this.notFull.awaitNanos(remaining);
+				}
+				return true;
+			}
+			finally {
+				this.lock.unlock();
+			}
+		}
+		finally {
+			this.waitingSenders.decrementAndGet();
+		}
+	}
+
+	private Message<?> awaitPoll(final long timeout) throws InterruptedException {
+		long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+		this.waitingReceivers.incrementAndGet();
+		try {
+			this.lock.lockInterruptibly();
+			try {
+				Message<?> message;
+				while ((message = this.buffer.poll()) == null) {
+					if (timeout < 0) {
+						this.notEmpty.await();
+					}
+					else if (remaining <= 0) {
+						return null;
+					}
+					else {
+						remaining = this.notEmpty.awaitNanos(remaining);
+					}
+				}
+				return message;
+			}
+			finally {
+				this.lock.unlock();
+			}
+		}
+		finally {
+			this.waitingReceivers.decrementAndGet();
+		}
+	}
+
+	private void signalNotEmpty() {
+		if (this.waitingReceivers.get() > 0) {
+			this.lock.lock();
+			try {
+				this.notEmpty.signal();
+			}
+			finally {
+				this.lock.unlock();
+			}
+		}
+	}
+
+	private void signalAllNotEmpty() {
+		if (this.waitingReceivers.get() > 0) {
+			this.lock.lock();
+			try {
+				this.notEmpty.signalAll();
+			}
+			finally {
+				this.lock.unlock();
+			}
+		}
+	}
+
+	private void signalNotFull() {
+		if (this.waitingSenders.get() > 0) {
+			this.lock.lock();
+			try {
+				this.notFull.signal();
+			}
+			finally {
+				this.lock.unlock();
+			}
+		}
+	}
+
+	private void signalAllNotFull() {
+		if (this.waitingSenders.get() > 0) {
+			this.lock.lock();
+			try {
+				this.notFull.signalAll();
+			}
+			finally {
+				this.lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package com.github.ptomli.bedrock.integration;
+
+import java.util.Collection;
+
+/**
+ * An open addressing hash map of primitive {@code long} keys, so that
+ * numeric correlation keys are neither boxed nor wrapped in map entries.
+ * <p>
+ * Slots are found by linear probing, and removal shifts later entries of a
+ * probe sequence back, so no tombstones are left behind. Not thread safe.
+ *
+ * @param <V> the value type
+ */
+final class LongHashIndex<V> {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private long[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+
+	LongHashIndex() {
+		this.keys = new long[INITIAL_CAPACITY];
+		this.values = new Object[INITIAL_CAPACITY];
+		this.mask = INITIAL_CAPACITY - 1;
+	}
+
+	/**
+	 * Mix the bits of a key, the finalizer of MurmurHash3, so that both the
+	 * low and high bits of the result depend on every bit of the key.
+	 */
+	static long mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return key;
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	@SuppressWarnings("unchecked")
+	V get(final long key) {
+		int index = (int) mix(key) & this.mask;
+		Object value;
+		while ((value = this.values[index]) != null) {
+			if (this.keys[index] == key) {
+				return (V) value;
+			}
+			index = (index + 1) & this.mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Associate the value with the key.
+	 *
+	 * @return the value previously associated with the key, or null
+	 */
+	@SuppressWarnings("unchecked")
+	V put(final long key, final V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("value may not be null");
+		}
+		int index = (int) mix(key) & this.mask;
+		Object previous;
+		while ((previous = this.values[index]) != null) {
+			if (this.keys[index] == key) {
+				this.values[index] = value;
+				return (V) previous;
+			}
+			index = (index + 1) & this.mask;
+		}
+		this.keys[index] = key;
+		this.values[index] = value;
+		// keep the load factor at or below a half, so probe sequences stay short
+		if (++this.size > (this.mask + 1) >>> 1) {
+			this.resize();
+		}
+		return null;
+	}
+
+	/**
+	 * Remove the value associated with the key.
+	 *
+	 * @return the value, or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	V remove(final long key) {
+		int index = (int) mix(key) & this.mask;
+		Object value;
+		while ((value = this.values[index]) != null) {
+			if (this.keys[index] == key) {
+				this.shiftBack(index);
+				this.size--;
+				return (V) value;
+			}
+			index = (index + 1) & this.mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Add every value to the collection.
+	 */
+	@SuppressWarnings("unchecked")
+	void addValuesTo(final Collection<? super V> collection) {
+		for (final Object value : this.values) {
+			if (value != null) {
+				collection.add((V) value);
+			}
+		}
+	}
+
+	// fill the emptied slot with a later entry of the same probe sequence,
+	// repeating until the sequence ends, so that lookups never stop short
+	private void shiftBack(int empty) {
+		int index = empty;
+		for (;;) {
+			index = (index + 1) & this.mask;
+			if (this.values[index] == null) {
+				break;
+			}
+			final int home = (int) mix(this.keys[index]) & this.mask;
+			// move the entry unless its home slot lies cyclically in (empty, index]
+			if (empty <= index ? (home <= empty || home > index) : (home <= empty && home > index)) {
+				this.keys[empty] = this.keys[index];
+				this.values[empty] = this.values[index];
+				empty = index;
+			}
+		}
+		this.values[empty] = null;
+	}
+
+	private void resize() {
+		final long[] oldKeys = this.keys;
+		final Object[] oldValues = this.values;
+		final int capacity = oldValues.length << 1;
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.mask = capacity - 1;
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				int index = (int) mix(oldKeys[i]) & this.mask;
+				while (this.values[index] != null) {
+					index = (index + 1) & this.mask;
+				}
+				this.keys[index] = oldKeys[i];
+				this.values[index] = oldValues[i];
+			}
+		}
+	}
+}
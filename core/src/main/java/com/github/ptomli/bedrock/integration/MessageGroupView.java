@@ -0,0 +1,95 @@
+package com.github.ptomli.bedrock.integration;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.store.MessageGroup;
+import org.springframework.messaging.Message;
+
+/**
+ * A view of an {@link AppendOnlyMessageGroup}, sharing its message array.
+ * <p>
+ * The messages of the view are a snapshot, unaffected by later changes to
+ * the group, but its completion, last released sequence number and last
+ * modified time are those of the group, as with the groups returned by
+ * {@code SimpleMessageStore}.
+ */
+final class MessageGroupView implements MessageGroup {
+	private final AppendOnlyMessageGroup group;
+	private final Message<?>[] messages;
+	private final int from;
+	private final int to;
+
+	MessageGroupView(final AppendOnlyMessageGroup group, final Message<?>[] messages, final int from, final int to) {
+		this.group = group;
+		this.messages = messages;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	public boolean canAdd(final Message<?> message) {
+		return true;
+	}
+
+	@Override
+	public Collection<Message<?>> getMessages() {
+		return Collections.unmodifiableList(Arrays.asList(this.messages).subList(this.from, this.to));
+	}
+
+	@Override
+	public Object getGroupId() {
+		return this.group.getGroupId();
+	}
+
+	@Override
+	public int getLastReleasedMessageSequenceNumber() {
+		return this.group.getLastReleasedSequenceNumber();
+	}
+
+	@Override
+	public boolean isComplete() {
+		return this.group.isComplete();
+	}
+
+	@Override
+	public void complete() {
+		this.group.complete(System.currentTimeMillis());
+	}
+
+	@Override
+	public int getSequenceSize() {
+		if (this.size() == 0) {
+			return 0;
+		}
+		final Integer sequenceSize = new IntegrationMessageHeaderAccessor(this.getOne()).getSequenceSize();
+		return sequenceSize == null ? 0 : sequenceSize;
+	}
+
+	@Override
+	public int size() {
+		return this.to - this.from;
+	}
+
+	@Override
+	public Message<?> getOne() {
+		return this.from == this.to ? null : this.messages[this.from];
+	}
+
+	@Override
+	public long getTimestamp() {
+		return this.group.getTimestamp();
+	}
+
+	@Override
+	public long getLastModified() {
+		return this.group.getLastModified();
+	}
+
+	@Override
+	public String toString() {
+		return "MessageGroupView [groupId=" + this.getGroupId() + ", size=" + this.size() + ", complete=" + this.isComplete() + "]";
+	}
+}
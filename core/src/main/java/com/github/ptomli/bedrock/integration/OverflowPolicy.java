@@ -0,0 +1,24 @@
+package com.github.ptomli.bedrock.integration;
+
+/**
+ * What a {@link BoundedQueueChannel} does with a message sent while it is
+ * full.
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * Wait for space, up to the send timeout or the channel's block timeout,
+	 * then fail the send.
+	 */
+	BLOCK,
+
+	/**
+	 * Discard the oldest queued message to make space.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Fail the send immediately.
+	 */
+	REJECT
+}
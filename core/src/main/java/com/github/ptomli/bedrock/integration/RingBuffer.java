@@ -0,0 +1,109 @@
+package com.github.ptomli.bedrock.integration;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free, multiple producer and multiple consumer FIFO ring
+ * buffer, after Dmitry Vyukov's bounded MPMC queue.
+ * <p>
+ * Each slot carries a sequence number which says whether it is ready to be
+ * written or read at a given position, so producers and consumers only
+ * contend on a compare and set of the tail or head position. The capacity
+ * is rounded up to a power of two, of at least two, as a single slot cannot
+ * tell full from empty.
+ *
+ * @param <E> the element type
+ */
+final class RingBuffer<E> {
+	static final int MAX_CAPACITY = 1 << 30;
+
+	private final int mask;
+	private final AtomicReferenceArray<E> elements;
+	private final AtomicLongArray sequences;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	RingBuffer(final int capacity) {
+		if (capacity < 1 || capacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException("capacity must be between 1 and " + MAX_CAPACITY);
+		}
+		final int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = size - 1;
+		this.elements = new AtomicReferenceArray<E>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			this.sequences.set(i, i);
+		}
+	}
+
+	int capacity() {
+		return this.mask + 1;
+	}
+
+	/**
+	 * Add the element at the tail, if there is space.
+	 *
+	 * @return false if the buffer is full
+	 */
+	boolean offer(final E element) {
+		long position = this.tail.get();
+		for (;;) {
+			final int index = (int) position & this.mask;
+			final long difference = this.sequences.get(index) - position;
+			if (difference == 0) {
+				if (this.tail.compareAndSet(position, position + 1)) {
+					this.elements.set(index, element);
+					this.sequences.set(index, position + 1);
+					return true;
+				}
+				position = this.tail.get();
+			}
+			else if (difference < 0) {
+				return false;
+			}
+			else {
+				position = this.tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Remove the element at the head, if there is one.
+	 *
+	 * @return the element, or null if the buffer is empty
+	 */
+	E poll() {
+		long position = this.head.get();
+		for (;;) {
+			final int index = (int) position & this.mask;
+			final long difference = this.sequences.get(index) - (position + 1);
+			if (difference == 0) {
+				if (this.head.compareAndSet(position, position + 1)) {
+					final E element = this.elements.get(index);
+					this.elements.set(index, null);
+					this.sequences.set(index, position + this.mask + 1);
+					return element;
+				}
+				position = this.head.get();
+			}
+			else if (difference < 0) {
+				return null;
+			}
+			else {
+				position = this.head.get();
+			}
+		}
+	}
+
+	/**
+	 * Return the number of elements, which is only an estimate while
+	 * producers or consumers are active.
+	 */
+	int size() {
+		final long head = this.head.get();
+		final long size = this.tail.get() - head;
+		return (int) Math.max(0, Math.min(size, this.capacity()));
+	}
+}
@@ -0,0 +1,369 @@
+package com.github.ptomli.bedrock.integration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.springframework.integration.store.AbstractMessageGroupStore;
+import org.springframework.integration.store.MessageGroup;
+import org.springframework.integration.store.MessageGroupMetadata;
+import org.springframework.integration.store.SimpleMessageGroup;
+import org.springframework.messaging.Message;
+
+/**
+ * An in-memory {@link org.springframework.integration.store.MessageGroupStore}
+ * for aggregators and resequencers with many groups and many concurrent
+ * senders, as an alternative to {@code SimpleMessageStore}.
+ * <p>
+ * Groups are spread over a number of stripes by the hash of their
+ * correlation key, and each stripe has its own lock, so that senders to
+ * different groups rarely contend. {@code Long} and {@code Integer} keys are
+ * indexed by their primitive value, without map entries. The messages of a
+ * group are appended to an array, and the groups returned by the store
+ * share that array, so adding a message copies nothing. The messages of a
+ * returned group are a snapshot; its other state is that of the stored
+ * group.
+ * <p>
+ * Iterating the store, and so expiring groups, locks one stripe at a time,
+ * never the whole store, and the callbacks of expired groups are run
+ * without holding a stripe lock. The message and group counts are read
+ * without locking, so are only estimates while the store is in use.
+ * <p>
+ * For example, with an aggregator
+ * <pre>
+ * <code>
+ * &lt;bean id="aggregatorStore" class="com.github.ptomli.bedrock.integration.StripedMessageGroupStore"/&gt;
+ *
+ * &lt;int:aggregator input-channel="parts" output-channel="orders" message-store="aggregatorStore"/&gt;
+ * </code>
+ * </pre>
+ */
+public class StripedMessageGroupStore extends AbstractMessageGroupStore {
+
+	/**
+	 * The maximum number of stripes.
+	 */
+	public static final int MAX_STRIPES = 1 << 16;
+
+	private final Stripe[] stripes;
+	private final int mask;
+
+	/**
+	 * Create a new store with four stripes per available processor.
+	 */
+	public StripedMessageGroupStore() {
+		this(Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	/**
+	 * Create a new store.
+	 *
+	 * @param stripes the number of stripes, rounded up to a power of two
+	 */
+	public StripedMessageGroupStore(final int stripes) {
+		if (stripes < 1 || stripes > MAX_STRIPES) {
+			throw new IllegalArgumentException("stripes must be between 1 and " + MAX_STRIPES);
+		}
+		final int size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+		this.stripes = new Stripe[size];
+		for (int i = 0; i < size; i++) {
+			this.stripes[i] = new Stripe();
+		}
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Return the number of stripes.
+	 *
+	 * @return the number of stripes
+	 */
+	public int getStripes() {
+		return this.stripes.length;
+	}
+
+	@Override
+	public int messageGroupSize(final Object groupId) {
+		final Stripe stripe = this.stripe(groupId);
+		synchronized (stripe) {
+			final AppendOnlyMessageGroup group = stripe.get(groupId);
+			return group == null ? 0 : group.size();
+		}
+	}
+
+	@Override
+	public MessageGroup getMessageGroup(final Object groupId) {
+		final Stripe stripe = this.stripe(groupId);
+		synchronized (stripe) {
+			final AppendOnlyMessageGroup group = stripe.get(groupId);
+			if (group != null) {
+				return group.view();
+			}
+		}
+		return new AppendOnlyMessageGroup(groupId, System.currentTimeMillis()).view();
+	}
+
+	@Override
+	public MessageGroup addMessageToGroup(final Object groupId, final Message<?> message) {
+		if (message == null) {
+			throw new IllegalArgumentException("message may not be null");
+		}
+		final Stripe stripe = this.stripe(groupId);
+		final long now = System.currentTimeMillis();
+		synchronized (stripe) {
+			AppendOnlyMessageGroup group = stripe.get(groupId);
+			if (group == null) {
+				group = stripe.create(groupId, now);
+			}
+			group.add(message, now);
+			stripe.messageCount++;
+			return group.view();
+		}
+	}
+
+	@Override
+	public Message<?> pollMessageFromGroup(final Object groupId) {
+		final Stripe stripe = this.stripe(groupId);
+		synchronized (stripe) {
+			final AppendOnlyMessageGroup group = stripe.get(groupId);
+			final Message<?> message = group == null ? null : group.poll(System.currentTimeMillis());
+			if (message != null) {
+				stripe.messageCount--;
+			}
+			return message;
+		}
+	}
+
+	@Override
+	public void removeMessageGroup(final Object groupId) {
+		final Stripe stripe = this.stripe(groupId);
+		synchronized (stripe) {
+			stripe.remove(groupId);
+		}
+	}
+
+	@Override
+	public MessageGroup removeMessageFromGroup(final Object groupId, final Message<?> message) {
+		if (message == null) {
+			throw new IllegalArgumentException("message may not be null");
+		}
+		final Stripe stripe = this.stripe(groupId);
+		synchronized (stripe) {
+			final AppendOnlyMessageGroup group = this.existing(stripe, groupId, "remove Message from the MessageGroup");
+			if (group.remove(message, System.currentTimeMillis())) {
+				stripe.messageCount--;
+			}
+			return group.view();
+		}
+	}
+
+	@Override
+	public void setLastReleasedSequenceNumberForGroup(final Object groupId, final int sequenceNumber) {
+		final Stripe stripe = this.stripe(groupId);
+		synchronized (stripe) {
+			this.existing(stripe, groupId, "set 'lastReleasedSequenceNumber'").setLastReleasedSequenceNumber(sequenceNumber, System.currentTimeMillis());
+		}
+	}
+
+	@Override
+	public void completeGroup(final Object groupId) {
+		final Stripe stripe = this.stripe(groupId);
+		synchronized (stripe) {
+			this.existing(stripe, groupId, "complete the MessageGroup").complete(System.currentTimeMillis());
+		}
+	}
+
+	@Override
+	public Message<?> getOneMessageFromGroup(final Object groupId) {
+		final Stripe stripe = this.stripe(groupId);
+		synchronized (stripe) {
+			final AppendOnlyMessageGroup group = stripe.get(groupId);
+			return group == null ? null : group.getOne();
+		}
+	}
+
+	@Override
+	public MessageGroupMetadata getGroupMetadata(final Object groupId) {
+		return new MessageGroupMetadata(this.getMessageGroup(groupId));
+	}
+
+	@Override
+	public int getMessageGroupCount() {
+		int count = 0;
+		for (final Stripe stripe : this.stripes) {
+			count += stripe.groupCount;
+		}
+		return count;
+	}
+
+	@Override
+	public int getMessageCountForAllMessageGroups() {
+		int count = 0;
+		for (final Stripe stripe : this.stripes) {
+			count += stripe.messageCount;
+		}
+		return count;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The groups are taken a stripe at a time as the iterator advances, so
+	 * the iterator never fails on concurrent changes.
+	 */
+	@Override
+	public Iterator<MessageGroup> iterator() {
+		return new StripeIterator();
+	}
+
+	// only expired groups are copied; the aggregator compares the copy with
+	// the stored group, to tell whether it changed before it was expired
+	@Override
+	protected MessageGroup copy(final MessageGroup group) {
+		final SimpleMessageGroup copy = new SimpleMessageGroup(group.getMessages(), group.getGroupId(), group.getTimestamp(), group.isComplete());
+		copy.setLastModified(group.getLastModified());
+		copy.setLastReleasedMessageSequenceNumber(group.getLastReleasedMessageSequenceNumber());
+		return copy;
+	}
+
+	private Stripe stripe(final Object groupId) {
+		if (groupId == null) {
+			throw new IllegalArgumentException("groupId may not be null");
+		}
+		final long hash;
+		if (groupId instanceof Long) {
+			hash = LongHashIndex.mix((Long) groupId);
+		}
+		else if (groupId instanceof Integer) {
+			hash = LongHashIndex.mix((Integer) groupId);
+		}
+		else {
+			hash = LongHashIndex.mix(groupId.hashCode());
+		}
+		// the index uses the low bits of the same hash, so stripe on the high bits
+		return this.stripes[(int) (hash >>> 40) & this.mask];
+	}
+
+	private AppendOnlyMessageGroup existing(final Stripe stripe, final Object groupId, final String operation) {
+		final AppendOnlyMessageGroup group = stripe.get(groupId);
+		if (group == null) {
+			throw new IllegalArgumentException("MessageGroup for groupId '" + groupId + "' can not be located while attempting to " + operation);
+		}
+		return group;
+	}
+
+	/**
+	 * The groups of one stripe, indexed by the type of their key. All access
+	 * is synchronized on the stripe, except reading the counts.
+	 */
+	private static final class Stripe {
+		private LongHashIndex<AppendOnlyMessageGroup> longKeys;
+		private LongHashIndex<AppendOnlyMessageGroup> integerKeys;
+		private Map<Object, AppendOnlyMessageGroup> objectKeys;
+		private volatile int groupCount;
+		private volatile int messageCount;
+
+		AppendOnlyMessageGroup get(final Object groupId) {
+			if (groupId instanceof Long) {
+				return this.longKeys == null ? null : this.longKeys.get((Long) groupId);
+			}
+			if (groupId instanceof Integer) {
+				return this.integerKeys == null ? null : this.integerKeys.get((Integer) groupId);
+			}
+			return this.objectKeys == null ? null : this.objectKeys.get(groupId);
+		}
+
+		AppendOnlyMessageGroup create(final Object groupId, final long now) {
+			final AppendOnlyMessageGroup group = new AppendOnlyMessageGroup(groupId, now);
+			if (groupId instanceof Long) {
+				if (this.longKeys == null) {
+					this.longKeys = new LongHashIndex<AppendOnlyMessageGroup>();
+				}
+				this.longKeys.put((Long) groupId, group);
+			}
+			else if (groupId instanceof Integer) {
+				if (this.integerKeys == null) {
+					this.integerKeys = new LongHashIndex<AppendOnlyMessageGroup>();
+				}
+				this.integerKeys.put((Integer) groupId, group);
+			}
+			else {
+				if (this.objectKeys == null) {
+					this.objectKeys = new HashMap<Object, AppendOnlyMessageGroup>();
+				}
+				this.objectKeys.put(groupId, group);
+			}
+			this.groupCount++;
+			return group;
+		}
+
+		void remove(final Object groupId) {
+			final AppendOnlyMessageGroup group;
+			if (groupId instanceof Long) {
+				group = this.longKeys == null ? null : this.longKeys.remove((Long) groupId);
+			}
+			else if (groupId instanceof Integer) {
+				group = this.integerKeys == null ? null : this.integerKeys.remove((Integer) groupId);
+			}
+			else {
+				group = this.objectKeys == null ? null : this.objectKeys.remove(groupId);
+			}
+			if (group != null) {
+				this.groupCount--;
+				this.messageCount -= group.size();
+			}
+		}
+
+		List<MessageGroup> views() {
+			final List<AppendOnlyMessageGroup> groups = new ArrayList<AppendOnlyMessageGroup>(this.groupCount);
+			if (this.longKeys != null) {
+				this.longKeys.addValuesTo(groups);
+			}
+			if (this.integerKeys != null) {
+				this.integerKeys.addValuesTo(groups);
+			}
+			if (this.objectKeys != null) {
+				groups.addAll(this.objectKeys.values());
+			}
+			final List<MessageGroup> views = new ArrayList<MessageGroup>(groups.size());
+			for (final AppendOnlyMessageGroup group : groups) {
+				views.add(group.view());
+			}
+			return views;
+		}
+	}
+
+	private final class StripeIterator implements Iterator<MessageGroup> {
+		private int stripe;
+		private Iterator<MessageGroup> groups;
+
+		@Override
+		public boolean hasNext() {
+			while (this.groups == null || !this.groups.hasNext()) {
+				if (this.stripe == stripes.length) {
+					return false;
+				}
+				final Stripe next = stripes[this.stripe++];
+				synchronized (next) {
+					this.groups = next.views().iterator();
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public MessageGroup next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return this.groups.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,347 @@
+package com.github.ptomli.bedrock.jdbc;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import io.dropwizard.lifecycle.Managed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Strings;
+
+/**
+ * Coalesces single row writes, made concurrently by many threads, into JDBC
+ * batches executed in a single transaction, a technique usually called group
+ * commit.
+ * <p>
+ * Writes are queued, and a background thread executes them in batches of up
+ * to {@code maxBatchSize} rows, waiting at most {@code maxDelay} after the
+ * first queued write before executing a partial batch. Each batch reuses a
+ * single prepared statement. If a batch fails, its rows are retried
+ * individually so that one bad row does not fail the others.
+ * <p>
+ * For example, in place of {@code jdbcTemplate.update(sql, args)}
+ * <pre>
+ * <code>
+ * BatchingJdbcWriter writer = new BatchingJdbcWriter(dataSource, "INSERT INTO events (id, payload) VALUES (?, ?)",
+ *         100, 5, TimeUnit.MILLISECONDS, metrics, "events");
+ * writer.update(id, payload);
+ * </code>
+ * </pre>
+ * The writer must be {@link #start() started}, for example by registering it
+ * with the DropWizard lifecycle, before writes will be executed.
+ * <p>
+ * The following metrics are published
+ * <ul>
+ * <li>{@code <name>.batch-size}, a histogram of the rows per batch
+ * <li>{@code <name>.flushes}, a timer of the time taken to execute a batch
+ * <li>{@code <name>.latency}, a timer of the time from queueing a write to its
+ * completion
+ * </ul>
+ */
+public class BatchingJdbcWriter implements Managed {
+	private static final Logger LOG = LoggerFactory.getLogger(BatchingJdbcWriter.class);
+	private static final long POLL_MILLIS = 100;
+
+	private final String sql;
+	private final int maxBatchSize;
+	private final long maxDelayNanos;
+	private final JdbcTemplate jdbcTemplate;
+	private final TransactionTemplate transactionTemplate;
+	private final BlockingQueue<PendingWrite> queue;
+	private final Histogram batchSizes;
+	private final Timer flushes;
+	private final Timer latency;
+	private final String threadName;
+
+	private volatile boolean running = false;
+	private Thread flusher;
+
+	/**
+	 * Create a new writer, with a queue capacity of ten batches.
+	 *
+	 * @param dataSource the data source to write to
+	 * @param sql the SQL statement to execute for each write
+	 * @param maxBatchSize the maximum number of rows in a batch
+	 * @param maxDelay the maximum time to wait for a batch to fill
+	 * @param unit the unit of {@code maxDelay}
+	 * @param metrics the registry for the writer metrics
+	 * @param name the name of the writer, used as the metric name prefix
+	 */
+	public BatchingJdbcWriter(final DataSource dataSource, final String sql, final int maxBatchSize, final long maxDelay, final TimeUnit unit, final MetricRegistry metrics, final String name) {
+		this(dataSource, sql, maxBatchSize, maxDelay, unit, maxBatchSize * 10, metrics, name);
+	}
+
+	/**
+	 * Create a new writer.
+	 *
+	 * @param dataSource the data source to write to
+	 * @param sql the SQL statement to execute for each write
+	 * @param maxBatchSize the maximum number of rows in a batch
+	 * @param maxDelay the maximum time to wait for a batch to fill
+	 * @param unit the unit of {@code maxDelay}
+	 * @param capacity the maximum number of queued writes, beyond which writers block
+	 * @param metrics the registry for the writer metrics
+	 * @param name the name of the writer, used as the metric name prefix
+	 */
+	public BatchingJdbcWriter(final DataSource dataSource, final String sql, final int maxBatchSize, final long maxDelay, final TimeUnit unit, final int capacity, final MetricRegistry metrics, final String name) {
+		if (dataSource == null) {
+			throw new IllegalArgumentException("dataSource may not be null");
+		}
+		if (Strings.isNullOrEmpty(sql)) {
+			throw new IllegalArgumentException("sql may not be null or empty");
+		}
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("maxBatchSize must be at least 1");
+		}
+		if (capacity < maxBatchSize) {
+			throw new IllegalArgumentException("capacity must be at least maxBatchSize");
+		}
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null");
+		}
+		if (Strings.isNullOrEmpty(name)) {
+			throw new IllegalArgumentException("name may not be null or empty");
+		}
+
+		this.sql = sql;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = unit.toNanos(maxDelay);
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		this.queue = new LinkedBlockingQueue<PendingWrite>(capacity);
+		this.batchSizes = metrics.histogram(name(name, "batch-size"));
+		this.flushes = metrics.timer(name(name, "flushes"));
+		this.latency = metrics.timer(name(name, "latency"));
+		this.threadName = "batching-jdbc-writer-" + name;
+	}
+
+	/**
+	 * Queue a write, blocking if the queue is full.
+	 *
+	 * @param args the statement arguments
+	 * @return a future completed with the update count once the write's batch has been committed
+	 * @throws IllegalStateException if the writer is not running
+	 * @throws InterruptedException if interrupted while waiting for queue space
+	 */
+	public ListenableFuture<Integer> write(final Object... args) throws InterruptedException {
+		if (!this.running) {
+			throw new IllegalStateException("writer is not running");
+		}
+		final PendingWrite write = new PendingWrite(args, this.latency.time());
+		// never block indefinitely, as nothing takes from the queue once stopped
+		while (!this.queue.offer(write, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+			if (!this.running) {
+				throw new IllegalStateException("writer is not running");
+			}
+		}
+		// the flusher and stop may both have finished with the queue before the
+		// write was queued; whoever removes the write is responsible for it
+		if (!this.running && this.queue.remove(write)) {
+			throw new IllegalStateException("writer is not running");
+		}
+		return write.future;
+	}
+
+	/**
+	 * Queue a write and wait for it to be committed, in the manner of
+	 * {@link JdbcTemplate#update(String, Object...)}.
+	 *
+	 * @param args the statement arguments
+	 * @return the update count
+	 * @throws DataAccessException if the write failed
+	 * @throws IllegalStateException if the writer is not running, or the thread was interrupted
+	 */
+	public int update(final Object... args) {
+		try {
+			return this.write(args).get();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted waiting for write", ex);
+		}
+		catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw new IllegalStateException(ex.getCause());
+		}
+	}
+
+	@Override
+	public synchronized void start() {
+		if (this.running) {
+			return;
+		}
+		this.running = true;
+		this.flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flushUntilStopped();
+			}
+		}, this.threadName);
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	/**
+	 * Stop accepting writes, and wait for queued writes to be flushed.
+	 */
+	@Override
+	public synchronized void stop() throws InterruptedException {
+		if (!this.running) {
+			return;
+		}
+		this.running = false;
+		this.flusher.join();
+		this.flusher = null;
+
+		// writes which raced with stopping are not going to be flushed
+		final List<PendingWrite> orphans = new ArrayList<PendingWrite>();
+		this.queue.drainTo(orphans);
+		for (final PendingWrite write : orphans) {
+			write.fail(new IllegalStateException("writer stopped"));
+		}
+	}
+
+	private void flushUntilStopped() {
+		final List<PendingWrite> batch = new ArrayList<PendingWrite>(this.maxBatchSize);
+		while (this.running || !this.queue.isEmpty()) {
+			try {
+				final PendingWrite first = this.queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+
+				final long deadline = System.nanoTime() + this.maxDelayNanos;
+				while (batch.size() < this.maxBatchSize) {
+					this.queue.drainTo(batch, this.maxBatchSize - batch.size());
+					final long remaining = deadline - System.nanoTime();
+					if (batch.size() >= this.maxBatchSize || remaining <= 0) {
+						break;
+					}
+					final PendingWrite next = this.queue.poll(remaining, TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+
+				this.flushOrFail(batch);
+			}
+			catch (InterruptedException ex) {
+				LOG.warn("{} interrupted, flushing remaining writes", this.threadName);
+				this.running = false;
+				this.flushOrFail(batch);
+				while (this.queue.drainTo(batch, this.maxBatchSize) > 0) {
+					this.flushOrFail(batch);
+				}
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	// flush the batch, failing any writes left incomplete by an unexpected
+	// failure, and clear it
+	private void flushOrFail(final List<PendingWrite> batch) {
+		try {
+			if (!batch.isEmpty()) {
+				this.flush(batch);
+			}
+		}
+		catch (RuntimeException ex) {
+			LOG.error("unexpected failure flushing batch", ex);
+			for (final PendingWrite write : batch) {
+				write.fail(ex);
+			}
+		}
+		finally {
+			batch.clear();
+		}
+	}
+
+	private void flush(final List<PendingWrite> batch) {
+		this.batchSizes.update(batch.size());
+		final Timer.Context timer = this.flushes.time();
+		try {
+			final int[] counts = this.transactionTemplate.execute(new TransactionCallback<int[]>() {
+				@Override
+				public int[] doInTransaction(final TransactionStatus status) {
+					final List<Object[]> args = new ArrayList<Object[]>(batch.size());
+					for (final PendingWrite write : batch) {
+						args.add(write.args);
+					}
+					return jdbcTemplate.batchUpdate(sql, args);
+				}
+			});
+			for (int i = 0; i < batch.size(); i++) {
+				batch.get(i).complete(counts[i]);
+			}
+		}
+		catch (DataAccessException ex) {
+			LOG.debug("batch of {} failed, retrying individually", batch.size(), ex);
+			for (final PendingWrite write : batch) {
+				try {
+					write.complete(this.jdbcTemplate.update(this.sql, write.args));
+				}
+				catch (DataAccessException rowEx) {
+					write.fail(rowEx);
+				}
+			}
+		}
+		finally {
+			timer.stop();
+		}
+	}
+
+	private static class PendingWrite {
+		private final Object[] args;
+		private final Timer.Context latency;
+		private final SettableListenableFuture<Integer> future = new SettableListenableFuture<Integer>();
+		private final AtomicBoolean done = new AtomicBoolean();
+
+		PendingWrite(final Object[] args, final Timer.Context latency) {
+			this.args = Arrays.copyOf(args, args.length);
+			this.latency = latency;
+		}
+
+		// a write is completed or failed at most once, so its latency is
+		// recorded at most once
+		void complete(final int count) {
+			if (this.done.compareAndSet(false, true)) {
+				this.latency.stop();
+				this.future.set(count);
+			}
+		}
+
+		void fail(final Throwable ex) {
+			if (this.done.compareAndSet(false, true)) {
+				this.latency.stop();
+				this.future.setException(ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.github.ptomli.bedrock.jdbc;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import com.codahale.metrics.health.HealthCheck;
+import com.google.common.base.Strings;
+
+/**
+ * A {@link HealthCheck} which is healthy if a connection can be obtained from
+ * a {@link DataSource}, and the validation query executed against it.
+ */
+public class DataSourceHealthCheck extends HealthCheck {
+
+	private final DataSource dataSource;
+	private final String validationQuery;
+	private final int timeoutSeconds;
+
+	/**
+	 * Create a new health check.
+	 *
+	 * @param dataSource the data source to check
+	 * @param validationQuery the query to execute
+	 * @param timeoutSeconds the query timeout, in seconds
+	 */
+	public DataSourceHealthCheck(final DataSource dataSource, final String validationQuery, final int timeoutSeconds) {
+		if (dataSource == null) {
+			throw new IllegalArgumentException("dataSource may not be null");
+		}
+		if (Strings.isNullOrEmpty(validationQuery)) {
+			throw new IllegalArgumentException("validationQuery may not be null or empty");
+		}
+		this.dataSource = dataSource;
+		this.validationQuery = validationQuery;
+		this.timeoutSeconds = timeoutSeconds;
+	}
+
+	@Override
+	protected Result check() throws Exception {
+		final Connection connection = this.dataSource.getConnection();
+		try {
+			final Statement statement = connection.createStatement();
+			try {
+				statement.setQueryTimeout(this.timeoutSeconds);
+				statement.execute(this.validationQuery);
+			}
+			finally {
+				statement.close();
+			}
+		}
+		finally {
+			connection.close();
+		}
+		return Result.healthy();
+	}
+}
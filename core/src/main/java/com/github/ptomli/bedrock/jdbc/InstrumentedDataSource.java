@@ -0,0 +1,253 @@
+package com.github.ptomli.bedrock.jdbc;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Strings;
+
+/**
+ * A {@link DataSource} which times the acquisition of connections from, and
+ * the execution of statements against, an underlying data source.
+ * <p>
+ * For a data source with the prefix "datasources.main" the following metrics
+ * are registered
+ * <ul>
+ * <li>{@code datasources.main.connections}, a timer of the time spent
+ * waiting for a connection
+ * <li>{@code datasources.main.statements.<sql>}, a timer per distinct SQL
+ * statement
+ * </ul>
+ * To bound the number of metrics, statements beyond the first
+ * {@link #DEFAULT_MAX_STATEMENT_TIMERS} distinct statements are recorded in
+ * the {@code datasources.main.statements.other} timer.
+ */
+public class InstrumentedDataSource implements DataSource {
+
+	/**
+	 * The default maximum number of distinct statement timers.
+	 */
+	public static final int DEFAULT_MAX_STATEMENT_TIMERS = 200;
+
+	static final String OTHER_STATEMENTS = "other";
+
+	private final DataSource dataSource;
+	private final MetricRegistry metrics;
+	private final String prefix;
+	private final int maxStatementTimers;
+	private final Timer connections;
+	private final ConcurrentMap<String, Timer> statements = new ConcurrentHashMap<String, Timer>();
+
+	/**
+	 * Create a new instrumented data source, with the default maximum
+	 * number of statement timers.
+	 *
+	 * @param dataSource the data source to instrument
+	 * @param metrics the registry for the data source metrics
+	 * @param prefix the prefix of the metric names
+	 */
+	public InstrumentedDataSource(final DataSource dataSource, final MetricRegistry metrics, final String prefix) {
+		this(dataSource, metrics, prefix, DEFAULT_MAX_STATEMENT_TIMERS);
+	}
+
+	/**
+	 * Create a new instrumented data source.
+	 *
+	 * @param dataSource the data source to instrument
+	 * @param metrics the registry for the data source metrics
+	 * @param prefix the prefix of the metric names
+	 * @param maxStatementTimers the maximum number of distinct statement timers
+	 */
+	public InstrumentedDataSource(final DataSource dataSource, final MetricRegistry metrics, final String prefix, final int maxStatementTimers) {
+		if (dataSource == null) {
+			throw new IllegalArgumentException("dataSource may not be null");
+		}
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null");
+		}
+		if (Strings.isNullOrEmpty(prefix)) {
+			throw new IllegalArgumentException("prefix may not be null or empty");
+		}
+		this.dataSource = dataSource;
+		this.metrics = metrics;
+		this.prefix = prefix;
+		this.maxStatementTimers = maxStatementTimers;
+		this.connections = metrics.timer(name(prefix, "connections"));
+	}
+
+	/**
+	 * Return the instrumented data source.
+	 *
+	 * @return the underlying data source
+	 */
+	public DataSource getDataSource() {
+		return this.dataSource;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		final Timer.Context timer = this.connections.time();
+		try {
+			return this.wrap(this.dataSource.getConnection());
+		}
+		finally {
+			timer.stop();
+		}
+	}
+
+	@Override
+	public Connection getConnection(final String username, final String password) throws SQLException {
+		final Timer.Context timer = this.connections.time();
+		try {
+			return this.wrap(this.dataSource.getConnection(username, password));
+		}
+		finally {
+			timer.stop();
+		}
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return this.dataSource.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(final PrintWriter out) throws SQLException {
+		this.dataSource.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(final int seconds) throws SQLException {
+		this.dataSource.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return this.dataSource.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		return this.dataSource.getParentLogger();
+	}
+
+	@Override
+	public <T> T unwrap(final Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		return this.dataSource.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || this.dataSource.isWrapperFor(iface);
+	}
+
+	/**
+	 * Return the timer for the given SQL statement.
+	 *
+	 * @param sql the SQL statement
+	 * @return the timer for the statement
+	 */
+	Timer statementTimer(final String sql) {
+		final String key = sql == null ? OTHER_STATEMENTS : CharMatcher.WHITESPACE.trimAndCollapseFrom(sql, ' ');
+		Timer timer = this.statements.get(key);
+		if (timer == null) {
+			if (this.statements.size() >= this.maxStatementTimers) {
+				return this.metrics.timer(name(this.prefix, "statements", OTHER_STATEMENTS));
+			}
+			timer = this.metrics.timer(name(this.prefix, "statements", key));
+			final Timer existing = this.statements.putIfAbsent(key, timer);
+			if (existing != null) {
+				timer = existing;
+			}
+		}
+		return timer;
+	}
+
+	private Connection wrap(final Connection connection) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, new ConnectionHandler(connection));
+	}
+
+	private static Object invoke(final Object target, final Method method, final Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		}
+		catch (InvocationTargetException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	private class ConnectionHandler implements InvocationHandler {
+		private final Connection connection;
+
+		ConnectionHandler(final Connection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			final Object result = InstrumentedDataSource.invoke(this.connection, method, args);
+			if (result instanceof Statement) {
+				final String sql = (args != null && args.length > 0 && args[0] instanceof String) ? (String) args[0] : null;
+				final Class<?> type = (result instanceof CallableStatement) ? CallableStatement.class
+						: (result instanceof PreparedStatement) ? PreparedStatement.class
+						: Statement.class;
+				return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new StatementHandler((Statement) result, (Connection) proxy, sql));
+			}
+			return result;
+		}
+	}
+
+	private class StatementHandler implements InvocationHandler {
+		private final Statement statement;
+		private final Connection connection;
+		private final Timer timer;
+
+		StatementHandler(final Statement statement, final Connection connection, final String sql) {
+			this.statement = statement;
+			this.connection = connection;
+			this.timer = sql != null ? statementTimer(sql) : null;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			if (method.getName().equals("getConnection") && method.getParameterTypes().length == 0) {
+				return this.connection;
+			}
+			if (!method.getName().startsWith("execute")) {
+				return InstrumentedDataSource.invoke(this.statement, method, args);
+			}
+
+			final Timer timer = (args != null && args.length > 0 && args[0] instanceof String) ? statementTimer((String) args[0])
+					: this.timer != null ? this.timer
+					: statementTimer(null);
+			final Timer.Context context = timer.time();
+			try {
+				return InstrumentedDataSource.invoke(this.statement, method, args);
+			}
+			finally {
+				context.stop();
+			}
+		}
+	}
+}
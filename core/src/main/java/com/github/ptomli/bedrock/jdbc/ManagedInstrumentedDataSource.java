@@ -0,0 +1,105 @@
+package com.github.ptomli.bedrock.jdbc;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.db.ManagedDataSource;
+
+import org.apache.tomcat.jdbc.pool.DataSourceProxy;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * An {@link InstrumentedDataSource} wrapping a DropWizard
+ * {@link ManagedDataSource}, so that the pool can be managed by the
+ * DropWizard lifecycle.
+ * <p>
+ * In addition to the metrics of {@link InstrumentedDataSource}, for pooled
+ * data sources the following gauges are registered
+ * <ul>
+ * <li>{@code datasources.<name>.active}, the number of connections in use
+ * <li>{@code datasources.<name>.idle}, the number of idle connections
+ * <li>{@code datasources.<name>.size}, the number of open connections
+ * <li>{@code datasources.<name>.waiting}, the number of threads waiting for a
+ * connection
+ * </ul>
+ */
+public class ManagedInstrumentedDataSource extends InstrumentedDataSource implements ManagedDataSource {
+
+	/**
+	 * The prefix of the data source metric names.
+	 */
+	public static final String PREFIX = "datasources";
+
+	/**
+	 * Build a new pooled data source from the provided factory.
+	 *
+	 * @param factory the DropWizard data source configuration
+	 * @param metrics the registry for the data source metrics
+	 * @param name the name of the data source
+	 * @return the data source
+	 * @throws IllegalArgumentException if the driver class cannot be found
+	 */
+	public static ManagedInstrumentedDataSource build(final DataSourceFactory factory, final MetricRegistry metrics, final String name) {
+		try {
+			return new ManagedInstrumentedDataSource(factory.build(metrics, name), metrics, name);
+		}
+		catch (ClassNotFoundException ex) {
+			throw new IllegalArgumentException("Unable to load driver class " + factory.getDriverClass(), ex);
+		}
+	}
+
+	private final ManagedDataSource dataSource;
+
+	/**
+	 * Create a new instrumented data source, publishing metrics prefixed by
+	 * {@link #PREFIX} and the data source name.
+	 *
+	 * @param dataSource the data source to instrument
+	 * @param metrics the registry for the data source metrics
+	 * @param name the name of the data source
+	 */
+	public ManagedInstrumentedDataSource(final ManagedDataSource dataSource, final MetricRegistry metrics, final String name) {
+		super(dataSource, metrics, name(PREFIX, name));
+		this.dataSource = dataSource;
+
+		if (dataSource instanceof DataSourceProxy) {
+			final DataSourceProxy pool = (DataSourceProxy) dataSource;
+			final String prefix = name(PREFIX, name);
+			metrics.register(name(prefix, "active"), new Gauge<Integer>() {
+				@Override
+				public Integer getValue() {
+					return pool.getPool() != null ? pool.getActive() : 0;
+				}
+			});
+			metrics.register(name(prefix, "idle"), new Gauge<Integer>() {
+				@Override
+				public Integer getValue() {
+					return pool.getPool() != null ? pool.getIdle() : 0;
+				}
+			});
+			metrics.register(name(prefix, "size"), new Gauge<Integer>() {
+				@Override
+				public Integer getValue() {
+					return pool.getPool() != null ? pool.getSize() : 0;
+				}
+			});
+			metrics.register(name(prefix, "waiting"), new Gauge<Integer>() {
+				@Override
+				public Integer getValue() {
+					return pool.getPool() != null ? pool.getWaitCount() : 0;
+				}
+			});
+		}
+	}
+
+	@Override
+	public void start() throws Exception {
+		this.dataSource.start();
+	}
+
+	@Override
+	public void stop() throws Exception {
+		this.dataSource.stop();
+	}
+}
@@ -0,0 +1,394 @@
+package com.github.ptomli.bedrock.jersey.async;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.sun.jersey.api.container.MappableContainerException;
+import com.sun.jersey.api.core.HttpContext;
+import com.sun.jersey.api.model.AbstractResourceMethod;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ResourceMethodDispatchAdapter;
+import com.sun.jersey.spi.container.ResourceMethodDispatchProvider;
+import com.sun.jersey.spi.dispatch.RequestDispatcher;
+
+/**
+ * A Jersey {@link ResourceMethodDispatchAdapter} which allows resource
+ * methods to return a {@link Future} of their result.
+ * <p>
+ * When a resource method returns an incomplete Spring
+ * {@link ListenableFuture}, such as those returned by
+ * {@code AsyncRestTemplate}, {@code @Async} methods or Spring Integration
+ * gateways, the request is suspended using Servlet 3 asynchronous
+ * processing, releasing the container thread. When the future completes the
+ * request is dispatched again, and the resource method's result is written
+ * as if it had been returned directly. A completed future may also hold a
+ * {@link Response}, or fail with an exception which is handled by the
+ * registered exception mappers.
+ * <p>
+ * Requests which are not complete within the timeout are cancelled and
+ * answered with 503 Service Unavailable. Futures which are not listenable, or
+ * requests which cannot be suspended, block the container thread until the
+ * future completes or the timeout elapses.
+ * <p>
+ * Jersey 1 has no support for asynchronous responses, so a resumed request
+ * is dispatched to Jersey again. The adapter should also be added to the
+ * container request filters, after which it answers resumed requests before
+ * they are matched to a resource, so that other dispatch adapters, such as
+ * DropWizard's {@code @Timed} timers, the response cache and concurrency
+ * limits, see each request only once. Container request filters ahead of it
+ * run again. Otherwise resumed requests are answered when they reach this
+ * adapter, after passing through any dispatch adapters wrapping it. The
+ * resource method is never invoked again. The Jersey servlet, and every
+ * filter it is mapped behind, must support asynchronous processing, see
+ * {@link AsyncSupportLifeCycleListener}.
+ * <p>
+ * For example
+ * <pre>
+ * <code>
+ * AsyncResponseResourceMethodDispatchAdapter async = new AsyncResponseResourceMethodDispatchAdapter(30, TimeUnit.SECONDS, metrics);
+ * environment.jersey().register(async);
+ * environment.jersey().getResourceConfig().getContainerRequestFilters().add(async);
+ * </code>
+ * </pre>
+ * <p>
+ * For each resource method returning a future the following metrics are
+ * published, named after the resource class and method, and the method's
+ * parameter types where the resource class has several methods of that name
+ * <ul>
+ * <li>{@code async-response.suspended}, a counter of the currently suspended requests
+ * <li>{@code async-response.completions}, a timer of the time from suspension to completion
+ * <li>{@code async-response.timeouts}, a meter of the requests which timed out
+ * <li>{@code async-response.errors}, a meter of the suspended requests which
+ * failed, for example because the client disconnected
+ * </ul>
+ */
+@Provider
+public class AsyncResponseResourceMethodDispatchAdapter implements ResourceMethodDispatchAdapter, ContainerRequestFilter {
+
+	/**
+	 * The {@link HttpContext} property holding the {@link ListenableFuture} of
+	 * a suspended request, so that dispatch adapters wrapping this one can
+	 * act when the future completes rather than when the method returns.
+	 */
+	public static final String SUSPENDED_FUTURE_PROPERTY = AsyncResponseResourceMethodDispatchAdapter.class.getName() + ".SUSPENDED_FUTURE";
+
+	static final String RESULT_ATTRIBUTE = AsyncResponseResourceMethodDispatchAdapter.class.getName() + ".RESULT";
+
+	private final long timeoutMillis;
+	private final MetricRegistry metrics;
+
+	@Context
+	private HttpServletRequest request;
+
+	/**
+	 * Create a new adapter publishing metrics to the given registry.
+	 *
+	 * @param timeout the maximum time to wait for a future to complete
+	 * @param unit the unit of {@code timeout}
+	 * @param metrics the registry for async response metrics
+	 */
+	public AsyncResponseResourceMethodDispatchAdapter(final long timeout, final TimeUnit unit, final MetricRegistry metrics) {
+		if (timeout <= 0) {
+			throw new IllegalArgumentException("timeout must be positive");
+		}
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null");
+		}
+		this.timeoutMillis = unit.toMillis(timeout);
+		this.metrics = metrics;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ResourceMethodDispatchProvider adapt(final ResourceMethodDispatchProvider provider) {
+		return new AsyncResponseResourceMethodDispatchProvider(provider);
+	}
+
+	/**
+	 * Answer a resumed request with the result of its future, by throwing a
+	 * {@link WebApplicationException} with the response, or the failure of
+	 * the future, which are handled as if thrown by the resource method.
+	 */
+	@Override
+	public ContainerRequest filter(final ContainerRequest containerRequest) {
+		final AsyncResult result = this.takeResult(this.currentRequest());
+		if (result != null) {
+			throw new WebApplicationException(result.toResponse());
+		}
+		return containerRequest;
+	}
+
+	private AsyncResult takeResult(final HttpServletRequest request) {
+		if (request == null || request.getDispatcherType() != DispatcherType.ASYNC) {
+			return null;
+		}
+		final AsyncResult result = (AsyncResult) request.getAttribute(RESULT_ATTRIBUTE);
+		if (result != null) {
+			request.removeAttribute(RESULT_ATTRIBUTE);
+		}
+		return result;
+	}
+
+	// the request is only available when running in a servlet container
+	private HttpServletRequest currentRequest() {
+		if (this.request == null) {
+			return null;
+		}
+		try {
+			this.request.getDispatcherType();
+			return this.request;
+		}
+		catch (IllegalStateException ex) {
+			return null;
+		}
+	}
+
+	private class AsyncResponseResourceMethodDispatchProvider implements ResourceMethodDispatchProvider {
+		private final ResourceMethodDispatchProvider provider;
+
+		AsyncResponseResourceMethodDispatchProvider(final ResourceMethodDispatchProvider provider) {
+			this.provider = provider;
+		}
+
+		@Override
+		public RequestDispatcher create(final AbstractResourceMethod abstractResourceMethod) {
+			final RequestDispatcher dispatcher = this.provider.create(abstractResourceMethod);
+			if (dispatcher == null || !Future.class.isAssignableFrom(abstractResourceMethod.getReturnType())) {
+				return dispatcher;
+			}
+			return new AsyncResponseRequestDispatcher(dispatcher, abstractResourceMethod.getMethod(), metricPrefix(abstractResourceMethod));
+		}
+	}
+
+	// named after the resource rather than the declaring class, so that an
+	// inherited method served by several resources is counted per resource
+	private static String metricPrefix(final AbstractResourceMethod abstractResourceMethod) {
+		final Class<?> resourceClass = abstractResourceMethod.getResource().getResourceClass();
+		final Method method = abstractResourceMethod.getMethod();
+		int overloads = 0;
+		for (final Method candidate : resourceClass.getMethods()) {
+			if (candidate.getName().equals(method.getName())) {
+				overloads++;
+			}
+		}
+		if (overloads < 2) {
+			return name(resourceClass, method.getName(), "async-response");
+		}
+		final Class<?>[] types = method.getParameterTypes();
+		final StringBuilder signature = new StringBuilder(method.getName()).append('(');
+		for (int i = 0; i < types.length; i++) {
+			if (i > 0) {
+				signature.append(',');
+			}
+			signature.append(types[i].getSimpleName());
+		}
+		return name(resourceClass, signature.append(')').toString(), "async-response");
+	}
+
+	private class AsyncResponseRequestDispatcher implements RequestDispatcher {
+		private final RequestDispatcher dispatcher;
+		private final Type entityType;
+		private final Counter suspended;
+		private final Timer completions;
+		private final Meter timeouts;
+		private final Meter errors;
+
+		AsyncResponseRequestDispatcher(final RequestDispatcher dispatcher, final Method method, final String prefix) {
+			this.dispatcher = dispatcher;
+			final Type returnType = method.getGenericReturnType();
+			this.entityType = (returnType instanceof ParameterizedType) ? ((ParameterizedType) returnType).getActualTypeArguments()[0] : Object.class;
+
+			this.suspended = metrics.counter(name(prefix, "suspended"));
+			this.completions = metrics.timer(name(prefix, "completions"));
+			this.timeouts = metrics.meter(name(prefix, "timeouts"));
+			this.errors = metrics.meter(name(prefix, "errors"));
+		}
+
+		@Override
+		public void dispatch(final Object resource, final HttpContext context) {
+			final HttpServletRequest request = currentRequest();
+			final AsyncResult resumed = takeResult(request);
+			if (resumed != null) {
+				context.getResponse().setResponse(resumed.toResponse());
+				return;
+			}
+
+			this.dispatcher.dispatch(resource, context);
+			final Object entity = context.getResponse().getEntity();
+			if (!(entity instanceof Future)) {
+				return;
+			}
+
+			final Future<?> future = (Future<?>) entity;
+			if (future.isDone() || !(future instanceof ListenableFuture) || request == null || !request.isAsyncSupported()) {
+				context.getResponse().setResponse(this.await(future).toResponse());
+			}
+			else {
+				context.getProperties().put(SUSPENDED_FUTURE_PROPERTY, future);
+				this.suspend(request, (ListenableFuture<?>) future);
+				// never written, the response is committed by the resumed dispatch
+				context.getResponse().setResponse(Response.noContent().build());
+			}
+		}
+
+		private void suspend(final HttpServletRequest request, final ListenableFuture<?> future) {
+			final AsyncContext async = request.startAsync();
+			async.setTimeout(timeoutMillis);
+			this.suspended.inc();
+			final Timer.Context timer = this.completions.time();
+			final AtomicBoolean resumed = new AtomicBoolean(false);
+
+			async.addListener(new AsyncListener() {
+				@Override
+				public void onTimeout(final AsyncEvent event) {
+					if (resumed.compareAndSet(false, true)) {
+						timeouts.mark();
+						future.cancel(true);
+						resume(async, AsyncResult.timedOut(), timer);
+					}
+				}
+
+				@Override
+				public void onError(final AsyncEvent event) {
+					if (resumed.compareAndSet(false, true)) {
+						timer.stop();
+						errors.mark();
+						suspended.dec();
+						future.cancel(true);
+					}
+				}
+
+				@Override
+				public void onComplete(final AsyncEvent event) {
+				}
+
+				@Override
+				public void onStartAsync(final AsyncEvent event) {
+				}
+			});
+
+			future.addCallback(new ListenableFutureCallback<Object>() {
+				@Override
+				public void onSuccess(final Object value) {
+					if (resumed.compareAndSet(false, true)) {
+						resume(async, AsyncResult.of(value, entityType), timer);
+					}
+				}
+
+				@Override
+				public void onFailure(final Throwable ex) {
+					if (resumed.compareAndSet(false, true)) {
+						resume(async, AsyncResult.failed(ex), timer);
+					}
+				}
+			});
+		}
+
+		// called from the thread completing the future, where the injected
+		// request proxy is out of scope
+		private void resume(final AsyncContext async, final AsyncResult result, final Timer.Context timer) {
+			timer.stop();
+			this.suspended.dec();
+			async.getRequest().setAttribute(RESULT_ATTRIBUTE, result);
+			async.dispatch();
+		}
+
+		private AsyncResult await(final Future<?> future) {
+			try {
+				return AsyncResult.of(future.get(timeoutMillis, TimeUnit.MILLISECONDS), this.entityType);
+			}
+			catch (ExecutionException ex) {
+				return AsyncResult.failed(ex.getCause());
+			}
+			catch (TimeoutException ex) {
+				this.timeouts.mark();
+				future.cancel(true);
+				return AsyncResult.timedOut();
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				future.cancel(true);
+				return AsyncResult.timedOut();
+			}
+		}
+	}
+
+	private static class AsyncResult {
+		private final Object value;
+		private final Type entityType;
+		private final Throwable failure;
+		private final boolean timedOut;
+
+		static AsyncResult of(final Object value, final Type entityType) {
+			return new AsyncResult(value, entityType, null, false);
+		}
+
+		static AsyncResult failed(final Throwable failure) {
+			return new AsyncResult(null, null, failure, false);
+		}
+
+		static AsyncResult timedOut() {
+			return new AsyncResult(null, null, null, true);
+		}
+
+		private AsyncResult(final Object value, final Type entityType, final Throwable failure, final boolean timedOut) {
+			this.value = value;
+			this.entityType = entityType;
+			this.failure = failure;
+			this.timedOut = timedOut;
+		}
+
+		Response toResponse() {
+			if (this.timedOut) {
+				return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+			}
+			else if (this.failure instanceof RuntimeException) {
+				throw (RuntimeException) this.failure;
+			}
+			else if (this.failure != null) {
+				throw new MappableContainerException(this.failure);
+			}
+			else if (this.value instanceof Response) {
+				return (Response) this.value;
+			}
+			else if (this.value == null) {
+				return Response.noContent().build();
+			}
+			else if (this.entityType.equals(this.value.getClass()) || this.entityType.equals(Object.class)) {
+				return Response.ok(this.value).build();
+			}
+			else {
+				return Response.ok(new GenericEntity<Object>(this.value, this.entityType)).build();
+			}
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.github.ptomli.bedrock.jersey.async;
+
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.component.AbstractLifeCycle.AbstractLifeCycleListener;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Jetty {@link LifeCycle.Listener} which, as the server starts, enables
+ * Servlet 3 asynchronous processing for every servlet and filter of a
+ * servlet context.
+ * <p>
+ * DropWizard does not enable asynchronous support for the Jersey servlet, or
+ * the filters it installs in front of it, so requests cannot be suspended by
+ * the {@link AsyncResponseResourceMethodDispatchAdapter} without this
+ * listener. Filters added to the context must not assume that the response
+ * is complete when the filter chain returns.
+ */
+public class AsyncSupportLifeCycleListener extends AbstractLifeCycleListener {
+	private static final Logger LOG = LoggerFactory.getLogger(AsyncSupportLifeCycleListener.class);
+
+	private final ServletContextHandler context;
+
+	/**
+	 * Create a new listener for the given servlet context.
+	 *
+	 * @param context the servlet context, such as the DropWizard application context
+	 */
+	public AsyncSupportLifeCycleListener(final ServletContextHandler context) {
+		if (context == null) {
+			throw new IllegalArgumentException("context may not be null");
+		}
+		this.context = context;
+	}
+
+	@Override
+	public void lifeCycleStarting(final LifeCycle event) {
+		final FilterHolder[] filters = this.context.getServletHandler().getFilters();
+		if (filters != null) {
+			for (final FilterHolder filter : filters) {
+				LOG.debug("enabling async support for filter {}", filter.getName());
+				filter.setAsyncSupported(true);
+			}
+		}
+		final ServletHolder[] servlets = this.context.getServletHandler().getServlets();
+		if (servlets != null) {
+			for (final ServletHolder servlet : servlets) {
+				LOG.debug("enabling async support for servlet {}", servlet.getName());
+				servlet.setAsyncSupported(true);
+			}
+		}
+	}
+}
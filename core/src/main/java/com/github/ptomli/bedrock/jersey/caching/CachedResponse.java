@@ -0,0 +1,58 @@
+package com.github.ptomli.bedrock.jersey.caching;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Marks a {@code GET} resource method whose responses should be cached by
+ * the {@link ResponseCacheResourceMethodDispatchAdapter}.
+ * <p>
+ * Responses are cached per resource method, keyed on the request path, the
+ * query parameters, the {@code Accept} header, from which the representation
+ * is negotiated, and the values of any {@link #vary() varying} request
+ * headers. Only {@code 200 OK} responses are cached, and only if their entity
+ * can be written more than once, so not an {@code InputStream},
+ * {@code Reader}, {@code StreamingOutput} or {@code File}. Each cached response is
+ * given an ETag, unless the resource method provided one itself, so that
+ * conditional requests can be answered with {@code 304 Not Modified}.
+ * <p>
+ * For example
+ * <pre>
+ * <code>
+ * {@literal @}GET
+ * {@literal @}CachedResponse(ttl = 30, unit = TimeUnit.SECONDS, maxSize = 500, vary = "Accept-Language")
+ * public Greeting greet({@literal @}QueryParam("name") String name) {
+ *     ...
+ * }
+ * </code>
+ * </pre>
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CachedResponse {
+	/**
+	 * The time a cached response remains valid after it was created.
+	 */
+	long ttl() default 60;
+
+	/**
+	 * The unit of {@link #ttl()}.
+	 */
+	TimeUnit unit() default TimeUnit.SECONDS;
+
+	/**
+	 * The maximum number of responses cached for the resource method, after
+	 * which the least recently used responses are evicted.
+	 */
+	long maxSize() default 1000;
+
+	/**
+	 * The names of request headers whose values form part of the cache key.
+	 */
+	String[] vary() default {};
+}
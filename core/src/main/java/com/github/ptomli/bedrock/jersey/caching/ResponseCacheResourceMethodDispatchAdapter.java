@@ -0,0 +1,332 @@
+package com.github.ptomli.bedrock.jersey.caching;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.Provider;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.sun.jersey.api.core.HttpContext;
+import com.sun.jersey.api.core.HttpRequestContext;
+import com.sun.jersey.api.model.AbstractResourceMethod;
+import com.sun.jersey.spi.container.ResourceMethodDispatchAdapter;
+import com.sun.jersey.spi.container.ResourceMethodDispatchProvider;
+import com.sun.jersey.spi.dispatch.RequestDispatcher;
+
+/**
+ * A Jersey {@link ResourceMethodDispatchAdapter} which caches the responses
+ * of resource methods annotated with {@link CachedResponse}.
+ * <p>
+ * Each annotated method is given its own bounded cache. Concurrent requests
+ * for the same uncached key wait for a single invocation of the resource
+ * method rather than each computing the same response. Hits, misses,
+ * evictions, hit ratio and load times are published to the provided
+ * {@link MetricRegistry}, named after the resource class and method. Where the
+ * resource class has several methods of the same name the metric names also
+ * carry the method's parameter types, for example
+ * {@code com.example.ThingResource.find(String,int).response-cache.hits}.
+ */
+@Provider
+public class ResponseCacheResourceMethodDispatchAdapter implements ResourceMethodDispatchAdapter {
+
+	private final MetricRegistry metrics;
+
+	/**
+	 * Create a new adapter publishing cache metrics to the given registry.
+	 *
+	 * @param metrics the registry for cache metrics
+	 */
+	public ResponseCacheResourceMethodDispatchAdapter(final MetricRegistry metrics) {
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null");
+		}
+		this.metrics = metrics;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ResourceMethodDispatchProvider adapt(final ResourceMethodDispatchProvider provider) {
+		return new ResponseCacheResourceMethodDispatchProvider(provider, this.metrics);
+	}
+
+	private static class ResponseCacheResourceMethodDispatchProvider implements ResourceMethodDispatchProvider {
+		private final ResourceMethodDispatchProvider provider;
+		private final MetricRegistry metrics;
+
+		ResponseCacheResourceMethodDispatchProvider(final ResourceMethodDispatchProvider provider, final MetricRegistry metrics) {
+			this.provider = provider;
+			this.metrics = metrics;
+		}
+
+		@Override
+		public RequestDispatcher create(final AbstractResourceMethod abstractResourceMethod) {
+			final RequestDispatcher dispatcher = this.provider.create(abstractResourceMethod);
+			final CachedResponse annotation = abstractResourceMethod.getAnnotation(CachedResponse.class);
+			if (dispatcher == null || annotation == null || !HttpMethod.GET.equals(abstractResourceMethod.getHttpMethod())) {
+				return dispatcher;
+			}
+			return new ResponseCacheRequestDispatcher(dispatcher, annotation, metricPrefix(abstractResourceMethod), this.metrics);
+		}
+	}
+
+	// named after the resource rather than the declaring class, so that an
+	// inherited method served by several resources is counted per resource
+	private static String metricPrefix(final AbstractResourceMethod abstractResourceMethod) {
+		final Class<?> resourceClass = abstractResourceMethod.getResource().getResourceClass();
+		final Method method = abstractResourceMethod.getMethod();
+		int overloads = 0;
+		for (final Method candidate : resourceClass.getMethods()) {
+			if (candidate.getName().equals(method.getName())) {
+				overloads++;
+			}
+		}
+		if (overloads < 2) {
+			return name(resourceClass, method.getName(), "response-cache");
+		}
+		final Class<?>[] types = method.getParameterTypes();
+		final StringBuilder signature = new StringBuilder(method.getName()).append('(');
+		for (int i = 0; i < types.length; i++) {
+			if (i > 0) {
+				signature.append(',');
+			}
+			signature.append(types[i].getSimpleName());
+		}
+		return name(resourceClass, signature.append(')').toString(), "response-cache");
+	}
+
+	static class ResponseCacheRequestDispatcher implements RequestDispatcher {
+		private final RequestDispatcher dispatcher;
+		private final List<String> vary;
+		private final Cache<String, CachedEntry> cache;
+		private final Timer loads;
+		private final String epoch = Long.toHexString(System.currentTimeMillis());
+		private final AtomicLong versions = new AtomicLong();
+
+		ResponseCacheRequestDispatcher(final RequestDispatcher dispatcher, final CachedResponse annotation, final String prefix, final MetricRegistry metrics) {
+			this.dispatcher = dispatcher;
+			this.vary = Arrays.asList(annotation.vary());
+			this.cache = CacheBuilder.newBuilder()
+					.maximumSize(annotation.maxSize())
+					.expireAfterWrite(annotation.ttl(), annotation.unit())
+					.recordStats()
+					.build();
+
+			this.loads = metrics.timer(name(prefix, "loads"));
+			metrics.register(name(prefix, "hits"), new Gauge<Long>() {
+				@Override
+				public Long getValue() {
+					return cache.stats().hitCount();
+				}
+			});
+			metrics.register(name(prefix, "misses"), new Gauge<Long>() {
+				@Override
+				public Long getValue() {
+					return cache.stats().missCount();
+				}
+			});
+			metrics.register(name(prefix, "evictions"), new Gauge<Long>() {
+				@Override
+				public Long getValue() {
+					return cache.stats().evictionCount();
+				}
+			});
+			metrics.register(name(prefix, "size"), new Gauge<Long>() {
+				@Override
+				public Long getValue() {
+					return cache.size();
+				}
+			});
+			metrics.register(name(prefix, "hit-ratio"), new RatioGauge() {
+				@Override
+				protected Ratio getRatio() {
+					return Ratio.of(cache.stats().hitCount(), cache.stats().requestCount());
+				}
+			});
+		}
+
+		@Override
+		public void dispatch(final Object resource, final HttpContext context) {
+			final String key = this.key(context.getRequest());
+			final boolean[] loaded = new boolean[] { false };
+
+			final CachedEntry entry;
+			try {
+				entry = this.cache.get(key, new Callable<CachedEntry>() {
+					@Override
+					public CachedEntry call() throws Exception {
+						loaded[0] = true;
+						return load(resource, context);
+					}
+				});
+			}
+			catch (ExecutionException ex) {
+				this.handleLoadFailure(loaded[0], ex.getCause(), resource, context);
+				return;
+			}
+			catch (UncheckedExecutionException ex) {
+				this.handleLoadFailure(loaded[0], ex.getCause(), resource, context);
+				return;
+			}
+			catch (ExecutionError ex) {
+				this.handleLoadFailure(loaded[0], ex.getCause(), resource, context);
+				return;
+			}
+
+			final Response.ResponseBuilder notModified = context.getRequest().evaluatePreconditions(entry.getTag());
+			if (notModified != null) {
+				context.getResponse().setResponse(notModified.tag(entry.getTag()).build());
+			}
+			else {
+				context.getResponse().setResponse(entry.toResponse());
+			}
+		}
+
+		private CachedEntry load(final Object resource, final HttpContext context) throws UncacheableResponseException {
+			final Timer.Context timer = this.loads.time();
+			try {
+				this.dispatcher.dispatch(resource, context);
+			}
+			finally {
+				timer.stop();
+			}
+			if (context.getResponse().getStatus() != Response.Status.OK.getStatusCode()
+					|| !isReusable(context.getResponse().getEntity())) {
+				throw new UncacheableResponseException();
+			}
+			return CachedEntry.of(context.getResponse().getHttpHeaders(),
+					context.getResponse().getEntity(),
+					context.getResponse().getEntityType(),
+					new EntityTag(this.epoch + "-" + Long.toHexString(this.versions.incrementAndGet()), true));
+		}
+
+		// if this thread did the loading its response is already in place, or
+		// the resource method threw and that should propagate, otherwise we
+		// were waiting on another request and must dispatch for ourselves
+		private void handleLoadFailure(final boolean loaded, final Throwable cause, final Object resource, final HttpContext context) {
+			if (!loaded) {
+				this.dispatcher.dispatch(resource, context);
+			}
+			else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+		}
+
+		// streams can only be written once, and a file may change or vanish
+		private static boolean isReusable(final Object entity) {
+			return !(entity instanceof InputStream || entity instanceof Reader
+					|| entity instanceof StreamingOutput || entity instanceof File);
+		}
+
+		// the representation is negotiated from the Accept header, so it is
+		// always part of the key
+		String key(final HttpRequestContext request) {
+			final StringBuilder key = new StringBuilder(request.getPath(false));
+			final Map<String, List<String>> query = new TreeMap<String, List<String>>(request.getQueryParameters(false));
+			for (final Map.Entry<String, List<String>> param : query.entrySet()) {
+				for (final String value : param.getValue()) {
+					key.append('&').append(param.getKey()).append('=').append(value);
+				}
+			}
+			key.append('|').append(HttpHeaders.ACCEPT).append(':');
+			if (request.getRequestHeader(HttpHeaders.ACCEPT) != null) {
+				key.append(request.getRequestHeader(HttpHeaders.ACCEPT));
+			}
+			for (final String header : this.vary) {
+				final List<String> values = request.getRequestHeader(header);
+				key.append('|').append(header).append(':');
+				if (values != null) {
+					key.append(values);
+				}
+			}
+			return key.toString();
+		}
+	}
+
+	private static class CachedEntry {
+		private final Map<String, List<Object>> headers;
+		private final Object entity;
+		private final Type entityType;
+		private final EntityTag tag;
+
+		static CachedEntry of(final Map<String, List<Object>> headers, final Object entity, final Type entityType, final EntityTag defaultTag) {
+			final Map<String, List<Object>> copy = new LinkedHashMap<String, List<Object>>();
+			EntityTag tag = null;
+			for (final Map.Entry<String, List<Object>> header : headers.entrySet()) {
+				if (HttpHeaders.ETAG.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+					final Object value = header.getValue().get(0);
+					tag = (value instanceof EntityTag) ? (EntityTag) value : EntityTag.valueOf(value.toString());
+				}
+				else {
+					copy.put(header.getKey(), Collections.unmodifiableList(new ArrayList<Object>(header.getValue())));
+				}
+			}
+			return new CachedEntry(copy, entity, entityType, tag != null ? tag : defaultTag);
+		}
+
+		private CachedEntry(final Map<String, List<Object>> headers, final Object entity, final Type entityType, final EntityTag tag) {
+			this.headers = headers;
+			this.entity = entity;
+			this.entityType = entityType;
+			this.tag = tag;
+		}
+
+		EntityTag getTag() {
+			return this.tag;
+		}
+
+		Response toResponse() {
+			final Response.ResponseBuilder builder = Response.ok();
+			if (this.entity != null) {
+				if (this.entityType != null && !this.entityType.equals(this.entity.getClass())) {
+					builder.entity(new GenericEntity<Object>(this.entity, this.entityType));
+				}
+				else {
+					builder.entity(this.entity);
+				}
+			}
+			for (final Map.Entry<String, List<Object>> header : this.headers.entrySet()) {
+				for (final Object value : header.getValue()) {
+					builder.header(header.getKey(), value);
+				}
+			}
+			return builder.tag(this.tag).build();
+		}
+	}
+
+	private static class UncacheableResponseException extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+}
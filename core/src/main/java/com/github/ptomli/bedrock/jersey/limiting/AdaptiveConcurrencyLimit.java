@@ -0,0 +1,165 @@
+package com.github.ptomli.bedrock.jersey.limiting;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A concurrency limit which adapts to the latency of the work it admits.
+ * <p>
+ * The limit is estimated by comparing each sampled latency with the lowest
+ * latency seen recently, taken to be the latency without queueing. While
+ * latency stays close to that minimum the limit grows by roughly its square
+ * root per sample, as latency rises the limit shrinks in proportion, by up
+ * to half. New estimates are smoothed with an exponentially weighted moving
+ * average. Failures indicating overload multiply the limit by a backoff
+ * ratio, so that the limit behaves like additive-increase
+ * multiplicative-decrease when latency gives no signal.
+ * <p>
+ * The limit does not grow while fewer than half of the permitted requests
+ * are in flight, as latency then says nothing about a higher limit.
+ */
+public class AdaptiveConcurrencyLimit {
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final double smoothing;
+	private final double backoffRatio;
+	private final int probeInterval;
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private volatile double limit;
+	private long minLatency = Long.MAX_VALUE;
+	private long samples = 0;
+
+	/**
+	 * Create a new limit from the provided configuration.
+	 *
+	 * @param configuration the limit configuration
+	 * @throws IllegalArgumentException if the configuration is invalid
+	 */
+	public AdaptiveConcurrencyLimit(final ConcurrencyLimitConfiguration configuration) {
+		this(configuration.getInitialLimit(), configuration.getMinLimit(), configuration.getMaxLimit(),
+				configuration.getSmoothing(), configuration.getBackoffRatio(), configuration.getProbeInterval());
+	}
+
+	/**
+	 * Create a new limit.
+	 *
+	 * @param initialLimit the starting limit
+	 * @param minLimit the lowest the limit may fall to
+	 * @param maxLimit the highest the limit may rise to
+	 * @param smoothing the weight, greater than 0 and at most 1, given to each new estimate
+	 * @param backoffRatio the factor, greater than 0 and less than 1, applied to the limit on failure
+	 * @param probeInterval the number of samples after which the minimum latency is re-measured
+	 * @throws IllegalArgumentException if any argument is out of range
+	 */
+	public AdaptiveConcurrencyLimit(final int initialLimit, final int minLimit, final int maxLimit, final double smoothing, final double backoffRatio, final int probeInterval) {
+		if (minLimit < 1) {
+			throw new IllegalArgumentException("minLimit must be at least 1");
+		}
+		if (maxLimit < minLimit) {
+			throw new IllegalArgumentException("maxLimit must be at least minLimit");
+		}
+		if (initialLimit < minLimit || initialLimit > maxLimit) {
+			throw new IllegalArgumentException("initialLimit must be between minLimit and maxLimit");
+		}
+		if (smoothing <= 0 || smoothing > 1) {
+			throw new IllegalArgumentException("smoothing must be greater than 0 and at most 1");
+		}
+		if (backoffRatio <= 0 || backoffRatio >= 1) {
+			throw new IllegalArgumentException("backoffRatio must be greater than 0 and less than 1");
+		}
+		if (probeInterval < 1) {
+			throw new IllegalArgumentException("probeInterval must be at least 1");
+		}
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.smoothing = smoothing;
+		this.backoffRatio = backoffRatio;
+		this.probeInterval = probeInterval;
+	}
+
+	/**
+	 * Attempt to admit a request. If this returns true, exactly one of
+	 * {@link #onSuccess(long, TimeUnit)}, {@link #onDropped()} or
+	 * {@link #onIgnored()} must be called once the request completes.
+	 *
+	 * @return true if the request was admitted, false if the limit has been reached
+	 */
+	public boolean tryAcquire() {
+		for (;;) {
+			final int current = this.inFlight.get();
+			if (current >= (int) this.limit) {
+				return false;
+			}
+			if (this.inFlight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Release an admitted request which completed normally, sampling its
+	 * latency.
+	 *
+	 * @param latency the time taken by the request
+	 * @param unit the unit of {@code latency}
+	 */
+	public void onSuccess(final long latency, final TimeUnit unit) {
+		final int current = this.inFlight.getAndDecrement();
+		this.update(Math.max(1, unit.toNanos(latency)), current);
+	}
+
+	/**
+	 * Release an admitted request which failed in a way indicating overload,
+	 * reducing the limit.
+	 */
+	public synchronized void onDropped() {
+		this.inFlight.decrementAndGet();
+		this.limit = Math.max(this.minLimit, this.limit * this.backoffRatio);
+	}
+
+	/**
+	 * Release an admitted request without sampling it, for example because it
+	 * failed for reasons unrelated to load.
+	 */
+	public void onIgnored() {
+		this.inFlight.decrementAndGet();
+	}
+
+	/**
+	 * Return the current limit.
+	 *
+	 * @return the number of requests which may be in flight
+	 */
+	public int getLimit() {
+		return (int) this.limit;
+	}
+
+	/**
+	 * Return the number of admitted requests which have not yet been released.
+	 *
+	 * @return the number of requests in flight
+	 */
+	public int getInFlight() {
+		return this.inFlight.get();
+	}
+
+	private synchronized void update(final long latency, final int inFlight) {
+		if (this.samples++ % this.probeInterval == 0) {
+			this.minLatency = latency;
+		}
+		else if (latency < this.minLatency) {
+			this.minLatency = latency;
+		}
+
+		final double gradient = Math.max(0.5, Math.min(1.0, (double) this.minLatency / latency));
+		double estimate = this.limit * gradient + Math.sqrt(this.limit);
+		if (estimate > this.limit && inFlight * 2 < this.limit) {
+			return;
+		}
+		estimate = (1 - this.smoothing) * this.limit + this.smoothing * estimate;
+		this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, estimate));
+	}
+}
@@ -0,0 +1,104 @@
+package com.github.ptomli.bedrock.jersey.limiting;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Configuration of the adaptive concurrency limits applied to resources,
+ * which can be easily used with a DropWizard configuration.
+ * <p>
+ * Each limit group starts at {@code initialLimit} concurrent requests and
+ * adapts between {@code minLimit} and {@code maxLimit}. {@code smoothing}
+ * is the weight given to each new limit estimate, and {@code backoffRatio}
+ * the factor the limit is multiplied by when a request fails with an
+ * overload, such as a {@code 503}. The lowest observed latency, which the limit is measured against,
+ * is forgotten every {@code probeInterval} samples so that the limit can
+ * follow a permanent change in latency.
+ * <p>
+ * Expects YAML like
+ * <pre>
+ * <code>
+ * initialLimit: 20
+ * minLimit: 4
+ * maxLimit: 200
+ * smoothing: 0.2
+ * backoffRatio: 0.9
+ * probeInterval: 1000
+ * </code>
+ * </pre>
+ *
+ * @see AdaptiveConcurrencyLimit
+ */
+public class ConcurrencyLimitConfiguration {
+
+	@JsonProperty
+	private int initialLimit = 20;
+
+	@JsonProperty
+	private int minLimit = 4;
+
+	@JsonProperty
+	private int maxLimit = 200;
+
+	@JsonProperty
+	private double smoothing = 0.2;
+
+	@JsonProperty
+	private double backoffRatio = 0.9;
+
+	@JsonProperty
+	private int probeInterval = 1000;
+
+	/**
+	 * The limit each group starts with.
+	 *
+	 * @return the initial limit
+	 */
+	public int getInitialLimit() {
+		return this.initialLimit;
+	}
+
+	/**
+	 * The lowest the limit may fall to.
+	 *
+	 * @return the minimum limit
+	 */
+	public int getMinLimit() {
+		return this.minLimit;
+	}
+
+	/**
+	 * The highest the limit may rise to.
+	 *
+	 * @return the maximum limit
+	 */
+	public int getMaxLimit() {
+		return this.maxLimit;
+	}
+
+	/**
+	 * The weight, between 0 and 1, given to each new limit estimate.
+	 *
+	 * @return the smoothing factor
+	 */
+	public double getSmoothing() {
+		return this.smoothing;
+	}
+
+	/**
+	 * The factor, between 0 and 1, applied to the limit on overload.
+	 *
+	 * @return the backoff ratio
+	 */
+	public double getBackoffRatio() {
+		return this.backoffRatio;
+	}
+
+	/**
+	 * The number of samples after which the minimum latency is re-measured.
+	 *
+	 * @return the probe interval
+	 */
+	public int getProbeInterval() {
+		return this.probeInterval;
+	}
+}
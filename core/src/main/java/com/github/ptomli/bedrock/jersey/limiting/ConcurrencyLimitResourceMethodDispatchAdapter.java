@@ -0,0 +1,258 @@
+package com.github.ptomli.bedrock.jersey.limiting;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.ptomli.bedrock.jersey.async.AsyncResponseResourceMethodDispatchAdapter;
+import com.sun.jersey.api.core.HttpContext;
+import com.sun.jersey.api.model.AbstractResourceMethod;
+import com.sun.jersey.spi.container.ResourceMethodDispatchAdapter;
+import com.sun.jersey.spi.container.ResourceMethodDispatchProvider;
+import com.sun.jersey.spi.dispatch.RequestDispatcher;
+
+/**
+ * A Jersey {@link ResourceMethodDispatchAdapter} which limits the number of
+ * concurrent requests to each group of resource methods, rejecting requests
+ * beyond the limit with 503 Service Unavailable.
+ * <p>
+ * The methods of a resource class form a group named after the class, unless
+ * placed in a named group with {@link ConcurrencyLimited}. Each group has its
+ * own {@link AdaptiveConcurrencyLimit}, sampling the latency of each
+ * request and backing off on overload: {@code 503 Service Unavailable},
+ * {@code 504 Gateway Timeout}, {@code 429 Too Many Requests}, timeouts and
+ * rejected executions. Other errors, such as a {@code 500} from a bug in a
+ * resource or a client error, are sampled like any other response, so a burst
+ * of them does not reduce the limit.
+ * <p>
+ * A request whose resource method returns a Spring {@link ListenableFuture},
+ * see {@link AsyncResponseResourceMethodDispatchAdapter}, holds its place
+ * until the future completes, and its latency is sampled then.
+ * <p>
+ * For each group the following metrics are published
+ * <ul>
+ * <li>{@code concurrency-limits.<group>.limit}, a gauge of the current limit
+ * <li>{@code concurrency-limits.<group>.in-flight}, a gauge of the requests in flight
+ * <li>{@code concurrency-limits.<group>.rejections}, a meter of rejected requests
+ * </ul>
+ */
+@Provider
+public class ConcurrencyLimitResourceMethodDispatchAdapter implements ResourceMethodDispatchAdapter {
+
+	/**
+	 * The prefix of the concurrency limit metric names.
+	 */
+	public static final String PREFIX = "concurrency-limits";
+
+	private final ConcurrencyLimitConfiguration configuration;
+	private final MetricRegistry metrics;
+	private final ConcurrentMap<String, LimitGroup> groups = new ConcurrentHashMap<String, LimitGroup>();
+
+	/**
+	 * Create a new adapter publishing limit metrics to the given registry.
+	 *
+	 * @param configuration the configuration of each group's limit
+	 * @param metrics the registry for limit metrics
+	 */
+	public ConcurrencyLimitResourceMethodDispatchAdapter(final ConcurrencyLimitConfiguration configuration, final MetricRegistry metrics) {
+		if (configuration == null) {
+			throw new IllegalArgumentException("configuration may not be null");
+		}
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null");
+		}
+		// fail now rather than when the first resource is dispatched
+		new AdaptiveConcurrencyLimit(configuration);
+		this.configuration = configuration;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ResourceMethodDispatchProvider adapt(final ResourceMethodDispatchProvider provider) {
+		return new ConcurrencyLimitResourceMethodDispatchProvider(provider);
+	}
+
+	/**
+	 * Return the limit of the named group, if any of its methods have been
+	 * dispatched to.
+	 *
+	 * @param group the group name
+	 * @return the limit, or null if the group does not exist
+	 */
+	public AdaptiveConcurrencyLimit getLimit(final String group) {
+		final LimitGroup limitGroup = this.groups.get(group);
+		return limitGroup != null ? limitGroup.limit : null;
+	}
+
+	private synchronized LimitGroup group(final String group) {
+		LimitGroup limitGroup = this.groups.get(group);
+		if (limitGroup == null) {
+			limitGroup = new LimitGroup(new AdaptiveConcurrencyLimit(this.configuration), this.metrics, name(PREFIX, group));
+			this.groups.put(group, limitGroup);
+		}
+		return limitGroup;
+	}
+
+	static String groupName(final AbstractResourceMethod method) {
+		ConcurrencyLimited annotation = method.getAnnotation(ConcurrencyLimited.class);
+		if (annotation == null) {
+			annotation = method.getResource().getResourceClass().getAnnotation(ConcurrencyLimited.class);
+		}
+		return annotation != null ? annotation.value() : method.getResource().getResourceClass().getName();
+	}
+
+	private class ConcurrencyLimitResourceMethodDispatchProvider implements ResourceMethodDispatchProvider {
+		private final ResourceMethodDispatchProvider provider;
+
+		ConcurrencyLimitResourceMethodDispatchProvider(final ResourceMethodDispatchProvider provider) {
+			this.provider = provider;
+		}
+
+		@Override
+		public RequestDispatcher create(final AbstractResourceMethod abstractResourceMethod) {
+			final RequestDispatcher dispatcher = this.provider.create(abstractResourceMethod);
+			if (dispatcher == null) {
+				return null;
+			}
+			return new ConcurrencyLimitRequestDispatcher(dispatcher, group(groupName(abstractResourceMethod)));
+		}
+	}
+
+	private static class LimitGroup {
+		private final AdaptiveConcurrencyLimit limit;
+		private final Meter rejections;
+
+		LimitGroup(final AdaptiveConcurrencyLimit limit, final MetricRegistry metrics, final String prefix) {
+			this.limit = limit;
+			this.rejections = metrics.meter(name(prefix, "rejections"));
+			metrics.register(name(prefix, "limit"), new Gauge<Integer>() {
+				@Override
+				public Integer getValue() {
+					return limit.getLimit();
+				}
+			});
+			metrics.register(name(prefix, "in-flight"), new Gauge<Integer>() {
+				@Override
+				public Integer getValue() {
+					return limit.getInFlight();
+				}
+			});
+		}
+	}
+
+	private static class ConcurrencyLimitRequestDispatcher implements RequestDispatcher {
+		private final RequestDispatcher dispatcher;
+		private final LimitGroup group;
+
+		ConcurrencyLimitRequestDispatcher(final RequestDispatcher dispatcher, final LimitGroup group) {
+			this.dispatcher = dispatcher;
+			this.group = group;
+		}
+
+		@Override
+		public void dispatch(final Object resource, final HttpContext context) {
+			final AdaptiveConcurrencyLimit limit = this.group.limit;
+			if (!limit.tryAcquire()) {
+				this.group.rejections.mark();
+				context.getResponse().setResponse(Response.status(Response.Status.SERVICE_UNAVAILABLE).build());
+				return;
+			}
+
+			final long start = System.nanoTime();
+			boolean released = false;
+			try {
+				this.dispatcher.dispatch(resource, context);
+				final ListenableFuture<?> future = pending(context);
+				if (future != null) {
+					releaseOnCompletion(limit, future, start);
+				}
+				else {
+					release(limit, isOverload(context.getResponse().getStatus()), start);
+				}
+				released = true;
+			}
+			catch (RuntimeException ex) {
+				release(limit, isOverload(ex), start);
+				released = true;
+				throw ex;
+			}
+			finally {
+				if (!released) {
+					limit.onIgnored();
+				}
+			}
+		}
+
+		// the future is the entity if the async adapter wraps this one, or
+		// a property of the suspended request if this one wraps it
+		private static ListenableFuture<?> pending(final HttpContext context) {
+			final Object entity = context.getResponse().getEntity();
+			if (entity instanceof ListenableFuture) {
+				return (ListenableFuture<?>) entity;
+			}
+			return (ListenableFuture<?>) context.getProperties().get(AsyncResponseResourceMethodDispatchAdapter.SUSPENDED_FUTURE_PROPERTY);
+		}
+
+		private static void releaseOnCompletion(final AdaptiveConcurrencyLimit limit, final ListenableFuture<?> future, final long start) {
+			future.addCallback(new ListenableFutureCallback<Object>() {
+				@Override
+				public void onSuccess(final Object value) {
+					release(limit, value instanceof Response && isOverload(((Response) value).getStatus()), start);
+				}
+
+				@Override
+				public void onFailure(final Throwable ex) {
+					release(limit, isOverload(ex), start);
+				}
+			});
+		}
+
+		private static void release(final AdaptiveConcurrencyLimit limit, final boolean overload, final long start) {
+			if (overload) {
+				limit.onDropped();
+			}
+			else {
+				limit.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			}
+		}
+
+		private static boolean isOverload(final int status) {
+			return status == Response.Status.SERVICE_UNAVAILABLE.getStatusCode()
+					|| status == 504
+					|| status == 429;
+		}
+
+		// a cancelled future is one the async adapter gave up waiting for
+		private static boolean isOverload(final Throwable ex) {
+			for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+				if (cause instanceof WebApplicationException) {
+					return isOverload(((WebApplicationException) cause).getResponse().getStatus());
+				}
+				if (cause instanceof TimeoutException || cause instanceof SocketTimeoutException
+						|| cause instanceof RejectedExecutionException || cause instanceof CancellationException) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
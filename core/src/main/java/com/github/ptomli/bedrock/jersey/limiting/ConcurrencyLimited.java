@@ -0,0 +1,28 @@
+package com.github.ptomli.bedrock.jersey.limiting;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Assigns resource methods to a named concurrency limit group.
+ * <p>
+ * Without this annotation the methods of a resource class share a limit
+ * named after the class. Annotating a class or method places it in the
+ * named group instead, so that several resources backed by the same
+ * downstream can share one limit.
+ *
+ * @see ConcurrencyLimitResourceMethodDispatchAdapter
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.TYPE, ElementType.METHOD })
+public @interface ConcurrencyLimited {
+
+	/**
+	 * The name of the limit group.
+	 */
+	String value();
+}
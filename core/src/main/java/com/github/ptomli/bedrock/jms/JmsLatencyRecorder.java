@@ -0,0 +1,237 @@
+package com.github.ptomli.bedrock.jms;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Queue;
+import javax.jms.Topic;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Records how long JMS messages spend queued in the broker, being processed,
+ * and in flight from their first send to the completion of their processing.
+ * <p>
+ * Outbound messages are {@link #stamp(Message) stamped} with properties
+ * holding the time they were sent, the time the first message of the chain
+ * was sent, and the number of hops taken. A message sent while processing a
+ * stamped message, on the same thread, continues that message's chain.
+ * Otherwise only a {@code sampleRate} fraction of messages are stamped, and
+ * so recorded, which keeps the overhead negligible at high message rates.
+ * <p>
+ * On consumption of a stamped message the following histograms are updated,
+ * in microseconds, where {@code <destination>} is the queue or topic name
+ * <ul>
+ * <li>{@code jms-latency.<destination>.queue-residence}, the time from the
+ * message being sent to it being received
+ * <li>{@code jms-latency.<destination>.processing}, the time taken by the
+ * listener
+ * <li>{@code jms-latency.<destination>.end-to-end}, the time from the first
+ * message of the chain being sent to the listener completing
+ * </ul>
+ * Queue residence and end-to-end latency compare wall clock times, so have
+ * millisecond resolution, and include any clock skew between hosts.
+ *
+ * @see LatencyStampingMessageConverter
+ * @see LatencyRecordingMessageListenerContainer
+ */
+public class JmsLatencyRecorder {
+
+	/**
+	 * The prefix of the latency metric names.
+	 */
+	public static final String PREFIX = "jms-latency";
+
+	/**
+	 * The message property holding the time the message was sent. The
+	 * {@code jms_} prefix stops Spring Integration copying the properties of
+	 * an inbound message onto the messages sent while processing it.
+	 */
+	public static final String SENT_AT_PROPERTY = "jms_bedrockSentAt";
+
+	/**
+	 * The message property holding the time the first message of the chain
+	 * was sent.
+	 */
+	public static final String ORIGIN_AT_PROPERTY = "jms_bedrockOriginAt";
+
+	/**
+	 * The message property holding the number of hops taken by the chain.
+	 */
+	public static final String HOPS_PROPERTY = "jms_bedrockHops";
+
+	private static final ThreadLocal<Sample> CURRENT = new ThreadLocal<Sample>();
+
+	private final MetricRegistry metrics;
+	private final double sampleRate;
+	private final Clock clock;
+	private final ConcurrentMap<String, DestinationHistograms> histograms = new ConcurrentHashMap<String, DestinationHistograms>();
+
+	/**
+	 * Create a new recorder.
+	 *
+	 * @param metrics the registry for the latency histograms
+	 * @param sampleRate the fraction of messages to stamp, between 0 and 1
+	 */
+	public JmsLatencyRecorder(final MetricRegistry metrics, final double sampleRate) {
+		this(metrics, sampleRate, Clock.defaultClock());
+	}
+
+	/**
+	 * Create a new recorder using the provided clock.
+	 *
+	 * @param metrics the registry for the latency histograms
+	 * @param sampleRate the fraction of messages to stamp, between 0 and 1
+	 * @param clock the clock to read times from
+	 */
+	public JmsLatencyRecorder(final MetricRegistry metrics, final double sampleRate, final Clock clock) {
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null");
+		}
+		if (sampleRate < 0 || sampleRate > 1) {
+			throw new IllegalArgumentException("sampleRate must be between 0 and 1");
+		}
+		if (clock == null) {
+			throw new IllegalArgumentException("clock may not be null");
+		}
+		this.metrics = metrics;
+		this.sampleRate = sampleRate;
+		this.clock = clock;
+	}
+
+	/**
+	 * Stamp an outbound message, if it continues the chain of the message
+	 * being processed by this thread, or is sampled.
+	 *
+	 * @param message the message to stamp
+	 * @throws JMSException if the message properties cannot be set
+	 */
+	public void stamp(final Message message) throws JMSException {
+		final Sample current = CURRENT.get();
+		final long now = this.clock.getTime();
+		if (current != null) {
+			message.setLongProperty(ORIGIN_AT_PROPERTY, current.originAt);
+			message.setIntProperty(HOPS_PROPERTY, current.hops + 1);
+		}
+		else if (this.sampleRate >= 1 || (this.sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < this.sampleRate)) {
+			message.setLongProperty(ORIGIN_AT_PROPERTY, now);
+			message.setIntProperty(HOPS_PROPERTY, 1);
+		}
+		else {
+			return;
+		}
+		message.setLongProperty(SENT_AT_PROPERTY, now);
+	}
+
+	/**
+	 * Begin processing a received message, recording its queue residence
+	 * time. The returned sample must be {@link Sample#end() ended} by the
+	 * same thread once processing completes.
+	 *
+	 * @param message the received message
+	 * @param destination the name of the destination the message was received from
+	 * @return the sample, or {@code null} if the message was not stamped
+	 * @throws JMSException if the message properties cannot be read
+	 */
+	public Sample begin(final Message message, final String destination) throws JMSException {
+		if (!message.propertyExists(SENT_AT_PROPERTY)) {
+			return null;
+		}
+		final long receivedAt = this.clock.getTime();
+		final DestinationHistograms histograms = this.histograms(destination);
+		histograms.queueResidence.update(elapsedMicros(message.getLongProperty(SENT_AT_PROPERTY), receivedAt));
+
+		final Sample sample = new Sample(histograms, message.getLongProperty(ORIGIN_AT_PROPERTY), message.getIntProperty(HOPS_PROPERTY), CURRENT.get());
+		CURRENT.set(sample);
+		return sample;
+	}
+
+	/**
+	 * Return the name of a destination, as used in the metric names.
+	 *
+	 * @param destination the destination
+	 * @return the queue or topic name
+	 * @throws JMSException if the name cannot be read
+	 */
+	public static String destinationName(final Destination destination) throws JMSException {
+		if (destination instanceof Queue) {
+			return ((Queue) destination).getQueueName();
+		}
+		if (destination instanceof Topic) {
+			return ((Topic) destination).getTopicName();
+		}
+		return String.valueOf(destination);
+	}
+
+	private DestinationHistograms histograms(final String destination) {
+		DestinationHistograms histograms = this.histograms.get(destination);
+		if (histograms == null) {
+			histograms = new DestinationHistograms(this.metrics, name(PREFIX, destination));
+			final DestinationHistograms existing = this.histograms.putIfAbsent(destination, histograms);
+			if (existing != null) {
+				histograms = existing;
+			}
+		}
+		return histograms;
+	}
+
+	// clock skew between hosts can make a message appear to arrive before it was sent
+	private static long elapsedMicros(final long from, final long to) {
+		return TimeUnit.MILLISECONDS.toMicros(Math.max(0, to - from));
+	}
+
+	/**
+	 * The processing of a stamped message.
+	 */
+	public final class Sample {
+		private final DestinationHistograms histograms;
+		private final long originAt;
+		private final int hops;
+		private final Sample previous;
+		private final long startTick;
+
+		Sample(final DestinationHistograms histograms, final long originAt, final int hops, final Sample previous) {
+			this.histograms = histograms;
+			this.originAt = originAt;
+			this.hops = hops;
+			this.previous = previous;
+			this.startTick = clock.getTick();
+		}
+
+		/**
+		 * End processing of the message, recording its processing time and
+		 * end-to-end latency.
+		 */
+		public void end() {
+			this.histograms.processing.update(TimeUnit.NANOSECONDS.toMicros(clock.getTick() - this.startTick));
+			this.histograms.endToEnd.update(elapsedMicros(this.originAt, clock.getTime()));
+			if (this.previous != null) {
+				CURRENT.set(this.previous);
+			}
+			else {
+				CURRENT.remove();
+			}
+		}
+	}
+
+	private static class DestinationHistograms {
+		private final Histogram queueResidence;
+		private final Histogram processing;
+		private final Histogram endToEnd;
+
+		DestinationHistograms(final MetricRegistry metrics, final String prefix) {
+			this.queueResidence = metrics.histogram(name(prefix, "queue-residence"));
+			this.processing = metrics.histogram(name(prefix, "processing"));
+			this.endToEnd = metrics.histogram(name(prefix, "end-to-end"));
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.github.ptomli.bedrock.jms;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+
+/**
+ * A {@link DefaultMessageListenerContainer} which records the latency of the
+ * stamped messages it consumes with a {@link JmsLatencyRecorder}.
+ * <p>
+ * As the recording wraps the invocation of whichever listener the container
+ * is given, it can be used with a Spring Integration message driven channel
+ * adapter, for example
+ * <pre>
+ * <code>
+ * &lt;bean id="container" class="com.github.ptomli.bedrock.jms.LatencyRecordingMessageListenerContainer"&gt;
+ *     &lt;property name="connectionFactory" ref="connectionFactory"/&gt;
+ *     &lt;property name="destinationName" value="orders"/&gt;
+ *     &lt;property name="latencyRecorder" ref="latencyRecorder"/&gt;
+ * &lt;/bean&gt;
+ *
+ * &lt;int-jms:message-driven-channel-adapter container="container" channel="orders"/&gt;
+ * </code>
+ * </pre>
+ * Messages sent by the listener on the container's thread continue the chain
+ * of the message being processed, so for them end-to-end latency covers every
+ * hop. Listeners handing work to other threads, such as through an executor
+ * channel, start new chains.
+ */
+public class LatencyRecordingMessageListenerContainer extends DefaultMessageListenerContainer {
+
+	private JmsLatencyRecorder latencyRecorder;
+
+	/**
+	 * Set the recorder to record message latency with.
+	 *
+	 * @param latencyRecorder the recorder
+	 */
+	public void setLatencyRecorder(final JmsLatencyRecorder latencyRecorder) {
+		this.latencyRecorder = latencyRecorder;
+	}
+
+	@Override
+	protected void validateConfiguration() {
+		super.validateConfiguration();
+		if (this.latencyRecorder == null) {
+			throw new IllegalArgumentException("Property 'latencyRecorder' is required");
+		}
+	}
+
+	@Override
+	protected void invokeListener(final Session session, final Message message) throws JMSException {
+		final JmsLatencyRecorder.Sample sample = this.latencyRecorder.begin(message, this.destinationName(message));
+		try {
+			super.invokeListener(session, message);
+		}
+		finally {
+			if (sample != null) {
+				sample.end();
+			}
+		}
+	}
+
+	private String destinationName(final Message message) throws JMSException {
+		if (this.getDestinationName() != null) {
+			return this.getDestinationName();
+		}
+		return JmsLatencyRecorder.destinationName(message.getJMSDestination() != null ? message.getJMSDestination() : this.getDestination());
+	}
+}
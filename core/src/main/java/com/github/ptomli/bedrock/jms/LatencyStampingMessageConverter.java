@@ -0,0 +1,63 @@
+package com.github.ptomli.bedrock.jms;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+
+/**
+ * A {@link MessageConverter} which {@link JmsLatencyRecorder#stamp(Message)
+ * stamps} the messages created by another converter, so that their latency
+ * can be recorded when they are consumed.
+ * <p>
+ * For example, for a {@code JmsTemplate} or Spring Integration outbound
+ * adapter
+ * <pre>
+ * <code>
+ * &lt;bean id="messageConverter" class="com.github.ptomli.bedrock.jms.LatencyStampingMessageConverter"&gt;
+ *     &lt;constructor-arg&gt;
+ *         &lt;bean class="com.github.ptomli.bedrock.jms.SmileMessageConverter"&gt;
+ *             &lt;constructor-arg ref="objectMapper"/&gt;
+ *         &lt;/bean&gt;
+ *     &lt;/constructor-arg&gt;
+ *     &lt;constructor-arg ref="latencyRecorder"/&gt;
+ * &lt;/bean&gt;
+ * </code>
+ * </pre>
+ */
+public class LatencyStampingMessageConverter implements MessageConverter {
+
+	private final MessageConverter delegate;
+	private final JmsLatencyRecorder recorder;
+
+	/**
+	 * Create a new converter.
+	 *
+	 * @param delegate the converter creating the messages
+	 * @param recorder the recorder stamping the messages
+	 */
+	public LatencyStampingMessageConverter(final MessageConverter delegate, final JmsLatencyRecorder recorder) {
+		if (delegate == null) {
+			throw new IllegalArgumentException("delegate may not be null");
+		}
+		if (recorder == null) {
+			throw new IllegalArgumentException("recorder may not be null");
+		}
+		this.delegate = delegate;
+		this.recorder = recorder;
+	}
+
+	@Override
+	public Message toMessage(final Object object, final Session session) throws JMSException, MessageConversionException {
+		final Message message = this.delegate.toMessage(object, session);
+		this.recorder.stamp(message);
+		return message;
+	}
+
+	@Override
+	public Object fromMessage(final Message message) throws JMSException, MessageConversionException {
+		return this.delegate.fromMessage(message);
+	}
+}
@@ -0,0 +1,206 @@
+package com.github.ptomli.bedrock.jms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.util.ClassUtils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.base.Strings;
+
+/**
+ * A JMS {@link MessageConverter} which writes objects as Smile, the binary
+ * form of JSON, into a {@link BytesMessage}.
+ * <p>
+ * Objects are serialized by the provided {@link ObjectMapper}, usually the
+ * DropWizard environment's mapper, so that modules, naming strategy and
+ * serializer caches are shared with the rest of the application, but to a
+ * Smile rather than a JSON text generator. The Java type of the payload is
+ * written to a message property, {@code __TypeId__} by default, and used to
+ * read the payload back.
+ * <p>
+ * Each thread reuses its serialization buffer, buffers which grow beyond
+ * {@link #MAX_RETAINED_BUFFER_SIZE} are discarded after use.
+ * <p>
+ * For example
+ * <pre>
+ * <code>
+ * &lt;bean id="messageConverter" class="com.github.ptomli.bedrock.jms.SmileMessageConverter"&gt;
+ *     &lt;constructor-arg ref="objectMapper"/&gt;
+ * &lt;/bean&gt;
+ * </code>
+ * </pre>
+ */
+public class SmileMessageConverter implements MessageConverter, BeanClassLoaderAware {
+
+	/**
+	 * The default name of the message property holding the payload type.
+	 */
+	public static final String DEFAULT_TYPE_ID_PROPERTY_NAME = "__TypeId__";
+
+	/**
+	 * The largest buffer kept for reuse by each thread.
+	 */
+	public static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
+	private final ObjectMapper mapper;
+	private final ObjectWriter writer;
+	private final SmileFactory factory = new SmileFactory();
+	private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<Class<?>, ObjectReader>();
+	private final ThreadLocal<Buffer> buffers = new ThreadLocal<Buffer>() {
+		@Override
+		protected Buffer initialValue() {
+			return new Buffer();
+		}
+	};
+
+	private String typeIdPropertyName = DEFAULT_TYPE_ID_PROPERTY_NAME;
+	private ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+
+	/**
+	 * Create a new converter using the provided mapper.
+	 *
+	 * @param mapper the mapper to serialize payloads with
+	 */
+	public SmileMessageConverter(final ObjectMapper mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("mapper may not be null");
+		}
+		this.mapper = mapper;
+		this.writer = mapper.writer();
+	}
+
+	/**
+	 * Set the name of the message property holding the payload type.
+	 *
+	 * @param typeIdPropertyName the property name
+	 */
+	public void setTypeIdPropertyName(final String typeIdPropertyName) {
+		if (Strings.isNullOrEmpty(typeIdPropertyName)) {
+			throw new IllegalArgumentException("typeIdPropertyName may not be null or empty");
+		}
+		this.typeIdPropertyName = typeIdPropertyName;
+	}
+
+	@Override
+	public void setBeanClassLoader(final ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	@Override
+	public Message toMessage(final Object object, final Session session) throws JMSException, MessageConversionException {
+		final Buffer buffer = this.buffers.get();
+		try {
+			final JsonGenerator generator = this.factory.createGenerator(buffer);
+			try {
+				this.writer.writeValue(generator, object);
+			}
+			finally {
+				generator.close();
+			}
+
+			final BytesMessage message = session.createBytesMessage();
+			message.writeBytes(buffer.array(), 0, buffer.size());
+			if (object != null) {
+				message.setStringProperty(this.typeIdPropertyName, object.getClass().getName());
+			}
+			return message;
+		}
+		catch (IOException ex) {
+			throw new MessageConversionException("Could not write " + ClassUtils.getDescriptiveType(object) + " as Smile", ex);
+		}
+		finally {
+			buffer.recycle();
+		}
+	}
+
+	@Override
+	public Object fromMessage(final Message message) throws JMSException, MessageConversionException {
+		if (!(message instanceof BytesMessage)) {
+			throw new MessageConversionException("Cannot convert " + message.getClass().getName() + ", only BytesMessage is supported");
+		}
+		final BytesMessage bytesMessage = (BytesMessage) message;
+		final String typeId = message.getStringProperty(this.typeIdPropertyName);
+		if (typeId == null) {
+			return null;
+		}
+
+		final Buffer buffer = this.buffers.get();
+		try {
+			final int length = (int) bytesMessage.getBodyLength();
+			final byte[] bytes = buffer.ensureCapacity(length);
+			bytesMessage.readBytes(bytes, length);
+
+			final JsonParser parser = this.factory.createParser(bytes, 0, length);
+			try {
+				return this.reader(typeId).readValue(parser);
+			}
+			finally {
+				parser.close();
+			}
+		}
+		catch (IOException ex) {
+			throw new MessageConversionException("Could not read Smile payload as " + typeId, ex);
+		}
+		finally {
+			buffer.recycle();
+		}
+	}
+
+	private ObjectReader reader(final String typeId) {
+		final Class<?> type;
+		try {
+			type = ClassUtils.forName(typeId, this.classLoader);
+		}
+		catch (ClassNotFoundException ex) {
+			throw new MessageConversionException("Unknown payload type " + typeId, ex);
+		}
+		ObjectReader reader = this.readers.get(type);
+		if (reader == null) {
+			reader = this.mapper.reader(type);
+			this.readers.putIfAbsent(type, reader);
+		}
+		return reader;
+	}
+
+	private static class Buffer extends ByteArrayOutputStream {
+		Buffer() {
+			super(INITIAL_BUFFER_SIZE);
+		}
+
+		byte[] array() {
+			return this.buf;
+		}
+
+		byte[] ensureCapacity(final int capacity) {
+			if (this.buf.length < capacity) {
+				this.buf = new byte[capacity];
+			}
+			return this.buf;
+		}
+
+		void recycle() {
+			this.reset();
+			if (this.buf.length > MAX_RETAINED_BUFFER_SIZE) {
+				this.buf = new byte[INITIAL_BUFFER_SIZE];
+			}
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package com.github.ptomli.bedrock.lifecycle;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle.AbstractLifeCycleListener;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jms.listener.AbstractJmsListeningContainer;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * A Jetty {@link LifeCycle.Listener} which drains traffic from the service as
+ * the server stops, before DropWizard stops its managed objects.
+ * <p>
+ * When the server begins to stop, while its connectors are still open
+ * <ol>
+ * <li>the {@link ReadinessHealthCheck} becomes unhealthy
+ * <li>requests continue to be served for the configured readiness delay
+ * <li>every JMS listener container in the application contexts is stopped,
+ * so that no new messages are received
+ * <li>in flight requests, counted by the {@link InFlightRequestFilter}, and
+ * messages being processed by the listener containers are given up to the
+ * configured drain timeout to complete
+ * </ol>
+ * The server then closes its connectors and stops the managed objects and
+ * lifecycles registered with the environment, in the reverse order of
+ * registration. Once the server has stopped, the application contexts are
+ * closed in the order given.
+ * <p>
+ * The following metrics are published
+ * <ul>
+ * <li>{@code graceful-shutdown.in-flight-requests}, a gauge of the requests in flight
+ * <li>{@code graceful-shutdown.drain}, a timer of the whole drain
+ * <li>{@code graceful-shutdown.drain-requests}, a timer of the wait for in
+ * flight requests
+ * <li>{@code graceful-shutdown.drain-messages}, a timer of the further wait
+ * for the listener containers to stop, once the in flight requests have
+ * drained
+ * </ul>
+ */
+public class GracefulShutdown extends AbstractLifeCycleListener {
+	private static final Logger LOG = LoggerFactory.getLogger(GracefulShutdown.class);
+
+	/**
+	 * The prefix of the graceful shutdown metric names.
+	 */
+	public static final String PREFIX = "graceful-shutdown";
+
+	private final GracefulShutdownConfiguration configuration;
+	private final List<ConfigurableApplicationContext> contexts;
+	private final ReadinessHealthCheck readiness = new ReadinessHealthCheck();
+	private final InFlightRequestFilter requests = new InFlightRequestFilter();
+	private final Timer drain;
+	private final Timer drainRequests;
+	private final Timer drainMessages;
+
+	/**
+	 * Create a new graceful shutdown.
+	 *
+	 * @param configuration the shutdown configuration
+	 * @param metrics the registry for the shutdown metrics
+	 * @param contexts the application contexts to drain and close
+	 */
+	public GracefulShutdown(final GracefulShutdownConfiguration configuration, final MetricRegistry metrics, final ConfigurableApplicationContext... contexts) {
+		if (configuration == null) {
+			throw new IllegalArgumentException("configuration may not be null");
+		}
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null");
+		}
+		this.configuration = configuration;
+		this.contexts = new ArrayList<ConfigurableApplicationContext>(Arrays.asList(contexts));
+		this.drain = metrics.timer(name(PREFIX, "drain"));
+		this.drainRequests = metrics.timer(name(PREFIX, "drain-requests"));
+		this.drainMessages = metrics.timer(name(PREFIX, "drain-messages"));
+		metrics.register(name(PREFIX, "in-flight-requests"), new Gauge<Integer>() {
+			@Override
+			public Integer getValue() {
+				return requests.getInFlight();
+			}
+		});
+	}
+
+	/**
+	 * Return the health check which becomes unhealthy as the server stops.
+	 *
+	 * @return the readiness health check
+	 */
+	public ReadinessHealthCheck getReadinessHealthCheck() {
+		return this.readiness;
+	}
+
+	/**
+	 * Return the filter counting the requests in flight, which must be
+	 * registered in front of the resources to be drained.
+	 *
+	 * @return the request filter
+	 */
+	public InFlightRequestFilter getInFlightRequestFilter() {
+		return this.requests;
+	}
+
+	@Override
+	public void lifeCycleStopping(final LifeCycle event) {
+		final Timer.Context timer = this.drain.time();
+		try {
+			this.drain();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			LOG.warn("interrupted while draining, stopping immediately");
+		}
+		finally {
+			LOG.info("drained in {} ms", TimeUnit.NANOSECONDS.toMillis(timer.stop()));
+		}
+	}
+
+	@Override
+	public void lifeCycleStopped(final LifeCycle event) {
+		for (final ConfigurableApplicationContext context : this.contexts) {
+			if (context.isActive()) {
+				LOG.info("closing application context: {}", context.getDisplayName());
+				try {
+					context.close();
+				}
+				catch (RuntimeException ex) {
+					LOG.error("unable to close application context: {}", context.getDisplayName(), ex);
+				}
+			}
+		}
+	}
+
+	private void drain() throws InterruptedException {
+		LOG.info("shutting down, marking service as not ready");
+		this.readiness.markNotReady();
+		final long readinessDelay = this.configuration.getReadinessDelay().toNanoseconds();
+		if (readinessDelay > 0) {
+			TimeUnit.NANOSECONDS.sleep(readinessDelay);
+		}
+
+		final long deadline = System.nanoTime() + this.configuration.getDrainTimeout().toNanoseconds();
+		final List<AbstractJmsListeningContainer> containers = this.listenerContainers();
+		final CountDownLatch stopped = new CountDownLatch(containers.size());
+		for (final AbstractJmsListeningContainer container : containers) {
+			LOG.debug("stopping listener container {}", container);
+			container.stop(new Runnable() {
+				@Override
+				public void run() {
+					stopped.countDown();
+				}
+			});
+		}
+
+		final Timer.Context requests = this.drainRequests.time();
+		if (!this.requests.awaitDrained(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+			LOG.warn("{} requests still in flight after drain timeout", this.requests.getInFlight());
+		}
+		requests.stop();
+
+		final Timer.Context messages = this.drainMessages.time();
+		if (!stopped.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+			LOG.warn("{} listener containers still processing messages after drain timeout", stopped.getCount());
+		}
+		messages.stop();
+	}
+
+	private List<AbstractJmsListeningContainer> listenerContainers() {
+		final List<AbstractJmsListeningContainer> containers = new ArrayList<AbstractJmsListeningContainer>();
+		for (final ConfigurableApplicationContext context : this.contexts) {
+			if (context.isActive()) {
+				final Map<String, AbstractJmsListeningContainer> beans = context.getBeansOfType(AbstractJmsListeningContainer.class, false, false);
+				for (final AbstractJmsListeningContainer container : beans.values()) {
+					if (container.isRunning()) {
+						containers.add(container);
+					}
+				}
+			}
+		}
+		return containers;
+	}
+}
@@ -0,0 +1,55 @@
+package com.github.ptomli.bedrock.lifecycle;
+
+import io.dropwizard.util.Duration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Configuration of a {@link GracefulShutdown}, which can be easily used with
+ * a DropWizard configuration.
+ * <p>
+ * Once the server begins to stop, the readiness health check reports
+ * unhealthy, and requests continue to be served for {@code readinessDelay}
+ * so that load balancers polling the health check stop routing traffic to
+ * this node. In flight requests and JMS messages are then given up to
+ * {@code drainTimeout} to complete.
+ * <p>
+ * Expects YAML like
+ * <pre>
+ * <code>
+ * readinessDelay: 5s
+ * drainTimeout: 20s
+ * </code>
+ * </pre>
+ * The DropWizard {@code server.shutdownGracePeriod} applies separately,
+ * once draining is complete.
+ *
+ * @see GracefulShutdown
+ */
+public class GracefulShutdownConfiguration {
+
+	@JsonProperty
+	private Duration readinessDelay = Duration.seconds(0);
+
+	@JsonProperty
+	private Duration drainTimeout = Duration.seconds(30);
+
+	/**
+	 * The time to continue serving requests after the readiness health check
+	 * becomes unhealthy.
+	 *
+	 * @return the readiness delay
+	 */
+	public Duration getReadinessDelay() {
+		return this.readinessDelay;
+	}
+
+	/**
+	 * The maximum time to wait for in flight requests and messages.
+	 *
+	 * @return the drain timeout
+	 */
+	public Duration getDrainTimeout() {
+		return this.drainTimeout;
+	}
+}
@@ -0,0 +1,122 @@
+package com.github.ptomli.bedrock.lifecycle;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * A servlet {@link Filter} which counts the requests in flight, so that
+ * shutdown can wait for them to complete.
+ * <p>
+ * Requests which are suspended with Servlet 3 asynchronous processing remain
+ * in flight until their asynchronous context completes.
+ *
+ * @see GracefulShutdown
+ */
+public class InFlightRequestFilter implements Filter {
+
+	private final Object monitor = new Object();
+	private int inFlight = 0;
+
+	/**
+	 * Return the number of requests in flight.
+	 *
+	 * @return the number of requests in flight
+	 */
+	public int getInFlight() {
+		synchronized (this.monitor) {
+			return this.inFlight;
+		}
+	}
+
+	/**
+	 * Wait for the requests in flight to complete.
+	 *
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of {@code timeout}
+	 * @return true if no requests are in flight, false if the timeout elapsed first
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitDrained(final long timeout, final TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (this.monitor) {
+			while (this.inFlight > 0) {
+				final long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(this.monitor, remaining);
+			}
+			return true;
+		}
+	}
+
+	@Override
+	public void init(final FilterConfig filterConfig) throws ServletException {
+	}
+
+	@Override
+	public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain) throws IOException, ServletException {
+		this.increment();
+		boolean async = false;
+		try {
+			chain.doFilter(request, response);
+			if (request.isAsyncStarted()) {
+				request.getAsyncContext().addListener(new CompletionListener());
+				async = true;
+			}
+		}
+		finally {
+			if (!async) {
+				this.decrement();
+			}
+		}
+	}
+
+	@Override
+	public void destroy() {
+	}
+
+	private void increment() {
+		synchronized (this.monitor) {
+			this.inFlight++;
+		}
+	}
+
+	private void decrement() {
+		synchronized (this.monitor) {
+			if (--this.inFlight == 0) {
+				this.monitor.notifyAll();
+			}
+		}
+	}
+
+	// onComplete is called after an error or timeout too, so only count it
+	private class CompletionListener implements AsyncListener {
+		@Override
+		public void onComplete(final AsyncEvent event) throws IOException {
+			decrement();
+		}
+
+		@Override
+		public void onTimeout(final AsyncEvent event) throws IOException {
+		}
+
+		@Override
+		public void onError(final AsyncEvent event) throws IOException {
+		}
+
+		@Override
+		public void onStartAsync(final AsyncEvent event) throws IOException {
+			event.getAsyncContext().addListener(this);
+		}
+	}
+}
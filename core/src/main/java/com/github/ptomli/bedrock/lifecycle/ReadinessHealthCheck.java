@@ -0,0 +1,36 @@
+package com.github.ptomli.bedrock.lifecycle;
+
+import com.codahale.metrics.health.HealthCheck;
+
+/**
+ * A {@link HealthCheck} which is healthy until the service begins to shut
+ * down, so that load balancers stop routing new traffic to it while in
+ * flight work drains.
+ *
+ * @see GracefulShutdown
+ */
+public class ReadinessHealthCheck extends HealthCheck {
+
+	private volatile boolean ready = true;
+
+	/**
+	 * Mark the service as no longer ready to receive traffic.
+	 */
+	public void markNotReady() {
+		this.ready = false;
+	}
+
+	/**
+	 * Return whether the service is ready to receive traffic.
+	 *
+	 * @return true if the service is not shutting down
+	 */
+	public boolean isReady() {
+		return this.ready;
+	}
+
+	@Override
+	protected Result check() throws Exception {
+		return this.ready ? Result.healthy() : Result.unhealthy("shutting down");
+	}
+}
@@ -0,0 +1,292 @@
+package com.github.ptomli.bedrock.metrics;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.Path;
+import javax.ws.rs.ext.Provider;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.AopInfrastructureBean;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.framework.ProxyProcessorSupport;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.BridgeMethodResolver;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Gauge;
+import com.codahale.metrics.annotation.Metered;
+import com.codahale.metrics.annotation.Timed;
+import com.google.common.base.Strings;
+
+/**
+ * A {@link BeanPostProcessor} which honours the {@link Timed},
+ * {@link Metered}, {@link ExceptionMetered} and {@link Gauge} annotations on
+ * any Spring bean, in the same way as DropWizard does for Jersey resources.
+ * <p>
+ * Beans with annotated public methods are proxied, or if already proxied
+ * have advice added to the existing proxy. The post processor is
+ * {@link Ordered} at {@link Ordered#LOWEST_PRECEDENCE lowest precedence}, so
+ * when declared as a bean it runs after the auto proxy creators, which then
+ * see the bean's own class, and the timing wraps their advice. Each metric is created or looked
+ * up when the proxy is created, so calling an annotated method only updates
+ * the metric. Metrics are named after the class declaring the method and the
+ * method name, or the annotation's name, which is used as-is if
+ * {@code absolute} is set.
+ * <p>
+ * Annotated fields, and annotated public methods without parameters, are
+ * registered as gauges reading the bean.
+ * <p>
+ * Jersey resources and providers, classes annotated with {@link Path} or
+ * {@link Provider}, are never proxied, as DropWizard already instruments
+ * their annotated methods. Their gauges are still registered.
+ */
+public class MetricsAnnotationBeanPostProcessor extends ProxyProcessorSupport implements BeanPostProcessor {
+	private static final long serialVersionUID = 1L;
+	private static final Logger LOG = LoggerFactory.getLogger(MetricsAnnotationBeanPostProcessor.class);
+
+	private final MetricRegistry metrics;
+
+	/**
+	 * Create a new post processor registering metrics with the given registry.
+	 *
+	 * @param metrics the registry for the bean metrics
+	 */
+	public MetricsAnnotationBeanPostProcessor(final MetricRegistry metrics) {
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null");
+		}
+		this.metrics = metrics;
+		this.setOrder(Ordered.LOWEST_PRECEDENCE);
+	}
+
+	@Override
+	public Object postProcessBeforeInitialization(final Object bean, final String beanName) throws BeansException {
+		return bean;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(final Object bean, final String beanName) throws BeansException {
+		if (bean instanceof AopInfrastructureBean) {
+			return bean;
+		}
+
+		final Class<?> targetClass = AopUtils.getTargetClass(bean);
+		this.registerGauges(this.target(bean, beanName), targetClass);
+
+		// DropWizard times Jersey resources and providers itself, and a JDK
+		// proxy would hide the class level @Path from Jersey
+		if (isJerseyComponent(targetClass)) {
+			return bean;
+		}
+
+		final List<Advisor> advisors = this.advisors(targetClass);
+		if (advisors.isEmpty()) {
+			return bean;
+		}
+
+		if (bean instanceof Advised && !((Advised) bean).isFrozen()) {
+			for (final Advisor advisor : advisors) {
+				((Advised) bean).addAdvisor(0, advisor);
+			}
+			return bean;
+		}
+
+		final ProxyFactory proxyFactory = new ProxyFactory();
+		proxyFactory.copyFrom(this);
+		proxyFactory.setTarget(bean);
+		if (!proxyFactory.isProxyTargetClass()) {
+			this.evaluateProxyInterfaces(bean.getClass(), proxyFactory);
+		}
+		for (final Advisor advisor : advisors) {
+			proxyFactory.addAdvisor(advisor);
+		}
+		return proxyFactory.getProxy(this.getProxyClassLoader());
+	}
+
+	private static boolean isJerseyComponent(final Class<?> targetClass) {
+		return AnnotationUtils.findAnnotation(targetClass, Path.class) != null
+				|| AnnotationUtils.findAnnotation(targetClass, Provider.class) != null;
+	}
+
+	private Object target(final Object bean, final String beanName) {
+		if (!(bean instanceof Advised) || !((Advised) bean).getTargetSource().isStatic()) {
+			return bean;
+		}
+		try {
+			return ((Advised) bean).getTargetSource().getTarget();
+		}
+		catch (Exception ex) {
+			throw new BeanCreationException(beanName, "Unable to obtain proxy target for gauges", ex);
+		}
+	}
+
+	private List<Advisor> advisors(final Class<?> targetClass) {
+		final List<Advisor> advisors = new ArrayList<Advisor>();
+		for (final Method method : ReflectionUtils.getUniqueDeclaredMethods(targetClass)) {
+			if (!Modifier.isPublic(method.getModifiers()) || Modifier.isStatic(method.getModifiers())) {
+				continue;
+			}
+
+			final Timed timed = AnnotationUtils.findAnnotation(method, Timed.class);
+			if (timed != null) {
+				final Timer timer = this.metrics.timer(chooseName(timed.name(), timed.absolute(), method));
+				advisors.add(new DefaultPointcutAdvisor(new MethodPointcut(method), new TimedInterceptor(timer)));
+			}
+
+			final Metered metered = AnnotationUtils.findAnnotation(method, Metered.class);
+			if (metered != null) {
+				final Meter meter = this.metrics.meter(chooseName(metered.name(), metered.absolute(), method));
+				advisors.add(new DefaultPointcutAdvisor(new MethodPointcut(method), new MeteredInterceptor(meter)));
+			}
+
+			final ExceptionMetered exceptionMetered = AnnotationUtils.findAnnotation(method, ExceptionMetered.class);
+			if (exceptionMetered != null) {
+				final Meter meter = this.metrics.meter(chooseName(exceptionMetered.name(), exceptionMetered.absolute(), method, ExceptionMetered.DEFAULT_NAME_SUFFIX));
+				advisors.add(new DefaultPointcutAdvisor(new MethodPointcut(method), new ExceptionMeteredInterceptor(meter, exceptionMetered.cause())));
+			}
+		}
+		return advisors;
+	}
+
+	private void registerGauges(final Object target, final Class<?> targetClass) {
+		ReflectionUtils.doWithFields(targetClass, new ReflectionUtils.FieldCallback() {
+			@Override
+			public void doWith(final Field field) {
+				final Gauge gauge = field.getAnnotation(Gauge.class);
+				if (gauge != null) {
+					ReflectionUtils.makeAccessible(field);
+					register(chooseName(gauge.name(), gauge.absolute(), field), new com.codahale.metrics.Gauge<Object>() {
+						@Override
+						public Object getValue() {
+							return ReflectionUtils.getField(field, target);
+						}
+					});
+				}
+			}
+		});
+
+		for (final Method method : ReflectionUtils.getUniqueDeclaredMethods(targetClass)) {
+			final Gauge gauge = AnnotationUtils.findAnnotation(method, Gauge.class);
+			if (gauge == null) {
+				continue;
+			}
+			if (method.getParameterTypes().length != 0 || method.getReturnType() == void.class) {
+				throw new IllegalStateException("@Gauge method " + method + " must have no parameters and return a value");
+			}
+			ReflectionUtils.makeAccessible(method);
+			register(chooseName(gauge.name(), gauge.absolute(), method), new com.codahale.metrics.Gauge<Object>() {
+				@Override
+				public Object getValue() {
+					return ReflectionUtils.invokeMethod(method, target);
+				}
+			});
+		}
+	}
+
+	private void register(final String name, final com.codahale.metrics.Gauge<Object> gauge) {
+		LOG.debug("registering gauge {}", name);
+		this.metrics.remove(name);
+		this.metrics.register(name, gauge);
+	}
+
+	static String chooseName(final String explicitName, final boolean absolute, final Member member, final String... suffixes) {
+		if (!Strings.isNullOrEmpty(explicitName)) {
+			return absolute ? explicitName : name(member.getDeclaringClass(), explicitName);
+		}
+		return name(name(member.getDeclaringClass(), member.getName()), suffixes);
+	}
+
+	private static class MethodPointcut extends StaticMethodMatcherPointcut {
+		private final Method method;
+
+		MethodPointcut(final Method method) {
+			this.method = method;
+		}
+
+		@Override
+		public boolean matches(final Method method, final Class<?> targetClass) {
+			final Method specific = AopUtils.getMostSpecificMethod(method, ClassUtils.getUserClass(targetClass));
+			return this.method.equals(BridgeMethodResolver.findBridgedMethod(specific));
+		}
+	}
+
+	private static class TimedInterceptor implements MethodInterceptor {
+		private final Timer timer;
+
+		TimedInterceptor(final Timer timer) {
+			this.timer = timer;
+		}
+
+		@Override
+		public Object invoke(final MethodInvocation invocation) throws Throwable {
+			final Timer.Context context = this.timer.time();
+			try {
+				return invocation.proceed();
+			}
+			finally {
+				context.stop();
+			}
+		}
+	}
+
+	private static class MeteredInterceptor implements MethodInterceptor {
+		private final Meter meter;
+
+		MeteredInterceptor(final Meter meter) {
+			this.meter = meter;
+		}
+
+		@Override
+		public Object invoke(final MethodInvocation invocation) throws Throwable {
+			this.meter.mark();
+			return invocation.proceed();
+		}
+	}
+
+	private static class ExceptionMeteredInterceptor implements MethodInterceptor {
+		private final Meter meter;
+		private final Class<? extends Throwable> cause;
+
+		ExceptionMeteredInterceptor(final Meter meter, final Class<? extends Throwable> cause) {
+			this.meter = meter;
+			this.cause = cause;
+		}
+
+		@Override
+		public Object invoke(final MethodInvocation invocation) throws Throwable {
+			try {
+				return invocation.proceed();
+			}
+			catch (Throwable ex) {
+				if (this.cause.isInstance(ex)) {
+					this.meter.mark();
+				}
+				throw ex;
+			}
+		}
+	}
+}
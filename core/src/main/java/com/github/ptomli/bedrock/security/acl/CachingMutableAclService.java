@@ -0,0 +1,352 @@
+package com.github.ptomli.bedrock.security.acl;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.acls.domain.ObjectIdentityRetrievalStrategyImpl;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.AlreadyExistsException;
+import org.springframework.security.acls.model.ChildrenExistException;
+import org.springframework.security.acls.model.MutableAcl;
+import org.springframework.security.acls.model.MutableAclService;
+import org.springframework.security.acls.model.NotFoundException;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.ObjectIdentityRetrievalStrategy;
+import org.springframework.security.acls.model.Sid;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.SetMultimap;
+
+/**
+ * A {@link MutableAclService} which caches the ACLs read from another
+ * service, such as a {@code JdbcMutableAclService}, in a bounded in-process
+ * cache.
+ * <p>
+ * ACLs missing from the cache are read from the delegate service in a single
+ * {@link #readAclsById(List, List)} call, so checking a collection of domain
+ * objects costs one batched lookup rather than one per object. Call
+ * {@link #preload(Collection)} with the domain objects of a list response
+ * before filtering or checking them one by one. Objects found to have no ACL
+ * are remembered in a second cache of the same specification, so they are
+ * neither looked up again nor break later batches.
+ * <p>
+ * ACLs are cached as complete ACLs, regardless of the {@link Sid}s requested,
+ * so the delegate must load every entry, as the standard
+ * {@code BasicLookupStrategy} does. Creating, updating or deleting an ACL
+ * through this service evicts it, and every cached ACL inheriting from it,
+ * and forgets that it was missing. A lookup which overlaps such a change is
+ * returned but not cached, so it cannot restore the evicted ACL. Changes made
+ * by other processes are only seen once entries expire, so the cache
+ * specification should usually include {@code expireAfterWrite}.
+ * <p>
+ * The following metrics are published
+ * <ul>
+ * <li>{@code <name>.hits}, {@code <name>.misses}, {@code <name>.evictions}
+ * and {@code <name>.size}, gauges of the cache statistics
+ * <li>{@code <name>.hit-ratio}, a gauge of the cache hit ratio
+ * <li>{@code <name>.lookups}, a timer of the delegate lookups
+ * </ul>
+ */
+public class CachingMutableAclService implements MutableAclService {
+	private static final Logger LOG = LoggerFactory.getLogger(CachingMutableAclService.class);
+
+	/**
+	 * The default cache specification.
+	 */
+	public static final String DEFAULT_SPEC = "maximumSize=10000,expireAfterWrite=5m";
+
+	private final MutableAclService delegate;
+	private final Cache<ObjectIdentity, Acl> cache;
+	private final Cache<ObjectIdentity, Boolean> absent;
+	private final SetMultimap<ObjectIdentity, ObjectIdentity> children = Multimaps.synchronizedSetMultimap(HashMultimap.<ObjectIdentity, ObjectIdentity> create());
+	private final AtomicLong changes = new AtomicLong();
+	private final Timer lookups;
+	private ObjectIdentityRetrievalStrategy objectIdentityRetrievalStrategy = new ObjectIdentityRetrievalStrategyImpl();
+
+	/**
+	 * Create a new caching service with the default cache specification.
+	 *
+	 * @param delegate the service to read and write ACLs with
+	 * @param metrics the registry for the cache metrics
+	 * @param name the metric name prefix
+	 */
+	public CachingMutableAclService(final MutableAclService delegate, final MetricRegistry metrics, final String name) {
+		this(delegate, DEFAULT_SPEC, metrics, name);
+	}
+
+	/**
+	 * Create a new caching service.
+	 *
+	 * @param delegate the service to read and write ACLs with
+	 * @param spec the cache specification, in the {@link CacheBuilderSpec} format
+	 * @param metrics the registry for the cache metrics
+	 * @param name the metric name prefix
+	 */
+	public CachingMutableAclService(final MutableAclService delegate, final String spec, final MetricRegistry metrics, final String name) {
+		if (delegate == null) {
+			throw new IllegalArgumentException("delegate may not be null");
+		}
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null");
+		}
+		if (Strings.isNullOrEmpty(name)) {
+			throw new IllegalArgumentException("name may not be null or empty");
+		}
+		this.delegate = delegate;
+		this.cache = CacheBuilder.from(CacheBuilderSpec.parse(spec)).recordStats().removalListener(new RemovalListener<ObjectIdentity, Acl>() {
+			@Override
+			public void onRemoval(final RemovalNotification<ObjectIdentity, Acl> notification) {
+				if (notification.getCause() != RemovalCause.REPLACED) {
+					unindex(notification.getKey(), notification.getValue());
+				}
+			}
+		}).build();
+		this.absent = CacheBuilder.from(CacheBuilderSpec.parse(spec)).<ObjectIdentity, Boolean> build();
+		this.lookups = metrics.timer(name(name, "lookups"));
+
+		metrics.register(name(name, "hits"), new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return cache.stats().hitCount();
+			}
+		});
+		metrics.register(name(name, "misses"), new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return cache.stats().missCount();
+			}
+		});
+		metrics.register(name(name, "evictions"), new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return cache.stats().evictionCount();
+			}
+		});
+		metrics.register(name(name, "size"), new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return cache.size();
+			}
+		});
+		metrics.register(name(name, "hit-ratio"), new RatioGauge() {
+			@Override
+			protected Ratio getRatio() {
+				return Ratio.of(cache.stats().hitCount(), cache.stats().requestCount());
+			}
+		});
+	}
+
+	/**
+	 * Set the strategy used by {@link #preload(Collection)} to obtain the
+	 * identities of domain objects.
+	 *
+	 * @param objectIdentityRetrievalStrategy the strategy
+	 */
+	public void setObjectIdentityRetrievalStrategy(final ObjectIdentityRetrievalStrategy objectIdentityRetrievalStrategy) {
+		if (objectIdentityRetrievalStrategy == null) {
+			throw new IllegalArgumentException("objectIdentityRetrievalStrategy may not be null");
+		}
+		this.objectIdentityRetrievalStrategy = objectIdentityRetrievalStrategy;
+	}
+
+	/**
+	 * Load the ACLs of the given domain objects into the cache, in a single
+	 * lookup where possible. Domain objects without an ACL are ignored, and
+	 * remembered as having none.
+	 *
+	 * @param domainObjects the domain objects
+	 */
+	public void preload(final Collection<?> domainObjects) {
+		final Set<ObjectIdentity> missing = new LinkedHashSet<ObjectIdentity>();
+		for (final Object domainObject : domainObjects) {
+			final ObjectIdentity identity = this.objectIdentityRetrievalStrategy.getObjectIdentity(domainObject);
+			if (this.cache.getIfPresent(identity) == null && this.absent.getIfPresent(identity) == null) {
+				missing.add(identity);
+			}
+		}
+		if (!missing.isEmpty()) {
+			this.preload(new ArrayList<ObjectIdentity>(missing));
+		}
+	}
+
+	// the delegate fails the whole batch if any ACL is missing, so halve a
+	// failed batch until the missing ACLs are found, which costs a few
+	// lookups for each missing ACL rather than one for every object
+	private void preload(final List<ObjectIdentity> objects) {
+		try {
+			this.load(objects, null);
+		}
+		catch (NotFoundException ex) {
+			if (objects.size() == 1) {
+				LOG.trace("no ACL for {}", objects.get(0));
+				return;
+			}
+			LOG.debug("not all of {} ACLs exist, splitting the lookup", objects.size());
+			final int half = objects.size() / 2;
+			this.preload(objects.subList(0, half));
+			this.preload(objects.subList(half, objects.size()));
+		}
+	}
+
+	@Override
+	public List<ObjectIdentity> findChildren(final ObjectIdentity parentIdentity) {
+		return this.delegate.findChildren(parentIdentity);
+	}
+
+	@Override
+	public Acl readAclById(final ObjectIdentity object) throws NotFoundException {
+		return this.readAclById(object, null);
+	}
+
+	@Override
+	public Acl readAclById(final ObjectIdentity object, final List<Sid> sids) throws NotFoundException {
+		return this.readAclsById(Collections.singletonList(object), sids).get(object);
+	}
+
+	@Override
+	public Map<ObjectIdentity, Acl> readAclsById(final List<ObjectIdentity> objects) throws NotFoundException {
+		return this.readAclsById(objects, null);
+	}
+
+	@Override
+	public Map<ObjectIdentity, Acl> readAclsById(final List<ObjectIdentity> objects, final List<Sid> sids) throws NotFoundException {
+		final Map<ObjectIdentity, Acl> result = new HashMap<ObjectIdentity, Acl>(objects.size());
+		final List<ObjectIdentity> missing = new ArrayList<ObjectIdentity>();
+		for (final ObjectIdentity object : objects) {
+			final Acl acl = this.cache.getIfPresent(object);
+			if (acl != null) {
+				result.put(object, acl);
+			}
+			else if (this.absent.getIfPresent(object) != null) {
+				throw new NotFoundException("Unable to find ACL information for object identity '" + object + "'");
+			}
+			else if (!missing.contains(object)) {
+				missing.add(object);
+			}
+		}
+		if (!missing.isEmpty()) {
+			result.putAll(this.load(missing, sids));
+		}
+		return result;
+	}
+
+	@Override
+	public MutableAcl createAcl(final ObjectIdentity objectIdentity) throws AlreadyExistsException {
+		try {
+			return this.delegate.createAcl(objectIdentity);
+		}
+		finally {
+			this.evict(objectIdentity);
+		}
+	}
+
+	@Override
+	public void deleteAcl(final ObjectIdentity objectIdentity, final boolean deleteChildren) throws ChildrenExistException {
+		try {
+			this.delegate.deleteAcl(objectIdentity, deleteChildren);
+		}
+		finally {
+			this.evict(objectIdentity);
+		}
+	}
+
+	@Override
+	public MutableAcl updateAcl(final MutableAcl acl) throws NotFoundException {
+		try {
+			return this.delegate.updateAcl(acl);
+		}
+		finally {
+			this.evict(acl.getObjectIdentity());
+		}
+	}
+
+	/**
+	 * Evict the ACL of the given object, and any ACLs inheriting from it, and
+	 * forget that the object had no ACL.
+	 *
+	 * @param objectIdentity the object identity
+	 */
+	public void evict(final ObjectIdentity objectIdentity) {
+		// lookups already under way must not cache what they read
+		this.changes.incrementAndGet();
+		this.absent.invalidate(objectIdentity);
+		this.invalidate(objectIdentity);
+	}
+
+	private void invalidate(final ObjectIdentity objectIdentity) {
+		this.cache.invalidate(objectIdentity);
+		for (final ObjectIdentity child : this.children.removeAll(objectIdentity)) {
+			this.invalidate(child);
+		}
+	}
+
+	private Map<ObjectIdentity, Acl> load(final List<ObjectIdentity> objects, final List<Sid> sids) {
+		final long version = this.changes.get();
+		final Map<ObjectIdentity, Acl> loaded;
+		final Timer.Context timer = this.lookups.time();
+		try {
+			loaded = this.delegate.readAclsById(objects, sids);
+		}
+		catch (NotFoundException ex) {
+			if (objects.size() == 1) {
+				this.absent.put(objects.get(0), Boolean.TRUE);
+				if (this.changes.get() != version) {
+					this.absent.invalidate(objects.get(0));
+				}
+			}
+			throw ex;
+		}
+		finally {
+			timer.stop();
+		}
+		for (final Map.Entry<ObjectIdentity, Acl> entry : loaded.entrySet()) {
+			this.index(entry.getKey(), entry.getValue());
+			this.cache.put(entry.getKey(), entry.getValue());
+		}
+		// cached before checking, so a concurrent change either sees the
+		// entries or is seen here
+		if (this.changes.get() != version) {
+			for (final ObjectIdentity object : loaded.keySet()) {
+				this.invalidate(object);
+			}
+		}
+		return loaded;
+	}
+
+	// the children of each parent with cached children, so that evicting
+	// the parent finds them without scanning the cache
+	private void index(final ObjectIdentity objectIdentity, final Acl acl) {
+		if (acl.getParentAcl() != null) {
+			this.children.put(acl.getParentAcl().getObjectIdentity(), objectIdentity);
+		}
+	}
+
+	private void unindex(final ObjectIdentity objectIdentity, final Acl acl) {
+		if (acl.getParentAcl() != null) {
+			this.children.remove(acl.getParentAcl().getObjectIdentity(), objectIdentity);
+		}
+	}
+}
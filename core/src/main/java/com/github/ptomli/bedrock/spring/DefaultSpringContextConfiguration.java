@@ -24,6 +24,14 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  *   - production
  * </code>
  * </pre>
+ * The number of threads running parallel initialization callbacks can be
+ * set with a parallel initializing context class
+ * <pre>
+ * <code>
+ * class: com.github.ptomli.bedrock.spring.ParallelClassPathXmlApplicationContext
+ * initializationThreads: 4
+ * </code>
+ * </pre>
  */
 public class DefaultSpringContextConfiguration implements SpringContextConfiguration {
 
@@ -36,6 +44,9 @@ public class DefaultSpringContextConfiguration implements SpringContextConfigura
 	@JsonProperty
 	private String[] profiles = new String[] {};
 
+	@JsonProperty
+	private int initializationThreads = 0;
+
 	@Override
 	public Class<? extends ConfigurableApplicationContext> getApplicationContextClass() {
 		return this.clazz;
@@ -56,4 +67,20 @@ public class DefaultSpringContextConfiguration implements SpringContextConfigura
 		return new PropertySource<?>[] {};
 	}
 
+	/**
+	 * Specifies the number of threads used to run parallel initialization
+	 * callbacks, if {@link #getApplicationContextClass()} returns
+	 * {@link ParallelClassPathXmlApplicationContext} or
+	 * {@link ParallelAnnotationConfigApplicationContext}, or a subclass
+	 * thereof.
+	 * <p>
+	 * A value less than 1 leaves the context's default, the number of
+	 * available processors.
+	 *
+	 * @return the number of initialization threads
+	 */
+	public int getInitializationThreads() {
+		return this.initializationThreads;
+	}
+
 }
@@ -0,0 +1,35 @@
+package com.github.ptomli.bedrock.spring;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+/**
+ * Marks a {@link SmartInitializingSingleton} whose
+ * {@code afterSingletonsInstantiated} callback is safe to run concurrently
+ * with the callbacks of other beans, so that a
+ * {@link ParallelInitializingBeanFactory} may run it on one of its
+ * initialization threads.
+ * <p>
+ * For example
+ * <pre>
+ * <code>
+ * {@literal @}InitializeInParallel
+ * public class CatalogueClient implements SmartInitializingSingleton {
+ *     {@literal @}Override
+ *     public void afterSingletonsInstantiated() {
+ *         // connect and prime the local catalogue
+ *     }
+ * }
+ * </code>
+ * </pre>
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface InitializeInParallel {
+}
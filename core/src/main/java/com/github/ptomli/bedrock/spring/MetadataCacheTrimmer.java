@@ -0,0 +1,92 @@
+package com.github.ptomli.bedrock.spring;
+
+import java.lang.reflect.Field;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.CachedIntrospectionResults;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Clears two of the metadata caches Spring fills while building an
+ * application context, which a running context does not need.
+ * <p>
+ * Only the following are cleared, and are rebuilt on demand if needed again
+ * <ul>
+ * <li>the class metadata read while scanning for components and processing
+ * {@code @Configuration} classes
+ * <li>the JavaBeans introspection results for classes loaded by the bean
+ * class loader
+ * </ul>
+ * Spring's reflection and annotation caches hold their entries by soft
+ * reference, so are already released under memory pressure, and are left
+ * alone. So are the merged bean definitions, as every lookup of beans by
+ * type, which DropWizard and Jersey make after startup, merges the
+ * definition of every bean again.
+ * <p>
+ * The XML bean definition readers and their parsing state are already
+ * discarded once the definitions are loaded, so there is nothing of them
+ * left to clear.
+ * <p>
+ * Spring 4.1 has no public API for the metadata reader caches, so they are
+ * reached by reflection. Anything which cannot be found is skipped.
+ */
+public final class MetadataCacheTrimmer {
+	private static final Logger LOG = LoggerFactory.getLogger(MetadataCacheTrimmer.class);
+
+	private MetadataCacheTrimmer() {
+	}
+
+	/**
+	 * Trim the metadata caches of a refreshed application context.
+	 *
+	 * @param context the application context
+	 * @throws IllegalStateException if the context is not active
+	 */
+	public static void trim(final ConfigurableApplicationContext context) {
+		if (!context.isActive()) {
+			throw new IllegalStateException("context must be refreshed before it is trimmed");
+		}
+		final ConfigurableListableBeanFactory beanFactory = context.getBeanFactory();
+
+		if (beanFactory.containsSingleton(AnnotationConfigUtils.CONFIGURATION_ANNOTATION_PROCESSOR_BEAN_NAME)) {
+			clearMetadataReaderCache(beanFactory.getSingleton(AnnotationConfigUtils.CONFIGURATION_ANNOTATION_PROCESSOR_BEAN_NAME));
+		}
+		final Field scanner = findField(context.getClass(), "scanner");
+		if (scanner != null) {
+			clearMetadataReaderCache(ReflectionUtils.getField(scanner, context));
+		}
+		if (beanFactory.getBeanClassLoader() != null) {
+			CachedIntrospectionResults.clearClassLoader(beanFactory.getBeanClassLoader());
+		}
+
+		LOG.debug("trimmed metadata caches of {}", context.getDisplayName());
+	}
+
+	private static void clearMetadataReaderCache(final Object holder) {
+		if (holder == null) {
+			return;
+		}
+		final Field field = findField(holder.getClass(), "metadataReaderFactory");
+		if (field != null) {
+			final Object factory = ReflectionUtils.getField(field, holder);
+			if (factory instanceof CachingMetadataReaderFactory) {
+				((CachingMetadataReaderFactory) factory).clearCache();
+			}
+		}
+	}
+
+	private static Field findField(final Class<?> clazz, final String name) {
+		final Field field = ReflectionUtils.findField(clazz, name);
+		if (field == null) {
+			LOG.debug("no {} field on {}, not clearing it", name, clazz.getName());
+			return null;
+		}
+		ReflectionUtils.makeAccessible(field);
+		return field;
+	}
+}
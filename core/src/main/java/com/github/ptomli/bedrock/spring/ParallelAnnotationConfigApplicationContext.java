@@ -0,0 +1,41 @@
+package com.github.ptomli.bedrock.spring;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * An {@link AnnotationConfigApplicationContext} which runs independent
+ * singleton initialization callbacks in parallel during refresh.
+ * <p>
+ * Can be selected in the DropWizard configuration file
+ * <pre>
+ * <code>
+ * class: com.github.ptomli.bedrock.spring.ParallelAnnotationConfigApplicationContext
+ * locations:
+ *   - com.example.service
+ * initializationThreads: 4
+ * </code>
+ * </pre>
+ *
+ * @see ParallelInitializingBeanFactory
+ */
+public class ParallelAnnotationConfigApplicationContext extends AnnotationConfigApplicationContext {
+
+	/**
+	 * Create a new context, which needs to be populated through
+	 * {@link #register register} calls and then manually
+	 * {@link #refresh refreshed}.
+	 */
+	public ParallelAnnotationConfigApplicationContext() {
+		super(new ParallelInitializingBeanFactory());
+	}
+
+	/**
+	 * Set the number of threads used to run initialization callbacks,
+	 * defaulting to the number of available processors.
+	 *
+	 * @param initializationThreads the number of threads
+	 */
+	public void setInitializationThreads(final int initializationThreads) {
+		((ParallelInitializingBeanFactory) this.getDefaultListableBeanFactory()).setInitializationThreads(initializationThreads);
+	}
+}
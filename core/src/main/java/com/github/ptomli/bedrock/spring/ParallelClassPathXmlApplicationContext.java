@@ -0,0 +1,50 @@
+package com.github.ptomli.bedrock.spring;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * A {@link ClassPathXmlApplicationContext} which runs independent singleton
+ * initialization callbacks in parallel during refresh.
+ * <p>
+ * Can be selected in the DropWizard configuration file
+ * <pre>
+ * <code>
+ * class: com.github.ptomli.bedrock.spring.ParallelClassPathXmlApplicationContext
+ * locations:
+ *   - /META-INF/spring/*.xml
+ * initializationThreads: 4
+ * </code>
+ * </pre>
+ *
+ * @see ParallelInitializingBeanFactory
+ */
+public class ParallelClassPathXmlApplicationContext extends ClassPathXmlApplicationContext {
+
+	private int initializationThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Set the number of threads used to run initialization callbacks,
+	 * defaulting to the number of available processors.
+	 * <p>
+	 * Takes effect on the next {@link #refresh() refresh}.
+	 *
+	 * @param initializationThreads the number of threads
+	 */
+	public void setInitializationThreads(final int initializationThreads) {
+		if (initializationThreads < 1) {
+			throw new IllegalArgumentException("initializationThreads must be at least 1");
+		}
+		this.initializationThreads = initializationThreads;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected DefaultListableBeanFactory createBeanFactory() {
+		final ParallelInitializingBeanFactory beanFactory = new ParallelInitializingBeanFactory(this.getInternalParentBeanFactory());
+		beanFactory.setInitializationThreads(this.initializationThreads);
+		return beanFactory;
+	}
+}
@@ -0,0 +1,347 @@
+package com.github.ptomli.bedrock.spring;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.SmartFactoryBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link DefaultListableBeanFactory} which runs the
+ * {@link SmartInitializingSingleton#afterSingletonsInstantiated()} callbacks
+ * of independent application singletons in parallel.
+ * <p>
+ * Spring creates singletons while holding a lock on the whole singleton
+ * registry, so bean construction, {@code @PostConstruct} methods and
+ * {@code afterPropertiesSet} still run one at a time, as they do in Spring.
+ * Slow initialization, such as bootstrapping a client or priming a cache,
+ * should instead be done in {@code afterSingletonsInstantiated}, which this
+ * factory calls once all singletons exist and without holding that lock.
+ * <p>
+ * This has two limits. Firstly, only the {@code afterSingletonsInstantiated}
+ * callbacks of {@code SmartInitializingSingleton} application beans
+ * annotated with {@link InitializeInParallel} are run in parallel; a bean
+ * which is not a {@code SmartInitializingSingleton}, or is not annotated,
+ * gains nothing. Secondly, the callbacks of other beans, including Spring's
+ * own infrastructure, are run on the refreshing thread in registration
+ * order, as Spring would, and not in the order of their dependencies, so a
+ * serial callback may run before that of a bean it depends on. Those which
+ * do not depend on a parallel callback are run first, the remainder once
+ * the parallel callbacks have completed.
+ * <p>
+ * A parallel callback only runs once the callbacks of every
+ * {@code SmartInitializingSingleton} it depends on, directly or through
+ * other beans, have completed. Dependencies are those Spring recorded while
+ * creating the beans. Beans which are part of, or depend on, a dependency
+ * cycle have their callbacks run serially, in registration order, after the
+ * parallel callbacks have completed.
+ *
+ * @see ParallelClassPathXmlApplicationContext
+ * @see ParallelAnnotationConfigApplicationContext
+ */
+public class ParallelInitializingBeanFactory extends DefaultListableBeanFactory {
+	private static final long serialVersionUID = 1L;
+	private static final Logger LOG = LoggerFactory.getLogger(ParallelInitializingBeanFactory.class);
+
+	private volatile int initializationThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Create a new bean factory.
+	 */
+	public ParallelInitializingBeanFactory() {
+		super();
+	}
+
+	/**
+	 * Create a new bean factory with the given parent.
+	 *
+	 * @param parentBeanFactory the parent bean factory
+	 */
+	public ParallelInitializingBeanFactory(final BeanFactory parentBeanFactory) {
+		super(parentBeanFactory);
+	}
+
+	/**
+	 * Set the number of threads used to run parallel initialization
+	 * callbacks, defaulting to the number of available processors.
+	 *
+	 * @param initializationThreads the number of threads
+	 */
+	public void setInitializationThreads(final int initializationThreads) {
+		if (initializationThreads < 1) {
+			throw new IllegalArgumentException("initializationThreads must be at least 1");
+		}
+		this.initializationThreads = initializationThreads;
+	}
+
+	/**
+	 * Return the number of threads used to run parallel initialization
+	 * callbacks.
+	 *
+	 * @return the number of threads
+	 */
+	public int getInitializationThreads() {
+		return this.initializationThreads;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void preInstantiateSingletons() throws BeansException {
+		final List<String> beanNames = new ArrayList<String>(this.getBeanDefinitionNames().length);
+		for (final String beanName : this.getBeanDefinitionNames()) {
+			beanNames.add(beanName);
+		}
+
+		for (final String beanName : beanNames) {
+			final RootBeanDefinition bd = this.getMergedLocalBeanDefinition(beanName);
+			if (!bd.isAbstract() && bd.isSingleton() && !bd.isLazyInit()) {
+				if (this.isFactoryBean(beanName)) {
+					final FactoryBean<?> factory = (FactoryBean<?>) this.getBean(FACTORY_BEAN_PREFIX + beanName);
+					if (factory instanceof SmartFactoryBean && ((SmartFactoryBean<?>) factory).isEagerInit()) {
+						this.getBean(beanName);
+					}
+				}
+				else {
+					this.getBean(beanName);
+				}
+			}
+		}
+
+		final Map<String, SmartInitializingSingleton> callbacks = new LinkedHashMap<String, SmartInitializingSingleton>();
+		for (final String beanName : beanNames) {
+			final Object singleton = this.getSingleton(beanName);
+			if (singleton instanceof SmartInitializingSingleton) {
+				callbacks.put(beanName, (SmartInitializingSingleton) singleton);
+			}
+		}
+		this.initialize(callbacks);
+	}
+
+	private void initialize(final Map<String, SmartInitializingSingleton> callbacks) {
+		if (callbacks.isEmpty()) {
+			return;
+		}
+
+		// which callbacks each callback must wait for
+		final Map<String, Set<String>> waitsFor = new HashMap<String, Set<String>>();
+		final Set<String> parallel = new HashSet<String>();
+		for (final String beanName : callbacks.keySet()) {
+			waitsFor.put(beanName, this.callbackDependencies(beanName, callbacks.keySet()));
+			if (this.isParallel(beanName)) {
+				parallel.add(beanName);
+			}
+		}
+
+		// serial callbacks which do not wait on a parallel one run first
+		final Set<String> initialized = new HashSet<String>();
+		for (final Map.Entry<String, SmartInitializingSingleton> entry : callbacks.entrySet()) {
+			if (!parallel.contains(entry.getKey()) && !this.waitsForAny(entry.getKey(), parallel, waitsFor)) {
+				entry.getValue().afterSingletonsInstantiated();
+				initialized.add(entry.getKey());
+			}
+		}
+
+		// parallel callbacks may only wait on initialized or parallel ones,
+		// and then only on parallel ones remain to be counted down
+		final Map<String, List<String>> dependents = new HashMap<String, List<String>>();
+		final Map<String, Integer> remaining = new HashMap<String, Integer>();
+		final List<String> ready = new ArrayList<String>();
+		for (final String beanName : callbacks.keySet()) {
+			if (!parallel.contains(beanName)) {
+				continue;
+			}
+			int count = 0;
+			for (final String dependency : waitsFor.get(beanName)) {
+				if (initialized.contains(dependency)) {
+					continue;
+				}
+				// waiting on a serial callback which waits on a parallel one
+				// can never be satisfied, so leave the count above zero
+				count++;
+				if (parallel.contains(dependency)) {
+					List<String> list = dependents.get(dependency);
+					if (list == null) {
+						list = new ArrayList<String>();
+						dependents.put(dependency, list);
+					}
+					list.add(beanName);
+				}
+			}
+			remaining.put(beanName, count);
+			if (count == 0) {
+				ready.add(beanName);
+			}
+		}
+
+		// anything not reachable from a ready callback is in, or waits on, a
+		// cycle or a serial callback
+		final Set<String> schedulable = new HashSet<String>();
+		final List<String> queue = new ArrayList<String>(ready);
+		final Map<String, Integer> counts = new HashMap<String, Integer>(remaining);
+		while (!queue.isEmpty()) {
+			final String beanName = queue.remove(queue.size() - 1);
+			schedulable.add(beanName);
+			if (dependents.containsKey(beanName)) {
+				for (final String dependent : dependents.get(beanName)) {
+					final int count = counts.get(dependent) - 1;
+					counts.put(dependent, count);
+					if (count == 0) {
+						queue.add(dependent);
+					}
+				}
+			}
+		}
+
+		this.initializeInParallel(callbacks, schedulable, ready, dependents, remaining);
+
+		for (final Map.Entry<String, SmartInitializingSingleton> entry : callbacks.entrySet()) {
+			if (!initialized.contains(entry.getKey()) && !schedulable.contains(entry.getKey())) {
+				if (parallel.contains(entry.getKey())) {
+					LOG.debug("initializing {} serially, it is part of or depends on a dependency cycle", entry.getKey());
+				}
+				entry.getValue().afterSingletonsInstantiated();
+			}
+		}
+	}
+
+	private boolean isParallel(final String beanName) {
+		return this.getMergedLocalBeanDefinition(beanName).getRole() == BeanDefinition.ROLE_APPLICATION
+				&& this.findAnnotationOnBean(beanName, InitializeInParallel.class) != null;
+	}
+
+	// whether the callback waits, directly or through other callbacks, on
+	// any of the given callbacks
+	private boolean waitsForAny(final String beanName, final Set<String> targets, final Map<String, Set<String>> waitsFor) {
+		final Set<String> visited = new HashSet<String>();
+		final List<String> queue = new ArrayList<String>();
+		visited.add(beanName);
+		queue.add(beanName);
+		while (!queue.isEmpty()) {
+			for (final String dependency : waitsFor.get(queue.remove(queue.size() - 1))) {
+				if (targets.contains(dependency)) {
+					return true;
+				}
+				if (visited.add(dependency)) {
+					queue.add(dependency);
+				}
+			}
+		}
+		return false;
+	}
+
+	private void initializeInParallel(final Map<String, SmartInitializingSingleton> callbacks, final Set<String> schedulable,
+			final List<String> ready, final Map<String, List<String>> dependents, final Map<String, Integer> remaining) {
+		if (schedulable.isEmpty()) {
+			return;
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(
+				Math.min(this.initializationThreads, schedulable.size()),
+				new ThreadFactoryBuilder().setNameFormat("bean-initializer-%d").setDaemon(true).build());
+		final CountDownLatch done = new CountDownLatch(schedulable.size());
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final Map<String, AtomicInteger> outstanding = new HashMap<String, AtomicInteger>();
+		for (final String beanName : schedulable) {
+			outstanding.put(beanName, new AtomicInteger(remaining.get(beanName)));
+		}
+
+		final class Initializer implements Runnable {
+			private final String beanName;
+
+			Initializer(final String beanName) {
+				this.beanName = beanName;
+			}
+
+			@Override
+			public void run() {
+				try {
+					if (failure.get() == null) {
+						callbacks.get(this.beanName).afterSingletonsInstantiated();
+					}
+				}
+				catch (Throwable ex) {
+					failure.compareAndSet(null, ex);
+				}
+				finally {
+					if (dependents.containsKey(this.beanName)) {
+						for (final String dependent : dependents.get(this.beanName)) {
+							final AtomicInteger count = outstanding.get(dependent);
+							if (count != null && count.decrementAndGet() == 0) {
+								executor.execute(new Initializer(dependent));
+							}
+						}
+					}
+					done.countDown();
+				}
+			}
+		}
+
+		try {
+			for (final String beanName : ready) {
+				executor.execute(new Initializer(beanName));
+			}
+			done.await();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while initializing singletons", ex);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		final Throwable ex = failure.get();
+		if (ex instanceof RuntimeException) {
+			throw (RuntimeException) ex;
+		}
+		if (ex instanceof Error) {
+			throw (Error) ex;
+		}
+	}
+
+	// the callbacks reachable from the bean through its recorded dependencies,
+	// without passing through another callback
+	private Set<String> callbackDependencies(final String beanName, final Set<String> callbacks) {
+		final Set<String> result = new HashSet<String>();
+		final Set<String> visited = new HashSet<String>();
+		final List<String> queue = new ArrayList<String>();
+		visited.add(beanName);
+		queue.add(beanName);
+		while (!queue.isEmpty()) {
+			final String current = queue.remove(queue.size() - 1);
+			for (final String dependency : this.getDependenciesForBean(current)) {
+				if (visited.add(dependency)) {
+					if (callbacks.contains(dependency)) {
+						result.add(dependency);
+					}
+					else {
+						queue.add(dependency);
+					}
+				}
+			}
+		}
+		return result;
+	}
+}
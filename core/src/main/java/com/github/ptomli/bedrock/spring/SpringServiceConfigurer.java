@@ -1,15 +1,24 @@
 package com.github.ptomli.bedrock.spring;
 
 import io.dropwizard.Configuration;
+import io.dropwizard.db.DataSourceFactory;
 import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.servlets.tasks.Task;
 import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
 
+import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.reflect.Method;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
+import javax.sql.DataSource;
 import javax.ws.rs.Path;
 import javax.ws.rs.ext.Provider;
 
@@ -18,16 +27,51 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.PropertyAccessor;
 import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.beans.factory.support.RootBeanDefinition;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import org.springframework.context.support.AbstractRefreshableConfigApplicationContext;
 import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.env.PropertySource;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
 import org.springframework.web.filter.DelegatingFilterProxy;
 
+import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.health.HealthCheck;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.ptomli.bedrock.cache.CacheManagerConfiguration;
+import com.github.ptomli.bedrock.cache.InstrumentedCacheInterceptor;
+import com.github.ptomli.bedrock.cache.InstrumentedCacheInterceptorBeanPostProcessor;
+import com.github.ptomli.bedrock.cache.InstrumentedGuavaCacheManager;
+import com.github.ptomli.bedrock.hornetq.EmbeddedHornetQConfiguration;
+import com.github.ptomli.bedrock.hornetq.EmbeddedHornetQServer;
+import com.github.ptomli.bedrock.integration.BoundedChannelBeanPostProcessor;
+import com.github.ptomli.bedrock.integration.BoundedChannelConfiguration;
+import com.github.ptomli.bedrock.integration.BoundedQueueChannel;
+import com.github.ptomli.bedrock.jdbc.DataSourceHealthCheck;
+import com.github.ptomli.bedrock.jdbc.ManagedInstrumentedDataSource;
+import com.github.ptomli.bedrock.jersey.async.AsyncResponseResourceMethodDispatchAdapter;
+import com.github.ptomli.bedrock.jersey.async.AsyncSupportLifeCycleListener;
+import com.github.ptomli.bedrock.jersey.caching.CachedResponse;
+import com.github.ptomli.bedrock.jersey.caching.ResponseCacheResourceMethodDispatchAdapter;
+import com.github.ptomli.bedrock.jersey.limiting.ConcurrencyLimitConfiguration;
+import com.github.ptomli.bedrock.jersey.limiting.ConcurrencyLimitResourceMethodDispatchAdapter;
+import com.github.ptomli.bedrock.jersey.limiting.ConcurrencyLimited;
+import com.github.ptomli.bedrock.jms.SmileMessageConverter;
+import com.github.ptomli.bedrock.lifecycle.GracefulShutdown;
+import com.github.ptomli.bedrock.lifecycle.GracefulShutdownConfiguration;
+import com.github.ptomli.bedrock.lifecycle.InFlightRequestFilter;
+import com.github.ptomli.bedrock.lifecycle.ReadinessHealthCheck;
+import com.github.ptomli.bedrock.metrics.MetricsAnnotationBeanPostProcessor;
 import com.sun.jersey.spi.inject.InjectableProvider;
 
 /**
@@ -84,6 +128,7 @@ public class SpringServiceConfigurer {
 	private final Environment environment;
 	private final ConfigurableApplicationContext parent = new StaticApplicationContext();
 	private ConfigurableApplicationContext context;
+	private boolean responseCacheRegistered = false;
 
 	protected SpringServiceConfigurer(final Environment environment) {
 		this.environment = environment;
@@ -141,6 +186,9 @@ public class SpringServiceConfigurer {
 	/**
 	 * Create a new application context based on the provided
 	 * {@link SpringContextConfiguration}.
+	 * <p>
+	 * The initialization threads of a {@link DefaultSpringContextConfiguration}
+	 * are applied to the parallel initializing contexts.
 	 * 
 	 * @param configuration the application context configuration
 	 * @return this configurer
@@ -171,6 +219,18 @@ public class SpringServiceConfigurer {
 			throw new ApplicationContextInstantiationException("Unknown ConfigurableApplicationContext subclass " + clazz.getCanonicalName());
 		}
 
+		final int threads = (configuration instanceof DefaultSpringContextConfiguration)
+				? ((DefaultSpringContextConfiguration) configuration).getInitializationThreads()
+				: 0;
+		if (threads > 0) {
+			if (this.context instanceof ParallelClassPathXmlApplicationContext) {
+				((ParallelClassPathXmlApplicationContext) this.context).setInitializationThreads(threads);
+			}
+			else if (this.context instanceof ParallelAnnotationConfigApplicationContext) {
+				((ParallelAnnotationConfigApplicationContext) this.context).setInitializationThreads(threads);
+			}
+		}
+
 		ConfigurableEnvironment env = this.context.getEnvironment();
 		env.setActiveProfiles(configuration.getProfiles());
 		for (PropertySource<?> ps : configuration.getPropertySources()) {
@@ -209,6 +269,128 @@ public class SpringServiceConfigurer {
 		return this;
 	}
 
+	/**
+	 * Register the DropWizard environment's {@link ObjectMapper} as a Spring
+	 * bean, so that beans share its configuration and serializer caches rather
+	 * than building their own mappers.
+	 * <p>
+	 * The bean is registered into the parent application context, to allow
+	 * references to the bean to be available during
+	 * {@link ConfigurableApplicationContext#refresh() refresh}.
+	 * 
+	 * @param name the name of the bean in the Spring context
+	 * @return this configurer
+	 * @throws IllegalStateException if no application context has been set
+	 * @throws IllegalStateException if the application context parent was not created by this configurer
+	 * @see SmileMessageConverter
+	 */
+	public SpringServiceConfigurer registerObjectMapper(final String name) {
+		ConfigurableApplicationContext ctx = this.getRequiredContext();
+		if (ctx.getParent() != this.parent) {
+			throw new IllegalStateException("Cannot register object mapper bean into the parent context, this configurer did not create it");
+		}
+		if (!this.parent.isActive()) {
+			this.parent.refresh();
+		}
+		this.parent.getBeanFactory().registerSingleton(name, this.environment.getObjectMapper());
+		return this;
+	}
+
+	/**
+	 * Register the DropWizard environment's {@link MetricRegistry} as a Spring
+	 * bean, and a {@link MetricsAnnotationBeanPostProcessor} so that the
+	 * {@code @Timed}, {@code @Metered}, {@code @ExceptionMetered} and
+	 * {@code @Gauge} annotations are honoured on the application context's
+	 * beans.
+	 * <p>
+	 * The post processor is registered as an infrastructure bean at the
+	 * lowest precedence, after any auto proxy creators, so that beans which
+	 * are also {@code @Transactional} or {@code @Async} have the metrics
+	 * advice added to their existing proxies.
+	 * <p>
+	 * The registry is registered into the parent application context, to
+	 * allow references to the bean to be available during
+	 * {@link ConfigurableApplicationContext#refresh() refresh}.
+	 * 
+	 * @param name the name of the bean in the Spring context
+	 * @return this configurer
+	 * @throws IllegalStateException if no application context has been set
+	 * @throws IllegalStateException if the context has already been refreshed
+	 * @throws IllegalStateException if the application context parent was not created by this configurer
+	 */
+	public SpringServiceConfigurer registerMetrics(final String name) {
+		ConfigurableApplicationContext ctx = this.getRequiredContext();
+		if (ctx.isActive()) {
+			throw new IllegalStateException("cannot register metrics after the context has been refreshed");
+		}
+		if (ctx.getParent() != this.parent) {
+			throw new IllegalStateException("Cannot register metric registry bean into the parent context, this configurer did not create it");
+		}
+		if (!this.parent.isActive()) {
+			this.parent.refresh();
+		}
+
+		final MetricRegistry metrics = this.environment.metrics();
+		this.parent.getBeanFactory().registerSingleton(name, metrics);
+		ctx.addBeanFactoryPostProcessor(new BeanDefinitionRegistryPostProcessor() {
+			@Override
+			public void postProcessBeanDefinitionRegistry(final BeanDefinitionRegistry registry) {
+				// registered as a bean, rather than added directly, so that it
+				// is ordered after the auto proxy creators and advises their proxies
+				final RootBeanDefinition definition = new RootBeanDefinition(MetricsAnnotationBeanPostProcessor.class);
+				definition.getConstructorArgumentValues().addIndexedArgumentValue(0, metrics);
+				definition.setRole(BeanDefinition.ROLE_INFRASTRUCTURE);
+				registry.registerBeanDefinition(MetricsAnnotationBeanPostProcessor.class.getName(), definition);
+			}
+
+			@Override
+			public void postProcessBeanFactory(final ConfigurableListableBeanFactory beanFactory) {
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Bound the named Spring Integration queue channels defined in the
+	 * application context, replacing them with {@link BoundedQueueChannel}s
+	 * configured by the provided configurations, keyed by bean name. Channel
+	 * metrics are published to the environment.
+	 * <p>
+	 * For example, with a DropWizard configuration like
+	 * <pre>
+	 * <code>
+	 * channels:
+	 *   orders:
+	 *     capacity: 1024
+	 *     overflowPolicy: BLOCK
+	 *     blockTimeout: 500ms
+	 * </code>
+	 * </pre>
+	 *
+	 * @param channels the channel configurations, by bean name
+	 * @return this configurer
+	 * @throws IllegalStateException if no application context has been set
+	 * @throws IllegalStateException if the context has already been refreshed
+	 * @see BoundedChannelBeanPostProcessor
+	 */
+	public SpringServiceConfigurer registerBoundedChannels(final Map<String, BoundedChannelConfiguration> channels) {
+		ConfigurableApplicationContext ctx = this.getRequiredContext();
+		if (ctx.isActive()) {
+			throw new IllegalStateException("cannot register bounded channels after the context has been refreshed");
+		}
+
+		final MetricRegistry metrics = this.environment.metrics();
+		ctx.addBeanFactoryPostProcessor(new BeanFactoryPostProcessor() {
+			@Override
+			public void postProcessBeanFactory(final ConfigurableListableBeanFactory beanFactory) {
+				final BoundedChannelBeanPostProcessor processor = new BoundedChannelBeanPostProcessor(channels, metrics);
+				processor.setBeanFactory(beanFactory);
+				beanFactory.addBeanPostProcessor(processor);
+			}
+		});
+		return this;
+	}
+
 	/**
 	 * Register a PropertySource into the Spring Environment for use with a
 	 * PropertySourcesPlaceholderConfigurer.
@@ -265,6 +447,130 @@ public class SpringServiceConfigurer {
 		return this;
 	}
 
+	/**
+	 * Register an {@link InstrumentedGuavaCacheManager}, built from the
+	 * provided configuration, as a Spring bean, using the provided name as the
+	 * bean name.
+	 * <p>
+	 * The bean is registered into the parent application context, so that it
+	 * is available to {@code @EnableCaching} or
+	 * {@code <cache:annotation-driven/>} during
+	 * {@link ConfigurableApplicationContext#refresh() refresh}. Cache metrics
+	 * are published to the environment's metric registry, and the context's
+	 * cache interceptors are replaced by {@link InstrumentedCacheInterceptor}s
+	 * so that load times are recorded.
+	 * 
+	 * @param name the name of the bean in the Spring context, usually "cacheManager"
+	 * @param configuration the cache configuration
+	 * @return this configurer
+	 * @throws IllegalStateException if no application context has been set
+	 * @throws IllegalStateException if the context has already been refreshed
+	 * @throws IllegalStateException if the application context parent was not created by this configurer
+	 */
+	public SpringServiceConfigurer registerCacheManager(final String name, final CacheManagerConfiguration configuration) {
+		final ConfigurableApplicationContext context = this.getRequiredContext();
+		if (context.isActive()) {
+			throw new IllegalStateException("cannot register a cache manager after the context has been refreshed");
+		}
+		if (context.getParent() != this.parent) {
+			throw new IllegalStateException("Cannot register cache manager bean into the parent context, this configurer did not create it");
+		}
+		if (!this.parent.isActive()) {
+			this.parent.refresh();
+		}
+		this.parent.getBeanFactory().registerSingleton(name, InstrumentedGuavaCacheManager.fromConfiguration(configuration, this.environment.metrics()));
+		context.addBeanFactoryPostProcessor(new BeanFactoryPostProcessor() {
+			@Override
+			public void postProcessBeanFactory(final ConfigurableListableBeanFactory beanFactory) {
+				final InstrumentedCacheInterceptorBeanPostProcessor processor = new InstrumentedCacheInterceptorBeanPostProcessor();
+				processor.setApplicationContext(context);
+				beanFactory.addBeanPostProcessor(processor);
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Build a pooled {@link DataSource} from the provided DropWizard
+	 * configuration and register it as a Spring bean, using the provided name
+	 * as the bean name.
+	 * <p>
+	 * The bean is registered into the parent application context, so that it
+	 * is available during {@link ConfigurableApplicationContext#refresh() refresh}.
+	 * The pool is managed by the environment lifecycle, a
+	 * {@link DataSourceHealthCheck} using the validation query is registered
+	 * under the same name, and pool and statement metrics are published to the
+	 * environment's metric registry.
+	 * 
+	 * @param name the name of the bean in the Spring context
+	 * @param factory the data source configuration
+	 * @return this configurer
+	 * @throws IllegalStateException if no application context has been set
+	 * @throws IllegalStateException if the application context parent was not created by this configurer
+	 * @throws IllegalArgumentException if the driver class cannot be loaded
+	 */
+	public SpringServiceConfigurer registerDataSource(final String name, final DataSourceFactory factory) {
+		ConfigurableApplicationContext context = this.getRequiredContext();
+		if (context.getParent() != this.parent) {
+			throw new IllegalStateException("Cannot register data source bean into the parent context, this configurer did not create it");
+		}
+		if (!this.parent.isActive()) {
+			this.parent.refresh();
+		}
+
+		final ManagedInstrumentedDataSource dataSource = ManagedInstrumentedDataSource.build(factory, this.environment.metrics(), name);
+		final int timeout = (int) Math.max(1, factory.getMaxWaitForConnection().toSeconds());
+
+		LOG.info("registering DataSource: {}", name);
+		this.environment.lifecycle().manage(dataSource);
+		this.environment.healthChecks().register(name, new DataSourceHealthCheck(dataSource, factory.getValidationQuery(), timeout));
+		this.parent.getBeanFactory().registerSingleton(name, dataSource);
+		return this;
+	}
+
+	/**
+	 * Start an {@link EmbeddedHornetQServer} built from the provided
+	 * configuration, and register a connection factory connecting to its
+	 * in-VM acceptor as a Spring bean, using the provided name as the bean
+	 * name. The server itself is registered as {@code <name>Server}.
+	 * <p>
+	 * The beans are registered into the parent application context, so that
+	 * they are available during {@link ConfigurableApplicationContext#refresh() refresh}.
+	 * The server is started immediately, so that listener containers can
+	 * connect while the context is refreshed, and is stopped by the
+	 * environment lifecycle.
+	 *
+	 * @param name the name of the connection factory bean in the Spring context
+	 * @param configuration the server configuration
+	 * @return this configurer
+	 * @throws IllegalStateException if no application context has been set
+	 * @throws IllegalStateException if the application context parent was not created by this configurer
+	 * @throws IllegalStateException if the server cannot be started
+	 */
+	public SpringServiceConfigurer registerEmbeddedHornetQ(final String name, final EmbeddedHornetQConfiguration configuration) {
+		ConfigurableApplicationContext context = this.getRequiredContext();
+		if (context.getParent() != this.parent) {
+			throw new IllegalStateException("Cannot register HornetQ beans into the parent context, this configurer did not create it");
+		}
+		if (!this.parent.isActive()) {
+			this.parent.refresh();
+		}
+
+		final EmbeddedHornetQServer server = new EmbeddedHornetQServer(configuration);
+		try {
+			server.start();
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException("Unable to start embedded HornetQ server", ex);
+		}
+
+		LOG.info("registering embedded HornetQ ConnectionFactory: {}", name);
+		this.environment.lifecycle().manage(server);
+		this.parent.getBeanFactory().registerSingleton(name + "Server", server);
+		this.parent.getBeanFactory().registerSingleton(name, server.createConnectionFactory());
+		return this;
+	}
+
 	/**
 	 * Register the Spring Security filter chain with the environment.
 	 * <p>
@@ -348,6 +654,10 @@ public class SpringServiceConfigurer {
 	 * Register resource beans, annotated with Path, defined in the application
 	 * context with the environment.
 	 * <p>
+	 * If any of the resources have methods annotated with
+	 * {@link CachedResponse}, a {@link ResponseCacheResourceMethodDispatchAdapter}
+	 * is also registered, publishing its metrics to the environment.
+	 * <p>
 	 * Calling this method will refresh the context if it hasn't already been
 	 * refreshed.
 	 * 
@@ -359,10 +669,62 @@ public class SpringServiceConfigurer {
 		for (final Map.Entry<String,Object> entry : beans.entrySet()) {
 			LOG.info("registering @Path resource: {}", entry.getValue());
 			this.environment.jersey().register(entry.getValue());
+			if (!this.responseCacheRegistered && hasAnnotatedMethod(entry.getValue(), CachedResponse.class)) {
+				LOG.info("registering response cache");
+				this.environment.jersey().register(new ResponseCacheResourceMethodDispatchAdapter(this.environment.metrics()));
+				this.responseCacheRegistered = true;
+			}
 		}
 		return this;
 	}
 
+	/**
+	 * Register a {@link ConcurrencyLimitResourceMethodDispatchAdapter} with the
+	 * environment, limiting the concurrent requests to each resource class, or
+	 * {@link ConcurrencyLimited} group, to a limit which adapts to observed
+	 * latency. Requests beyond the limit are rejected with 503 Service
+	 * Unavailable. Limit metrics are published to the environment.
+	 * <p>
+	 * The limits apply to all resources registered with the environment,
+	 * including those registered by {@link #registerResources()}.
+	 * 
+	 * @param configuration the limit configuration
+	 * @return this configurer
+	 * @throws IllegalArgumentException if the configuration is invalid
+	 */
+	public SpringServiceConfigurer registerConcurrencyLimits(final ConcurrencyLimitConfiguration configuration) {
+		LOG.info("registering concurrency limits");
+		this.environment.jersey().register(new ConcurrencyLimitResourceMethodDispatchAdapter(configuration, this.environment.metrics()));
+		return this;
+	}
+
+	/**
+	 * Register an {@link AsyncResponseResourceMethodDispatchAdapter} with the
+	 * environment, allowing resource methods to return a Spring
+	 * {@code ListenableFuture} of their result without holding a container
+	 * thread until it completes. Requests not completed within the timeout
+	 * are answered with 503 Service Unavailable.
+	 * <p>
+	 * The adapter is also added to the container request filters, so that
+	 * resumed requests are answered before they reach other dispatch
+	 * adapters. Asynchronous processing is enabled for the servlets and
+	 * filters of the environment's application context as the server starts.
+	 * 
+	 * @param timeout the maximum time to wait for a future to complete
+	 * @return this configurer
+	 */
+	public SpringServiceConfigurer registerAsyncResponses(final Duration timeout) {
+		LOG.info("registering async responses");
+		final AsyncResponseResourceMethodDispatchAdapter adapter = new AsyncResponseResourceMethodDispatchAdapter(timeout.toMilliseconds(), TimeUnit.MILLISECONDS, this.environment.metrics());
+		this.environment.jersey().register(adapter);
+		// Jersey 1 declares the filters as a raw list of filter classes or instances
+		@SuppressWarnings("unchecked")
+		final List<Object> filters = this.environment.jersey().getResourceConfig().getContainerRequestFilters();
+		filters.add(adapter);
+		this.environment.lifecycle().addLifeCycleListener(new AsyncSupportLifeCycleListener(this.environment.getApplicationContext()));
+		return this;
+	}
+
 	/**
 	 * Register Task beans defined in the application context with the
 	 * environment.
@@ -420,6 +782,85 @@ public class SpringServiceConfigurer {
 		return this;
 	}
 
+	/**
+	 * Register a {@link GracefulShutdown} with the environment, which drains
+	 * traffic from the service as the server stops, and closes the
+	 * application context, and its parent if created by this configurer, once
+	 * the server has stopped.
+	 * <p>
+	 * A {@link ReadinessHealthCheck}, named {@code readiness}, is registered
+	 * with the environment, and an {@link InFlightRequestFilter} is registered
+	 * in front of all other filters. Managed objects and lifecycles registered
+	 * by {@link #registerManaged()} and {@link #registerLifeCycles()} are
+	 * stopped once in flight requests and messages have drained. Drain
+	 * metrics are published to the environment.
+	 *
+	 * @param configuration the shutdown configuration
+	 * @return this configurer
+	 * @throws IllegalStateException if no application context has been set
+	 */
+	public SpringServiceConfigurer registerGracefulShutdown(final GracefulShutdownConfiguration configuration) {
+		final ConfigurableApplicationContext context = this.getRequiredContext();
+		final GracefulShutdown shutdown = context.getParent() == this.parent
+				? new GracefulShutdown(configuration, this.environment.metrics(), context, this.parent)
+				: new GracefulShutdown(configuration, this.environment.metrics(), context);
+
+		LOG.info("registering graceful shutdown");
+		this.environment.healthChecks().register("readiness", shutdown.getReadinessHealthCheck());
+		this.environment.servlets()
+			.addFilter("inFlightRequestFilter", shutdown.getInFlightRequestFilter())
+			.addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), false, "/*");
+		this.environment.lifecycle().addLifeCycleListener(shutdown);
+		return this;
+	}
+
+	/**
+	 * Clear the class metadata read while scanning and processing
+	 * {@code @Configuration} classes, and the JavaBeans introspection
+	 * results, of the application context and its parent, and log how much
+	 * heap was reclaimed. Call this once every bean has been registered.
+	 * <p>
+	 * Other caches are left alone. The merged bean definitions are merged
+	 * again by every lookup of beans by type, and Spring's reflection and
+	 * annotation caches hold their entries by soft reference, so are already
+	 * released under memory pressure.
+	 * <p>
+	 * Measuring the heap reclaimed requests two garbage collections, so this
+	 * should only be called during startup.
+	 * <p>
+	 * Calling this method will refresh the context if it hasn't already been
+	 * refreshed.
+	 *
+	 * @return this configurer
+	 * @throws IllegalStateException if no application context has been set
+	 * @see MetadataCacheTrimmer
+	 */
+	public SpringServiceConfigurer trimAfterStartup() {
+		final ConfigurableApplicationContext context = this.getRequiredRefreshedContext();
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+		memory.gc();
+		final long before = memory.getHeapMemoryUsage().getUsed();
+		MetadataCacheTrimmer.trim(context);
+		if (this.parent.isActive()) {
+			MetadataCacheTrimmer.trim(this.parent);
+		}
+		memory.gc();
+		final long after = memory.getHeapMemoryUsage().getUsed();
+
+		LOG.info("trimmed Spring metadata caches, reclaimed {} KB of heap", Math.max(0, before - after) / 1024);
+		return this;
+	}
+
+	private static boolean hasAnnotatedMethod(final Object bean, final Class<? extends Annotation> annotation) {
+		for (final Method method : ReflectionUtils.getUniqueDeclaredMethods(ClassUtils.getUserClass(bean))) {
+			if (AnnotationUtils.findAnnotation(method, annotation) != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	protected ConfigurableApplicationContext getRequiredContext() {
 		if (this.context == null) {
 			throw new IllegalStateException("no context has been set");
@@ -0,0 +1,77 @@
+package com.github.ptomli.bedrock.cache;
+
+import static org.fest.assertions.api.Assertions.*;
+import io.dropwizard.Configuration;
+import io.dropwizard.configuration.ConfigurationFactory;
+import io.dropwizard.jackson.Jackson;
+
+import java.io.File;
+
+import javax.validation.Validation;
+
+import org.fest.assertions.api.Assertions;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+public class CacheManagerConfigurationTest {
+
+	private ClassLoader cl = CacheManagerConfigurationTest.class.getClassLoader();
+	private ConfigurationFactory<MyConfiguration> cf;
+
+	@Before
+	public void setup() {
+		cf = new ConfigurationFactory<MyConfiguration>(MyConfiguration.class, Validation.buildDefaultValidatorFactory().getValidator(), Jackson.newObjectMapper(), "config");
+	}
+
+	@Test
+	public void testDefaultValues() {
+		CacheManagerConfiguration c = new CacheManagerConfiguration();
+
+		assertThat(c.getSpec()).isEqualTo("maximumSize=1000");
+		assertThat(c.isDynamic()).isTrue();
+		assertThat(c.getCaches()).isEmpty();
+		assertThat(c.getLoader()).isNull();
+		assertThat(c.isAllowNullValues()).isTrue();
+	}
+
+	@Test
+	public void testConfiguration() throws Exception {
+		MyConfiguration c = cf.build(new File(cl.getResource("com/github/ptomli/bedrock/cache/CacheManagerConfigurationTest.yml").toURI()));
+
+		assertThat(c.cache.getSpec()).isEqualTo("maximumSize=10");
+		assertThat(c.cache.isDynamic()).isFalse();
+		assertThat(c.cache.getCaches()).hasSize(2);
+		assertThat(c.cache.getCaches().get("users")).isEqualTo("maximumSize=100,expireAfterWrite=5m");
+		Assertions.<Class<?>>assertThat(c.cache.getLoader()).isEqualTo(IdentityLoader.class);
+	}
+
+	@Test
+	public void testCacheManagerFromConfiguration() throws Exception {
+		MyConfiguration c = cf.build(new File(cl.getResource("com/github/ptomli/bedrock/cache/CacheManagerConfigurationTest.yml").toURI()));
+
+		InstrumentedGuavaCacheManager manager = InstrumentedGuavaCacheManager.fromConfiguration(c.cache, new MetricRegistry());
+
+		assertThat(manager.getCacheNames()).containsOnly("users", "rates");
+		assertThat(manager.getCache("other")).isNull();
+		assertThat(manager.getCache("rates").getNativeCache()).isInstanceOf(LoadingCache.class);
+	}
+
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	public static class MyConfiguration extends Configuration {
+		@JsonProperty
+		private CacheManagerConfiguration cache = new CacheManagerConfiguration();
+	}
+
+	public static class IdentityLoader extends CacheLoader<Object, Object> {
+		@Override
+		public Object load(Object key) {
+			return key;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.github.ptomli.bedrock.cache;
+
+import static org.fest.assertions.api.Assertions.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.interceptor.CacheInterceptor;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+public class InstrumentedCacheInterceptorTest {
+
+	private static MetricRegistry metrics;
+
+	private AnnotationConfigApplicationContext context;
+	private UserService service;
+	private Timer loads;
+
+	@Before
+	public void setup() {
+		metrics = new MetricRegistry();
+		context = new AnnotationConfigApplicationContext(CachingConfig.class);
+		service = context.getBean(UserService.class);
+		loads = metrics.timer("caches.users.loads");
+	}
+
+	@After
+	public void teardown() {
+		context.close();
+	}
+
+	@Test
+	public void testCacheInterceptorIsReplaced() {
+		assertThat(context.getBeansOfType(CacheInterceptor.class).values()).hasSize(1);
+		assertThat(context.getBean(CacheInterceptor.class)).isInstanceOf(InstrumentedCacheInterceptor.class);
+	}
+
+	@Test
+	public void testMissRecordsOneLoad() {
+		service.find("a");
+		service.find("a");
+
+		assertThat(loads.getCount()).isEqualTo(1L);
+	}
+
+	@Test
+	public void testFailedLoadRecordsNothing() {
+		try {
+			service.find("fail");
+			fail("expected the load to fail");
+		}
+		catch (IllegalStateException expected) {
+		}
+		service.update("fail");
+
+		assertThat(loads.getCount()).isEqualTo(0L);
+	}
+
+	@Test
+	public void testUnlessSkippedPutDoesNotLeakIntoLaterPut() {
+		service.find("skip");
+		long recorded = loads.getCount();
+		service.update("skip");
+
+		assertThat(loads.getCount()).isEqualTo(recorded);
+	}
+
+	@Configuration
+	@EnableCaching
+	static class CachingConfig {
+		@Bean
+		public static InstrumentedCacheInterceptorBeanPostProcessor instrumentedCacheInterceptorBeanPostProcessor() {
+			return new InstrumentedCacheInterceptorBeanPostProcessor();
+		}
+
+		@Bean
+		public CacheManager cacheManager() {
+			return new InstrumentedGuavaCacheManager(metrics);
+		}
+
+		@Bean
+		public UserService userService() {
+			return new UserService();
+		}
+	}
+
+	public static class UserService {
+		@Cacheable(value = "users", unless = "#id == 'skip'")
+		public String find(String id) {
+			if ("fail".equals(id)) {
+				throw new IllegalStateException(id);
+			}
+			return id.toUpperCase();
+		}
+
+		@CachePut("users")
+		public String update(String id) {
+			return id.toUpperCase();
+		}
+	}
+}
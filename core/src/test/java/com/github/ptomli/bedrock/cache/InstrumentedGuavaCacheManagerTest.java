@@ -0,0 +1,102 @@
+package com.github.ptomli.bedrock.cache;
+
+import static org.fest.assertions.api.Assertions.*;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.CacheBuilder;
+
+public class InstrumentedGuavaCacheManagerTest {
+
+	private MetricRegistry metrics;
+	private InstrumentedGuavaCacheManager manager;
+
+	@Before
+	public void setup() {
+		metrics = new MetricRegistry();
+		manager = new InstrumentedGuavaCacheManager(metrics);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullMetricsThrowsException() {
+		new InstrumentedGuavaCacheManager(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyPrefixThrowsException() {
+		new InstrumentedGuavaCacheManager(metrics, "");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullCacheBuilderThrowsException() {
+		manager.setCacheBuilder(null);
+	}
+
+	@Test
+	public void testCacheBuilderRecordsStatistics() {
+		manager.setCacheBuilder(CacheBuilder.newBuilder().maximumSize(1));
+		Cache cache = manager.getCache("users");
+		cache.put("a", "A");
+		cache.put("b", "B");
+		cache.get("b");
+
+		assertThat(metrics.getGauges().get("caches.users.size").getValue()).isEqualTo(1L);
+		assertThat(metrics.getGauges().get("caches.users.hits").getValue()).isEqualTo(1L);
+	}
+
+	@Test
+	public void testCacheMetricsAreRegistered() {
+		manager.getCache("users");
+
+		assertThat(metrics.getGauges().keySet()).contains(
+				"caches.users.hits",
+				"caches.users.misses",
+				"caches.users.evictions",
+				"caches.users.size",
+				"caches.users.hit-ratio");
+		assertThat(metrics.getTimers().keySet()).contains("caches.users.loads");
+	}
+
+	@Test
+	public void testHitsAndMissesAreCounted() {
+		Cache cache = manager.getCache("users");
+		cache.get("a");
+		cache.put("a", "A");
+		cache.get("a");
+		cache.get("a");
+
+		assertThat(metrics.getGauges().get("caches.users.hits").getValue()).isEqualTo(2L);
+		assertThat(metrics.getGauges().get("caches.users.misses").getValue()).isEqualTo(1L);
+	}
+
+	@Test
+	public void testPerCacheSpecificationIsApplied() {
+		manager.setCacheSpecification("maximumSize=100");
+		manager.setCacheSpecifications(Collections.singletonMap("small", "maximumSize=1"));
+
+		Cache small = manager.getCache("small");
+		small.put("a", "A");
+		small.put("b", "B");
+
+		Cache large = manager.getCache("large");
+		large.put("a", "A");
+		large.put("b", "B");
+
+		assertThat(metrics.getGauges().get("caches.small.size").getValue()).isEqualTo(1L);
+		assertThat(metrics.getGauges().get("caches.small.evictions").getValue()).isEqualTo(1L);
+		assertThat(metrics.getGauges().get("caches.large.size").getValue()).isEqualTo(2L);
+	}
+
+	@Test
+	public void testChangingSpecificationReplacesMetrics() {
+		manager.getCache("users").put("a", "A");
+		manager.setCacheSpecification("maximumSize=10");
+
+		assertThat(metrics.getGauges().get("caches.users.size").getValue()).isEqualTo(0L);
+	}
+}
@@ -0,0 +1,123 @@
+package com.github.ptomli.bedrock.hornetq;
+
+import static org.fest.assertions.api.Assertions.*;
+import io.dropwizard.Configuration;
+import io.dropwizard.configuration.ConfigurationFactory;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.util.Size;
+
+import java.io.File;
+
+import javax.validation.Validation;
+
+import org.hornetq.api.config.HornetQDefaultConfiguration;
+import org.hornetq.core.server.JournalType;
+import org.hornetq.core.settings.impl.AddressFullMessagePolicy;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jms.core.JmsTemplate;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class EmbeddedHornetQServerTest {
+
+	private ClassLoader cl = EmbeddedHornetQServerTest.class.getClassLoader();
+	private EmbeddedHornetQConfiguration configuration;
+	private EmbeddedHornetQServer server;
+
+	@Before
+	public void setup() throws Exception {
+		ConfigurationFactory<MyConfiguration> cf = new ConfigurationFactory<MyConfiguration>(MyConfiguration.class, Validation.buildDefaultValidatorFactory().getValidator(), Jackson.newObjectMapper(), "config");
+		configuration = cf.build(new File(cl.getResource("com/github/ptomli/bedrock/hornetq/EmbeddedHornetQServerTest.yml").toURI())).hornetq;
+		server = new EmbeddedHornetQServer(configuration);
+	}
+
+	@After
+	public void teardown() throws Exception {
+		server.stop();
+	}
+
+	@Test
+	public void testDefaultValues() {
+		EmbeddedHornetQConfiguration c = new EmbeddedHornetQConfiguration();
+
+		assertThat(c.getServerId()).isEqualTo(0);
+		assertThat(c.isPersistenceEnabled()).isFalse();
+		assertThat(c.getJournalType()).isEqualTo(JournalType.NIO);
+		assertThat(c.getMaxSize()).isNull();
+		assertThat(c.getAddressFullPolicy()).isEqualTo(AddressFullMessagePolicy.PAGE);
+		assertThat(c.getMinLargeMessageSize()).isEqualTo(Size.kilobytes(100));
+		assertThat(c.getClusterPassword()).isNull();
+		assertThat(c.getQueues()).isEmpty();
+		assertThat(c.getTopics()).isEmpty();
+	}
+
+	@Test
+	public void testConfiguration() {
+		assertThat(configuration.getServerId()).isEqualTo(7);
+		assertThat(configuration.getJournalFileSize()).isEqualTo(Size.megabytes(1));
+		assertThat(configuration.getMaxSize()).isEqualTo(Size.megabytes(1));
+		assertThat(configuration.getPageSize()).isEqualTo(Size.kilobytes(128));
+		assertThat(configuration.getAddressFullPolicy()).isEqualTo(AddressFullMessagePolicy.FAIL);
+		assertThat(configuration.getQueues()).containsExactly("orders");
+		assertThat(configuration.getTopics()).containsExactly("events");
+		assertThat(configuration.getClusterPassword()).isEqualTo("secret");
+	}
+
+	@Test
+	public void testStartAppliesConfiguration() throws Exception {
+		server.start();
+		assertThat(server.isStarted()).isTrue();
+		assertThat(server.getServer().getConfiguration().isPersistenceEnabled()).isFalse();
+
+		AddressSettings settings = server.getServer().getAddressSettingsRepository().getMatch("jms.queue.orders");
+		assertThat(settings.getMaxSizeBytes()).isEqualTo(Size.megabytes(1).toBytes());
+		assertThat(settings.getAddressFullMessagePolicy()).isEqualTo(AddressFullMessagePolicy.FAIL);
+	}
+
+	@Test
+	public void testStartUsesConfiguredClusterPassword() throws Exception {
+		server.start();
+		assertThat(server.getServer().getConfiguration().getClusterPassword()).isEqualTo("secret");
+	}
+
+	@Test
+	public void testStartReplacesDefaultClusterPassword() throws Exception {
+		server = new EmbeddedHornetQServer(Jackson.newObjectMapper().readValue("{\"dataDirectory\": \"target/hornetq\"}", EmbeddedHornetQConfiguration.class));
+		server.start();
+		assertThat(server.getServer().getConfiguration().getClusterPassword())
+				.isNotEqualTo(HornetQDefaultConfiguration.getDefaultClusterPassword());
+	}
+
+	@Test
+	public void testMessagesAreExchangedOverInVmAcceptor() throws Exception {
+		server.start();
+		JmsTemplate template = new JmsTemplate(server.createConnectionFactory());
+		template.setReceiveTimeout(5000);
+
+		template.convertAndSend("orders", "order-1");
+		assertThat(template.receiveAndConvert("orders")).isEqualTo("order-1");
+	}
+
+	@Test
+	public void testStopIsIdempotent() throws Exception {
+		server.start();
+		server.stop();
+		server.stop();
+		assertThat(server.isStarted()).isFalse();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testGetServerWhenStoppedThrowsException() {
+		server.getServer();
+	}
+
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	static class MyConfiguration extends Configuration {
+		@JsonProperty
+		private EmbeddedHornetQConfiguration hornetq;
+	}
+}
@@ -0,0 +1,202 @@
+package com.github.ptomli.bedrock.hornetq;
+
+import static org.fest.assertions.api.Assertions.*;
+import io.dropwizard.Configuration;
+import io.dropwizard.configuration.ConfigurationFactory;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.util.Size;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import javax.jms.Message;
+import javax.validation.Validation;
+import javax.ws.rs.WebApplicationException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jms.JmsException;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class LargeMessageTemplateTest {
+	private static final long SIZE = Size.megabytes(8).toBytes();
+
+	private ClassLoader cl = LargeMessageTemplateTest.class.getClassLoader();
+	private EmbeddedHornetQServer server;
+	private MetricRegistry metrics;
+	private LargeMessageTemplate template;
+
+	@Before
+	public void setup() throws Exception {
+		ConfigurationFactory<MyConfiguration> cf = new ConfigurationFactory<MyConfiguration>(MyConfiguration.class, Validation.buildDefaultValidatorFactory().getValidator(), Jackson.newObjectMapper(), "config");
+		EmbeddedHornetQConfiguration configuration = cf.build(new File(cl.getResource("com/github/ptomli/bedrock/hornetq/LargeMessageTemplateTest.yml").toURI())).hornetq;
+		server = new EmbeddedHornetQServer(configuration);
+		server.start();
+		metrics = new MetricRegistry();
+		template = new LargeMessageTemplate(server.createConnectionFactory(), metrics, "uploads");
+
+		// discard anything left in the journal by an earlier run
+		while (template.receive("uploads", new ByteArrayOutputStream(), -1) != null) {
+		}
+	}
+
+	@After
+	public void teardown() throws Exception {
+		server.stop();
+	}
+
+	@Test
+	public void testConnectionFactoryUsesMinLargeMessageSize() {
+		assertThat(server.createConnectionFactory().getMinLargeMessageSize()).isEqualTo((int) Size.kilobytes(16).toBytes());
+	}
+
+	@Test
+	public void testBodyIsStreamedThroughQueue() throws Exception {
+		GeneratedInputStream body = new GeneratedInputStream(SIZE);
+		template.send("uploads", body, Collections.singletonMap("filename", "large.bin"));
+
+		CrcOutputStream out = new CrcOutputStream();
+		Message message = template.receive("uploads", out, 5000);
+
+		assertThat(message).isNotNull();
+		assertThat(message.getStringProperty("filename")).isEqualTo("large.bin");
+		assertThat(out.count).isEqualTo(SIZE);
+		assertThat(out.crc.getValue()).isEqualTo(body.crc.getValue());
+		assertThat(metrics.getMeters().get("uploads.bytes-sent").getCount()).isEqualTo(SIZE);
+		assertThat(metrics.getMeters().get("uploads.bytes-received").getCount()).isEqualTo(SIZE);
+	}
+
+	@Test
+	public void testSmallBodyIsSentAsOrdinaryMessage() throws Exception {
+		template.send("uploads", new GeneratedInputStream(100));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertThat(template.receive("uploads", out, 5000)).isNotNull();
+		assertThat(out.size()).isEqualTo(100);
+	}
+
+	@Test
+	public void testReceiveWithoutMessageReturnsNull() {
+		assertThat(template.receive("uploads", new ByteArrayOutputStream(), 100)).isNull();
+	}
+
+	@Test
+	public void testFailedWriteReturnsMessageToQueue() throws Exception {
+		template.send("uploads", new GeneratedInputStream(Size.megabytes(1).toBytes()));
+
+		try {
+			template.receive("uploads", new OutputStream() {
+				private int written = 0;
+
+				@Override
+				public void write(final int b) throws IOException {
+					if (++written > 1000) {
+						throw new IOException("client disconnected");
+					}
+				}
+			}, 5000);
+			fail("expected the receive to fail");
+		}
+		catch (JmsException ex) {
+			// expected
+		}
+
+		CrcOutputStream out = new CrcOutputStream();
+		assertThat(template.receive("uploads", out, 5000)).isNotNull();
+		assertThat(out.count).isEqualTo(Size.megabytes(1).toBytes());
+	}
+
+	@Test
+	public void testStreamingOutputWritesBody() throws Exception {
+		template.send("uploads", new GeneratedInputStream(Size.kilobytes(64).toBytes()));
+
+		CrcOutputStream out = new CrcOutputStream();
+		new LargeMessageStreamingOutput(template, "uploads", 5000).write(out);
+		assertThat(out.count).isEqualTo(Size.kilobytes(64).toBytes());
+	}
+
+	@Test
+	public void testStreamingOutputWithoutMessageIsNoContent() throws Exception {
+		try {
+			new LargeMessageStreamingOutput(template, "uploads", 100).write(new ByteArrayOutputStream());
+			fail("expected no content");
+		}
+		catch (WebApplicationException ex) {
+			assertThat(ex.getResponse().getStatus()).isEqualTo(204);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullNameThrowsException() {
+		new LargeMessageTemplate(server.createConnectionFactory(), metrics, null);
+	}
+
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	static class MyConfiguration extends Configuration {
+		@JsonProperty
+		private EmbeddedHornetQConfiguration hornetq;
+	}
+
+	// pseudo-random bytes, generated as they are read
+	private static class GeneratedInputStream extends InputStream {
+		private final Random random = new Random(17);
+		private final CRC32 crc = new CRC32();
+		private long remaining;
+
+		GeneratedInputStream(final long size) {
+			this.remaining = size;
+		}
+
+		@Override
+		public int read() {
+			if (remaining == 0) {
+				return -1;
+			}
+			remaining--;
+			final int b = random.nextInt(256);
+			crc.update(b);
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) {
+			if (remaining == 0) {
+				return -1;
+			}
+			final int n = (int) Math.min(len, remaining);
+			final byte[] chunk = new byte[n];
+			random.nextBytes(chunk);
+			System.arraycopy(chunk, 0, b, off, n);
+			crc.update(chunk, 0, n);
+			remaining -= n;
+			return n;
+		}
+	}
+
+	private static class CrcOutputStream extends OutputStream {
+		private final CRC32 crc = new CRC32();
+		private long count = 0;
+
+		@Override
+		public void write(final int b) {
+			crc.update(b);
+			count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) {
+			crc.update(b, off, len);
+			count += len;
+		}
+	}
+}
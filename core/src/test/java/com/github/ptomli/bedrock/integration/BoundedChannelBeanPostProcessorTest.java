@@ -0,0 +1,163 @@
+package com.github.ptomli.bedrock.integration;
+
+import static org.fest.assertions.api.Assertions.*;
+import io.dropwizard.Configuration;
+import io.dropwizard.configuration.ConfigurationFactory;
+import io.dropwizard.jackson.Jackson;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import javax.validation.Validation;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.PriorityChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.store.MessageGroupQueue;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class BoundedChannelBeanPostProcessorTest {
+	private static final String CONTEXT = "com/github/ptomli/bedrock/integration/BoundedChannelBeanPostProcessorTest-context.xml";
+
+	private ClassLoader cl = BoundedChannelBeanPostProcessorTest.class.getClassLoader();
+	private MetricRegistry metrics;
+
+	@Before
+	public void setup() {
+		metrics = new MetricRegistry();
+	}
+
+	private ClassPathXmlApplicationContext context(final Map<String, BoundedChannelConfiguration> channels) {
+		ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(new String[] { CONTEXT }, false);
+		context.addBeanFactoryPostProcessor(new BeanFactoryPostProcessor() {
+			@Override
+			public void postProcessBeanFactory(final ConfigurableListableBeanFactory beanFactory) {
+				BoundedChannelBeanPostProcessor processor = new BoundedChannelBeanPostProcessor(channels, metrics);
+				processor.setBeanFactory(beanFactory);
+				beanFactory.addBeanPostProcessor(processor);
+			}
+		});
+		context.refresh();
+		return context;
+	}
+
+	@Test
+	public void testConfiguration() throws Exception {
+		ConfigurationFactory<MyConfiguration> cf = new ConfigurationFactory<MyConfiguration>(MyConfiguration.class, Validation.buildDefaultValidatorFactory().getValidator(), Jackson.newObjectMapper(), "config");
+		Map<String, BoundedChannelConfiguration> channels = cf.build(new File(cl.getResource("com/github/ptomli/bedrock/integration/BoundedChannelBeanPostProcessorTest.yml").toURI())).channels;
+
+		assertThat(channels.get("orders").getCapacity()).isEqualTo(256);
+		assertThat(channels.get("orders").getOverflowPolicy()).isEqualTo(OverflowPolicy.DROP_OLDEST);
+		assertThat(channels.get("orders").getBlockTimeout().toMilliseconds()).isEqualTo(250);
+		assertThat(channels.get("events").getCapacity()).isEqualTo(1024);
+		assertThat(channels.get("events").getOverflowPolicy()).isEqualTo(OverflowPolicy.BLOCK);
+		assertThat(channels.get("events").getBlockTimeout().toSeconds()).isEqualTo(1);
+	}
+
+	@Test
+	public void testNamedQueueChannelsAreReplaced() {
+		Map<String, BoundedChannelConfiguration> channels = new HashMap<String, BoundedChannelConfiguration>();
+		channels.put("orders", new BoundedChannelConfiguration());
+		ClassPathXmlApplicationContext context = context(channels);
+		try {
+			QueueChannel orders = context.getBean("orders", QueueChannel.class);
+			assertThat(orders).isInstanceOf(BoundedQueueChannel.class);
+			assertThat(orders.getComponentName()).isEqualTo("orders");
+			assertThat(orders.getChannelInterceptors()).hasSize(1);
+			assertThat(orders.getRemainingCapacity()).isEqualTo(1024);
+			assertThat(metrics.getGauges()).containsKey("channels.orders.depth");
+
+			assertThat(context.getBean("events")).isNotInstanceOf(BoundedQueueChannel.class);
+		}
+		finally {
+			context.close();
+		}
+	}
+
+	@Test
+	public void testDatatypesAndConverterAreCopied() {
+		ClassPathXmlApplicationContext context = context(Collections.singletonMap("typed", new BoundedChannelConfiguration()));
+		try {
+			QueueChannel typed = context.getBean("typed", QueueChannel.class);
+			assertThat(typed).isInstanceOf(BoundedQueueChannel.class);
+			assertThat((Class<?>[]) ReflectionTestUtils.getField(typed, "datatypes")).containsOnly(Integer.class);
+			assertThat(ReflectionTestUtils.getField(typed, "messageConverter")).isSameAs(context.getBean("converter"));
+
+			try {
+				typed.send(MessageBuilder.withPayload(new Object()).build());
+				fail("expected the payload to be refused");
+			}
+			catch (MessageDeliveryException expected) {
+			}
+			assertThat(typed.send(MessageBuilder.withPayload(42).build())).isTrue();
+		}
+		finally {
+			context.close();
+		}
+	}
+
+	@Test
+	public void testMessageStoreChannelIsNotReplaced() {
+		try {
+			context(Collections.singletonMap("stored", new BoundedChannelConfiguration()));
+			fail("expected the message store channel to be refused");
+		}
+		catch (BeanCreationException ex) {
+			assertThat(ex.getMessage()).contains(MessageGroupQueue.class.getName());
+		}
+	}
+
+	@Test
+	public void testCustomQueueChannelIsNotReplaced() {
+		try {
+			context(Collections.singletonMap("custom", new BoundedChannelConfiguration()));
+			fail("expected the custom queue channel to be refused");
+		}
+		catch (BeanCreationException ex) {
+			assertThat(ex.getMessage()).contains(ArrayBlockingQueue.class.getName());
+		}
+	}
+
+	@Test
+	public void testPriorityChannelIsNotReplaced() {
+		try {
+			context(Collections.singletonMap("prioritised", new BoundedChannelConfiguration()));
+			fail("expected the priority channel to be refused");
+		}
+		catch (BeanCreationException ex) {
+			assertThat(ex.getMessage()).contains(PriorityChannel.class.getName());
+		}
+	}
+
+	@Test
+	public void testDirectChannelIsNotReplaced() {
+		try {
+			context(Collections.singletonMap("direct", new BoundedChannelConfiguration()));
+			fail("expected the direct channel to be refused");
+		}
+		catch (BeanCreationException ex) {
+			assertThat(ex.getMessage()).contains(DirectChannel.class.getName());
+		}
+	}
+
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	static class MyConfiguration extends Configuration {
+		@JsonProperty
+		private Map<String, BoundedChannelConfiguration> channels;
+	}
+}
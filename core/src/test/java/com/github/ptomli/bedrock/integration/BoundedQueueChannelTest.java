@@ -0,0 +1,251 @@
+package com.github.ptomli.bedrock.integration;
+
+import static org.fest.assertions.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.core.MessageSelector;
+import org.springframework.integration.core.MessagingTemplate;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class BoundedQueueChannelTest {
+
+	private MetricRegistry metrics;
+
+	@Before
+	public void setup() {
+		metrics = new MetricRegistry();
+	}
+
+	private BoundedQueueChannel channel(final int capacity, final OverflowPolicy policy, final long blockTimeoutMillis) {
+		BoundedQueueChannel channel = new BoundedQueueChannel(capacity, policy, blockTimeoutMillis, TimeUnit.MILLISECONDS, metrics, "test");
+		channel.setBeanName("test");
+		return channel;
+	}
+
+	private static Message<Integer> message(final int payload) {
+		return MessageBuilder.withPayload(payload).build();
+	}
+
+	@Test
+	public void testRingBufferCapacityIsRoundedToPowerOfTwo() {
+		assertThat(new RingBuffer<Object>(1).capacity()).isEqualTo(2);
+		assertThat(new RingBuffer<Object>(5).capacity()).isEqualTo(8);
+		assertThat(new RingBuffer<Object>(1024).capacity()).isEqualTo(1024);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRingBufferZeroCapacityThrowsException() {
+		new RingBuffer<Object>(0);
+	}
+
+	@Test
+	public void testRingBufferIsFifoAndBounded() {
+		RingBuffer<Integer> buffer = new RingBuffer<Integer>(4);
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < 4; i++) {
+				assertThat(buffer.offer(i)).isTrue();
+			}
+			assertThat(buffer.offer(4)).isFalse();
+			assertThat(buffer.size()).isEqualTo(4);
+			for (int i = 0; i < 4; i++) {
+				assertThat(buffer.poll()).isEqualTo(i);
+			}
+			assertThat(buffer.poll()).isNull();
+		}
+	}
+
+	@Test
+	public void testSendAndReceive() {
+		BoundedQueueChannel channel = channel(4, OverflowPolicy.REJECT, 0);
+		assertThat(channel.send(message(1))).isTrue();
+		assertThat(channel.send(message(2))).isTrue();
+		assertThat(channel.getQueueSize()).isEqualTo(2);
+		assertThat(channel.getRemainingCapacity()).isEqualTo(2);
+		assertThat(metrics.getGauges().get("channels.test.depth").getValue()).isEqualTo(2);
+		assertThat(metrics.getGauges().get("channels.test.capacity").getValue()).isEqualTo(4);
+
+		assertThat(channel.receive(0).getPayload()).isEqualTo(1);
+		assertThat(channel.receive(0).getPayload()).isEqualTo(2);
+		assertThat(channel.receive(0)).isNull();
+	}
+
+	@Test
+	public void testRejectPolicyFailsSendWhenFull() {
+		BoundedQueueChannel channel = channel(2, OverflowPolicy.REJECT, 0);
+		channel.send(message(1));
+		channel.send(message(2));
+
+		assertThat(channel.send(message(3), 0)).isFalse();
+		assertThat(channel.send(message(4))).isFalse();
+		assertThat(metrics.getMeters().get("channels.test.rejections").getCount()).isEqualTo(2);
+		try {
+			new MessagingTemplate(channel).send(message(5));
+			fail("expected a delivery failure");
+		}
+		catch (MessageDeliveryException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testDropOldestPolicyDiscardsOldestMessage() {
+		BoundedQueueChannel channel = channel(2, OverflowPolicy.DROP_OLDEST, 0);
+		channel.send(message(1));
+		channel.send(message(2));
+		assertThat(channel.send(message(3))).isTrue();
+
+		assertThat(metrics.getMeters().get("channels.test.drops").getCount()).isEqualTo(1);
+		assertThat(channel.receive(0).getPayload()).isEqualTo(2);
+		assertThat(channel.receive(0).getPayload()).isEqualTo(3);
+	}
+
+	@Test
+	public void testBlockPolicyGivesUpAfterBlockTimeout() {
+		BoundedQueueChannel channel = channel(2, OverflowPolicy.BLOCK, 100);
+		channel.send(message(0));
+		channel.send(message(1));
+
+		long start = System.nanoTime();
+		assertThat(channel.send(message(2), -1)).isFalse();
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(100);
+		assertThat(metrics.getTimers().get("channels.test.wait-time").getCount()).isEqualTo(1);
+		assertThat(metrics.getMeters().get("channels.test.rejections").getCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testBlockPolicyWaitsForSpace() throws Exception {
+		final BoundedQueueChannel channel = channel(2, OverflowPolicy.BLOCK, 10000);
+		channel.send(message(0));
+		channel.send(message(1));
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Boolean> sent = executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return channel.send(message(2));
+				}
+			});
+			Thread.sleep(50);
+			assertThat(sent.isDone()).isFalse();
+
+			assertThat(channel.receive(0).getPayload()).isEqualTo(0);
+			assertThat(sent.get(5, TimeUnit.SECONDS)).isTrue();
+			assertThat(channel.receive(0).getPayload()).isEqualTo(1);
+			assertThat(channel.receive(0).getPayload()).isEqualTo(2);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testReceiveWaitsForMessage() throws Exception {
+		final BoundedQueueChannel channel = channel(4, OverflowPolicy.BLOCK, 0);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Message<?>> received = executor.submit(new Callable<Message<?>>() {
+				@Override
+				public Message<?> call() {
+					return channel.receive();
+				}
+			});
+			Thread.sleep(50);
+			channel.send(message(1));
+			assertThat(received.get(5, TimeUnit.SECONDS).getPayload()).isEqualTo(1);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testReceiveTimesOut() {
+		assertThat(channel(4, OverflowPolicy.BLOCK, 0).receive(50)).isNull();
+	}
+
+	@Test
+	public void testClearAndPurge() {
+		BoundedQueueChannel channel = channel(8, OverflowPolicy.REJECT, 0);
+		for (int i = 0; i < 6; i++) {
+			channel.send(message(i));
+		}
+
+		List<Message<?>> purged = channel.purge(new MessageSelector() {
+			@Override
+			public boolean accept(final Message<?> message) {
+				return (Integer) message.getPayload() % 2 == 0;
+			}
+		});
+		assertThat(purged).hasSize(3);
+		assertThat(channel.getQueueSize()).isEqualTo(3);
+		assertThat(channel.receive(0).getPayload()).isEqualTo(0);
+
+		assertThat(channel.clear()).hasSize(2);
+		assertThat(channel.getQueueSize()).isEqualTo(0);
+	}
+
+	@Test
+	public void testConcurrentProducersAndConsumersDeliverEveryMessageOnce() throws Exception {
+		final BoundedQueueChannel channel = channel(16, OverflowPolicy.BLOCK, 10000);
+		final int producers = 4;
+		final int perProducer = 10000;
+		ExecutorService executor = Executors.newFixedThreadPool(producers * 2);
+		try {
+			for (int p = 0; p < producers; p++) {
+				final int base = p * perProducer;
+				executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int i = 0; i < perProducer; i++) {
+							channel.send(message(base + i));
+						}
+						return null;
+					}
+				});
+			}
+			@SuppressWarnings("unchecked")
+			Future<Set<Integer>>[] consumers = new Future[producers];
+			for (int c = 0; c < producers; c++) {
+				consumers[c] = executor.submit(new Callable<Set<Integer>>() {
+					@Override
+					public Set<Integer> call() {
+						Set<Integer> received = new HashSet<Integer>();
+						Message<?> message;
+						while ((message = channel.receive(500)) != null) {
+							received.add((Integer) message.getPayload());
+						}
+						return received;
+					}
+				});
+			}
+
+			Set<Integer> all = new HashSet<Integer>();
+			int total = 0;
+			for (Future<Set<Integer>> consumer : consumers) {
+				Set<Integer> received = consumer.get(60, TimeUnit.SECONDS);
+				total += received.size();
+				all.addAll(received);
+			}
+			assertThat(total).isEqualTo(producers * perProducer);
+			assertThat(all).hasSize(producers * perProducer);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,321 @@
+package com.github.ptomli.bedrock.integration;
+
+import static org.fest.assertions.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.aggregator.AggregatingMessageHandler;
+import org.springframework.integration.aggregator.DefaultAggregatingMessageGroupProcessor;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.store.MessageGroup;
+import org.springframework.integration.store.MessageGroupStore;
+import org.springframework.integration.store.MessageGroupStore.MessageGroupCallback;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+public class StripedMessageGroupStoreTest {
+
+	private StripedMessageGroupStore store;
+
+	@Before
+	public void setup() {
+		store = new StripedMessageGroupStore(4);
+	}
+
+	private static Message<Integer> message(final int payload) {
+		return MessageBuilder.withPayload(payload).build();
+	}
+
+	private static List<Object> payloads(final MessageGroup group) {
+		List<Object> payloads = new ArrayList<Object>();
+		for (Message<?> message : group.getMessages()) {
+			payloads.add(message.getPayload());
+		}
+		return payloads;
+	}
+
+	@Test
+	public void testLongHashIndexBehavesAsMap() {
+		LongHashIndex<Long> index = new LongHashIndex<Long>();
+		Map<Long, Long> expected = new HashMap<Long, Long>();
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			long key = random.nextInt(2048) - 1024;
+			if (random.nextInt(3) == 0) {
+				assertThat(index.remove(key)).isEqualTo(expected.remove(key));
+			}
+			else {
+				assertThat(index.put(key, (long) i)).isEqualTo(expected.put(key, (long) i));
+			}
+			assertThat(index.size()).isEqualTo(expected.size());
+		}
+		for (long key = -1024; key < 1024; key++) {
+			assertThat(index.get(key)).isEqualTo(expected.get(key));
+		}
+		List<Long> values = new ArrayList<Long>();
+		index.addValuesTo(values);
+		assertThat(values).hasSize(expected.size());
+		assertThat(values).containsOnly(expected.values().toArray(new Long[0]));
+	}
+
+	@Test
+	public void testStripesAreRoundedToPowerOfTwo() {
+		assertThat(new StripedMessageGroupStore(1).getStripes()).isEqualTo(1);
+		assertThat(new StripedMessageGroupStore(5).getStripes()).isEqualTo(8);
+		assertThat(new StripedMessageGroupStore().getStripes()).isGreaterThanOrEqualTo(4);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroStripesThrowsException() {
+		new StripedMessageGroupStore(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullGroupIdThrowsException() {
+		store.addMessageToGroup(null, message(1));
+	}
+
+	@Test
+	public void testAddMessagesToGroup() {
+		store.addMessageToGroup(7L, message(1));
+		MessageGroup group = store.addMessageToGroup(7L, message(2));
+
+		assertThat(group.getGroupId()).isEqualTo(7L);
+		assertThat(payloads(group)).containsExactly(1, 2);
+		assertThat(group.getOne().getPayload()).isEqualTo(1);
+		assertThat(group.getTimestamp()).isGreaterThan(0);
+		assertThat(group.getLastModified()).isGreaterThanOrEqualTo(group.getTimestamp());
+		assertThat(payloads(store.getMessageGroup(7L))).containsExactly(1, 2);
+		assertThat(store.messageGroupSize(7L)).isEqualTo(2);
+		assertThat(store.getOneMessageFromGroup(7L).getPayload()).isEqualTo(1);
+	}
+
+	@Test
+	public void testMissingGroupIsEmpty() {
+		MessageGroup group = store.getMessageGroup("missing");
+		assertThat(group.getGroupId()).isEqualTo("missing");
+		assertThat(group.size()).isEqualTo(0);
+		assertThat(group.getOne()).isNull();
+		assertThat(group.getSequenceSize()).isEqualTo(0);
+		assertThat(store.messageGroupSize("missing")).isEqualTo(0);
+		assertThat(store.pollMessageFromGroup("missing")).isNull();
+		assertThat(store.getMessageGroupCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testKeysOfDifferentTypesAreDifferentGroups() {
+		store.addMessageToGroup(1L, message(1));
+		store.addMessageToGroup(1, message(2));
+		store.addMessageToGroup("1", message(3));
+
+		assertThat(payloads(store.getMessageGroup(1L))).containsExactly(1);
+		assertThat(payloads(store.getMessageGroup(1))).containsExactly(2);
+		assertThat(payloads(store.getMessageGroup("1"))).containsExactly(3);
+		assertThat(store.getMessageGroupCount()).isEqualTo(3);
+
+		store.removeMessageGroup(1);
+		assertThat(store.messageGroupSize(1)).isEqualTo(0);
+		assertThat(store.messageGroupSize(1L)).isEqualTo(1);
+	}
+
+	@Test
+	public void testGroupMessagesAreSnapshots() {
+		Message<Integer> first = message(1);
+		store.addMessageToGroup(1L, first);
+		store.addMessageToGroup(1L, message(2));
+		MessageGroup snapshot = store.getMessageGroup(1L);
+
+		store.addMessageToGroup(1L, message(3));
+		store.removeMessageFromGroup(1L, first);
+		store.pollMessageFromGroup(1L);
+		store.completeGroup(1L);
+
+		assertThat(payloads(snapshot)).containsExactly(1, 2);
+		assertThat(payloads(store.getMessageGroup(1L))).containsExactly(3);
+		assertThat(store.getMessageGroup(1L).isComplete()).isTrue();
+		assertThat(snapshot.isComplete()).isTrue();
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testGroupMessagesAreUnmodifiable() {
+		store.addMessageToGroup(1L, message(1)).getMessages().clear();
+	}
+
+	@Test
+	public void testPollMessageFromGroup() {
+		for (int i = 0; i < 10; i++) {
+			store.addMessageToGroup("queue", message(i));
+		}
+		for (int i = 0; i < 5; i++) {
+			assertThat(store.pollMessageFromGroup("queue").getPayload()).isEqualTo(i);
+		}
+		store.addMessageToGroup("queue", message(10));
+		assertThat(payloads(store.getMessageGroup("queue"))).containsExactly(5, 6, 7, 8, 9, 10);
+		assertThat(store.getMessageCountForAllMessageGroups()).isEqualTo(6);
+	}
+
+	@Test
+	public void testRemoveMessageFromGroup() {
+		Message<Integer> second = message(2);
+		store.addMessageToGroup(1, message(1));
+		store.addMessageToGroup(1, second);
+		store.addMessageToGroup(1, message(3));
+
+		MessageGroup group = store.removeMessageFromGroup(1, second);
+		assertThat(payloads(group)).containsExactly(1, 3);
+		assertThat(payloads(store.removeMessageFromGroup(1, message(4)))).containsExactly(1, 3);
+		assertThat(store.getMessageCountForAllMessageGroups()).isEqualTo(2);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCompleteMissingGroupThrowsException() {
+		store.completeGroup("missing");
+	}
+
+	@Test
+	public void testSetLastReleasedSequenceNumber() {
+		store.addMessageToGroup(1L, message(1));
+		store.setLastReleasedSequenceNumberForGroup(1L, 5);
+		assertThat(store.getMessageGroup(1L).getLastReleasedMessageSequenceNumber()).isEqualTo(5);
+		assertThat(store.getGroupMetadata(1L).getLastReleasedMessageSequenceNumber()).isEqualTo(5);
+	}
+
+	@Test
+	public void testSequenceSizeIsTakenFromFirstMessage() {
+		MessageGroup group = store.addMessageToGroup(1L, MessageBuilder.withPayload(1).setSequenceSize(3).build());
+		assertThat(group.getSequenceSize()).isEqualTo(3);
+	}
+
+	@Test
+	public void testCounts() {
+		for (int i = 0; i < 100; i++) {
+			store.addMessageToGroup((long) i % 10, message(i));
+		}
+		assertThat(store.getMessageGroupCount()).isEqualTo(10);
+		assertThat(store.getMessageCountForAllMessageGroups()).isEqualTo(100);
+
+		store.removeMessageGroup(3L);
+		assertThat(store.getMessageGroupCount()).isEqualTo(9);
+		assertThat(store.getMessageCountForAllMessageGroups()).isEqualTo(90);
+	}
+
+	@Test
+	public void testIteratorReturnsEveryGroup() {
+		for (int i = 0; i < 50; i++) {
+			store.addMessageToGroup(i, message(i));
+			store.addMessageToGroup((long) i, message(i));
+			store.addMessageToGroup("group" + i, message(i));
+		}
+		int count = 0;
+		for (Iterator<MessageGroup> it = store.iterator(); it.hasNext(); it.next()) {
+			count++;
+		}
+		assertThat(count).isEqualTo(150);
+	}
+
+	@Test
+	public void testExpireMessageGroups() throws Exception {
+		final List<Object> expired = new ArrayList<Object>();
+		store.registerMessageGroupExpiryCallback(new MessageGroupCallback() {
+			@Override
+			public void execute(final MessageGroupStore messageGroupStore, final MessageGroup group) {
+				expired.add(group.getGroupId());
+				messageGroupStore.removeMessageGroup(group.getGroupId());
+			}
+		});
+		store.addMessageToGroup(1L, message(1));
+		store.addMessageToGroup("old", message(2));
+		Thread.sleep(50);
+		store.addMessageToGroup(2L, message(3));
+
+		assertThat(store.expireMessageGroups(25)).isEqualTo(2);
+		assertThat(expired).containsOnly(1L, "old");
+		assertThat(store.getMessageGroupCount()).isEqualTo(1);
+		assertThat(store.messageGroupSize(2L)).isEqualTo(1);
+	}
+
+	@Test
+	public void testExpiredGroupsAreCopies() throws Exception {
+		final List<MessageGroup> expired = new ArrayList<MessageGroup>();
+		store.registerMessageGroupExpiryCallback(new MessageGroupCallback() {
+			@Override
+			public void execute(final MessageGroupStore messageGroupStore, final MessageGroup group) {
+				messageGroupStore.addMessageToGroup(group.getGroupId(), message(2));
+				messageGroupStore.completeGroup(group.getGroupId());
+				expired.add(group);
+			}
+		});
+		long lastModified = store.addMessageToGroup(1L, message(1)).getLastModified();
+		Thread.sleep(10);
+
+		assertThat(store.expireMessageGroups(0)).isEqualTo(1);
+		assertThat(expired.get(0).size()).isEqualTo(1);
+		assertThat(expired.get(0).isComplete()).isFalse();
+		assertThat(expired.get(0).getLastModified()).isEqualTo(lastModified);
+		assertThat(store.getMessageGroup(1L).getLastModified()).isGreaterThan(lastModified);
+	}
+
+	@Test
+	public void testConcurrentSendersToManyGroups() throws Exception {
+		final int senders = 8;
+		final int groups = 1000;
+		final int perSender = 10000;
+		ExecutorService executor = Executors.newFixedThreadPool(senders);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int s = 0; s < senders; s++) {
+				final int sender = s;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int i = 0; i < perSender; i++) {
+							store.addMessageToGroup((long) ((sender + i) % groups), message(i));
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get(60, TimeUnit.SECONDS);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		assertThat(store.getMessageGroupCount()).isEqualTo(groups);
+		assertThat(store.getMessageCountForAllMessageGroups()).isEqualTo(senders * perSender);
+		int total = 0;
+		for (MessageGroup group : store) {
+			total += group.size();
+		}
+		assertThat(total).isEqualTo(senders * perSender);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testAggregatorReleasesCompleteGroups() {
+		QueueChannel output = new QueueChannel();
+		AggregatingMessageHandler aggregator = new AggregatingMessageHandler(new DefaultAggregatingMessageGroupProcessor(), store);
+		aggregator.setOutputChannel(output);
+
+		for (int i = 1; i <= 3; i++) {
+			aggregator.handleMessage(MessageBuilder.withPayload(i).setCorrelationId(42L).setSequenceNumber(i).setSequenceSize(3).build());
+		}
+
+		Message<?> aggregated = output.receive(0);
+		assertThat((List<Object>) aggregated.getPayload()).containsOnly(1, 2, 3);
+		assertThat(store.getMessageCountForAllMessageGroups()).isEqualTo(0);
+	}
+}
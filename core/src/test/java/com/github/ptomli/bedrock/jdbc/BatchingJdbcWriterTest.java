@@ -0,0 +1,202 @@
+package com.github.ptomli.bedrock.jdbc;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class BatchingJdbcWriterTest {
+
+	private MetricRegistry metrics;
+	private DriverManagerDataSource dataSource;
+	private JdbcTemplate jdbcTemplate;
+	private BatchingJdbcWriter writer;
+
+	@Before
+	public void setup() {
+		dataSource = new DriverManagerDataSource("jdbc:h2:mem:BatchingJdbcWriterTest;DB_CLOSE_DELAY=-1", "sa", "");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("CREATE TABLE events (id INT PRIMARY KEY, payload VARCHAR(32))");
+
+		metrics = new MetricRegistry();
+		writer = new BatchingJdbcWriter(dataSource, "INSERT INTO events (id, payload) VALUES (?, ?)", 50, 20, TimeUnit.MILLISECONDS, metrics, "events");
+		writer.start();
+	}
+
+	@After
+	public void teardown() throws Exception {
+		writer.stop();
+		jdbcTemplate.execute("DROP TABLE events");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullDataSourceThrowsException() {
+		new BatchingJdbcWriter(null, "INSERT", 1, 1, TimeUnit.MILLISECONDS, metrics, "x");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCapacitySmallerThanBatchThrowsException() {
+		new BatchingJdbcWriter(mock(DataSource.class), "INSERT", 10, 1, TimeUnit.MILLISECONDS, 5, metrics, "x");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testWriteWhenStoppedThrowsException() throws Exception {
+		writer.stop();
+		writer.write(1, "one");
+	}
+
+	@Test
+	public void testUpdateIsCommitted() {
+		assertThat(writer.update(1, "one")).isEqualTo(1);
+		assertThat(jdbcTemplate.queryForObject("SELECT payload FROM events WHERE id = 1", String.class)).isEqualTo("one");
+	}
+
+	@Test
+	public void testConcurrentWritesAreBatched() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < 500; i++) {
+				final int id = i;
+				results.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						return writer.update(id, "payload-" + id);
+					}
+				}));
+			}
+			for (Future<Integer> result : results) {
+				assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM events", Integer.class)).isEqualTo(500);
+		assertThat(metrics.getHistograms().get("events.batch-size").getSnapshot().getMax()).isGreaterThan(1L);
+		assertThat(metrics.getTimers().get("events.flushes").getCount()).isLessThan(500L);
+		assertThat(metrics.getTimers().get("events.latency").getCount()).isEqualTo(500L);
+	}
+
+	@Test
+	public void testFailedRowDoesNotFailBatch() throws Exception {
+		ListenableFuture<Integer> first = writer.write(1, "one");
+		ListenableFuture<Integer> duplicate = writer.write(1, "duplicate");
+		ListenableFuture<Integer> second = writer.write(2, "two");
+
+		assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+		assertThat(second.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+		try {
+			duplicate.get(10, TimeUnit.SECONDS);
+			fail("expected duplicate key failure");
+		}
+		catch (ExecutionException ex) {
+			assertThat(ex.getCause()).isInstanceOf(DuplicateKeyException.class);
+		}
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM events", Integer.class)).isEqualTo(2);
+	}
+
+	@Test
+	public void testStopFlushesQueuedWrites() throws Exception {
+		ListenableFuture<Integer> write = writer.write(1, "one");
+		writer.stop();
+
+		assertThat(write.isDone()).isTrue();
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM events", Integer.class)).isEqualTo(1);
+	}
+
+	@Test
+	public void testInterruptedFlusherFlushesPartialBatch() throws Exception {
+		BatchingJdbcWriter slow = new BatchingJdbcWriter(dataSource, "INSERT INTO events (id, payload) VALUES (?, ?)", 50, 10, TimeUnit.SECONDS, metrics, "slow");
+		slow.start();
+		try {
+			ListenableFuture<Integer> write = slow.write(1, "one");
+			// the flusher is now waiting up to ten seconds for the batch to fill
+			Thread.sleep(100);
+			flusher("batching-jdbc-writer-slow").interrupt();
+
+			assertThat(write.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+			assertThat(metrics.getTimers().get("slow.latency").getCount()).isEqualTo(1L);
+		}
+		finally {
+			slow.stop();
+		}
+	}
+
+	@Test
+	public void testStopRacingWritersCompletesEveryWrite() throws Exception {
+		final BatchingJdbcWriter racing = new BatchingJdbcWriter(dataSource, "INSERT INTO events (id, payload) VALUES (?, ?)", 5, 1, TimeUnit.MILLISECONDS, 5, metrics, "racing");
+		racing.start();
+		final AtomicInteger ids = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<List<ListenableFuture<Integer>>>> writers = new ArrayList<Future<List<ListenableFuture<Integer>>>>();
+			for (int i = 0; i < 8; i++) {
+				writers.add(executor.submit(new Callable<List<ListenableFuture<Integer>>>() {
+					@Override
+					public List<ListenableFuture<Integer>> call() throws Exception {
+						List<ListenableFuture<Integer>> writes = new ArrayList<ListenableFuture<Integer>>();
+						try {
+							for (;;) {
+								int id = ids.incrementAndGet();
+								writes.add(racing.write(id, "payload-" + id));
+							}
+						}
+						catch (IllegalStateException ex) {
+							return writes;
+						}
+					}
+				}));
+			}
+			Thread.sleep(100);
+			racing.stop();
+
+			long total = 0;
+			for (Future<List<ListenableFuture<Integer>>> writer : writers) {
+				for (ListenableFuture<Integer> write : writer.get(10, TimeUnit.SECONDS)) {
+					try {
+						write.get(10, TimeUnit.SECONDS);
+					}
+					catch (ExecutionException ex) {
+						assertThat(ex.getCause()).isInstanceOf(IllegalStateException.class);
+					}
+					total++;
+				}
+			}
+			assertThat(metrics.getTimers().get("racing.latency").getCount()).isEqualTo(total);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static Thread flusher(final String name) {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals(name)) {
+				return thread;
+			}
+		}
+		throw new IllegalStateException("no thread " + name);
+	}
+}
@@ -0,0 +1,141 @@
+package com.github.ptomli.bedrock.jdbc;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import io.dropwizard.db.DataSourceFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class InstrumentedDataSourceTest {
+
+	private MetricRegistry metrics;
+	private ManagedInstrumentedDataSource dataSource;
+
+	@Before
+	public void setup() throws Exception {
+		DataSourceFactory factory = new DataSourceFactory();
+		factory.setDriverClass("org.h2.Driver");
+		factory.setUrl("jdbc:h2:mem:InstrumentedDataSourceTest;DB_CLOSE_DELAY=-1");
+		factory.setUser("sa");
+		factory.setValidationQuery("SELECT 1");
+
+		metrics = new MetricRegistry();
+		dataSource = ManagedInstrumentedDataSource.build(factory, metrics, "test");
+		dataSource.start();
+	}
+
+	@After
+	public void teardown() throws Exception {
+		dataSource.stop();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullDataSourceThrowsException() {
+		new InstrumentedDataSource(null, metrics, "test");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyPrefixThrowsException() {
+		new InstrumentedDataSource(mock(DataSource.class), metrics, "");
+	}
+
+	@Test
+	public void testConnectionWaitIsTimed() throws Exception {
+		dataSource.getConnection().close();
+
+		assertThat(metrics.getTimers().get("datasources.test.connections").getCount()).isEqualTo(1L);
+	}
+
+	@Test
+	public void testPoolGaugesAreRegistered() throws Exception {
+		Connection connection = dataSource.getConnection();
+		try {
+			assertThat(metrics.getGauges().get("datasources.test.active").getValue()).isEqualTo(1);
+			assertThat(metrics.getGauges().keySet()).contains("datasources.test.idle", "datasources.test.size", "datasources.test.waiting");
+		}
+		finally {
+			connection.close();
+		}
+	}
+
+	@Test
+	public void testPreparedStatementIsTimedBySql() throws Exception {
+		Connection connection = dataSource.getConnection();
+		try {
+			PreparedStatement statement = connection.prepareStatement("SELECT  ?\n FROM DUAL");
+			statement.setInt(1, 1);
+			ResultSet rs = statement.executeQuery();
+			assertThat(rs.next()).isTrue();
+			assertThat(statement.getConnection()).isSameAs(connection);
+			statement.close();
+		}
+		finally {
+			connection.close();
+		}
+
+		assertThat(metrics.getTimers().get("datasources.test.statements.SELECT ? FROM DUAL").getCount()).isEqualTo(1L);
+	}
+
+	@Test
+	public void testStatementIsTimedBySql() throws Exception {
+		Connection connection = dataSource.getConnection();
+		try {
+			Statement statement = connection.createStatement();
+			statement.execute("SELECT 1");
+			statement.execute("SELECT 1");
+			statement.close();
+		}
+		finally {
+			connection.close();
+		}
+
+		assertThat(metrics.getTimers().get("datasources.test.statements.SELECT 1").getCount()).isEqualTo(2L);
+	}
+
+	@Test
+	public void testStatementTimersAreBounded() throws Exception {
+		InstrumentedDataSource bounded = new InstrumentedDataSource(dataSource, metrics, "bounded", 1);
+		Connection connection = bounded.getConnection();
+		try {
+			Statement statement = connection.createStatement();
+			statement.execute("SELECT 1");
+			statement.execute("SELECT 2");
+			statement.close();
+		}
+		finally {
+			connection.close();
+		}
+
+		assertThat(metrics.getTimers().get("bounded.statements.SELECT 1").getCount()).isEqualTo(1L);
+		assertThat(metrics.getTimers().get("bounded.statements.other").getCount()).isEqualTo(1L);
+		assertThat(metrics.getTimers().keySet()).doesNotContain("bounded.statements.SELECT 2");
+	}
+
+	@Test
+	public void testUnwrap() throws Exception {
+		assertThat(dataSource.unwrap(InstrumentedDataSource.class)).isSameAs(dataSource);
+		assertThat(dataSource.isWrapperFor(DataSource.class)).isTrue();
+	}
+
+	@Test
+	public void testHealthCheck() throws Exception {
+		assertThat(new DataSourceHealthCheck(dataSource, "SELECT 1", 1).execute().isHealthy()).isTrue();
+		assertThat(new DataSourceHealthCheck(dataSource, "SELECT FROM NOWHERE", 1).execute().isHealthy()).isFalse();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testHealthCheckWithoutQueryThrowsException() {
+		new DataSourceHealthCheck(dataSource, null, 1);
+	}
+}
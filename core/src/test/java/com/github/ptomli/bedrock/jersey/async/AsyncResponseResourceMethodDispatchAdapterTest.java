@@ -0,0 +1,332 @@
+package com.github.ptomli.bedrock.jersey.async;
+
+import static org.fest.assertions.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.github.ptomli.bedrock.jersey.limiting.AdaptiveConcurrencyLimit;
+import com.github.ptomli.bedrock.jersey.limiting.ConcurrencyLimitConfiguration;
+import com.github.ptomli.bedrock.jersey.limiting.ConcurrencyLimitResourceMethodDispatchAdapter;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.core.DefaultResourceConfig;
+import com.sun.jersey.api.core.HttpContext;
+import com.sun.jersey.api.model.AbstractResourceMethod;
+import com.sun.jersey.spi.container.ResourceMethodDispatchAdapter;
+import com.sun.jersey.spi.container.ResourceMethodDispatchProvider;
+import com.sun.jersey.spi.container.servlet.ServletContainer;
+import com.sun.jersey.spi.dispatch.RequestDispatcher;
+
+public class AsyncResponseResourceMethodDispatchAdapterTest {
+	private static final String PREFIX = MetricRegistry.name(FutureResource.class, "pending", "async-response");
+
+	private MetricRegistry metrics;
+	private ConcurrencyLimitResourceMethodDispatchAdapter limits;
+	private CountingResourceMethodDispatchAdapter dispatches;
+	private FutureResource resource;
+	private Server server;
+	private Client client;
+	private String base;
+
+	@Before
+	public void setup() throws Exception {
+		metrics = new MetricRegistry();
+		resource = new FutureResource();
+		limits = new ConcurrencyLimitResourceMethodDispatchAdapter(new ConcurrencyLimitConfiguration(), metrics);
+		dispatches = new CountingResourceMethodDispatchAdapter();
+		final AsyncResponseResourceMethodDispatchAdapter adapter = new AsyncResponseResourceMethodDispatchAdapter(500, TimeUnit.MILLISECONDS, metrics);
+
+		final DefaultResourceConfig config = new DefaultResourceConfig();
+		config.getSingletons().add(resource);
+		config.getSingletons().add(new OverloadedFutureResource());
+		config.getSingletons().add(new JacksonJsonProvider());
+		config.getSingletons().add(adapter);
+		config.getSingletons().add(limits);
+		config.getSingletons().add(dispatches);
+		config.getContainerRequestFilters().add(adapter);
+
+		server = new Server(new QueuedThreadPool(12, 4));
+		final ServerConnector connector = new ServerConnector(server, 1, 1);
+		server.addConnector(connector);
+		final ServletContextHandler context = new ServletContextHandler();
+		context.addServlet(new ServletHolder(new ServletContainer(config)), "/*");
+		server.setHandler(context);
+		server.addLifeCycleListener(new AsyncSupportLifeCycleListener(context));
+		server.start();
+
+		base = "http://localhost:" + connector.getLocalPort();
+		client = Client.create();
+	}
+
+	@After
+	public void teardown() throws Exception {
+		client.destroy();
+		server.stop();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonPositiveTimeoutThrowsException() {
+		new AsyncResponseResourceMethodDispatchAdapter(0, TimeUnit.SECONDS, metrics);
+	}
+
+	@Test
+	public void testCompletedFutureIsWritten() {
+		assertThat(client.resource(base + "/futures/done").get(String.class)).isEqualTo("done");
+	}
+
+	@Test
+	public void testSuspendedRequestsDoNotHoldContainerThreads() throws Exception {
+		// more concurrent requests than the server has threads
+		final int requests = 20;
+		resource.pending = new CountDownLatch(requests);
+		final ExecutorService executor = Executors.newFixedThreadPool(requests);
+		try {
+			final List<Future<String>> responses = new ArrayList<Future<String>>();
+			for (int i = 0; i < requests; i++) {
+				final int n = i;
+				responses.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() {
+						return client.resource(base + "/futures/pending/" + n).get(String.class);
+					}
+				}));
+			}
+			assertThat(resource.pending.await(5, TimeUnit.SECONDS)).isTrue();
+			assertThat(metrics.getCounters().get(MetricRegistry.name(PREFIX, "suspended")).getCount()).isEqualTo(requests);
+
+			for (final SettableListenableFuture<String> future : resource.futures) {
+				future.set("value");
+			}
+			for (final Future<String> response : responses) {
+				assertThat(response.get(5, TimeUnit.SECONDS)).isEqualTo("value");
+			}
+			assertThat(metrics.getCounters().get(MetricRegistry.name(PREFIX, "suspended")).getCount()).isEqualTo(0);
+			assertThat(metrics.getTimers().get(MetricRegistry.name(PREFIX, "completions")).getCount()).isEqualTo(requests);
+			// resumed requests are answered by the filter, not dispatched again
+			assertThat(dispatches.count.get()).isEqualTo(requests);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testSuspendedRequestsHoldConcurrencyLimit() throws Exception {
+		final int requests = 5;
+		resource.pending = new CountDownLatch(requests);
+		final ExecutorService executor = Executors.newFixedThreadPool(requests);
+		try {
+			final List<Future<String>> responses = new ArrayList<Future<String>>();
+			for (int i = 0; i < requests; i++) {
+				final int n = i;
+				responses.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() {
+						return client.resource(base + "/futures/pending/" + n).get(String.class);
+					}
+				}));
+			}
+			assertThat(resource.pending.await(5, TimeUnit.SECONDS)).isTrue();
+			final AdaptiveConcurrencyLimit limit = limits.getLimit(FutureResource.class.getName());
+			assertThat(limit.getInFlight()).isEqualTo(requests);
+
+			for (final SettableListenableFuture<String> future : resource.futures) {
+				future.set("value");
+			}
+			for (final Future<String> response : responses) {
+				assertThat(response.get(5, TimeUnit.SECONDS)).isEqualTo("value");
+			}
+			assertThat(limit.getInFlight()).isEqualTo(0);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testPlainFutureIsAwaited() {
+		assertThat(client.resource(base + "/futures/plain").get(String.class)).isEqualTo("plain");
+	}
+
+	@Test
+	public void testIncompleteFutureTimesOut() {
+		ClientResponse response = client.resource(base + "/futures/never").get(ClientResponse.class);
+		assertThat(response.getStatus()).isEqualTo(503);
+		assertThat(resource.never.isCancelled()).isTrue();
+	}
+
+	@Test
+	public void testFailedFutureIsMapped() {
+		ClientResponse response = client.resource(base + "/futures/failed").get(ClientResponse.class);
+		assertThat(response.getStatus()).isEqualTo(409);
+	}
+
+	@Test
+	public void testFutureOfResponseIsWritten() {
+		ClientResponse response = client.resource(base + "/futures/response").get(ClientResponse.class);
+		assertThat(response.getStatus()).isEqualTo(202);
+		assertThat(response.getEntity(String.class)).isEqualTo("accepted");
+	}
+
+	@Test
+	public void testOverloadedMethodsAreNamedBySignature() {
+		assertThat(client.resource(base + "/overloaded").get(ClientResponse.class).getStatus()).isEqualTo(503);
+		assertThat(client.resource(base + "/overloaded/x").get(ClientResponse.class).getStatus()).isEqualTo(503);
+
+		assertThat(metrics.getMeters().get(MetricRegistry.name(OverloadedFutureResource.class, "find()", "async-response", "timeouts")).getCount()).isEqualTo(1);
+		assertThat(metrics.getMeters().get(MetricRegistry.name(OverloadedFutureResource.class, "find(String)", "async-response", "timeouts")).getCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testFutureOfListIsWrittenWithGenericType() {
+		assertThat(client.resource(base + "/futures/list").get(String.class)).isEqualTo("[\"a\",\"b\"]");
+	}
+
+	public static class CountingResourceMethodDispatchAdapter implements ResourceMethodDispatchAdapter {
+		final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public ResourceMethodDispatchProvider adapt(final ResourceMethodDispatchProvider provider) {
+			return new ResourceMethodDispatchProvider() {
+				@Override
+				public RequestDispatcher create(final AbstractResourceMethod method) {
+					final RequestDispatcher dispatcher = provider.create(method);
+					return new RequestDispatcher() {
+						@Override
+						public void dispatch(final Object resource, final HttpContext context) {
+							count.incrementAndGet();
+							dispatcher.dispatch(resource, context);
+						}
+					};
+				}
+			};
+		}
+	}
+
+	@Path("/futures")
+	@Produces(MediaType.TEXT_PLAIN)
+	public static class FutureResource {
+		final ConcurrentLinkedQueue<SettableListenableFuture<String>> futures = new ConcurrentLinkedQueue<SettableListenableFuture<String>>();
+		volatile CountDownLatch pending = new CountDownLatch(0);
+		volatile SettableListenableFuture<String> never;
+
+		@GET
+		@Path("done")
+		public SettableListenableFuture<String> done() {
+			final SettableListenableFuture<String> future = new SettableListenableFuture<String>();
+			future.set("done");
+			return future;
+		}
+
+		@GET
+		@Path("pending/{n}")
+		public SettableListenableFuture<String> pending(@PathParam("n") final int n) {
+			final SettableListenableFuture<String> future = new SettableListenableFuture<String>();
+			futures.add(future);
+			pending.countDown();
+			return future;
+		}
+
+		@GET
+		@Path("plain")
+		public Future<String> plain() {
+			final FutureTask<String> future = new FutureTask<String>(new Callable<String>() {
+				@Override
+				public String call() {
+					return "plain";
+				}
+			});
+			new Thread(future).start();
+			return future;
+		}
+
+		@GET
+		@Path("never")
+		public SettableListenableFuture<String> never() {
+			never = new SettableListenableFuture<String>();
+			return never;
+		}
+
+		@GET
+		@Path("failed")
+		public SettableListenableFuture<String> failed() {
+			final SettableListenableFuture<String> future = new SettableListenableFuture<String>();
+			new Thread() {
+				@Override
+				public void run() {
+					future.setException(new WebApplicationException(Response.Status.CONFLICT));
+				}
+			}.start();
+			return future;
+		}
+
+		@GET
+		@Path("response")
+		public SettableListenableFuture<Response> response() {
+			final SettableListenableFuture<Response> future = new SettableListenableFuture<Response>();
+			new Thread() {
+				@Override
+				public void run() {
+					future.set(Response.status(Response.Status.ACCEPTED).entity("accepted").build());
+				}
+			}.start();
+			return future;
+		}
+
+		@GET
+		@Path("list")
+		@Produces(MediaType.APPLICATION_JSON)
+		public SettableListenableFuture<List<String>> list() {
+			final SettableListenableFuture<List<String>> future = new SettableListenableFuture<List<String>>();
+			future.set(Collections.unmodifiableList(Arrays.asList("a", "b")));
+			return future;
+		}
+	}
+
+	@Path("/overloaded")
+	@Produces(MediaType.TEXT_PLAIN)
+	public static class OverloadedFutureResource {
+		@GET
+		public SettableListenableFuture<String> find() {
+			return new SettableListenableFuture<String>();
+		}
+
+		@GET
+		@Path("{id}")
+		public SettableListenableFuture<String> find(@PathParam("id") final String id) {
+			return new SettableListenableFuture<String>();
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package com.github.ptomli.bedrock.jersey.caching;
+
+import static org.fest.assertions.api.Assertions.*;
+import io.dropwizard.testing.junit.ResourceTestRule;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.sun.jersey.api.client.ClientResponse;
+
+public class ResponseCacheResourceMethodDispatchAdapterTest {
+	private static final String PREFIX = MetricRegistry.name(CountingResource.class, "cached", "response-cache");
+
+	private static final MetricRegistry metrics = new MetricRegistry();
+	private static final CountingResource resource = new CountingResource();
+
+	@ClassRule
+	public static final ResourceTestRule resources = ResourceTestRule.builder()
+		.addResource(resource)
+		.addResource(new OverloadedResource())
+		.addResource(new FirstResource())
+		.addResource(new SecondResource())
+		.addProvider(new ResponseCacheResourceMethodDispatchAdapter(metrics))
+		.build();
+
+	@Before
+	public void setup() {
+		resource.invocations.set(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullMetricsThrowsException() {
+		new ResponseCacheResourceMethodDispatchAdapter(null);
+	}
+
+	@Test
+	public void testRepeatedRequestIsServedFromCache() {
+		String first = resources.client().resource("/counting/cached/a").get(String.class);
+		String second = resources.client().resource("/counting/cached/a").get(String.class);
+
+		assertThat(second).isEqualTo(first);
+		assertThat(resource.invocations.get()).isEqualTo(1);
+		assertThat((Long) metrics.getGauges().get(MetricRegistry.name(PREFIX, "hits")).getValue()).isGreaterThanOrEqualTo(1L);
+		assertThat(metrics.getTimers().get(MetricRegistry.name(PREFIX, "loads")).getCount()).isGreaterThanOrEqualTo(1L);
+	}
+
+	@Test
+	public void testPathAndQueryFormPartOfKey() {
+		resources.client().resource("/counting/cached/b").get(String.class);
+		resources.client().resource("/counting/cached/c").get(String.class);
+		resources.client().resource("/counting/cached/c").queryParam("q", "1").get(String.class);
+		resources.client().resource("/counting/cached/c").queryParam("q", "1").get(String.class);
+
+		assertThat(resource.invocations.get()).isEqualTo(3);
+	}
+
+	@Test
+	public void testVaryHeaderFormsPartOfKey() {
+		resources.client().resource("/counting/cached/d").header("X-Tenant", "one").get(String.class);
+		resources.client().resource("/counting/cached/d").header("X-Tenant", "two").get(String.class);
+		resources.client().resource("/counting/cached/d").header("X-Tenant", "one").get(String.class);
+
+		assertThat(resource.invocations.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void testAcceptFormsPartOfKey() {
+		ClientResponse html = resources.client().resource("/counting/negotiated").accept(MediaType.TEXT_HTML_TYPE).get(ClientResponse.class);
+		ClientResponse text = resources.client().resource("/counting/negotiated").accept(MediaType.TEXT_PLAIN_TYPE).get(ClientResponse.class);
+		ClientResponse cached = resources.client().resource("/counting/negotiated").accept(MediaType.TEXT_PLAIN_TYPE).get(ClientResponse.class);
+
+		assertThat(html.getType()).isEqualTo(MediaType.TEXT_HTML_TYPE);
+		assertThat(text.getType()).isEqualTo(MediaType.TEXT_PLAIN_TYPE);
+		assertThat(cached.getType()).isEqualTo(MediaType.TEXT_PLAIN_TYPE);
+		assertThat(cached.getEntity(String.class)).isEqualTo(text.getEntity(String.class));
+		assertThat(resource.invocations.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void testStreamedResponsesAreNotCached() {
+		String first = resources.client().resource("/counting/streamed").get(String.class);
+		String second = resources.client().resource("/counting/streamed").get(String.class);
+
+		assertThat(first).isEqualTo("1");
+		assertThat(second).isEqualTo("2");
+	}
+
+	@Test
+	public void testMatchingEtagIsNotModified() {
+		ClientResponse first = resources.client().resource("/counting/cached/e").get(ClientResponse.class);
+		String etag = first.getHeaders().getFirst(HttpHeaders.ETAG);
+		assertThat(etag).isNotNull();
+
+		ClientResponse second = resources.client().resource("/counting/cached/e")
+				.header(HttpHeaders.IF_NONE_MATCH, etag)
+				.get(ClientResponse.class);
+
+		assertThat(second.getStatus()).isEqualTo(Response.Status.NOT_MODIFIED.getStatusCode());
+		assertThat(resource.invocations.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void testErrorResponsesAreNotCached() {
+		resources.client().resource("/counting/missing").get(ClientResponse.class);
+		resources.client().resource("/counting/missing").get(ClientResponse.class);
+
+		assertThat(resource.invocations.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void testUnannotatedMethodIsNotCached() {
+		resources.client().resource("/counting/uncached").get(String.class);
+		resources.client().resource("/counting/uncached").get(String.class);
+
+		assertThat(resource.invocations.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void testOverloadedMethodsAreNamedBySignature() {
+		resources.client().resource("/overloaded").get(String.class);
+		resources.client().resource("/overloaded/x").get(String.class);
+
+		assertThat(metrics.getTimers().get(MetricRegistry.name(OverloadedResource.class, "find()", "response-cache", "loads")).getCount()).isEqualTo(1L);
+		assertThat(metrics.getTimers().get(MetricRegistry.name(OverloadedResource.class, "find(String)", "response-cache", "loads")).getCount()).isEqualTo(1L);
+	}
+
+	@Test
+	public void testInheritedMethodIsNamedByResource() {
+		assertThat(resources.client().resource("/first").get(String.class)).isEqualTo("FirstResource");
+		assertThat(resources.client().resource("/second").get(String.class)).isEqualTo("SecondResource");
+
+		assertThat(metrics.getTimers().get(MetricRegistry.name(FirstResource.class, "inherited", "response-cache", "loads")).getCount()).isEqualTo(1L);
+		assertThat(metrics.getTimers().get(MetricRegistry.name(SecondResource.class, "inherited", "response-cache", "loads")).getCount()).isEqualTo(1L);
+	}
+
+	@Path("/overloaded")
+	@Produces(MediaType.TEXT_PLAIN)
+	public static class OverloadedResource {
+		@GET
+		@CachedResponse
+		public String find() {
+			return "all";
+		}
+
+		@GET
+		@Path("/{id}")
+		@CachedResponse
+		public String find(@PathParam("id") String id) {
+			return id;
+		}
+	}
+
+	@Produces(MediaType.TEXT_PLAIN)
+	public static abstract class InheritingResource {
+		@GET
+		@CachedResponse
+		public String inherited() {
+			return getClass().getSimpleName();
+		}
+	}
+
+	@Path("/first")
+	public static class FirstResource extends InheritingResource {
+	}
+
+	@Path("/second")
+	public static class SecondResource extends InheritingResource {
+	}
+
+	@Path("/counting")
+	@Produces(MediaType.TEXT_PLAIN)
+	public static class CountingResource {
+		final AtomicInteger invocations = new AtomicInteger();
+
+		@GET
+		@Path("/cached/{id}")
+		@CachedResponse(vary = "X-Tenant")
+		public String cached(@PathParam("id") String id, @QueryParam("q") String q, @HeaderParam("X-Tenant") String tenant) {
+			return id + ":" + q + ":" + tenant + ":" + invocations.incrementAndGet();
+		}
+
+		@GET
+		@Path("/missing")
+		@CachedResponse
+		public Response missing() {
+			invocations.incrementAndGet();
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+
+		@GET
+		@Path("/negotiated")
+		@Produces({ MediaType.TEXT_HTML, MediaType.TEXT_PLAIN })
+		@CachedResponse
+		public String negotiated() {
+			return String.valueOf(invocations.incrementAndGet());
+		}
+
+		@GET
+		@Path("/streamed")
+		@CachedResponse
+		public StreamingOutput streamed() {
+			final byte[] body = String.valueOf(invocations.incrementAndGet()).getBytes(StandardCharsets.UTF_8);
+			return new StreamingOutput() {
+				@Override
+				public void write(OutputStream output) throws IOException {
+					output.write(body);
+				}
+			};
+		}
+
+		@GET
+		@Path("/uncached")
+		public String uncached() {
+			return String.valueOf(invocations.incrementAndGet());
+		}
+	}
+}
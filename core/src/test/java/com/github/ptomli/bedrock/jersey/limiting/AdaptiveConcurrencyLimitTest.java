@@ -0,0 +1,100 @@
+package com.github.ptomli.bedrock.jersey.limiting;
+
+import static org.fest.assertions.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimitTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInitialLimitOutOfRangeThrowsException() {
+		new AdaptiveConcurrencyLimit(1, 2, 10, 0.2, 0.9, 100);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBackoffRatioOfOneThrowsException() {
+		new AdaptiveConcurrencyLimit(5, 1, 10, 0.2, 1.0, 100);
+	}
+
+	@Test
+	public void testAcquireIsBoundedByLimit() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, 0.2, 0.9, 100);
+		assertThat(limit.tryAcquire()).isTrue();
+		assertThat(limit.tryAcquire()).isTrue();
+		assertThat(limit.tryAcquire()).isFalse();
+		assertThat(limit.getInFlight()).isEqualTo(2);
+
+		limit.onIgnored();
+		assertThat(limit.getInFlight()).isEqualTo(1);
+		assertThat(limit.tryAcquire()).isTrue();
+	}
+
+	@Test
+	public void testSteadyLatencyAtLimitGrowsLimit() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 100, 0.2, 0.9, 1000);
+		for (int i = 0; i < 50; i++) {
+			saturate(limit);
+			release(limit, 10);
+		}
+		assertThat(limit.getLimit()).isGreaterThan(10);
+	}
+
+	@Test
+	public void testRisingLatencyShrinksLimit() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(50, 1, 100, 0.2, 0.9, 1000);
+		saturate(limit);
+		release(limit, 10);
+		for (int i = 0; i < 50; i++) {
+			saturate(limit);
+			release(limit, 100);
+		}
+		assertThat(limit.getLimit()).isLessThan(50);
+	}
+
+	@Test
+	public void testUnsaturatedLimitDoesNotGrow() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 100, 0.2, 0.9, 1000);
+		for (int i = 0; i < 50; i++) {
+			limit.tryAcquire();
+			limit.onSuccess(10, TimeUnit.MILLISECONDS);
+		}
+		assertThat(limit.getLimit()).isEqualTo(10);
+	}
+
+	@Test
+	public void testDroppedRequestsBackOffToMinimum() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 3, 100, 0.2, 0.5, 1000);
+		limit.tryAcquire();
+		limit.onDropped();
+		assertThat(limit.getLimit()).isEqualTo(5);
+		for (int i = 0; i < 10; i++) {
+			limit.tryAcquire();
+			limit.onDropped();
+		}
+		assertThat(limit.getLimit()).isEqualTo(3);
+		assertThat(limit.getInFlight()).isEqualTo(0);
+	}
+
+	@Test
+	public void testLimitIsBoundedByMaximum() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 12, 1.0, 0.9, 1000);
+		for (int i = 0; i < 50; i++) {
+			saturate(limit);
+			release(limit, 10);
+		}
+		assertThat(limit.getLimit()).isEqualTo(12);
+	}
+
+	private static void saturate(final AdaptiveConcurrencyLimit limit) {
+		while (limit.tryAcquire()) {
+		}
+	}
+
+	private static void release(final AdaptiveConcurrencyLimit limit, final long latencyMillis) {
+		while (limit.getInFlight() > 0) {
+			limit.onSuccess(latencyMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+}
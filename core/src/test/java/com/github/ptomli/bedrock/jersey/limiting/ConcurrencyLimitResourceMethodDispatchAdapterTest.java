@@ -0,0 +1,199 @@
+package com.github.ptomli.bedrock.jersey.limiting;
+
+import static org.fest.assertions.api.Assertions.*;
+import io.dropwizard.testing.junit.ResourceTestRule;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.sun.jersey.api.client.ClientResponse;
+
+public class ConcurrencyLimitResourceMethodDispatchAdapterTest {
+	private static final String PREFIX = ConcurrencyLimitResourceMethodDispatchAdapter.PREFIX;
+
+	private static final MetricRegistry metrics = new MetricRegistry();
+	private static final ConcurrencyLimitResourceMethodDispatchAdapter adapter =
+			new ConcurrencyLimitResourceMethodDispatchAdapter(new ConcurrencyLimitConfiguration(), metrics);
+	private static final BlockingResource blocking = new BlockingResource();
+
+	@ClassRule
+	public static final ResourceTestRule resources = ResourceTestRule.builder()
+		.addResource(blocking)
+		.addResource(new PlainResource())
+		.addResource(new FailingResource())
+		.addResource(new BrokenResource())
+		.addProvider(adapter)
+		.build();
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullMetricsThrowsException() {
+		new ConcurrencyLimitResourceMethodDispatchAdapter(new ConcurrencyLimitConfiguration(), null);
+	}
+
+	@Test
+	public void testResourceClassIsDefaultGroup() {
+		assertThat(resources.client().resource("/plain").get(String.class)).isEqualTo("ok");
+		AdaptiveConcurrencyLimit limit = adapter.getLimit(PlainResource.class.getName());
+		assertThat(limit).isNotNull();
+		assertThat(limit.getInFlight()).isEqualTo(0);
+		assertThat(metrics.getGauges()).containsKey(MetricRegistry.name(PREFIX, PlainResource.class.getName(), "limit"));
+	}
+
+	@Test
+	public void testClientErrorsReleaseLimit() {
+		assertThat(resources.client().resource("/plain/missing").get(ClientResponse.class).getStatus()).isEqualTo(404);
+		assertThat(adapter.getLimit(PlainResource.class.getName()).getInFlight()).isEqualTo(0);
+	}
+
+	@Test
+	public void testClientErrorsDoNotReduceLimit() {
+		final int initial = new ConcurrencyLimitConfiguration().getInitialLimit();
+		for (int i = 0; i < 10; i++) {
+			get("/plain/invalid");
+		}
+		// ten drops would take the limit below half
+		assertThat(adapter.getLimit(PlainResource.class.getName()).getLimit()).isGreaterThanOrEqualTo(initial / 2);
+	}
+
+	@Test
+	public void testServerErrorsAndTimeoutsReduceLimit() {
+		final int initial = new ConcurrencyLimitConfiguration().getInitialLimit();
+		assertThat(resources.client().resource("/failing/unavailable").get(ClientResponse.class).getStatus()).isEqualTo(503);
+		final AdaptiveConcurrencyLimit limit = adapter.getLimit("failing");
+		assertThat(limit.getLimit()).isLessThan(initial);
+
+		final int reduced = limit.getLimit();
+		get("/failing/timeout");
+		assertThat(limit.getLimit()).isLessThan(reduced);
+		assertThat(limit.getInFlight()).isEqualTo(0);
+	}
+
+	@Test
+	public void testInternalServerErrorsDoNotReduceLimit() {
+		final int initial = new ConcurrencyLimitConfiguration().getInitialLimit();
+		assertThat(resources.client().resource("/broken/returned").get(ClientResponse.class).getStatus()).isEqualTo(500);
+		assertThat(resources.client().resource("/broken/thrown").get(ClientResponse.class).getStatus()).isEqualTo(500);
+
+		// a first sample leaves a lightly loaded limit where it is, a drop would not
+		assertThat(adapter.getLimit("broken-returned").getLimit()).isEqualTo(initial);
+		assertThat(adapter.getLimit("broken-thrown").getLimit()).isEqualTo(initial);
+		assertThat(adapter.getLimit("broken-thrown").getInFlight()).isEqualTo(0);
+	}
+
+	@Test
+	public void testRequestsBeyondLimitAreRejected() throws Exception {
+		final int permitted = new ConcurrencyLimitConfiguration().getInitialLimit();
+		final ExecutorService executor = Executors.newFixedThreadPool(permitted);
+		try {
+			for (int i = 0; i < permitted; i++) {
+				executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						resources.client().resource("/blocking").get(String.class);
+					}
+				});
+			}
+			assertThat(blocking.entered.await(10, TimeUnit.SECONDS)).isTrue();
+
+			ClientResponse rejected = resources.client().resource("/blocking").get(ClientResponse.class);
+			assertThat(rejected.getStatus()).isEqualTo(503);
+			assertThat(metrics.getMeters().get(MetricRegistry.name(PREFIX, "blocking", "rejections")).getCount()).isEqualTo(1);
+			assertThat(adapter.getLimit("blocking").getInFlight()).isEqualTo(permitted);
+		}
+		finally {
+			blocking.release.countDown();
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		assertThat(adapter.getLimit("blocking").getInFlight()).isEqualTo(0);
+	}
+
+	// the test container rethrows exceptions which are not mapped
+	private static void get(final String path) {
+		try {
+			resources.client().resource(path).get(ClientResponse.class);
+		}
+		catch (RuntimeException expected) {
+		}
+	}
+
+	@Path("/blocking")
+	@ConcurrencyLimited("blocking")
+	public static class BlockingResource {
+		final CountDownLatch entered = new CountDownLatch(new ConcurrencyLimitConfiguration().getInitialLimit());
+		final CountDownLatch release = new CountDownLatch(1);
+
+		@GET
+		public String get() throws InterruptedException {
+			entered.countDown();
+			release.await(10, TimeUnit.SECONDS);
+			return "ok";
+		}
+	}
+
+	@Path("/plain")
+	public static class PlainResource {
+		@GET
+		public String get() {
+			return "ok";
+		}
+
+		@GET
+		@Path("missing")
+		public String missing() {
+			throw new WebApplicationException(Response.Status.NOT_FOUND);
+		}
+
+		@GET
+		@Path("invalid")
+		public String invalid() {
+			throw new IllegalArgumentException("invalid");
+		}
+	}
+
+	@Path("/failing")
+	@ConcurrencyLimited("failing")
+	public static class FailingResource {
+		@GET
+		@Path("unavailable")
+		public String unavailable() {
+			throw new WebApplicationException(Response.Status.SERVICE_UNAVAILABLE);
+		}
+
+		@GET
+		@Path("timeout")
+		public String timeout() {
+			throw new IllegalStateException(new TimeoutException("backend timed out"));
+		}
+	}
+
+	@Path("/broken")
+	public static class BrokenResource {
+		@GET
+		@Path("returned")
+		@ConcurrencyLimited("broken-returned")
+		public Response returned() {
+			return Response.serverError().build();
+		}
+
+		@GET
+		@Path("thrown")
+		@ConcurrencyLimited("broken-thrown")
+		public String thrown() {
+			throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package com.github.ptomli.bedrock.jms;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.MetricRegistry;
+
+public class JmsLatencyRecorderTest {
+
+	private MetricRegistry metrics;
+	private ManualClock clock;
+	private JmsLatencyRecorder recorder;
+
+	@Before
+	public void setUp() {
+		metrics = new MetricRegistry();
+		clock = new ManualClock();
+		recorder = new JmsLatencyRecorder(metrics, 1.0, clock);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSampleRateAboveOneThrowsException() {
+		new JmsLatencyRecorder(metrics, 1.5);
+	}
+
+	@Test
+	public void testStampSetsSendTimeAndHops() throws Exception {
+		Message message = message();
+		recorder.stamp(message);
+		assertThat(message.getLongProperty(JmsLatencyRecorder.SENT_AT_PROPERTY)).isEqualTo(clock.time);
+		assertThat(message.getLongProperty(JmsLatencyRecorder.ORIGIN_AT_PROPERTY)).isEqualTo(clock.time);
+		assertThat(message.getIntProperty(JmsLatencyRecorder.HOPS_PROPERTY)).isEqualTo(1);
+	}
+
+	@Test
+	public void testUnsampledMessagesAreNotStampedOrRecorded() throws Exception {
+		recorder = new JmsLatencyRecorder(metrics, 0.0, clock);
+		Message message = message();
+		recorder.stamp(message);
+		assertThat(message.propertyExists(JmsLatencyRecorder.SENT_AT_PROPERTY)).isFalse();
+		assertThat(recorder.begin(message, "orders")).isNull();
+		assertThat(metrics.getHistograms()).isEmpty();
+	}
+
+	@Test
+	public void testConsumptionRecordsHistograms() throws Exception {
+		Message message = message();
+		recorder.stamp(message);
+
+		clock.advance(40);
+		JmsLatencyRecorder.Sample sample = recorder.begin(message, "orders");
+		clock.advance(10);
+		sample.end();
+
+		assertThat(metrics.histogram("jms-latency.orders.queue-residence").getSnapshot().getMax()).isEqualTo(40000);
+		assertThat(metrics.histogram("jms-latency.orders.processing").getSnapshot().getMax()).isEqualTo(10000);
+		assertThat(metrics.histogram("jms-latency.orders.end-to-end").getSnapshot().getMax()).isEqualTo(50000);
+	}
+
+	@Test
+	public void testMessagesSentWhileProcessingContinueTheChain() throws Exception {
+		recorder = new JmsLatencyRecorder(metrics, 0.5, clock);
+		Message first = message();
+		first.setLongProperty(JmsLatencyRecorder.SENT_AT_PROPERTY, clock.time);
+		first.setLongProperty(JmsLatencyRecorder.ORIGIN_AT_PROPERTY, clock.time);
+		first.setIntProperty(JmsLatencyRecorder.HOPS_PROPERTY, 1);
+
+		clock.advance(20);
+		JmsLatencyRecorder.Sample sample = recorder.begin(first, "orders");
+		clock.advance(5);
+		Message second = message();
+		recorder.stamp(second);
+		sample.end();
+
+		assertThat(second.getLongProperty(JmsLatencyRecorder.ORIGIN_AT_PROPERTY)).isEqualTo(first.getLongProperty(JmsLatencyRecorder.ORIGIN_AT_PROPERTY));
+		assertThat(second.getLongProperty(JmsLatencyRecorder.SENT_AT_PROPERTY)).isEqualTo(clock.time);
+		assertThat(second.getIntProperty(JmsLatencyRecorder.HOPS_PROPERTY)).isEqualTo(2);
+
+		clock.advance(30);
+		recorder.begin(second, "shipments").end();
+		assertThat(metrics.histogram("jms-latency.shipments.queue-residence").getSnapshot().getMax()).isEqualTo(30000);
+		assertThat(metrics.histogram("jms-latency.shipments.end-to-end").getSnapshot().getMax()).isEqualTo(55000);
+	}
+
+	@Test
+	public void testConverterStampsMessages() throws Exception {
+		Session session = mock(Session.class);
+		Message message = message();
+		MessageConverter delegate = mock(MessageConverter.class);
+		when(delegate.toMessage("payload", session)).thenReturn(message);
+
+		assertThat(new LatencyStampingMessageConverter(delegate, recorder).toMessage("payload", session)).isSameAs(message);
+		assertThat(message.propertyExists(JmsLatencyRecorder.SENT_AT_PROPERTY)).isTrue();
+	}
+
+	@Test
+	public void testContainerRecordsListenerInvocation() throws Exception {
+		final Message message = message();
+		recorder.stamp(message);
+
+		LatencyRecordingMessageListenerContainer container = new LatencyRecordingMessageListenerContainer();
+		container.setConnectionFactory(mock(ConnectionFactory.class));
+		container.setDestinationName("orders");
+		container.setLatencyRecorder(recorder);
+		container.setMessageListener(new MessageListener() {
+			@Override
+			public void onMessage(final Message received) {
+				clock.advance(15);
+			}
+		});
+		container.setAutoStartup(false);
+		container.afterPropertiesSet();
+
+		container.invokeListener(mock(Session.class), message);
+		assertThat(metrics.histogram("jms-latency.orders.processing").getSnapshot().getMax()).isEqualTo(15000);
+		container.destroy();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testContainerWithoutRecorderThrowsException() {
+		LatencyRecordingMessageListenerContainer container = new LatencyRecordingMessageListenerContainer();
+		container.setConnectionFactory(mock(ConnectionFactory.class));
+		container.setDestinationName("orders");
+		container.afterPropertiesSet();
+	}
+
+	private static Message message() throws JMSException {
+		final Map<String, Object> properties = new HashMap<String, Object>();
+		TextMessage message = mock(TextMessage.class);
+		Answer<Void> set = new Answer<Void>() {
+			@Override
+			public Void answer(final InvocationOnMock invocation) {
+				properties.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+				return null;
+			}
+		};
+		Answer<Object> get = new Answer<Object>() {
+			@Override
+			public Object answer(final InvocationOnMock invocation) {
+				return properties.get(invocation.getArguments()[0]);
+			}
+		};
+		doAnswer(set).when(message).setLongProperty(anyString(), anyLong());
+		doAnswer(set).when(message).setIntProperty(anyString(), anyInt());
+		when(message.getLongProperty(anyString())).thenAnswer(get);
+		when(message.getIntProperty(anyString())).thenAnswer(get);
+		when(message.propertyExists(anyString())).thenAnswer(new Answer<Boolean>() {
+			@Override
+			public Boolean answer(final InvocationOnMock invocation) {
+				return properties.containsKey(invocation.getArguments()[0]);
+			}
+		});
+		return message;
+	}
+
+	private static class ManualClock extends Clock {
+		private long time = 1000000L;
+
+		void advance(final long millis) {
+			this.time += millis;
+		}
+
+		@Override
+		public long getTime() {
+			return this.time;
+		}
+
+		@Override
+		public long getTick() {
+			return TimeUnit.MILLISECONDS.toNanos(this.time);
+		}
+	}
+}
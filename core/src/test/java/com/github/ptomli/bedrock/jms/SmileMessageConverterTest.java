@@ -0,0 +1,217 @@
+package com.github.ptomli.bedrock.jms;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+import io.dropwizard.jackson.Jackson;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.jms.support.converter.MappingJackson2MessageConverter;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageType;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+
+public class SmileMessageConverterTest {
+
+	private ObjectMapper mapper;
+	private SmileMessageConverter converter;
+	private Session session;
+
+	@Before
+	public void setup() throws JMSException {
+		mapper = Jackson.newObjectMapper();
+		converter = new SmileMessageConverter(mapper);
+		session = mock(Session.class);
+		when(session.createBytesMessage()).thenAnswer(new Answer<BytesMessage>() {
+			@Override
+			public BytesMessage answer(final InvocationOnMock invocation) throws Throwable {
+				return bytesMessage();
+			}
+		});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullMapperThrowsException() {
+		new SmileMessageConverter(null);
+	}
+
+	@Test
+	public void testRoundTrip() throws JMSException {
+		Order order = Order.sample();
+		BytesMessage message = (BytesMessage) converter.toMessage(order, session);
+
+		assertThat(message.getStringProperty(SmileMessageConverter.DEFAULT_TYPE_ID_PROPERTY_NAME)).isEqualTo(Order.class.getName());
+		assertThat(converter.fromMessage(message)).isEqualTo(order);
+	}
+
+	@Test
+	public void testSharedMapperModulesAreUsed() throws JMSException {
+		// Optional is handled by the Guava module DropWizard registers
+		Order order = Order.sample();
+		order.note = Optional.of("fragile");
+		Order read = (Order) converter.fromMessage(converter.toMessage(order, session));
+		assertThat(read.note).isEqualTo(Optional.of("fragile"));
+	}
+
+	@Test
+	public void testLargePayloadRoundTrip() throws JMSException {
+		Order order = Order.sample();
+		for (int i = 0; i < 10000; i++) {
+			order.lines.add("line-" + i);
+		}
+		assertThat(converter.fromMessage(converter.toMessage(order, session))).isEqualTo(order);
+		assertThat(converter.fromMessage(converter.toMessage(Order.sample(), session))).isEqualTo(Order.sample());
+	}
+
+	@Test
+	public void testCustomTypeIdProperty() throws JMSException {
+		converter.setTypeIdPropertyName("type");
+		BytesMessage message = (BytesMessage) converter.toMessage(Order.sample(), session);
+		assertThat(message.getStringProperty("type")).isEqualTo(Order.class.getName());
+		assertThat(converter.fromMessage(message)).isEqualTo(Order.sample());
+	}
+
+	@Test(expected = MessageConversionException.class)
+	public void testTextMessageThrowsException() throws JMSException {
+		converter.fromMessage(mock(TextMessage.class));
+	}
+
+	@Test(expected = MessageConversionException.class)
+	public void testUnknownTypeThrowsException() throws JMSException {
+		BytesMessage message = (BytesMessage) converter.toMessage(Order.sample(), session);
+		message.setStringProperty(SmileMessageConverter.DEFAULT_TYPE_ID_PROPERTY_NAME, "com.example.Missing");
+		converter.fromMessage(message);
+	}
+
+	@Test
+	public void testPayloadIsSmallerThanJson() throws JMSException {
+		MappingJackson2MessageConverter json = new MappingJackson2MessageConverter();
+		json.setObjectMapper(mapper);
+		json.setTargetType(MessageType.BYTES);
+		json.setTypeIdPropertyName(SmileMessageConverter.DEFAULT_TYPE_ID_PROPERTY_NAME);
+
+		List<Order> orders = new ArrayList<Order>();
+		for (int i = 0; i < 100; i++) {
+			orders.add(Order.sample());
+		}
+		Batch batch = new Batch();
+		batch.orders = orders;
+
+		long smileLength = ((BytesMessage) converter.toMessage(batch, session)).getBodyLength();
+		long jsonLength = ((BytesMessage) json.toMessage(batch, session)).getBodyLength();
+		assertThat(smileLength).isLessThan(jsonLength);
+	}
+
+	// a BytesMessage backed by a byte array and a property map
+	private static BytesMessage bytesMessage() throws JMSException {
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		final Map<String, String> properties = new HashMap<String, String>();
+		final int[] position = new int[] { 0 };
+		final BytesMessage message = mock(BytesMessage.class);
+
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(final InvocationOnMock invocation) {
+				body.write((byte[]) invocation.getArguments()[0], (Integer) invocation.getArguments()[1], (Integer) invocation.getArguments()[2]);
+				return null;
+			}
+		}).when(message).writeBytes(any(byte[].class), anyInt(), anyInt());
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(final InvocationOnMock invocation) {
+				byte[] bytes = (byte[]) invocation.getArguments()[0];
+				body.write(bytes, 0, bytes.length);
+				return null;
+			}
+		}).when(message).writeBytes(any(byte[].class));
+		when(message.getBodyLength()).thenAnswer(new Answer<Long>() {
+			@Override
+			public Long answer(final InvocationOnMock invocation) {
+				return (long) body.size();
+			}
+		});
+		when(message.readBytes(any(byte[].class), anyInt())).thenAnswer(new Answer<Integer>() {
+			@Override
+			public Integer answer(final InvocationOnMock invocation) {
+				byte[] bytes = body.toByteArray();
+				int length = Math.min((Integer) invocation.getArguments()[1], bytes.length - position[0]);
+				System.arraycopy(bytes, position[0], invocation.getArguments()[0], 0, length);
+				position[0] += length;
+				return length;
+			}
+		});
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(final InvocationOnMock invocation) {
+				properties.put((String) invocation.getArguments()[0], (String) invocation.getArguments()[1]);
+				return null;
+			}
+		}).when(message).setStringProperty(anyString(), anyString());
+		when(message.getStringProperty(anyString())).thenAnswer(new Answer<String>() {
+			@Override
+			public String answer(final InvocationOnMock invocation) {
+				return properties.get(invocation.getArguments()[0]);
+			}
+		});
+		return message;
+	}
+
+	public static class Batch {
+		@JsonProperty
+		List<Order> orders;
+	}
+
+	public static class Order {
+		@JsonProperty
+		long id;
+		@JsonProperty
+		String customer;
+		@JsonProperty
+		double total;
+		@JsonProperty
+		List<String> lines = new ArrayList<String>();
+		@JsonProperty
+		Optional<String> note = Optional.absent();
+
+		static Order sample() {
+			Order order = new Order();
+			order.id = 42;
+			order.customer = "customer-1";
+			order.total = 99.5;
+			order.lines.add("widget");
+			order.lines.add("gadget");
+			return order;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Order)) {
+				return false;
+			}
+			Order other = (Order) obj;
+			return id == other.id && customer.equals(other.customer) && total == other.total && lines.equals(other.lines) && note.equals(other.note);
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) id;
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package com.github.ptomli.bedrock.lifecycle;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jms.listener.AbstractJmsListeningContainer;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+public class GracefulShutdownTest {
+
+	private MetricRegistry metrics;
+	private ConfigurableApplicationContext context;
+	private LifeCycle server;
+
+	@Before
+	public void setup() {
+		metrics = new MetricRegistry();
+		context = mock(ConfigurableApplicationContext.class);
+		when(context.isActive()).thenReturn(true);
+		when(context.getBeansOfType(AbstractJmsListeningContainer.class, false, false))
+			.thenReturn(Collections.<String, AbstractJmsListeningContainer>emptyMap());
+		server = mock(LifeCycle.class);
+	}
+
+	private static GracefulShutdownConfiguration configuration(final String yaml) throws Exception {
+		return new ObjectMapper(new YAMLFactory()).readValue(yaml, GracefulShutdownConfiguration.class);
+	}
+
+	@Test
+	public void testReadinessBecomesUnhealthyWhenStopping() throws Exception {
+		GracefulShutdown shutdown = new GracefulShutdown(new GracefulShutdownConfiguration(), metrics, context);
+		assertThat(shutdown.getReadinessHealthCheck().execute().isHealthy()).isTrue();
+
+		shutdown.lifeCycleStopping(server);
+		assertThat(shutdown.getReadinessHealthCheck().execute().isHealthy()).isFalse();
+		assertThat(metrics.getTimers().get("graceful-shutdown.drain").getCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testStoppingWaitsForInFlightRequests() throws Exception {
+		final GracefulShutdown shutdown = new GracefulShutdown(configuration("drainTimeout: 10s"), metrics, context);
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final ServletRequest request = mock(ServletRequest.class);
+		final FilterChain chain = new FilterChain() {
+			@Override
+			public void doFilter(final ServletRequest request, final ServletResponse response) {
+				entered.countDown();
+				try {
+					release.await();
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+
+		final Thread worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					shutdown.getInFlightRequestFilter().doFilter(request, mock(ServletResponse.class), chain);
+				}
+				catch (Exception ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		});
+		worker.start();
+		entered.await();
+		assertThat(metrics.getGauges().get("graceful-shutdown.in-flight-requests").getValue()).isEqualTo(1);
+
+		final Thread stopper = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				shutdown.lifeCycleStopping(server);
+			}
+		});
+		stopper.start();
+		stopper.join(200);
+		assertThat(stopper.isAlive()).isTrue();
+
+		release.countDown();
+		stopper.join(5000);
+		assertThat(stopper.isAlive()).isFalse();
+		assertThat(shutdown.getInFlightRequestFilter().getInFlight()).isEqualTo(0);
+		worker.join();
+	}
+
+	@Test
+	public void testStoppingGivesUpAfterDrainTimeout() throws Exception {
+		GracefulShutdown shutdown = new GracefulShutdown(configuration("drainTimeout: 100ms"), metrics, context);
+		ServletRequest request = mock(ServletRequest.class);
+		when(request.isAsyncStarted()).thenReturn(true);
+		when(request.getAsyncContext()).thenReturn(mock(AsyncContext.class));
+		shutdown.getInFlightRequestFilter().doFilter(request, mock(ServletResponse.class), mock(FilterChain.class));
+
+		long start = System.nanoTime();
+		shutdown.lifeCycleStopping(server);
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(100);
+		assertThat(shutdown.getInFlightRequestFilter().getInFlight()).isEqualTo(1);
+	}
+
+	@Test
+	public void testAsyncRequestsRemainInFlightUntilComplete() throws Exception {
+		GracefulShutdown shutdown = new GracefulShutdown(new GracefulShutdownConfiguration(), metrics, context);
+		ServletRequest request = mock(ServletRequest.class);
+		AsyncContext async = mock(AsyncContext.class);
+		when(request.isAsyncStarted()).thenReturn(true);
+		when(request.getAsyncContext()).thenReturn(async);
+
+		shutdown.getInFlightRequestFilter().doFilter(request, mock(ServletResponse.class), mock(FilterChain.class));
+		assertThat(shutdown.getInFlightRequestFilter().getInFlight()).isEqualTo(1);
+
+		ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+		verify(async).addListener(listener.capture());
+		listener.getValue().onComplete(new AsyncEvent(async));
+		assertThat(shutdown.getInFlightRequestFilter().getInFlight()).isEqualTo(0);
+	}
+
+	@Test
+	public void testStoppingStopsListenerContainers() throws Exception {
+		StubListenerContainer container = new StubListenerContainer(true);
+		container.start();
+		when(context.getBeansOfType(AbstractJmsListeningContainer.class, false, false))
+			.thenReturn(Collections.<String, AbstractJmsListeningContainer>singletonMap("container", container));
+
+		GracefulShutdown shutdown = new GracefulShutdown(configuration("drainTimeout: 10s"), metrics, context);
+		shutdown.lifeCycleStopping(server);
+
+		assertThat(container.isRunning()).isFalse();
+		assertThat(metrics.getTimers().get("graceful-shutdown.drain-messages").getCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testMessageDrainExcludesRequestDrain() throws Exception {
+		StubListenerContainer container = new StubListenerContainer(true);
+		container.start();
+		when(context.getBeansOfType(AbstractJmsListeningContainer.class, false, false))
+			.thenReturn(Collections.<String, AbstractJmsListeningContainer>singletonMap("container", container));
+
+		GracefulShutdown shutdown = new GracefulShutdown(configuration("drainTimeout: 200ms"), metrics, context);
+		ServletRequest request = mock(ServletRequest.class);
+		when(request.isAsyncStarted()).thenReturn(true);
+		when(request.getAsyncContext()).thenReturn(mock(AsyncContext.class));
+		shutdown.getInFlightRequestFilter().doFilter(request, mock(ServletResponse.class), mock(FilterChain.class));
+		shutdown.lifeCycleStopping(server);
+
+		long requests = metrics.getTimers().get("graceful-shutdown.drain-requests").getSnapshot().getMax();
+		long messages = metrics.getTimers().get("graceful-shutdown.drain-messages").getSnapshot().getMax();
+		assertThat(TimeUnit.NANOSECONDS.toMillis(requests)).isGreaterThanOrEqualTo(200);
+		assertThat(TimeUnit.NANOSECONDS.toMillis(messages)).isLessThan(100);
+	}
+
+	@Test
+	public void testStoppingGivesUpOnListenerContainersAfterDrainTimeout() throws Exception {
+		StubListenerContainer container = new StubListenerContainer(false);
+		container.start();
+		when(context.getBeansOfType(AbstractJmsListeningContainer.class, false, false))
+			.thenReturn(Collections.<String, AbstractJmsListeningContainer>singletonMap("container", container));
+
+		GracefulShutdown shutdown = new GracefulShutdown(configuration("drainTimeout: 100ms"), metrics, context);
+		long start = System.nanoTime();
+		shutdown.lifeCycleStopping(server);
+
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(100);
+		assertThat(container.isRunning()).isFalse();
+	}
+
+	@Test
+	public void testStoppedClosesContextsInOrder() {
+		ConfigurableApplicationContext parent = mock(ConfigurableApplicationContext.class);
+		when(parent.isActive()).thenReturn(true);
+		new GracefulShutdown(new GracefulShutdownConfiguration(), metrics, context, parent).lifeCycleStopped(server);
+
+		InOrder order = inOrder(context, parent);
+		order.verify(context).close();
+		order.verify(parent).close();
+	}
+
+	@Test
+	public void testStoppedSkipsInactiveContexts() {
+		when(context.isActive()).thenReturn(false);
+		new GracefulShutdown(new GracefulShutdownConfiguration(), metrics, context).lifeCycleStopped(server);
+		verify(context, never()).close();
+	}
+
+	@Test
+	public void testConfigurationDefaults() throws Exception {
+		GracefulShutdownConfiguration configuration = configuration("{}");
+		assertThat(configuration.getReadinessDelay().toSeconds()).isEqualTo(0);
+		assertThat(configuration.getDrainTimeout().toSeconds()).isEqualTo(30);
+	}
+
+	// a container without consumers, which either completes or never
+	// completes its stop callback
+	private static class StubListenerContainer extends AbstractJmsListeningContainer {
+		private final boolean completes;
+
+		StubListenerContainer(final boolean completes) {
+			this.completes = completes;
+		}
+
+		@Override
+		public void stop(final Runnable callback) {
+			this.stop();
+			if (this.completes) {
+				callback.run();
+			}
+		}
+
+		@Override
+		protected boolean sharedConnectionEnabled() {
+			return false;
+		}
+
+		@Override
+		protected void doInitialize() {
+		}
+
+		@Override
+		protected void doShutdown() {
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.github.ptomli.bedrock.metrics;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.Ordered;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Gauge;
+import com.codahale.metrics.annotation.Metered;
+import com.codahale.metrics.annotation.Timed;
+
+public class MetricsAnnotationBeanPostProcessorTest {
+
+	private MetricRegistry metrics;
+	private MetricsAnnotationBeanPostProcessor processor;
+
+	@Before
+	public void setup() {
+		metrics = new MetricRegistry();
+		processor = new MetricsAnnotationBeanPostProcessor(metrics);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullMetricsThrowsException() {
+		new MetricsAnnotationBeanPostProcessor(null);
+	}
+
+	@Test
+	public void testOrderedAfterAutoProxyCreators() {
+		assertThat(processor.getOrder()).isEqualTo(Ordered.LOWEST_PRECEDENCE);
+	}
+
+	@Test
+	public void testUnannotatedBeanIsNotProxied() {
+		Object bean = new Object();
+		assertThat(processor.postProcessAfterInitialization(bean, "bean")).isSameAs(bean);
+	}
+
+	@Test
+	public void testTimedMethodIsTimed() {
+		Service service = (Service) processor.postProcessAfterInitialization(new DefaultService(), "service");
+		assertThat(AopUtils.isJdkDynamicProxy(service)).isTrue();
+
+		service.timed();
+		service.timed();
+		service.untimed();
+		assertThat(metrics.timer(MetricRegistry.name(DefaultService.class, "timed")).getCount()).isEqualTo(2);
+		assertThat(metrics.getTimers()).hasSize(1);
+	}
+
+	@Test
+	public void testClassWithoutInterfacesIsProxied() {
+		PlainBean bean = (PlainBean) processor.postProcessAfterInitialization(new PlainBean(), "bean");
+		assertThat(AopUtils.isCglibProxy(bean)).isTrue();
+
+		bean.metered();
+		assertThat(metrics.meter("absolute.metered").getCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testExceptionMeteredCountsMatchingExceptions() throws Exception {
+		PlainBean bean = (PlainBean) processor.postProcessAfterInitialization(new PlainBean(), "bean");
+		String name = MetricRegistry.name(PlainBean.class, "failing", ExceptionMetered.DEFAULT_NAME_SUFFIX);
+
+		try {
+			bean.failing(new IOException());
+			fail("expected exception");
+		}
+		catch (IOException ex) {
+		}
+		try {
+			bean.failing(new IllegalStateException());
+			fail("expected exception");
+		}
+		catch (IllegalStateException ex) {
+		}
+		assertThat(metrics.meter(name).getCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testGauges() {
+		PlainBean bean = new PlainBean();
+		processor.postProcessAfterInitialization(bean, "bean");
+		bean.size = 7;
+
+		assertThat(metrics.getGauges().get(MetricRegistry.name(PlainBean.class, "size")).getValue()).isEqualTo(7);
+		assertThat(metrics.getGauges().get(MetricRegistry.name(PlainBean.class, "depth")).getValue()).isEqualTo(14);
+	}
+
+	@Test
+	public void testExistingProxyIsAdvised() {
+		ProxyFactory factory = new ProxyFactory(new DefaultService());
+		Object proxy = factory.getProxy();
+
+		Object processed = processor.postProcessAfterInitialization(proxy, "service");
+		assertThat(processed).isSameAs(proxy);
+		assertThat(((Advised) processed).getAdvisors()).hasSize(1);
+
+		((Service) processed).timed();
+		assertThat(metrics.timer(MetricRegistry.name(DefaultService.class, "timed")).getCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testMetricsAreResolvedOnceAtProxyCreation() {
+		MetricRegistry registry = spy(new MetricRegistry());
+		Service service = (Service) new MetricsAnnotationBeanPostProcessor(registry).postProcessAfterInitialization(new DefaultService(), "service");
+		reset(registry);
+
+		for (int i = 0; i < 10; i++) {
+			service.timed();
+		}
+		verifyZeroInteractions(registry);
+	}
+
+	public interface Service {
+		void timed();
+
+		void untimed();
+	}
+
+	public static class DefaultService implements Service {
+		@Override
+		@Timed
+		public void timed() {
+		}
+
+		@Override
+		public void untimed() {
+		}
+	}
+
+	public static class PlainBean {
+		@Gauge
+		int size;
+
+		@Metered(name = "absolute.metered", absolute = true)
+		public void metered() {
+		}
+
+		@ExceptionMetered(cause = IOException.class)
+		public void failing(final Exception ex) throws Exception {
+			throw ex;
+		}
+
+		@Gauge
+		public int depth() {
+			return size * 2;
+		}
+	}
+}
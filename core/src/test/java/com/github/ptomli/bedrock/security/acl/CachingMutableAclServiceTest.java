@@ -0,0 +1,238 @@
+package com.github.ptomli.bedrock.security.acl;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.security.acls.domain.AclAuthorizationStrategy;
+import org.springframework.security.acls.domain.AclImpl;
+import org.springframework.security.acls.domain.ObjectIdentityImpl;
+import org.springframework.security.acls.domain.PrincipalSid;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.MutableAclService;
+import org.springframework.security.acls.model.NotFoundException;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.ObjectIdentityRetrievalStrategy;
+import org.springframework.security.acls.model.PermissionGrantingStrategy;
+import org.springframework.security.acls.model.Sid;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+public class CachingMutableAclServiceTest {
+
+	private final ObjectIdentity parent = new ObjectIdentityImpl("Folder", 1L);
+	private final ObjectIdentity child = new ObjectIdentityImpl("Document", 2L);
+	private final ObjectIdentity other = new ObjectIdentityImpl("Document", 3L);
+	private final ObjectIdentity missing = new ObjectIdentityImpl("Document", 4L);
+
+	private MutableAclService delegate;
+	private MetricRegistry metrics;
+	private CachingMutableAclService service;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		this.delegate = mock(MutableAclService.class);
+		final AclAuthorizationStrategy authorization = mock(AclAuthorizationStrategy.class);
+		final PermissionGrantingStrategy granting = mock(PermissionGrantingStrategy.class);
+		final Sid owner = new PrincipalSid("owner");
+		final Acl parentAcl = new AclImpl(this.parent, 1L, authorization, granting, null, null, true, owner);
+		final Map<ObjectIdentity, Acl> acls = new HashMap<ObjectIdentity, Acl>();
+		acls.put(this.parent, parentAcl);
+		acls.put(this.child, new AclImpl(this.child, 2L, authorization, granting, parentAcl, null, true, owner));
+		acls.put(this.other, new AclImpl(this.other, 3L, authorization, granting, null, null, true, owner));
+
+		when(this.delegate.readAclsById(anyList(), anyList())).thenAnswer(new Answer<Map<ObjectIdentity, Acl>>() {
+			@Override
+			public Map<ObjectIdentity, Acl> answer(final InvocationOnMock invocation) {
+				final Map<ObjectIdentity, Acl> result = new HashMap<ObjectIdentity, Acl>();
+				for (final ObjectIdentity oid : (List<ObjectIdentity>) invocation.getArguments()[0]) {
+					if (!acls.containsKey(oid)) {
+						throw new NotFoundException("no ACL for " + oid);
+					}
+					result.put(oid, acls.get(oid));
+				}
+				return result;
+			}
+		});
+
+		this.metrics = new MetricRegistry();
+		this.service = new CachingMutableAclService(this.delegate, "maximumSize=100", this.metrics, "acls");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullDelegateThrowsException() {
+		new CachingMutableAclService(null, new MetricRegistry(), "acls");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testMissingAclsAreLoadedInOneBatch() {
+		Map<ObjectIdentity, Acl> result = this.service.readAclsById(Arrays.asList(this.parent, this.child, this.other));
+		assertThat(result).hasSize(3);
+		verify(this.delegate, times(1)).readAclsById(anyList(), anyList());
+
+		result = this.service.readAclsById(Arrays.asList(this.parent, this.child, this.other));
+		assertThat(result).hasSize(3);
+		verify(this.delegate, times(1)).readAclsById(anyList(), anyList());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testOnlyUncachedAclsAreLoaded() {
+		this.service.readAclById(this.parent);
+		this.service.readAclsById(Arrays.asList(this.parent, this.other));
+		verify(this.delegate).readAclsById(Arrays.asList(this.parent), null);
+		verify(this.delegate).readAclsById(Arrays.asList(this.other), null);
+	}
+
+	@Test(expected = NotFoundException.class)
+	public void testMissingAclThrowsNotFoundException() {
+		this.service.readAclById(this.missing);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testPreloadIgnoresObjectsWithoutAcls() {
+		this.service.setObjectIdentityRetrievalStrategy(new DocumentIdentityRetrievalStrategy());
+		this.service.preload(Arrays.asList(new Document(2L), new Document(3L), new Document(4L)));
+		reset(this.delegate);
+
+		assertThat(this.service.readAclsById(Arrays.asList(this.child, this.other))).hasSize(2);
+		verify(this.delegate, never()).readAclsById(anyList(), anyList());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testPreloadRemembersObjectsWithoutAcls() {
+		this.service.setObjectIdentityRetrievalStrategy(new DocumentIdentityRetrievalStrategy());
+		this.service.preload(Arrays.asList(new Document(2L), new Document(3L), new Document(4L), new Document(5L)));
+		reset(this.delegate);
+
+		this.service.preload(Arrays.asList(new Document(2L), new Document(3L), new Document(4L), new Document(5L)));
+		verify(this.delegate, never()).readAclsById(anyList(), anyList());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testPreloadSplitsFailedBatches() {
+		this.service.setObjectIdentityRetrievalStrategy(new DocumentIdentityRetrievalStrategy());
+		this.service.preload(Arrays.asList(new Document(2L), new Document(3L), new Document(4L), new Document(5L)));
+
+		// the batch, its two halves, and the two objects of the failed half
+		verify(this.delegate, times(5)).readAclsById(anyList(), anyList());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testMissingAclIsNotLookedUpAgain() {
+		try {
+			this.service.readAclById(this.missing);
+			fail("expected NotFoundException");
+		}
+		catch (NotFoundException expected) {
+		}
+		try {
+			this.service.readAclsById(Arrays.asList(this.other, this.missing));
+			fail("expected NotFoundException");
+		}
+		catch (NotFoundException expected) {
+		}
+		verify(this.delegate, times(1)).readAclsById(anyList(), anyList());
+	}
+
+	@Test
+	public void testCreateForgetsMissingAcl() {
+		try {
+			this.service.readAclById(this.missing);
+			fail("expected NotFoundException");
+		}
+		catch (NotFoundException expected) {
+		}
+		this.service.createAcl(this.missing);
+		try {
+			this.service.readAclById(this.missing);
+			fail("expected NotFoundException");
+		}
+		catch (NotFoundException expected) {
+		}
+		verify(this.delegate, times(2)).readAclsById(Arrays.asList(this.missing), null);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testLookupRacingEvictionIsNotCached() {
+		final Map<ObjectIdentity, Acl> stale = this.delegate.readAclsById(Arrays.asList(this.other), null);
+		reset(this.delegate);
+		when(this.delegate.readAclsById(anyList(), anyList())).thenAnswer(new Answer<Map<ObjectIdentity, Acl>>() {
+			@Override
+			public Map<ObjectIdentity, Acl> answer(final InvocationOnMock invocation) {
+				// the ACL is updated while it is being read
+				service.evict(other);
+				return stale;
+			}
+		});
+
+		assertThat(this.service.readAclById(this.other)).isSameAs(stale.get(this.other));
+		this.service.readAclById(this.other);
+		verify(this.delegate, times(2)).readAclsById(Arrays.asList(this.other), null);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testUpdateEvictsAclAndDescendants() {
+		this.service.readAclsById(Arrays.asList(this.parent, this.child, this.other));
+		this.service.updateAcl((AclImpl) this.service.readAclById(this.parent));
+
+		this.service.readAclsById(Arrays.asList(this.parent, this.child, this.other));
+		verify(this.delegate).readAclsById(Arrays.asList(this.parent, this.child), null);
+	}
+
+	@Test
+	public void testDeleteEvictsAcl() {
+		this.service.readAclById(this.other);
+		this.service.deleteAcl(this.other, false);
+		this.service.readAclById(this.other);
+		verify(this.delegate, times(2)).readAclsById(Arrays.asList(this.other), null);
+	}
+
+	@Test
+	@SuppressWarnings("rawtypes")
+	public void testMetricsAreRecorded() {
+		this.service.readAclById(this.parent);
+		this.service.readAclById(this.parent);
+		this.service.readAclById(this.parent, Arrays.<Sid> asList());
+
+		Map<String, Gauge> gauges = this.metrics.getGauges();
+		assertThat(gauges.get("acls.hits").getValue()).isEqualTo(2L);
+		assertThat(gauges.get("acls.misses").getValue()).isEqualTo(1L);
+		assertThat(gauges.get("acls.size").getValue()).isEqualTo(1L);
+		assertThat((Double) gauges.get("acls.hit-ratio").getValue()).isEqualTo(2.0 / 3.0, offset(0.001));
+		assertThat(this.metrics.timer("acls.lookups").getCount()).isEqualTo(1);
+	}
+
+	static class DocumentIdentityRetrievalStrategy implements ObjectIdentityRetrievalStrategy {
+		@Override
+		public ObjectIdentity getObjectIdentity(final Object domainObject) {
+			return new ObjectIdentityImpl("Document", ((Document) domainObject).id);
+		}
+	}
+
+	static class Document {
+		private final Long id;
+
+		Document(final Long id) {
+			this.id = id;
+		}
+	}
+}
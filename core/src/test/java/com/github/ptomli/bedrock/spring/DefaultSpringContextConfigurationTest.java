@@ -37,6 +37,15 @@ public class DefaultSpringContextConfigurationTest {
 		assertThat(c.spring.getConfigLocations()).isEqualTo(new String[] { "/META-INF/spring/*.xml" });
 		assertThat(c.spring.getProfiles()).isEmpty();
 		assertThat(c.spring.getPropertySources()).isEmpty();
+		assertThat(c.spring.getInitializationThreads()).isEqualTo(0);
+	}
+
+	@Test
+	public void testParallelContext() throws Exception {
+		MyConfiguration c = cf.build(new File(cl.getResource("com/github/ptomli/bedrock/spring/DefaultSpringContextConfigurationTest-parallel.yml").toURI()));
+
+		Assertions.<Class<?>>assertThat(c.spring.getApplicationContextClass()).isEqualTo(ParallelClassPathXmlApplicationContext.class);
+		assertThat(c.spring.getInitializationThreads()).isEqualTo(3);
 	}
 
 	@Test
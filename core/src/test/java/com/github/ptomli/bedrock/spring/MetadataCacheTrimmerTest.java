@@ -0,0 +1,85 @@
+package com.github.ptomli.bedrock.spring;
+
+import static org.fest.assertions.api.Assertions.*;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.support.AbstractBeanFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Scope;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.ReflectionUtils;
+
+public class MetadataCacheTrimmerTest {
+
+	private AnnotationConfigApplicationContext context;
+
+	@Before
+	public void setup() {
+		context = new AnnotationConfigApplicationContext(TrimConfig.class);
+	}
+
+	@After
+	public void teardown() {
+		context.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testTrimUnrefreshedContextThrowsException() {
+		MetadataCacheTrimmer.trim(new AnnotationConfigApplicationContext());
+	}
+
+	@Test
+	public void testTrimKeepsMergedBeanDefinitions() {
+		assertThat(mergedBeanDefinitions()).containsKey("singleton").containsKey("prototype");
+
+		MetadataCacheTrimmer.trim(context);
+		assertThat(mergedBeanDefinitions()).containsKey("singleton").containsKey("prototype");
+	}
+
+	@Test
+	public void testTrimClearsConfigurationClassMetadata() {
+		Object processor = context.getBean(AnnotationConfigUtils.CONFIGURATION_ANNOTATION_PROCESSOR_BEAN_NAME);
+		Object factory = ReflectionTestUtils.getField(processor, "metadataReaderFactory");
+
+		MetadataCacheTrimmer.trim(context);
+		assertThat((Map<?, ?>) ReflectionTestUtils.getField(factory, "metadataReaderCache")).isEmpty();
+	}
+
+	@Test
+	public void testContextWorksAfterTrim() {
+		MetadataCacheTrimmer.trim(context);
+		assertThat(context.getBean("singleton")).isEqualTo("singleton");
+		assertThat(context.getBean("prototype")).isEqualTo(new StringBuilder("prototype").toString());
+		assertThat(context.getBeansOfType(String.class)).hasSize(2);
+		assertThat((Object) context.getType("singleton")).isEqualTo(String.class);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> mergedBeanDefinitions() {
+		Field field = ReflectionUtils.findField(AbstractBeanFactory.class, "mergedBeanDefinitions");
+		ReflectionUtils.makeAccessible(field);
+		return (Map<String, Object>) ReflectionUtils.getField(field, context.getBeanFactory());
+	}
+
+	@Configuration
+	static class TrimConfig {
+		@Bean
+		public String singleton() {
+			return "singleton";
+		}
+
+		@Bean
+		@Scope("prototype")
+		public String prototype() {
+			return new StringBuilder("prototype").toString();
+		}
+	}
+}
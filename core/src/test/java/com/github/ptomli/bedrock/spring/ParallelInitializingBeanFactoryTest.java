@@ -0,0 +1,316 @@
+package com.github.ptomli.bedrock.spring;
+
+import static org.fest.assertions.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+public class ParallelInitializingBeanFactoryTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroThreadsThrowsException() {
+		new ParallelInitializingBeanFactory().setInitializationThreads(0);
+	}
+
+	@Test
+	public void testIndependentBeansAreInitializedConcurrently() {
+		ParallelAnnotationConfigApplicationContext context = new ParallelAnnotationConfigApplicationContext();
+		context.setInitializationThreads(3);
+		context.register(IndependentConfig.class);
+		context.refresh();
+		try {
+			// each bean waits for the other two, so this only completes if all run at once
+			assertThat(context.getBean("a", Rendezvous.class).initialized).isTrue();
+			assertThat(context.getBean("b", Rendezvous.class).initialized).isTrue();
+			assertThat(context.getBean("c", Rendezvous.class).initialized).isTrue();
+		}
+		finally {
+			context.close();
+		}
+	}
+
+	@Test
+	public void testDependenciesAreInitializedFirst() {
+		ParallelAnnotationConfigApplicationContext context = new ParallelAnnotationConfigApplicationContext();
+		context.register(DependentConfig.class);
+		context.refresh();
+		try {
+			List<String> order = context.getBean(DependentConfig.class).order;
+			assertThat(order).hasSize(3);
+			assertThat(order.indexOf("first")).isLessThan(order.indexOf("second"));
+			assertThat(order.indexOf("second")).isLessThan(order.indexOf("third"));
+		}
+		finally {
+			context.close();
+		}
+	}
+
+	@Test
+	public void testBeansWhichDoNotOptInAreInitializedSerially() {
+		ParallelAnnotationConfigApplicationContext context = new ParallelAnnotationConfigApplicationContext();
+		context.register(MixedConfig.class);
+		context.refresh();
+		try {
+			MixedConfig config = context.getBean(MixedConfig.class);
+			assertThat(context.getBean("serial", Serial.class).initializedBy).isEqualTo(Thread.currentThread().getName());
+			assertThat(context.getBean("parallel", Ordered.class).initializedBy).isNotEqualTo(Thread.currentThread().getName());
+			assertThat(context.getBean("afterParallel", Serial.class).initializedBy).isEqualTo(Thread.currentThread().getName());
+			assertThat(config.order).containsExactly("serial", "parallel", "afterParallel");
+		}
+		finally {
+			context.close();
+		}
+	}
+
+	@Test
+	public void testSerialCallbacksRunInRegistrationOrder() {
+		ParallelAnnotationConfigApplicationContext context = new ParallelAnnotationConfigApplicationContext();
+		context.register(SerialPairConfig.class);
+		context.refresh();
+		try {
+			// the dependent is registered first, and is not reordered after its dependency
+			assertThat(context.getBean(SerialPairConfig.class).order).containsExactly("dependent", "dependency");
+			assertThat(context.getBean("dependent", Serial.class).initializedBy).isEqualTo(Thread.currentThread().getName());
+			assertThat(context.getBean("dependency", Serial.class).initializedBy).isEqualTo(Thread.currentThread().getName());
+		}
+		finally {
+			context.close();
+		}
+	}
+
+	@Test
+	public void testCircularDependenciesAreInitializedSerially() {
+		ParallelAnnotationConfigApplicationContext context = new ParallelAnnotationConfigApplicationContext();
+		context.register(CircularConfig.class);
+		context.refresh();
+		try {
+			assertThat(context.getBean("x", Circular.class).initializedBy).isEqualTo(Thread.currentThread().getName());
+			assertThat(context.getBean("y", Circular.class).initializedBy).isEqualTo(Thread.currentThread().getName());
+		}
+		finally {
+			context.close();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testInitializationFailureIsPropagated() {
+		ParallelAnnotationConfigApplicationContext context = new ParallelAnnotationConfigApplicationContext();
+		context.register(FailingConfig.class);
+		context.refresh();
+	}
+
+	@Test
+	public void testXmlContextUsesParallelBeanFactory() {
+		ParallelClassPathXmlApplicationContext context = new ParallelClassPathXmlApplicationContext();
+		context.setConfigLocation("com/github/ptomli/bedrock/spring/empty-context.xml");
+		context.refresh();
+		try {
+			assertThat(context.getBeanFactory()).isInstanceOf(ParallelInitializingBeanFactory.class);
+		}
+		finally {
+			context.close();
+		}
+	}
+
+	@InitializeInParallel
+	static class Rendezvous implements SmartInitializingSingleton {
+		private final CyclicBarrier barrier;
+		volatile boolean initialized = false;
+
+		Rendezvous(CyclicBarrier barrier) {
+			this.barrier = barrier;
+		}
+
+		@Override
+		public void afterSingletonsInstantiated() {
+			try {
+				barrier.await(5, TimeUnit.SECONDS);
+				initialized = true;
+			}
+			catch (Exception ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+	}
+
+	@Configuration
+	static class IndependentConfig {
+		private final CyclicBarrier barrier = new CyclicBarrier(3);
+
+		@Bean
+		public Rendezvous a() {
+			return new Rendezvous(barrier);
+		}
+
+		@Bean
+		public Rendezvous b() {
+			return new Rendezvous(barrier);
+		}
+
+		@Bean
+		public Rendezvous c() {
+			return new Rendezvous(barrier);
+		}
+	}
+
+	@InitializeInParallel
+	static class Ordered implements SmartInitializingSingleton {
+		private final String name;
+		private final List<String> order;
+		volatile String initializedBy;
+
+		Ordered(String name, List<String> order) {
+			this.name = name;
+			this.order = order;
+		}
+
+		@Override
+		public void afterSingletonsInstantiated() {
+			try {
+				Thread.sleep(20);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			order.add(name);
+			initializedBy = Thread.currentThread().getName();
+		}
+	}
+
+	static class Serial implements SmartInitializingSingleton {
+		private final String name;
+		private final List<String> order;
+		volatile String initializedBy;
+
+		Serial(String name, List<String> order) {
+			this.name = name;
+			this.order = order;
+		}
+
+		@Override
+		public void afterSingletonsInstantiated() {
+			order.add(name);
+			initializedBy = Thread.currentThread().getName();
+		}
+	}
+
+	static class Holder {
+		Holder(Ordered ordered) {
+		}
+	}
+
+	@Configuration
+	static class DependentConfig {
+		final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+		@Bean
+		public Ordered third(final Holder holder) {
+			return new Ordered("third", order);
+		}
+
+		// not a callback itself, but carries the dependency from third to second
+		@Bean
+		public Holder holder(@Qualifier("second") final Ordered second) {
+			return new Holder(second);
+		}
+
+		@Bean
+		public Ordered second(@Qualifier("first") final Ordered first) {
+			return new Ordered("second", order);
+		}
+
+		@Bean
+		public Ordered first() {
+			return new Ordered("first", order);
+		}
+	}
+
+	@Configuration
+	static class MixedConfig {
+		final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+		// registered first, but waits on the parallel callback
+		@Bean
+		public Serial afterParallel(final Holder holder) {
+			return new Serial("afterParallel", order);
+		}
+
+		@Bean
+		public Holder holder(@Qualifier("parallel") final Ordered parallel) {
+			return new Holder(parallel);
+		}
+
+		@Bean
+		public Ordered parallel() {
+			return new Ordered("parallel", order);
+		}
+
+		@Bean
+		public Serial serial() {
+			return new Serial("serial", order);
+		}
+	}
+
+	@Configuration
+	static class SerialPairConfig {
+		final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+		@Bean
+		public Serial dependent(@Qualifier("dependency") final Serial dependency) {
+			return new Serial("dependent", order);
+		}
+
+		@Bean
+		public Serial dependency() {
+			return new Serial("dependency", order);
+		}
+	}
+
+	@InitializeInParallel
+	static class Circular implements SmartInitializingSingleton {
+		@Autowired
+		Circular other;
+		volatile String initializedBy;
+
+		@Override
+		public void afterSingletonsInstantiated() {
+			initializedBy = Thread.currentThread().getName();
+		}
+	}
+
+	@Configuration
+	static class CircularConfig {
+		@Bean
+		public Circular x() {
+			return new Circular();
+		}
+
+		@Bean
+		public Circular y() {
+			return new Circular();
+		}
+	}
+
+	@Configuration
+	static class FailingConfig {
+		@Bean
+		public SmartInitializingSingleton failing() {
+			return new SmartInitializingSingleton() {
+				@Override
+				public void afterSingletonsInstantiated() {
+					throw new IllegalStateException("failed");
+				}
+			};
+		}
+	}
+}
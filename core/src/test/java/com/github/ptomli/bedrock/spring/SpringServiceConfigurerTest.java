@@ -4,20 +4,26 @@ import static org.fest.assertions.api.Assertions.*;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 import io.dropwizard.Configuration;
+import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.jackson.Jackson;
 import io.dropwizard.jersey.setup.JerseyEnvironment;
+import io.dropwizard.jetty.MutableServletContextHandler;
 import io.dropwizard.jetty.setup.ServletEnvironment;
 import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.lifecycle.setup.LifecycleEnvironment;
 import io.dropwizard.servlets.tasks.Task;
 import io.dropwizard.setup.AdminEnvironment;
 import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
 
 import java.util.Collections;
 import java.util.EnumSet;
 
+import javax.jms.ConnectionFactory;
 import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.FilterRegistration;
+import javax.sql.DataSource;
 import javax.ws.rs.Path;
 import javax.ws.rs.ext.Provider;
 
@@ -26,16 +32,52 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.env.MutablePropertySources;
 import org.springframework.core.env.PropertySource;
-
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.annotation.Timed;
 import com.codahale.metrics.health.HealthCheck;
 import com.codahale.metrics.health.HealthCheckRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.ptomli.bedrock.cache.CacheManagerConfiguration;
+import com.github.ptomli.bedrock.cache.InstrumentedGuavaCacheManager;
+import com.github.ptomli.bedrock.hornetq.EmbeddedHornetQConfiguration;
+import com.github.ptomli.bedrock.hornetq.EmbeddedHornetQServer;
+import com.github.ptomli.bedrock.integration.BoundedChannelConfiguration;
+import com.github.ptomli.bedrock.jdbc.DataSourceHealthCheck;
+import com.github.ptomli.bedrock.jdbc.ManagedInstrumentedDataSource;
+import com.github.ptomli.bedrock.jersey.async.AsyncResponseResourceMethodDispatchAdapter;
+import com.github.ptomli.bedrock.jersey.async.AsyncSupportLifeCycleListener;
+import com.github.ptomli.bedrock.jersey.caching.CachedResponse;
+import com.github.ptomli.bedrock.jersey.caching.ResponseCacheResourceMethodDispatchAdapter;
+import com.github.ptomli.bedrock.jersey.limiting.ConcurrencyLimitConfiguration;
+import com.github.ptomli.bedrock.jersey.limiting.ConcurrencyLimitResourceMethodDispatchAdapter;
+import com.github.ptomli.bedrock.lifecycle.GracefulShutdown;
+import com.github.ptomli.bedrock.lifecycle.GracefulShutdownConfiguration;
+import com.github.ptomli.bedrock.lifecycle.InFlightRequestFilter;
+import com.github.ptomli.bedrock.lifecycle.ReadinessHealthCheck;
+import com.sun.jersey.api.core.DefaultResourceConfig;
+import com.sun.jersey.api.core.ResourceConfig;
 import com.sun.jersey.spi.inject.InjectableProvider;
 
 
@@ -128,6 +170,22 @@ public class SpringServiceConfigurerTest {
 		assertThat(springContext).isInstanceOf(AnnotationConfigApplicationContext.class);
 	}
 
+	@Test
+	public void testContextConfigurationSetsInitializationThreads() {
+		DefaultSpringContextConfiguration config = mock(DefaultSpringContextConfiguration.class);
+		Mockito.<Class<?>>when(config.getApplicationContextClass()).thenReturn(ParallelClassPathXmlApplicationContext.class);
+		when(config.getConfigLocations()).thenReturn(new String[] { EMPTY_CONTEXT });
+		when(config.getProfiles()).thenReturn(new String[] {});
+		when(config.getPropertySources()).thenReturn(new PropertySource<?>[] {});
+		when(config.getInitializationThreads()).thenReturn(3);
+
+		springContext = configurer.withContextConfiguration(config)
+		                          .registerResources()
+		                          .getApplicationContext();
+
+		assertThat(((ParallelInitializingBeanFactory) springContext.getBeanFactory()).getInitializationThreads()).isEqualTo(3);
+	}
+
 	@Test(expected = ApplicationContextInstantiationException.class)
 	public void testContextConfigurationWithUnknowngApplicationContext() {
 		SpringContextConfiguration config = mock(SpringContextConfiguration.class);
@@ -157,6 +215,182 @@ public class SpringServiceConfigurerTest {
 		assertThat(context.getBean("env")).isSameAs(dwEnvironment);
 	}
 
+	@Test
+	public void testRegisterObjectMapper() {
+		ObjectMapper mapper = new ObjectMapper();
+		when(dwEnvironment.getObjectMapper()).thenReturn(mapper);
+		configurer.withContext(ClassPathXmlApplicationContext.class, EMPTY_CONTEXT).registerObjectMapper("objectMapper");
+		ConfigurableApplicationContext context = configurer.getApplicationContext();
+		if (!context.isActive()) {
+			context.refresh();
+		}
+		assertThat(context.getBean("objectMapper")).isSameAs(mapper);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void registerObjectMapperWithExistingParentThrowsException() {
+		when(springContext.getParent()).thenReturn(mock(ConfigurableApplicationContext.class));
+		configurer.withContext(springContext).registerObjectMapper("objectMapper");
+	}
+
+	@Test
+	public void testRegisterMetrics() {
+		MetricRegistry metrics = new MetricRegistry();
+		when(dwEnvironment.metrics()).thenReturn(metrics);
+		configurer.withContext(AnnotationConfigApplicationContext.class, TimedConfig.class).registerMetrics("metrics");
+		ConfigurableApplicationContext context = configurer.getApplicationContext();
+		if (!context.isActive()) {
+			context.refresh();
+		}
+		assertThat(context.getBean("metrics")).isSameAs(metrics);
+
+		context.getBean(TimedBean.class).timed();
+		assertThat(metrics.timer(MetricRegistry.name(TimedBean.class, "timed")).getCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testRegisterMetricsAdvisesTransactionalProxies() {
+		MetricRegistry metrics = new MetricRegistry();
+		when(dwEnvironment.metrics()).thenReturn(metrics);
+		configurer.withContext(AnnotationConfigApplicationContext.class, TransactionalTimedConfig.class).registerMetrics("metrics");
+		ConfigurableApplicationContext context = configurer.getApplicationContext();
+		if (!context.isActive()) {
+			context.refresh();
+		}
+
+		TimedTransactionalOperation bean = context.getBean(TimedTransactionalOperation.class);
+		assertThat((Object) AopUtils.getTargetClass(bean)).isEqualTo(TimedTransactionalBean.class);
+		assertThat(bean.timed()).isTrue();
+		assertThat(metrics.timer(MetricRegistry.name(TimedTransactionalBean.class, "timed")).getCount()).isEqualTo(1);
+		context.close();
+	}
+
+	@Test
+	public void testRegisterMetricsLeavesResourcesToJersey() {
+		MetricRegistry metrics = new MetricRegistry();
+		when(dwEnvironment.metrics()).thenReturn(metrics);
+		configurer.withContext(AnnotationConfigApplicationContext.class, TimedResourceConfig.class)
+				.registerMetrics("metrics")
+				.registerResources();
+		ConfigurableApplicationContext context = configurer.getApplicationContext();
+
+		Object resource = context.getBean("timedResource");
+		assertThat(AopUtils.isAopProxy(resource)).isFalse();
+		verify(jersey).register(resource);
+
+		((TimedResource) resource).timed();
+		assertThat(metrics.getTimers()).isEmpty();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRegisterMetricsAfterRefreshThrowsException() {
+		when(springContext.isActive()).thenReturn(true);
+		configurer.withContext(springContext).registerMetrics("metrics");
+	}
+
+	@Test
+	public void testRegisterBoundedChannels() {
+		when(dwEnvironment.metrics()).thenReturn(new MetricRegistry());
+		configurer.withContext(springContext).registerBoundedChannels(Collections.singletonMap("orders", new BoundedChannelConfiguration()));
+		verify(springContext).addBeanFactoryPostProcessor(isA(BeanFactoryPostProcessor.class));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRegisterBoundedChannelsAfterRefreshThrowsException() {
+		when(springContext.isActive()).thenReturn(true);
+		configurer.withContext(springContext).registerBoundedChannels(Collections.singletonMap("orders", new BoundedChannelConfiguration()));
+	}
+
+	@Test
+	public void testRegisterCacheManager() {
+		when(dwEnvironment.metrics()).thenReturn(new MetricRegistry());
+		configurer.withContext(ClassPathXmlApplicationContext.class, EMPTY_CONTEXT).registerCacheManager("cacheManager", new CacheManagerConfiguration());
+		ConfigurableApplicationContext context = configurer.getApplicationContext();
+		if (!context.isActive()) {
+			context.refresh();
+		}
+		assertThat(context.getBean(CacheManager.class)).isInstanceOf(InstrumentedGuavaCacheManager.class);
+	}
+
+	@Test
+	public void testRegisterCacheManagerRecordsLoadTimes() {
+		MetricRegistry metrics = new MetricRegistry();
+		when(dwEnvironment.metrics()).thenReturn(metrics);
+		configurer.withContext(AnnotationConfigApplicationContext.class, CachingConfig.class)
+				.registerCacheManager("cacheManager", new CacheManagerConfiguration());
+		ConfigurableApplicationContext context = configurer.getApplicationContext();
+		if (!context.isActive()) {
+			context.refresh();
+		}
+
+		context.getBean(CachingBean.class).find("a");
+		context.getBean(CachingBean.class).find("a");
+		assertThat(metrics.timer("caches.users.loads").getCount()).isEqualTo(1);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRegisterCacheManagerAfterRefreshThrowsException() {
+		when(springContext.isActive()).thenReturn(true);
+		configurer.withContext(springContext).registerCacheManager("cacheManager", new CacheManagerConfiguration());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void registerCacheManagerWithExistingParentThrowsException() {
+		when(springContext.getParent()).thenReturn(mock(ConfigurableApplicationContext.class));
+		configurer.withContext(springContext).registerCacheManager("cacheManager", new CacheManagerConfiguration());
+	}
+
+	@Test
+	public void testRegisterDataSource() {
+		when(dwEnvironment.metrics()).thenReturn(new MetricRegistry());
+		DataSourceFactory factory = new DataSourceFactory();
+		factory.setDriverClass("org.h2.Driver");
+		factory.setUrl("jdbc:h2:mem:SpringServiceConfigurerTest");
+
+		configurer.withContext(ClassPathXmlApplicationContext.class, EMPTY_CONTEXT).registerDataSource("db", factory);
+		ConfigurableApplicationContext context = configurer.getApplicationContext();
+		if (!context.isActive()) {
+			context.refresh();
+		}
+
+		DataSource dataSource = context.getBean("db", DataSource.class);
+		assertThat(dataSource).isInstanceOf(ManagedInstrumentedDataSource.class);
+		verify(lifecycle).manage((Managed) dataSource);
+		verify(healthchecks).register(eq("db"), isA(DataSourceHealthCheck.class));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void registerDataSourceWithExistingParentThrowsException() {
+		when(springContext.getParent()).thenReturn(mock(ConfigurableApplicationContext.class));
+		configurer.withContext(springContext).registerDataSource("db", new DataSourceFactory());
+	}
+
+	@Test
+	public void testRegisterEmbeddedHornetQ() throws Exception {
+		EmbeddedHornetQConfiguration configuration = Jackson.newObjectMapper().readValue("{\"dataDirectory\": \"target/hornetq\"}", EmbeddedHornetQConfiguration.class);
+		configurer.withContext(ClassPathXmlApplicationContext.class, EMPTY_CONTEXT).registerEmbeddedHornetQ("jms", configuration);
+		ConfigurableApplicationContext context = configurer.getApplicationContext();
+		if (!context.isActive()) {
+			context.refresh();
+		}
+
+		EmbeddedHornetQServer server = context.getBean("jmsServer", EmbeddedHornetQServer.class);
+		try {
+			assertThat(server.isStarted()).isTrue();
+			assertThat(context.getBean("jms", ConnectionFactory.class)).isNotNull();
+			verify(lifecycle).manage(server);
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void registerEmbeddedHornetQWithExistingParentThrowsException() {
+		when(springContext.getParent()).thenReturn(mock(ConfigurableApplicationContext.class));
+		configurer.withContext(springContext).registerEmbeddedHornetQ("jms", new EmbeddedHornetQConfiguration());
+	}
+
 	@Test
 	public void testRegisterConfigurationPropertySourceRegistersEnvironmentPropertySource() {
 		MutablePropertySources sources = mock(MutablePropertySources.class);
@@ -236,6 +470,44 @@ public class SpringServiceConfigurerTest {
 		verify(jersey).register(o);
 	}
 
+	@Test
+	public void testRegisterResourcesWithCachedResponseRegistersResponseCache() {
+		when(dwEnvironment.metrics()).thenReturn(new MetricRegistry());
+		Object o = new CachedResource();
+		when(springContext.getBeansWithAnnotation(Path.class)).thenReturn(Collections.singletonMap("o", o));
+		configurer.withContext(springContext).registerResources();
+		verify(jersey).register(o);
+		verify(jersey).register(isA(ResponseCacheResourceMethodDispatchAdapter.class));
+	}
+
+	@Test
+	public void testRegisterResourcesWithoutCachedResponseDoesNotRegisterResponseCache() {
+		Object o = new Object();
+		when(springContext.getBeansWithAnnotation(Path.class)).thenReturn(Collections.singletonMap("o", o));
+		configurer.withContext(springContext).registerResources();
+		verify(jersey, never()).register(isA(ResponseCacheResourceMethodDispatchAdapter.class));
+	}
+
+	@Test
+	public void testRegisterConcurrencyLimits() {
+		when(dwEnvironment.metrics()).thenReturn(new MetricRegistry());
+		configurer.registerConcurrencyLimits(new ConcurrencyLimitConfiguration());
+		verify(jersey).register(isA(ConcurrencyLimitResourceMethodDispatchAdapter.class));
+	}
+
+	@Test
+	public void testRegisterAsyncResponses() {
+		when(dwEnvironment.metrics()).thenReturn(new MetricRegistry());
+		when(dwEnvironment.getApplicationContext()).thenReturn(new MutableServletContextHandler());
+		ResourceConfig resourceConfig = new DefaultResourceConfig();
+		when(jersey.getResourceConfig()).thenReturn(resourceConfig);
+		configurer.registerAsyncResponses(Duration.seconds(30));
+		verify(jersey).register(isA(AsyncResponseResourceMethodDispatchAdapter.class));
+		assertThat(resourceConfig.getContainerRequestFilters()).hasSize(1);
+		assertThat(resourceConfig.getContainerRequestFilters().get(0)).isInstanceOf(AsyncResponseResourceMethodDispatchAdapter.class);
+		verify(lifecycle).addLifeCycleListener(isA(AsyncSupportLifeCycleListener.class));
+	}
+
 	@Test
 	public void testRegisterTasksRefreshesContext() {
 		when(springContext.isActive()).thenReturn(false);
@@ -266,6 +538,23 @@ public class SpringServiceConfigurerTest {
 		verify(lifecycle).manage(o);
 	}
 
+	@Test
+	public void testRegisterGracefulShutdown() {
+		FilterRegistration.Dynamic registration = mock(FilterRegistration.Dynamic.class);
+		when(dwEnvironment.metrics()).thenReturn(new MetricRegistry());
+		when(servlets.addFilter(eq("inFlightRequestFilter"), isA(InFlightRequestFilter.class))).thenReturn(registration);
+		configurer.withContext(springContext).registerGracefulShutdown(new GracefulShutdownConfiguration());
+		verify(healthchecks).register(eq("readiness"), isA(ReadinessHealthCheck.class));
+		verify(registration).addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), false, "/*");
+		verify(lifecycle).addLifeCycleListener(isA(GracefulShutdown.class));
+	}
+
+	@Test
+	public void testTrimAfterStartupRefreshesContext() {
+		configurer.withContext(ClassPathXmlApplicationContext.class, EMPTY_CONTEXT).trimAfterStartup();
+		assertThat(configurer.getApplicationContext().isActive()).isTrue();
+	}
+
 	@Test
 	public void testRegisterLifeCyclesRefreshesContext() {
 		when(springContext.isActive()).thenReturn(false);
@@ -304,4 +593,93 @@ public class SpringServiceConfigurerTest {
 
 	@org.springframework.context.annotation.Configuration
 	private static class Config {}
+
+	@Path("/cached")
+	public static class CachedResource {
+		@CachedResponse
+		public String get() {
+			return "cached";
+		}
+	}
+
+	@org.springframework.context.annotation.Configuration
+	static class TimedConfig {
+		@Bean
+		public TimedBean timedBean() {
+			return new TimedBean();
+		}
+	}
+
+	@org.springframework.context.annotation.Configuration
+	@EnableTransactionManagement
+	static class TransactionalTimedConfig {
+		@Bean
+		public EmbeddedDatabase dataSource() {
+			return new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).build();
+		}
+
+		@Bean
+		public PlatformTransactionManager transactionManager() {
+			return new DataSourceTransactionManager(this.dataSource());
+		}
+
+		@Bean
+		public TimedTransactionalBean timedTransactionalBean() {
+			return new TimedTransactionalBean();
+		}
+	}
+
+	public interface TimedTransactionalOperation {
+		boolean timed();
+	}
+
+	@Transactional
+	public static class TimedTransactionalBean implements TimedTransactionalOperation {
+		@Override
+		@Timed
+		public boolean timed() {
+			return TransactionSynchronizationManager.isActualTransactionActive();
+		}
+	}
+
+	@org.springframework.context.annotation.Configuration
+	@EnableCaching
+	static class CachingConfig {
+		@Bean
+		public CachingBean cachingBean() {
+			return new CachingBean();
+		}
+	}
+
+	public static class CachingBean {
+		@Cacheable("users")
+		public String find(String id) {
+			return id.toUpperCase();
+		}
+	}
+
+	static class TimedResourceConfig {
+		@Bean
+		public TimedResource timedResource() {
+			return new TimedResource();
+		}
+	}
+
+	public interface TimedOperation {
+		void timed();
+	}
+
+	@Path("/timed")
+	public static class TimedResource implements TimedOperation {
+		@Override
+		@Timed
+		public void timed() {
+		}
+	}
+
+	public static class TimedBean {
+		@Timed
+		public void timed() {
+		}
+	}
 }
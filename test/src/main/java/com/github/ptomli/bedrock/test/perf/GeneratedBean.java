@@ -0,0 +1,58 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A bean of a generated application context, depending on other generated
+ * beans.
+ */
+public class GeneratedBean {
+
+	private final String name;
+	private final List<GeneratedBean> dependencies;
+	private final int depth;
+
+	/**
+	 * Create a new bean.
+	 *
+	 * @param name the bean name
+	 * @param dependencies the beans this bean depends on
+	 */
+	public GeneratedBean(final String name, final List<GeneratedBean> dependencies) {
+		this.name = name;
+		this.dependencies = Collections.unmodifiableList(dependencies);
+		int depth = 0;
+		for (final GeneratedBean dependency : dependencies) {
+			depth = Math.max(depth, dependency.getDepth() + 1);
+		}
+		this.depth = depth;
+	}
+
+	/**
+	 * The bean name.
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * The beans this bean depends on.
+	 *
+	 * @return the dependencies
+	 */
+	public List<GeneratedBean> getDependencies() {
+		return this.dependencies;
+	}
+
+	/**
+	 * The length of the longest chain of dependencies below this bean.
+	 *
+	 * @return the dependency depth
+	 */
+	public int getDepth() {
+		return this.depth;
+	}
+}
@@ -0,0 +1,72 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import io.dropwizard.Application;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.ManagedList;
+import org.springframework.beans.factory.support.ManagedMap;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.github.ptomli.bedrock.spring.SpringServiceConfigurer;
+
+/**
+ * A DropWizard application built with {@link SpringServiceConfigurer} from a
+ * generated application context, of a configurable number of beans, for
+ * measuring the cost of Bedrock itself with {@link PerfHarness}.
+ * <p>
+ * Each generated bean depends on up to {@code dependencies} of the beans
+ * generated before it. The beans are described by a
+ * {@link GeneratedResource} at {@code /generated}.
+ */
+public class GeneratedContextApplication extends Application<GeneratedContextConfiguration> {
+
+	/**
+	 * The prefix of the generated bean names.
+	 */
+	public static final String BEAN_PREFIX = "generated";
+
+	@Override
+	public void initialize(final Bootstrap<GeneratedContextConfiguration> bootstrap) {
+	}
+
+	@Override
+	public void run(final GeneratedContextConfiguration configuration, final Environment environment) throws Exception {
+		final SpringServiceConfigurer configurer = SpringServiceConfigurer.forEnvironment(environment)
+				.withContext(AnnotationConfigApplicationContext.class);
+		registerBeans((BeanDefinitionRegistry) configurer.getApplicationContext(), configuration.getBeans(), configuration.getDependencies());
+		configurer
+				.registerEnvironment("dropwizardEnvironment")
+				.registerHealthChecks()
+				.registerResources();
+	}
+
+	/**
+	 * Register the bean definitions of a generated context.
+	 *
+	 * @param registry the registry to register the definitions with
+	 * @param beans the number of beans to generate
+	 * @param dependencies the number of earlier beans each bean depends on
+	 */
+	public static void registerBeans(final BeanDefinitionRegistry registry, final int beans, final int dependencies) {
+		final ManagedMap<String, RuntimeBeanReference> all = new ManagedMap<String, RuntimeBeanReference>(beans);
+		for (int i = 0; i < beans; i++) {
+			final String name = BEAN_PREFIX + i;
+			final ManagedList<RuntimeBeanReference> refs = new ManagedList<RuntimeBeanReference>(dependencies);
+			for (int j = Math.max(0, i - dependencies); j < i; j++) {
+				refs.add(new RuntimeBeanReference(BEAN_PREFIX + j));
+			}
+			registry.registerBeanDefinition(name, BeanDefinitionBuilder.genericBeanDefinition(GeneratedBean.class)
+					.addConstructorArgValue(name)
+					.addConstructorArgValue(refs)
+					.getBeanDefinition());
+			all.put(name, new RuntimeBeanReference(name));
+		}
+		registry.registerBeanDefinition("generatedResource", BeanDefinitionBuilder.genericBeanDefinition(GeneratedResource.class)
+				.addConstructorArgValue(all)
+				.getBeanDefinition());
+	}
+}
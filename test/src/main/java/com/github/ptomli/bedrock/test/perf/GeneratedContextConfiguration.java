@@ -0,0 +1,47 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import io.dropwizard.Configuration;
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Configuration of a {@link GeneratedContextApplication}.
+ * <p>
+ * Expects YAML like
+ * <pre>
+ * <code>
+ * beans: 1000
+ * dependencies: 3
+ * </code>
+ * </pre>
+ */
+public class GeneratedContextConfiguration extends Configuration {
+
+	@Min(0)
+	@JsonProperty
+	private int beans = 1000;
+
+	@Min(0)
+	@JsonProperty
+	private int dependencies = 3;
+
+	/**
+	 * The number of beans to generate.
+	 *
+	 * @return the number of beans
+	 */
+	public int getBeans() {
+		return this.beans;
+	}
+
+	/**
+	 * The number of earlier beans each generated bean depends on.
+	 *
+	 * @return the number of dependencies per bean
+	 */
+	public int getDependencies() {
+		return this.dependencies;
+	}
+}
@@ -0,0 +1,64 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response.Status;
+
+/**
+ * The resource of a {@link GeneratedContextApplication}, describing the
+ * generated beans.
+ */
+@Path("/generated")
+@Produces(MediaType.APPLICATION_JSON)
+public class GeneratedResource {
+
+	private final Map<String, GeneratedBean> beans;
+
+	/**
+	 * Create a new resource.
+	 *
+	 * @param beans the generated beans, keyed by name
+	 */
+	public GeneratedResource(final Map<String, GeneratedBean> beans) {
+		this.beans = beans;
+	}
+
+	/**
+	 * Return the number of generated beans.
+	 *
+	 * @return the bean count
+	 */
+	@GET
+	public Map<String, Object> count() {
+		final Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("beans", this.beans.size());
+		return result;
+	}
+
+	/**
+	 * Describe a generated bean.
+	 *
+	 * @param name the bean name
+	 * @return the bean name, and its dependency depth
+	 */
+	@GET
+	@Path("{name}")
+	public Map<String, Object> bean(@PathParam("name") final String name) {
+		final GeneratedBean bean = this.beans.get(name);
+		if (bean == null) {
+			throw new WebApplicationException(Status.NOT_FOUND);
+		}
+		final Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("name", bean.getName());
+		result.put("depth", bean.getDepth());
+		result.put("dependencies", bean.getDependencies().size());
+		return result;
+	}
+}
@@ -0,0 +1,132 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.UniformReservoir;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Drives HTTP load against a local server, using {@link HttpURLConnection}
+ * with keep-alive connections so that connection setup is not measured.
+ */
+public class LoadGenerator {
+
+	/**
+	 * The number of latencies sampled for the percentiles.
+	 */
+	public static final int RESERVOIR_SIZE = 16384;
+
+	private static final int DRAIN_BUFFER_SIZE = 8192;
+
+	private final String baseUrl;
+
+	/**
+	 * Create a new load generator.
+	 *
+	 * @param baseUrl the root URL of the application, such as {@code http://localhost:8080}
+	 */
+	public LoadGenerator(final String baseUrl) {
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+	}
+
+	/**
+	 * Drive the load described by the profile, blocking until complete.
+	 *
+	 * @param profile the load profile
+	 * @return the result
+	 * @throws InterruptedException if interrupted while waiting for the clients
+	 */
+	public LoadResult run(final LoadProfile profile) throws InterruptedException {
+		final URL url;
+		try {
+			url = new URL(this.baseUrl + profile.getPath());
+		}
+		catch (IOException ex) {
+			throw new IllegalArgumentException("Invalid URL " + this.baseUrl + profile.getPath(), ex);
+		}
+
+		final ExecutorService clients = Executors.newFixedThreadPool(profile.getConcurrency(),
+				new ThreadFactoryBuilder().setNameFormat("load-generator-%d").setDaemon(true).build());
+		try {
+			this.drive(clients, url, profile.getConcurrency(), profile.getWarmupRequests(), null, new AtomicInteger());
+
+			final Histogram latencies = new Histogram(new UniformReservoir(RESERVOIR_SIZE));
+			final AtomicInteger errors = new AtomicInteger();
+			final long start = System.nanoTime();
+			this.drive(clients, url, profile.getConcurrency(), profile.getRequests(), latencies, errors);
+			final long duration = System.nanoTime() - start;
+
+			return new LoadResult(profile, errors.get(), duration, latencies.getSnapshot());
+		}
+		finally {
+			clients.shutdownNow();
+		}
+	}
+
+	private void drive(final ExecutorService clients, final URL url, final int concurrency, final int requests,
+			final Histogram latencies, final AtomicInteger errors) throws InterruptedException {
+		final AtomicInteger remaining = new AtomicInteger(requests);
+		final List<Future<?>> futures = new ArrayList<Future<?>>(concurrency);
+		for (int i = 0; i < concurrency; i++) {
+			futures.add(clients.submit(new Runnable() {
+				@Override
+				public void run() {
+					final byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+					while (remaining.getAndDecrement() > 0) {
+						final long start = System.nanoTime();
+						if (request(url, buffer)) {
+							if (latencies != null) {
+								latencies.update(System.nanoTime() - start);
+							}
+						}
+						else {
+							errors.incrementAndGet();
+						}
+					}
+				}
+			}));
+		}
+		for (final Future<?> future : futures) {
+			try {
+				future.get();
+			}
+			catch (ExecutionException ex) {
+				throw new IllegalStateException("load generator client failed", ex.getCause());
+			}
+		}
+	}
+
+	// the response must be read fully and closed for the connection to be reused
+	private static boolean request(final URL url, final byte[] buffer) {
+		try {
+			final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			final int status = connection.getResponseCode();
+			final InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			if (in != null) {
+				try {
+					while (in.read(buffer) != -1) {
+						// drain
+					}
+				}
+				finally {
+					in.close();
+				}
+			}
+			return status < 400;
+		}
+		catch (IOException ex) {
+			return false;
+		}
+	}
+}
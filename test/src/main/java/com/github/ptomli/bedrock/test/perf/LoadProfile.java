@@ -0,0 +1,79 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import com.google.common.base.Strings;
+
+/**
+ * The HTTP load to drive against a resource: {@code requests} GET requests
+ * made by {@code concurrency} clients, after {@code warmupRequests}
+ * requests whose results are discarded.
+ */
+public class LoadProfile {
+
+	private final String path;
+	private final int concurrency;
+	private final int warmupRequests;
+	private final int requests;
+
+	/**
+	 * Create a new load profile.
+	 *
+	 * @param path the path of the resource, relative to the application root
+	 * @param concurrency the number of concurrent clients
+	 * @param warmupRequests the number of requests made before measuring
+	 * @param requests the number of requests measured
+	 */
+	public LoadProfile(final String path, final int concurrency, final int warmupRequests, final int requests) {
+		if (Strings.isNullOrEmpty(path) || !path.startsWith("/")) {
+			throw new IllegalArgumentException("path must start with /");
+		}
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("concurrency must be at least 1");
+		}
+		if (warmupRequests < 0) {
+			throw new IllegalArgumentException("warmupRequests may not be negative");
+		}
+		if (requests < 1) {
+			throw new IllegalArgumentException("requests must be at least 1");
+		}
+		this.path = path;
+		this.concurrency = concurrency;
+		this.warmupRequests = warmupRequests;
+		this.requests = requests;
+	}
+
+	/**
+	 * The path of the resource, relative to the application root.
+	 *
+	 * @return the path
+	 */
+	public String getPath() {
+		return this.path;
+	}
+
+	/**
+	 * The number of concurrent clients.
+	 *
+	 * @return the concurrency
+	 */
+	public int getConcurrency() {
+		return this.concurrency;
+	}
+
+	/**
+	 * The number of requests made before measuring.
+	 *
+	 * @return the number of warmup requests
+	 */
+	public int getWarmupRequests() {
+		return this.warmupRequests;
+	}
+
+	/**
+	 * The number of requests measured.
+	 *
+	 * @return the number of requests
+	 */
+	public int getRequests() {
+		return this.requests;
+	}
+}
@@ -0,0 +1,159 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Snapshot;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The result of driving a {@link LoadProfile} against a resource. Latencies
+ * are in milliseconds, and only include successful requests.
+ */
+public class LoadResult {
+
+	@JsonProperty
+	private final String path;
+
+	@JsonProperty
+	private final int concurrency;
+
+	@JsonProperty
+	private final int requests;
+
+	@JsonProperty
+	private final int errors;
+
+	@JsonProperty
+	private final double durationMillis;
+
+	@JsonProperty
+	private final double throughput;
+
+	@JsonProperty
+	private final double meanMillis;
+
+	@JsonProperty
+	private final double p50Millis;
+
+	@JsonProperty
+	private final double p90Millis;
+
+	@JsonProperty
+	private final double p99Millis;
+
+	@JsonProperty
+	private final double maxMillis;
+
+	LoadResult(final LoadProfile profile, final int errors, final long durationNanos, final Snapshot latencies) {
+		this.path = profile.getPath();
+		this.concurrency = profile.getConcurrency();
+		this.requests = profile.getRequests();
+		this.errors = errors;
+		this.durationMillis = durationNanos / 1e6;
+		this.throughput = profile.getRequests() / (durationNanos / (double) TimeUnit.SECONDS.toNanos(1));
+		this.meanMillis = latencies.getMean() / 1e6;
+		this.p50Millis = latencies.getMedian() / 1e6;
+		this.p90Millis = latencies.getValue(0.9) / 1e6;
+		this.p99Millis = latencies.get99thPercentile() / 1e6;
+		this.maxMillis = latencies.getMax() / 1e6;
+	}
+
+	/**
+	 * The path of the resource.
+	 *
+	 * @return the path
+	 */
+	public String getPath() {
+		return this.path;
+	}
+
+	/**
+	 * The number of concurrent clients.
+	 *
+	 * @return the concurrency
+	 */
+	public int getConcurrency() {
+		return this.concurrency;
+	}
+
+	/**
+	 * The number of requests measured.
+	 *
+	 * @return the number of requests
+	 */
+	public int getRequests() {
+		return this.requests;
+	}
+
+	/**
+	 * The number of requests which failed, or had an error status.
+	 *
+	 * @return the number of errors
+	 */
+	public int getErrors() {
+		return this.errors;
+	}
+
+	/**
+	 * The time taken to make the measured requests.
+	 *
+	 * @return the duration, in milliseconds
+	 */
+	public double getDurationMillis() {
+		return this.durationMillis;
+	}
+
+	/**
+	 * The rate requests were completed at.
+	 *
+	 * @return the throughput, in requests per second
+	 */
+	public double getThroughput() {
+		return this.throughput;
+	}
+
+	/**
+	 * The mean latency.
+	 *
+	 * @return the mean latency, in milliseconds
+	 */
+	public double getMeanMillis() {
+		return this.meanMillis;
+	}
+
+	/**
+	 * The median latency.
+	 *
+	 * @return the median latency, in milliseconds
+	 */
+	public double getP50Millis() {
+		return this.p50Millis;
+	}
+
+	/**
+	 * The 90th percentile latency.
+	 *
+	 * @return the 90th percentile latency, in milliseconds
+	 */
+	public double getP90Millis() {
+		return this.p90Millis;
+	}
+
+	/**
+	 * The 99th percentile latency.
+	 *
+	 * @return the 99th percentile latency, in milliseconds
+	 */
+	public double getP99Millis() {
+		return this.p99Millis;
+	}
+
+	/**
+	 * The highest latency.
+	 *
+	 * @return the maximum latency, in milliseconds
+	 */
+	public double getMaxMillis() {
+		return this.maxMillis;
+	}
+}
@@ -0,0 +1,221 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Session;
+
+import org.springframework.jms.support.converter.MessageConverter;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Converts a payload to a JMS {@link BytesMessage} and back with a
+ * {@link MessageConverter}, so that the CPU and allocation cost of
+ * converters such as {@code SmileMessageConverter} and Spring's
+ * {@code MappingJackson2MessageConverter} can be compared.
+ * <p>
+ * Each of {@code threads} threads round trips the payload through an in
+ * memory {@code BytesMessage}, without a broker, so the result measures the
+ * converter rather than the transport. The message is a dynamic proxy, whose
+ * small per call allocation is included in every converter's result. For
+ * example
+ * <pre>
+ * <code>
+ * MessageConverterBenchmark benchmark = new MessageConverterBenchmark(4, 100000, 1000000);
+ * MessageConverterResult smile = benchmark.run("smile", new SmileMessageConverter(mapper), payload);
+ * MessageConverterResult json = benchmark.run("json", jsonConverter, payload);
+ * </code>
+ * </pre>
+ */
+public class MessageConverterBenchmark {
+
+	private final int threads;
+	private final int warmupMessages;
+	private final int messages;
+
+	/**
+	 * Create a new benchmark.
+	 *
+	 * @param threads the number of concurrent converting threads
+	 * @param warmupMessages the number of round trips made before measuring
+	 * @param messages the number of round trips measured
+	 */
+	public MessageConverterBenchmark(final int threads, final int warmupMessages, final int messages) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be at least 1");
+		}
+		if (warmupMessages < 0) {
+			throw new IllegalArgumentException("warmupMessages may not be negative");
+		}
+		if (messages < threads) {
+			throw new IllegalArgumentException("messages must be at least the number of threads");
+		}
+		this.threads = threads;
+		this.warmupMessages = warmupMessages;
+		this.messages = messages;
+	}
+
+	/**
+	 * Round trip the payload through the converter, blocking until complete.
+	 *
+	 * @param name the name of the converter in the result
+	 * @param converter the converter
+	 * @param payload the payload to convert
+	 * @return the result
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 * @throws IllegalStateException if the payload does not survive the round trip
+	 */
+	public MessageConverterResult run(final String name, final MessageConverter converter, final Object payload) throws InterruptedException {
+		final ExecutorService executor = Executors.newFixedThreadPool(this.threads,
+				new ThreadFactoryBuilder().setNameFormat("converter-benchmark-%d").setDaemon(true).build());
+		try {
+			final long payloadBytes = this.drive(executor, converter, payload, Math.max(1, this.warmupMessages / this.threads), new AtomicLong());
+
+			final AtomicLong allocated = new AtomicLong();
+			final long start = System.nanoTime();
+			this.drive(executor, converter, payload, this.messages / this.threads, allocated);
+			final long duration = System.nanoTime() - start;
+
+			return new MessageConverterResult(name, this.threads, this.messages / this.threads * this.threads, payloadBytes,
+					duration, allocatedBytes() < 0 ? -1 : allocated.get());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	// returns the body length of the converted payload
+	private long drive(final ExecutorService executor, final MessageConverter converter, final Object payload, final int perThread,
+			final AtomicLong allocated) throws InterruptedException {
+		final Session session = session();
+		final List<Future<Long>> futures = new ArrayList<Future<Long>>(this.threads);
+		for (int t = 0; t < this.threads; t++) {
+			futures.add(executor.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws JMSException {
+					final long allocatedBefore = allocatedBytes();
+					long length = 0;
+					for (int i = 0; i < perThread; i++) {
+						final BytesMessage message = (BytesMessage) converter.toMessage(payload, session);
+						message.reset();
+						length = message.getBodyLength();
+						if (converter.fromMessage(message) == null) {
+							throw new IllegalStateException("payload was not read back");
+						}
+					}
+					final long allocatedAfter = allocatedBytes();
+					if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+						allocated.addAndGet(allocatedAfter - allocatedBefore);
+					}
+					return length;
+				}
+			}));
+		}
+
+		long length = 0;
+		try {
+			for (final Future<Long> future : futures) {
+				length = future.get();
+			}
+		}
+		catch (ExecutionException ex) {
+			throw new IllegalStateException("converter benchmark thread failed", ex.getCause());
+		}
+		return length;
+	}
+
+	// a session which only creates in memory bytes messages
+	private static Session session() {
+		return (Session) Proxy.newProxyInstance(MessageConverterBenchmark.class.getClassLoader(), new Class<?>[] { Session.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(final Object proxy, final Method method, final Object[] args) {
+						if (method.getName().equals("createBytesMessage")) {
+							return bytesMessage();
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	// a bytes message supporting only the body and string property methods
+	// the converters use, which is readable once reset
+	private static BytesMessage bytesMessage() {
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		final Map<String, String> properties = new HashMap<String, String>(4);
+		return (BytesMessage) Proxy.newProxyInstance(MessageConverterBenchmark.class.getClassLoader(), new Class<?>[] { BytesMessage.class },
+				new InvocationHandler() {
+					private byte[] bytes;
+					private int position;
+
+					@Override
+					public Object invoke(final Object proxy, final Method method, final Object[] args) {
+						final String name = method.getName();
+						if (name.equals("writeBytes")) {
+							final byte[] source = (byte[]) args[0];
+							if (args.length == 1) {
+								body.write(source, 0, source.length);
+							}
+							else {
+								body.write(source, (Integer) args[1], (Integer) args[2]);
+							}
+							return null;
+						}
+						if (name.equals("reset")) {
+							this.bytes = body.toByteArray();
+							this.position = 0;
+							return null;
+						}
+						if (name.equals("getBodyLength")) {
+							return (long) this.bytes.length;
+						}
+						if (name.equals("readBytes")) {
+							final byte[] target = (byte[]) args[0];
+							final int length = Math.min(args.length == 1 ? target.length : (Integer) args[1], this.bytes.length - this.position);
+							if (length <= 0) {
+								return -1;
+							}
+							System.arraycopy(this.bytes, this.position, target, 0, length);
+							this.position += length;
+							return length;
+						}
+						if (name.equals("setStringProperty")) {
+							properties.put((String) args[0], (String) args[1]);
+							return null;
+						}
+						if (name.equals("getStringProperty")) {
+							return properties.get(args[0]);
+						}
+						throw new UnsupportedOperationException(name);
+					}
+				});
+	}
+
+	// allocation is only measured by HotSpot, so is -1 on other JVMs
+	private static long allocatedBytes() {
+		final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			final com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+			if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+				return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,108 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The result of running a {@link MessageConverterBenchmark} against a
+ * message converter.
+ */
+public class MessageConverterResult {
+
+	@JsonProperty
+	private final String converter;
+
+	@JsonProperty
+	private final int threads;
+
+	@JsonProperty
+	private final int messages;
+
+	@JsonProperty
+	private final long payloadBytes;
+
+	@JsonProperty
+	private final double durationMillis;
+
+	@JsonProperty
+	private final double throughput;
+
+	@JsonProperty
+	private final double allocatedBytesPerMessage;
+
+	MessageConverterResult(final String converter, final int threads, final int messages, final long payloadBytes,
+			final long durationNanos, final long allocatedBytes) {
+		this.converter = converter;
+		this.threads = threads;
+		this.messages = messages;
+		this.payloadBytes = payloadBytes;
+		this.durationMillis = durationNanos / 1e6;
+		this.throughput = messages / (durationNanos / (double) TimeUnit.SECONDS.toNanos(1));
+		this.allocatedBytesPerMessage = allocatedBytes < 0 ? -1 : allocatedBytes / (double) messages;
+	}
+
+	/**
+	 * The name of the converter.
+	 *
+	 * @return the converter name
+	 */
+	public String getConverter() {
+		return this.converter;
+	}
+
+	/**
+	 * The number of concurrent converting threads.
+	 *
+	 * @return the number of threads
+	 */
+	public int getThreads() {
+		return this.threads;
+	}
+
+	/**
+	 * The number of round trips measured.
+	 *
+	 * @return the number of messages
+	 */
+	public int getMessages() {
+		return this.messages;
+	}
+
+	/**
+	 * The body length of the converted payload.
+	 *
+	 * @return the payload size, in bytes
+	 */
+	public long getPayloadBytes() {
+		return this.payloadBytes;
+	}
+
+	/**
+	 * The time taken to make the measured round trips.
+	 *
+	 * @return the duration, in milliseconds
+	 */
+	public double getDurationMillis() {
+		return this.durationMillis;
+	}
+
+	/**
+	 * The rate the payload was written and read back at.
+	 *
+	 * @return the throughput, in round trips per second
+	 */
+	public double getThroughput() {
+		return this.throughput;
+	}
+
+	/**
+	 * The heap allocated by the converting threads, which is mostly the
+	 * garbage made by the converter writing and reading the payload.
+	 *
+	 * @return the allocated bytes per round trip, or -1 if the JVM does not measure allocation
+	 */
+	public double getAllocatedBytesPerMessage() {
+		return this.allocatedBytesPerMessage;
+	}
+}
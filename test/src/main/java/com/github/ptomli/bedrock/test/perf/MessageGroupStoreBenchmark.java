@@ -0,0 +1,179 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.integration.store.MessageGroup;
+import org.springframework.integration.store.MessageGroupStore;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Drives an aggregator-like workload against a {@link MessageGroupStore},
+ * so that stores such as {@code SimpleMessageStore} and
+ * {@code StripedMessageGroupStore} can be compared.
+ * <p>
+ * Each of {@code senders} threads keeps {@code groups} groups open, with
+ * {@code Long} correlation keys, adding its messages to them in turn and
+ * removing a group once it holds {@code groupSize} messages, as an
+ * aggregator releasing a group would. A reaper thread scans the store for
+ * expired groups throughout, without finding any. For example
+ * <pre>
+ * <code>
+ * MessageGroupStoreBenchmark benchmark = new MessageGroupStoreBenchmark(8, 1000, 10, 100000, 1000000);
+ * MessageGroupStoreResult simple = benchmark.run("simple", new SimpleMessageStore());
+ * MessageGroupStoreResult striped = benchmark.run("striped", new StripedMessageGroupStore());
+ * </code>
+ * </pre>
+ */
+public class MessageGroupStoreBenchmark {
+
+	private static final long REAPER_INTERVAL_MILLIS = 10;
+
+	private final int senders;
+	private final int groups;
+	private final int groupSize;
+	private final int warmupMessages;
+	private final int messages;
+
+	/**
+	 * Create a new benchmark.
+	 *
+	 * @param senders the number of concurrent senders
+	 * @param groups the number of groups each sender keeps open
+	 * @param groupSize the number of messages in a complete group
+	 * @param warmupMessages the number of messages sent before measuring
+	 * @param messages the number of messages measured
+	 */
+	public MessageGroupStoreBenchmark(final int senders, final int groups, final int groupSize, final int warmupMessages, final int messages) {
+		if (senders < 1) {
+			throw new IllegalArgumentException("senders must be at least 1");
+		}
+		if (groups < 1) {
+			throw new IllegalArgumentException("groups must be at least 1");
+		}
+		if (groupSize < 1) {
+			throw new IllegalArgumentException("groupSize must be at least 1");
+		}
+		if (warmupMessages < 0) {
+			throw new IllegalArgumentException("warmupMessages may not be negative");
+		}
+		if (messages < senders) {
+			throw new IllegalArgumentException("messages must be at least the number of senders");
+		}
+		this.senders = senders;
+		this.groups = groups;
+		this.groupSize = groupSize;
+		this.warmupMessages = warmupMessages;
+		this.messages = messages;
+	}
+
+	/**
+	 * Drive the workload against the store, blocking until complete. The
+	 * store should be empty, and is left with the groups which were not
+	 * completed.
+	 *
+	 * @param name the name of the store in the result
+	 * @param store the store
+	 * @return the result
+	 * @throws InterruptedException if interrupted while waiting for the senders
+	 */
+	public MessageGroupStoreResult run(final String name, final MessageGroupStore store) throws InterruptedException {
+		final ExecutorService executor = Executors.newFixedThreadPool(this.senders + 1,
+				new ThreadFactoryBuilder().setNameFormat("store-benchmark-%d").setDaemon(true).build());
+		try {
+			this.drive(executor, store, this.warmupMessages / this.senders, new AtomicLong());
+
+			final AtomicLong allocated = new AtomicLong();
+			final long start = System.nanoTime();
+			final int released = this.drive(executor, store, this.messages / this.senders, allocated);
+			final long duration = System.nanoTime() - start;
+
+			return new MessageGroupStoreResult(name, this.senders, this.groups, this.groupSize, this.messages / this.senders * this.senders,
+					released, duration, allocatedBytes() < 0 ? -1 : allocated.get());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private int drive(final ExecutorService executor, final MessageGroupStore store, final int perSender, final AtomicLong allocated)
+			throws InterruptedException {
+		final Future<?> reaper = executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				while (!Thread.currentThread().isInterrupted()) {
+					store.expireMessageGroups(TimeUnit.HOURS.toMillis(1));
+					try {
+						Thread.sleep(REAPER_INTERVAL_MILLIS);
+					}
+					catch (InterruptedException ex) {
+						return;
+					}
+				}
+			}
+		});
+
+		final List<Future<Integer>> futures = new ArrayList<Future<Integer>>(this.senders);
+		for (int s = 0; s < this.senders; s++) {
+			final long firstKey = (long) s * this.groups;
+			futures.add(executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					final long allocatedBefore = allocatedBytes();
+					final Message<Integer> message = new GenericMessage<Integer>(0);
+					int released = 0;
+					for (int i = 0; i < perSender; i++) {
+						final Long key = firstKey + i % groups;
+						final MessageGroup group = store.addMessageToGroup(key, message);
+						if (group.size() >= groupSize) {
+							store.removeMessageGroup(key);
+							released++;
+						}
+					}
+					final long allocatedAfter = allocatedBytes();
+					if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+						allocated.addAndGet(allocatedAfter - allocatedBefore);
+					}
+					return released;
+				}
+			}));
+		}
+
+		int released = 0;
+		try {
+			for (final Future<Integer> future : futures) {
+				released += future.get();
+			}
+		}
+		catch (ExecutionException ex) {
+			throw new IllegalStateException("store benchmark sender failed", ex.getCause());
+		}
+		finally {
+			reaper.cancel(true);
+		}
+		return released;
+	}
+
+	// allocation is only measured by HotSpot, so is -1 on other JVMs
+	private static long allocatedBytes() {
+		final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			final com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+			if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+				return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+}
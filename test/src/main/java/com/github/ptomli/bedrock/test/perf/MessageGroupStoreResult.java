@@ -0,0 +1,134 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The result of running a {@link MessageGroupStoreBenchmark} against a
+ * message group store.
+ */
+public class MessageGroupStoreResult {
+
+	@JsonProperty
+	private final String store;
+
+	@JsonProperty
+	private final int senders;
+
+	@JsonProperty
+	private final int groups;
+
+	@JsonProperty
+	private final int groupSize;
+
+	@JsonProperty
+	private final int messages;
+
+	@JsonProperty
+	private final int releasedGroups;
+
+	@JsonProperty
+	private final double durationMillis;
+
+	@JsonProperty
+	private final double throughput;
+
+	@JsonProperty
+	private final double allocatedBytesPerMessage;
+
+	MessageGroupStoreResult(final String store, final int senders, final int groups, final int groupSize, final int messages,
+			final int releasedGroups, final long durationNanos, final long allocatedBytes) {
+		this.store = store;
+		this.senders = senders;
+		this.groups = groups;
+		this.groupSize = groupSize;
+		this.messages = messages;
+		this.releasedGroups = releasedGroups;
+		this.durationMillis = durationNanos / 1e6;
+		this.throughput = messages / (durationNanos / (double) TimeUnit.SECONDS.toNanos(1));
+		this.allocatedBytesPerMessage = allocatedBytes < 0 ? -1 : allocatedBytes / (double) messages;
+	}
+
+	/**
+	 * The name of the store.
+	 *
+	 * @return the store name
+	 */
+	public String getStore() {
+		return this.store;
+	}
+
+	/**
+	 * The number of concurrent senders.
+	 *
+	 * @return the number of senders
+	 */
+	public int getSenders() {
+		return this.senders;
+	}
+
+	/**
+	 * The number of groups each sender kept open.
+	 *
+	 * @return the number of groups
+	 */
+	public int getGroups() {
+		return this.groups;
+	}
+
+	/**
+	 * The number of messages in a complete group.
+	 *
+	 * @return the group size
+	 */
+	public int getGroupSize() {
+		return this.groupSize;
+	}
+
+	/**
+	 * The number of messages measured.
+	 *
+	 * @return the number of messages
+	 */
+	public int getMessages() {
+		return this.messages;
+	}
+
+	/**
+	 * The number of groups completed and removed while measuring.
+	 *
+	 * @return the number of released groups
+	 */
+	public int getReleasedGroups() {
+		return this.releasedGroups;
+	}
+
+	/**
+	 * The time taken to add the measured messages.
+	 *
+	 * @return the duration, in milliseconds
+	 */
+	public double getDurationMillis() {
+		return this.durationMillis;
+	}
+
+	/**
+	 * The rate messages were added at.
+	 *
+	 * @return the throughput, in messages per second
+	 */
+	public double getThroughput() {
+		return this.throughput;
+	}
+
+	/**
+	 * The heap allocated by the senders, which is the garbage made by the
+	 * store, as the senders reuse one message.
+	 *
+	 * @return the allocated bytes per message, or -1 if the JVM does not measure allocation
+	 */
+	public double getAllocatedBytesPerMessage() {
+		return this.allocatedBytesPerMessage;
+	}
+}
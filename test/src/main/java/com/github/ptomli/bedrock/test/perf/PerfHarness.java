@@ -0,0 +1,315 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import io.dropwizard.Application;
+import io.dropwizard.Configuration;
+import io.dropwizard.cli.ServerCommand;
+import io.dropwizard.jetty.ConnectorFactory;
+import io.dropwizard.jetty.HttpConnectorFactory;
+import io.dropwizard.server.DefaultServerFactory;
+import io.dropwizard.server.ServerFactory;
+import io.dropwizard.server.SimpleServerFactory;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.LifeCycle;
+
+/**
+ * Boots a DropWizard application in process, timing the phases of its
+ * startup, and drives HTTP load against its resources, so that performance
+ * regression tests need no external tools.
+ * <p>
+ * The startup phases are
+ * <ul>
+ * <li>{@code initialize}, the application's {@code initialize} method
+ * <li>{@code configuration}, parsing and validating the configuration, and
+ * creating the environment
+ * <li>{@code bundles}, running the bundles
+ * <li>{@code application}, the application's {@code run} method, where
+ * {@code SpringServiceConfigurer} builds the application context, and
+ * building the server
+ * <li>{@code server-start}, starting the server and managed objects
+ * </ul>
+ * <p>
+ * The HTTP connectors listen on ephemeral ports, unless
+ * {@link #withEphemeralPorts(boolean) disabled}. For example
+ * <pre>
+ * <code>
+ * PerfHarness&lt;MyConfiguration&gt; harness = new PerfHarness&lt;MyConfiguration&gt;(new MyApplication(), "config.yml");
+ * harness.start();
+ * harness.load(new LoadProfile("/orders", 8, 1000, 10000));
+ * harness.stop();
+ * harness.report().writeTo(new File("target/perf-report.json"));
+ * </code>
+ * </pre>
+ *
+ * @param <C> the configuration type
+ */
+public class PerfHarness<C extends Configuration> {
+
+	private static final String OVERRIDE_PREFIX = "dw.";
+
+	private final Application<C> application;
+	private final String configPath;
+	private final Map<String, String> overrides = new LinkedHashMap<String, String>();
+	private final StartupPhases phases = new StartupPhases();
+	private final List<LoadResult> loads = new ArrayList<LoadResult>();
+
+	private boolean ephemeralPorts = true;
+	private C configuration;
+	private Environment environment;
+	private Server server;
+	private long heapUsedAfterStartup;
+
+	/**
+	 * Create a new harness for an application using its default
+	 * configuration.
+	 *
+	 * @param application the application
+	 */
+	public PerfHarness(final Application<C> application) {
+		this(application, null);
+	}
+
+	/**
+	 * Create a new harness for an application.
+	 *
+	 * @param application the application
+	 * @param configPath the path of the configuration file, may be null
+	 */
+	public PerfHarness(final Application<C> application, final String configPath) {
+		if (application == null) {
+			throw new IllegalArgumentException("application may not be null");
+		}
+		this.application = application;
+		this.configPath = configPath;
+	}
+
+	/**
+	 * Override a configuration value, in the form used by DropWizard's
+	 * {@code dw.} system properties.
+	 *
+	 * @param key the configuration key, such as {@code server.applicationConnectors[0].port}
+	 * @param value the value
+	 * @return this harness
+	 */
+	public PerfHarness<C> withOverride(final String key, final String value) {
+		this.overrides.put(key, value);
+		return this;
+	}
+
+	/**
+	 * Set whether HTTP connectors listen on ephemeral ports, rather than the
+	 * configured ports, defaulting to true.
+	 *
+	 * @param ephemeralPorts true to listen on ephemeral ports
+	 * @return this harness
+	 */
+	public PerfHarness<C> withEphemeralPorts(final boolean ephemeralPorts) {
+		this.ephemeralPorts = ephemeralPorts;
+		return this;
+	}
+
+	/**
+	 * Boot the application, blocking until the server has started.
+	 *
+	 * @return the startup phases
+	 * @throws IllegalStateException if the harness has already been started
+	 * @throws Exception if the application fails to start
+	 */
+	public synchronized StartupPhases start() throws Exception {
+		if (this.server != null) {
+			throw new IllegalStateException("harness has already been started");
+		}
+
+		final Bootstrap<C> bootstrap = new Bootstrap<C>(this.application) {
+			@Override
+			public void run(final C configuration, final Environment environment) throws Exception {
+				phases.mark("configuration");
+				super.run(configuration, environment);
+				phases.mark("bundles");
+
+				if (ephemeralPorts) {
+					useEphemeralPorts(configuration.getServerFactory());
+				}
+				PerfHarness.this.configuration = configuration;
+				PerfHarness.this.environment = environment;
+				environment.lifecycle().addLifeCycleListener(new AbstractLifeCycle.AbstractLifeCycleListener() {
+					@Override
+					public void lifeCycleStarting(final LifeCycle event) {
+						phases.mark("application");
+					}
+
+					@Override
+					public void lifeCycleStarted(final LifeCycle event) {
+						phases.mark("server-start");
+						if (event instanceof Server) {
+							server = (Server) event;
+						}
+					}
+				});
+			}
+		};
+
+		final Map<String, String> previous = this.applyOverrides();
+		try {
+			this.phases.start();
+			this.application.initialize(bootstrap);
+			this.phases.mark("initialize");
+
+			final Map<String, Object> arguments = new HashMap<String, Object>();
+			arguments.put("file", this.configPath);
+			new ServerCommand<C>(this.application).run(bootstrap, new Namespace(arguments));
+		}
+		finally {
+			restoreOverrides(previous);
+		}
+
+		if (this.server == null) {
+			throw new IllegalStateException("server did not start");
+		}
+		this.heapUsedAfterStartup = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		return this.phases;
+	}
+
+	/**
+	 * Stop the application.
+	 *
+	 * @throws Exception if the server fails to stop
+	 */
+	public synchronized void stop() throws Exception {
+		if (this.server != null) {
+			this.server.stop();
+		}
+	}
+
+	/**
+	 * Drive HTTP load against the running application, recording the result
+	 * in the report.
+	 *
+	 * @param profile the load to drive
+	 * @return the result
+	 * @throws InterruptedException if interrupted while driving load
+	 * @throws IllegalStateException if the harness has not been started
+	 */
+	public LoadResult load(final LoadProfile profile) throws InterruptedException {
+		final LoadResult result = new LoadGenerator("http://localhost:" + this.getLocalPort()).run(profile);
+		synchronized (this) {
+			this.loads.add(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Return the report of the startup phases, and the load driven so far.
+	 *
+	 * @return the report
+	 */
+	public synchronized PerfReport report() {
+		return new PerfReport(this.application.getClass().getName(), this.phases, this.heapUsedAfterStartup, this.loads);
+	}
+
+	/**
+	 * Return the port the application connector is listening on.
+	 *
+	 * @return the local port
+	 * @throws IllegalStateException if the harness has not been started
+	 */
+	public int getLocalPort() {
+		return ((ServerConnector) this.getServer().getConnectors()[0]).getLocalPort();
+	}
+
+	/**
+	 * Return the port the admin connector is listening on.
+	 *
+	 * @return the local admin port
+	 * @throws IllegalStateException if the harness has not been started
+	 */
+	public int getAdminPort() {
+		return ((ServerConnector) this.getServer().getConnectors()[1]).getLocalPort();
+	}
+
+	/**
+	 * Return the application's configuration.
+	 *
+	 * @return the configuration, or null if the harness has not been started
+	 */
+	public synchronized C getConfiguration() {
+		return this.configuration;
+	}
+
+	/**
+	 * Return the application's environment.
+	 *
+	 * @return the environment, or null if the harness has not been started
+	 */
+	public synchronized Environment getEnvironment() {
+		return this.environment;
+	}
+
+	/**
+	 * Return the startup phases.
+	 *
+	 * @return the startup phases
+	 */
+	public StartupPhases getStartupPhases() {
+		return this.phases;
+	}
+
+	private synchronized Server getServer() {
+		if (this.server == null) {
+			throw new IllegalStateException("harness has not been started");
+		}
+		return this.server;
+	}
+
+	// the server is built after the application runs, so the ports can
+	// still be changed
+	private static void useEphemeralPorts(final ServerFactory factory) {
+		final List<ConnectorFactory> connectors = new ArrayList<ConnectorFactory>();
+		if (factory instanceof DefaultServerFactory) {
+			connectors.addAll(((DefaultServerFactory) factory).getApplicationConnectors());
+			connectors.addAll(((DefaultServerFactory) factory).getAdminConnectors());
+		}
+		else if (factory instanceof SimpleServerFactory) {
+			connectors.add(((SimpleServerFactory) factory).getConnector());
+		}
+		for (final ConnectorFactory connector : connectors) {
+			if (connector instanceof HttpConnectorFactory) {
+				((HttpConnectorFactory) connector).setPort(0);
+			}
+		}
+	}
+
+	private Map<String, String> applyOverrides() {
+		final Map<String, String> previous = new HashMap<String, String>();
+		for (final Map.Entry<String, String> override : this.overrides.entrySet()) {
+			final String key = OVERRIDE_PREFIX + override.getKey();
+			previous.put(key, System.getProperty(key));
+			System.setProperty(key, override.getValue());
+		}
+		return previous;
+	}
+
+	private static void restoreOverrides(final Map<String, String> previous) {
+		for (final Map.Entry<String, String> entry : previous.entrySet()) {
+			if (entry.getValue() == null) {
+				System.clearProperty(entry.getKey());
+			}
+			else {
+				System.setProperty(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+}
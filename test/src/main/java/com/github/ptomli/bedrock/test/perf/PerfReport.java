@@ -0,0 +1,126 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import io.dropwizard.jackson.Jackson;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * A machine readable report of an application's startup phases, and the
+ * results of the load driven against it, written as JSON like
+ * <pre>
+ * <code>
+ * {
+ *   "application" : "com.example.MyApplication",
+ *   "startupMillis" : 1830.2,
+ *   "startupPhases" : { "initialize" : 120.5, "configuration" : 210.1, ... },
+ *   "heapUsedAfterStartup" : 73400320,
+ *   "loads" : [ { "path" : "/orders", "throughput" : 5120.4, "p99Millis" : 4.1, ... } ]
+ * }
+ * </code>
+ * </pre>
+ */
+public class PerfReport {
+
+	private static final ObjectWriter WRITER = Jackson.newObjectMapper().writerWithDefaultPrettyPrinter();
+
+	@JsonProperty
+	private final String application;
+
+	@JsonProperty
+	private final double startupMillis;
+
+	@JsonProperty
+	private final Map<String, Double> startupPhases;
+
+	@JsonProperty
+	private final long heapUsedAfterStartup;
+
+	@JsonProperty
+	private final List<LoadResult> loads;
+
+	PerfReport(final String application, final StartupPhases phases, final long heapUsedAfterStartup, final List<LoadResult> loads) {
+		this.application = application;
+		this.startupMillis = phases.getTotal(TimeUnit.MICROSECONDS) / 1e3;
+		this.startupPhases = phases.toMillis();
+		this.heapUsedAfterStartup = heapUsedAfterStartup;
+		this.loads = Collections.unmodifiableList(new ArrayList<LoadResult>(loads));
+	}
+
+	/**
+	 * The class name of the application.
+	 *
+	 * @return the application
+	 */
+	public String getApplication() {
+		return this.application;
+	}
+
+	/**
+	 * The total startup time.
+	 *
+	 * @return the startup time, in milliseconds
+	 */
+	public double getStartupMillis() {
+		return this.startupMillis;
+	}
+
+	/**
+	 * The startup phases, and their durations.
+	 *
+	 * @return the phase durations, in milliseconds
+	 */
+	public Map<String, Double> getStartupPhases() {
+		return this.startupPhases;
+	}
+
+	/**
+	 * The heap in use once the application had started, including garbage.
+	 *
+	 * @return the heap used, in bytes
+	 */
+	public long getHeapUsedAfterStartup() {
+		return this.heapUsedAfterStartup;
+	}
+
+	/**
+	 * The results of the load driven against the application.
+	 *
+	 * @return the load results
+	 */
+	public List<LoadResult> getLoads() {
+		return this.loads;
+	}
+
+	/**
+	 * Return the report as JSON.
+	 *
+	 * @return the JSON report
+	 */
+	public String toJson() {
+		try {
+			return WRITER.writeValueAsString(this);
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Unable to write report", ex);
+		}
+	}
+
+	/**
+	 * Write the report as JSON to a file.
+	 *
+	 * @param file the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeTo(final File file) throws IOException {
+		WRITER.writeValue(file, this);
+	}
+}
@@ -0,0 +1,74 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The durations of the consecutive phases of an application's startup, in
+ * the order they completed.
+ */
+public class StartupPhases {
+
+	private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+	private long last;
+
+	/**
+	 * Start timing the first phase.
+	 */
+	synchronized void start() {
+		this.phases.clear();
+		this.last = System.nanoTime();
+	}
+
+	/**
+	 * Complete the current phase, and start timing the next.
+	 *
+	 * @param phase the name of the completed phase
+	 */
+	synchronized void mark(final String phase) {
+		final long now = System.nanoTime();
+		this.phases.put(phase, now - this.last);
+		this.last = now;
+	}
+
+	/**
+	 * Return the duration of a phase.
+	 *
+	 * @param phase the phase name
+	 * @param unit the unit of the returned duration
+	 * @return the duration, or -1 if the phase has not completed
+	 */
+	public synchronized long getDuration(final String phase, final TimeUnit unit) {
+		final Long nanos = this.phases.get(phase);
+		return nanos == null ? -1 : unit.convert(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Return the total duration of the completed phases.
+	 *
+	 * @param unit the unit of the returned duration
+	 * @return the total duration
+	 */
+	public synchronized long getTotal(final TimeUnit unit) {
+		long total = 0;
+		for (final long nanos : this.phases.values()) {
+			total += nanos;
+		}
+		return unit.convert(total, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Return the completed phases, and their durations in milliseconds.
+	 *
+	 * @return the phase durations, in the order they completed
+	 */
+	public synchronized Map<String, Double> toMillis() {
+		final Map<String, Double> millis = new LinkedHashMap<String, Double>();
+		for (final Map.Entry<String, Long> entry : this.phases.entrySet()) {
+			millis.put(entry.getKey(), entry.getValue() / 1e6);
+		}
+		return Collections.unmodifiableMap(millis);
+	}
+}
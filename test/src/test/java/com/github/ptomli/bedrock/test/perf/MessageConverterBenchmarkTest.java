@@ -0,0 +1,81 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.jms.support.converter.MappingJackson2MessageConverter;
+import org.springframework.jms.support.converter.MessageType;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.ptomli.bedrock.jms.SmileMessageConverter;
+
+import io.dropwizard.jackson.Jackson;
+
+public class MessageConverterBenchmarkTest {
+
+	private final ObjectMapper mapper = Jackson.newObjectMapper();
+	private final MessageConverterBenchmark benchmark = new MessageConverterBenchmark(2, 1000, 4000);
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFewerMessagesThanThreadsThrowsException() {
+		new MessageConverterBenchmark(4, 0, 3);
+	}
+
+	@Test
+	public void testSmileIsComparedWithJson() throws Exception {
+		MessageConverterResult smile = benchmark.run("smile", new SmileMessageConverter(mapper), batch());
+		MessageConverterResult json = benchmark.run("json", json(), batch());
+
+		assertThat(smile.getConverter()).isEqualTo("smile");
+		assertThat(smile.getMessages()).isEqualTo(4000);
+		assertThat(smile.getThroughput()).isGreaterThan(0);
+		assertThat(json.getThroughput()).isGreaterThan(0);
+		assertThat(smile.getPayloadBytes()).isGreaterThan(0).isLessThan(json.getPayloadBytes());
+	}
+
+	@Test
+	public void testResultIsWrittenAsJson() throws Exception {
+		MessageConverterResult result = new MessageConverterBenchmark(1, 0, 10).run("json", json(), batch());
+
+		JsonNode json = new ObjectMapper().readTree(new ObjectMapper().writeValueAsString(result));
+		assertThat(json.get("converter").asText()).isEqualTo("json");
+		assertThat(json.get("messages").asInt()).isEqualTo(10);
+		assertThat(json.has("allocatedBytesPerMessage")).isTrue();
+	}
+
+	private MappingJackson2MessageConverter json() {
+		MappingJackson2MessageConverter json = new MappingJackson2MessageConverter();
+		json.setObjectMapper(mapper);
+		json.setTargetType(MessageType.BYTES);
+		json.setTypeIdPropertyName(SmileMessageConverter.DEFAULT_TYPE_ID_PROPERTY_NAME);
+		return json;
+	}
+
+	private static Batch batch() {
+		Batch batch = new Batch();
+		for (int i = 0; i < 20; i++) {
+			Order order = new Order();
+			order.id = "order-" + i;
+			order.customer = "customer-" + (i % 3);
+			order.quantity = i;
+			order.price = i * 1.25;
+			batch.orders.add(order);
+		}
+		return batch;
+	}
+
+	public static class Batch {
+		public List<Order> orders = new ArrayList<Order>();
+	}
+
+	public static class Order {
+		public String id;
+		public String customer;
+		public int quantity;
+		public double price;
+	}
+}
@@ -0,0 +1,53 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.Test;
+import org.springframework.integration.store.SimpleMessageStore;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.ptomli.bedrock.integration.StripedMessageGroupStore;
+
+public class MessageGroupStoreBenchmarkTest {
+
+	private final MessageGroupStoreBenchmark benchmark = new MessageGroupStoreBenchmark(4, 100, 10, 4000, 40000);
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFewerMessagesThanSendersThrowsException() {
+		new MessageGroupStoreBenchmark(4, 1, 1, 0, 3);
+	}
+
+	@Test
+	public void testSimpleMessageStore() throws Exception {
+		SimpleMessageStore store = new SimpleMessageStore();
+		MessageGroupStoreResult result = benchmark.run("simple", store);
+
+		assertThat(result.getStore()).isEqualTo("simple");
+		assertThat(result.getMessages()).isEqualTo(40000);
+		assertThat(result.getReleasedGroups()).isEqualTo(4000);
+		assertThat(result.getThroughput()).isGreaterThan(0);
+		assertThat(store.getMessageGroupCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testStripedMessageGroupStore() throws Exception {
+		StripedMessageGroupStore store = new StripedMessageGroupStore();
+		MessageGroupStoreResult result = benchmark.run("striped", store);
+
+		assertThat(result.getReleasedGroups()).isEqualTo(4000);
+		assertThat(result.getThroughput()).isGreaterThan(0);
+		assertThat(store.getMessageGroupCount()).isEqualTo(0);
+		assertThat(store.getMessageCountForAllMessageGroups()).isEqualTo(0);
+	}
+
+	@Test
+	public void testResultIsWrittenAsJson() throws Exception {
+		MessageGroupStoreResult result = new MessageGroupStoreBenchmark(1, 1, 1, 0, 10).run("striped", new StripedMessageGroupStore(1));
+
+		JsonNode json = new ObjectMapper().readTree(new ObjectMapper().writeValueAsString(result));
+		assertThat(json.get("store").asText()).isEqualTo("striped");
+		assertThat(json.get("releasedGroups").asInt()).isEqualTo(10);
+		assertThat(json.has("allocatedBytesPerMessage")).isTrue();
+	}
+}
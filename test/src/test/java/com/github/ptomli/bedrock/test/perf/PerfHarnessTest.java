@@ -0,0 +1,90 @@
+package com.github.ptomli.bedrock.test.perf;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class PerfHarnessTest {
+
+	private static PerfHarness<GeneratedContextConfiguration> harness;
+
+	@BeforeClass
+	public static void start() throws Exception {
+		harness = new PerfHarness<GeneratedContextConfiguration>(new GeneratedContextApplication())
+				.withOverride("beans", "200")
+				.withOverride("dependencies", "2");
+		harness.start();
+	}
+
+	@AfterClass
+	public static void stop() throws Exception {
+		harness.stop();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRelativePathThrowsException() {
+		new LoadProfile("generated", 1, 0, 1);
+	}
+
+	@Test
+	public void testStartupPhasesAreRecorded() {
+		StartupPhases phases = harness.getStartupPhases();
+		assertThat(phases.toMillis().keySet()).containsExactly("initialize", "configuration", "bundles", "application", "server-start");
+		assertThat(phases.getDuration("application", TimeUnit.NANOSECONDS)).isGreaterThan(0);
+		assertThat(phases.getTotal(TimeUnit.NANOSECONDS)).isGreaterThanOrEqualTo(phases.getDuration("application", TimeUnit.NANOSECONDS));
+	}
+
+	@Test
+	public void testConfigurationOverridesAreApplied() {
+		assertThat(harness.getConfiguration().getBeans()).isEqualTo(200);
+		assertThat(harness.getLocalPort()).isNotEqualTo(8080);
+		assertThat(System.getProperty("dw.beans")).isNull();
+	}
+
+	@Test
+	public void testLoadIsDrivenAgainstResource() throws Exception {
+		LoadResult result = harness.load(new LoadProfile("/generated/generated199", 4, 20, 200));
+		assertThat(result.getRequests()).isEqualTo(200);
+		assertThat(result.getErrors()).isEqualTo(0);
+		assertThat(result.getThroughput()).isGreaterThan(0);
+		assertThat(result.getP99Millis()).isGreaterThanOrEqualTo(result.getP50Millis());
+	}
+
+	@Test
+	public void testErrorsAreCounted() throws Exception {
+		LoadResult result = harness.load(new LoadProfile("/generated/missing", 2, 0, 10));
+		assertThat(result.getErrors()).isEqualTo(10);
+	}
+
+	@Test
+	public void testReportIsWrittenAsJson() throws Exception {
+		harness.load(new LoadProfile("/generated", 1, 0, 5));
+		File file = new File("target/perf-harness-test.json");
+		harness.report().writeTo(file);
+
+		JsonNode report = new ObjectMapper().readTree(file);
+		assertThat(report.get("application").asText()).isEqualTo(GeneratedContextApplication.class.getName());
+		assertThat(report.get("startupPhases").has("application")).isTrue();
+		assertThat(report.get("loads").size()).isGreaterThan(0);
+		assertThat(report.get("loads").get(0).has("p99Millis")).isTrue();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testGeneratedResourceDescribesBeans() throws Exception {
+		Map<String, Object> count = new ObjectMapper().readValue(new java.net.URL("http://localhost:" + harness.getLocalPort() + "/generated"), Map.class);
+		assertThat(count).containsEntry("beans", 200);
+
+		Map<String, Object> bean = new ObjectMapper().readValue(new java.net.URL("http://localhost:" + harness.getLocalPort() + "/generated/generated199"), Map.class);
+		assertThat(bean).containsEntry("depth", 199).containsEntry("dependencies", 2);
+	}
+}